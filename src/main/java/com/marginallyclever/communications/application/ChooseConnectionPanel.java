@@ -3,6 +3,7 @@ package com.marginallyclever.communications.application;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
 import com.marginallyclever.communications.session.SessionLayerManager;
+import com.marginallyclever.communications.transport.replay.SessionRecorder;
 import com.marginallyclever.convenience.log.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +12,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -26,6 +29,8 @@ public class ChooseConnectionPanel extends JPanel {
 	public static final int CONNECTION_CLOSED = 2;
 	
 	private final JButton bConnect = new JButton();
+	private final JToggleButton bRecord = new JToggleButton("Record");
+	private final JFileChooser recordChooser = new JFileChooser();
 	private final JLabel connectionName = new JLabel("Not connected",JLabel.LEADING);
 	private SessionLayer mySession;
 	
@@ -34,10 +39,14 @@ public class ChooseConnectionPanel extends JPanel {
 
 		bConnect.setText("Connect");
 		bConnect.addActionListener((e)-> onConnectAction() );
+		bRecord.setToolTipText("Record every byte to a file, to replay later.");
+		bRecord.setEnabled(false);
+		bRecord.addActionListener((e)-> onRecordAction() );
 		
 		//this.setBorder(BorderFactory.createTitledBorder(ChooseConnectionPanel.class.getName()));
 		this.setLayout(new FlowLayout(FlowLayout.LEADING));
 		this.add(bConnect);
+		this.add(bRecord);
 		this.add(connectionName);
 	}
 
@@ -53,15 +62,39 @@ public class ChooseConnectionPanel extends JPanel {
 		}
 	}
 
+	private void onRecordAction() {
+		if(mySession==null) return;
+		if(!bRecord.isSelected()) {
+			mySession.setRecorder(null);
+			return;
+		}
+		recordChooser.setSelectedFile(new File("session.rosr"));
+		if(recordChooser.showSaveDialog(this)!=JFileChooser.APPROVE_OPTION) {
+			bRecord.setSelected(false);
+			return;
+		}
+		File file = recordChooser.getSelectedFile();
+		try {
+			mySession.setRecorder(new SessionRecorder(file,mySession.getName()));
+			logger.info("recording to "+file.getAbsolutePath());
+		} catch(IOException e) {
+			bRecord.setSelected(false);
+			JOptionPane.showMessageDialog(this,e.getLocalizedMessage(),"Error",JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	private void onClose() {
 		logger.info("ChooseConnection closed.");
 		if(mySession!=null) {
+			mySession.setRecorder(null);
 			mySession.closeConnection();
 			mySession=null;
 			notifyListeners(new ActionEvent(this,ChooseConnectionPanel.CONNECTION_CLOSED,""));
 		}
 		bConnect.setText("Connect");
 		bConnect.setForeground(Color.GREEN);
+		bRecord.setSelected(false);
+		bRecord.setEnabled(false);
 		connectionName.setText("Not connected");
 	}
 
@@ -76,6 +109,7 @@ public class ChooseConnectionPanel extends JPanel {
 		});
 		bConnect.setText("Disconnect");
 		bConnect.setForeground(Color.RED);
+		bRecord.setEnabled(true);
 		connectionName.setText(s.getName());
 	}
 
@@ -1,28 +1,43 @@
 package com.marginallyclever.communications.application;
 
 import com.marginallyclever.convenience.log.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * a list of all the events that have happened in a conversation.
+ * <p>a list of all the events that have happened in a conversation.</p>
+ * <p>Only the newest {@link ConversationHistoryModel#DEFAULT_CAPACITY} events are kept in memory.  Older events are
+ * spilled to a compressed file and are still written by Save.  Events may be added from any thread; they are added
+ * to the list in one batch per turn of the Event Dispatch Thread.  Every row is the same height, so only the visible
+ * rows are ever measured and drawn.</p>
  *
  * @author Dan Royer
  * @since 1.7.1
  */
 public class ConversationHistoryList extends JPanel {
-	private final DefaultListModel<ConversationEvent> listModel = new DefaultListModel<ConversationEvent>();
+	private static final Logger logger = LoggerFactory.getLogger(ConversationHistoryList.class);
+	// rows are this many characters wide.  Longer lines are cut when drawn, but not when saved.
+	private static final String PROTOTYPE_ROW = "You: "+"M".repeat(80);
+	private final ConversationHistoryModel listModel = new ConversationHistoryModel(ConversationHistoryModel.DEFAULT_CAPACITY,createSpill());
 	private final JList<ConversationEvent> listView = new JList<ConversationEvent>(listModel);
 	private final ConcurrentLinkedQueue<ConversationEvent> inBoundQueue = new ConcurrentLinkedQueue<ConversationEvent>();
+	private final AtomicBoolean addScheduled = new AtomicBoolean();
 	private final JFileChooser chooser = new JFileChooser();
 
 	private final JButton bClear = new JButton("Clear");
 	private final JButton bSave = new JButton("Save");
+	private final JTextField searchField = new JTextField(12);
+	private final JButton bFind = new JButton("Find");
 
 	
 	public ConversationHistoryList() {
@@ -33,6 +48,7 @@ public class ConversationHistoryList extends JPanel {
 		scrollPane.setBorder(BorderFactory.createEtchedBorder(EtchedBorder.LOWERED));
 		
 		listView.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		listView.setPrototypeCellValue(new ConversationEvent("You",PROTOTYPE_ROW));
 
 		this.setBorder(BorderFactory.createTitledBorder(ConversationHistoryList.class.getName()));
 		this.setPreferredSize(new Dimension(500,500));
@@ -47,13 +63,43 @@ public class ConversationHistoryList extends JPanel {
 
 		bar.add(bClear);
 		bar.add(bSave);
+		bar.addSeparator();
+		bar.add(searchField);
+		bar.add(bFind);
 		
 		bClear.addActionListener( (e) -> runNewAction() );
 		bSave.addActionListener( (e) -> runSaveAction() );
+		bFind.addActionListener( (e) -> runFindAction() );
+		searchField.addActionListener( (e) -> runFindAction() );
 		
 		return bar;
 	}
 
+	private static ConversationSpillLog createSpill() {
+		try {
+			return ConversationSpillLog.createTemporary();
+		} catch (IOException e) {
+			logger.warn("no spill file, older history will be lost: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Select the next event that contains the search text.
+	 */
+	private void runFindAction() {
+		String query = searchField.getText();
+		if(query.isBlank()) return;
+		int i = listModel.findNext(query,listView.getSelectedIndex());
+		if(i<0) {
+			searchField.setForeground(Color.RED);
+			return;
+		}
+		searchField.setForeground(UIManager.getColor("TextField.foreground"));
+		listView.setSelectedIndex(i);
+		listView.ensureIndexIsVisible(i);
+	}
+
 	private void createCellRenderingSystem() {
 		listView.setCellRenderer(new ListCellRenderer<ConversationEvent>() {
 			private DefaultListCellRenderer defaultRenderer = new DefaultListCellRenderer(); 
@@ -92,14 +138,9 @@ public class ConversationHistoryList extends JPanel {
 	}
 	
 	private void saveFile(File file) throws IOException {
-		BufferedWriter fileWriter = new BufferedWriter(new FileWriter(file));
-		int size=listModel.getSize();
-		for(int i=0;i<size;++i) {
-			String str = listModel.get(i).toString();
-			if(!str.endsWith("\n")) str+="\n";
-			fileWriter.write(str);
+		try(BufferedWriter fileWriter = new BufferedWriter(new FileWriter(file))) {
+			listModel.save(fileWriter);
 		}
-		fileWriter.close();
 	}
 	
 	public void clear() {
@@ -118,27 +159,28 @@ public class ConversationHistoryList extends JPanel {
 		return listView.getSelectedValue().toString();
 	}
 
+	/**
+	 * Safe to call from any thread.
+	 */
 	public void addElement(String src,String str) {
 		inBoundQueue.add(new ConversationEvent(src, str));
-		repaint();
+		if(addScheduled.compareAndSet(false,true)) SwingUtilities.invokeLater(this::addQueuedMessages);
 	}
-	
-	@Override
-	public void paint(Graphics g) {
-		boolean isLast = (listView.getLastVisibleIndex() == listModel.getSize()-1);
-		
-		addQueuedMessages();
-		
+
+	private void addQueuedMessages() {
+		addScheduled.set(false);
+		List<ConversationEvent> batch = new ArrayList<>();
+		ConversationEvent msg;
+		while((msg = inBoundQueue.poll())!=null) batch.add(msg);
+		if(batch.isEmpty()) return;
+
+		boolean isLast = (listView.getLastVisibleIndex() >= listModel.getSize()-1);
+		listModel.addAll(batch);
 		if(isLast) jumpToEnd();
-		
-		super.paint(g);
 	}
 
-	private void addQueuedMessages() {
-		while(!inBoundQueue.isEmpty()) {
-			ConversationEvent msg = inBoundQueue.poll();
-			if(msg!=null) listModel.addElement(msg);
-		}
+	public ConversationHistoryModel getModel() {
+		return listModel;
 	}
 		
 	private void jumpToEnd() {
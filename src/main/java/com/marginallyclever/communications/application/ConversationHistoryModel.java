@@ -0,0 +1,240 @@
+package com.marginallyclever.communications.application;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * <p>The list model of a {@link ConversationHistoryList}.  At most {@link #getCapacity()} events are kept in a ring.
+ * When the ring is full the oldest events move to a {@link ConversationSpillLog}, so memory stays flat over a
+ * connection that lasts for days and nothing is lost when the history is saved.</p>
+ * <p>Events are added in batches and each batch fires one interval added event.</p>
+ * <p>Every word of the events in memory is indexed.  {@link #search(String)} finds the events that contain the
+ * query where each word of the query starts a word of the event, so "X10" finds "G1 X10.5" but "10.5" does not
+ * find "X10.5".</p>
+ * <p>Use on the Event Dispatch Thread only.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ConversationHistoryModel extends AbstractListModel<ConversationEvent> {
+	private static final Logger logger = LoggerFactory.getLogger(ConversationHistoryModel.class);
+	public static final int DEFAULT_CAPACITY = 10000;
+	// longer words are cut to this length before they are indexed.
+	private static final int MAX_WORD_LENGTH = 32;
+
+	private final ConversationEvent [] ring;
+	private int start, size;
+	// the sequence number of ring[start].  Every event ever added gets the next number.
+	private long firstSequence;
+	// word -> sequence numbers of the events in memory that have that word, oldest first.
+	private final TreeMap<String,ArrayDeque<Long>> index = new TreeMap<>();
+	private final ConversationSpillLog spill;
+	private boolean spillFailed;
+
+	/**
+	 * @param capacity the most events kept in memory.
+	 * @param spill where older events go.  Null to forget them.
+	 */
+	public ConversationHistoryModel(int capacity,ConversationSpillLog spill) {
+		ring = new ConversationEvent[Math.max(1,capacity)];
+		this.spill = spill;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public ConversationEvent getElementAt(int index) {
+		if(index<0 || index>=size) throw new ArrayIndexOutOfBoundsException(index);
+		return ring[(start+index)%ring.length];
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * @return the number of events that no longer fit in memory, whether or not they were spilled.
+	 */
+	public long getEvicted() {
+		return firstSequence;
+	}
+
+	public ConversationSpillLog getSpill() {
+		return spill;
+	}
+
+	public void addElement(ConversationEvent event) {
+		addAll(List.of(event));
+	}
+
+	/**
+	 * Add events at the end.  Fires at most one interval removed and one interval added event.
+	 */
+	public void addAll(List<ConversationEvent> batch) {
+		int n = batch.size();
+		if(n==0) return;
+
+		int evict = Math.min(size,size+n-ring.length);
+		if(evict>0) {
+			for(int i=0;i<evict;++i) evictOldest();
+			fireIntervalRemoved(this,0,evict-1);
+		}
+		// a batch bigger than the ring only keeps its newest events.
+		int skip = Math.max(0,n-ring.length);
+		for(int i=0;i<skip;++i) {
+			spill(batch.get(i));
+			firstSequence++;
+		}
+		int first = size;
+		for(int i=skip;i<n;++i) {
+			ConversationEvent e = batch.get(i);
+			long sequence = firstSequence+size;
+			ring[(start+size)%ring.length] = e;
+			size++;
+			forEachWord(e.whatWasSaid,(word)->{
+				ArrayDeque<Long> postings = index.computeIfAbsent(word,(k)->new ArrayDeque<>());
+				// a word said twice in one event is indexed once.
+				if(postings.isEmpty() || postings.peekLast()!=sequence) postings.addLast(sequence);
+			});
+		}
+		fireIntervalAdded(this,first,size-1);
+	}
+
+	private void evictOldest() {
+		ConversationEvent e = ring[start];
+		ring[start] = null;
+		long sequence = firstSequence;
+		forEachWord(e.whatWasSaid,(word)->{
+			ArrayDeque<Long> postings = index.get(word);
+			if(postings==null) return;
+			// the oldest event in memory is always first in line.
+			if(!postings.isEmpty() && postings.peekFirst()==sequence) postings.pollFirst();
+			if(postings.isEmpty()) index.remove(word);
+		});
+		spill(e);
+		start = (start+1)%ring.length;
+		size--;
+		firstSequence++;
+	}
+
+	private void spill(ConversationEvent e) {
+		if(spill==null || spillFailed) return;
+		try {
+			spill.add(e.toString());
+		} catch (IOException ex) {
+			// keep going without the log rather than stop the conversation.
+			spillFailed = true;
+			logger.error("spill failed, older history will be lost: "+ex.getMessage());
+		}
+	}
+
+	/**
+	 * Forget every event, including the spilled ones.
+	 */
+	public void clear() {
+		int oldSize = size;
+		Arrays.fill(ring,null);
+		firstSequence += size;
+		start = 0;
+		size = 0;
+		index.clear();
+		if(spill!=null) {
+			try {
+				spill.clear();
+				spillFailed = false;
+			} catch (IOException e) {
+				logger.error("could not clear spill: "+e.getMessage());
+			}
+		}
+		if(oldSize>0) fireIntervalRemoved(this,0,oldSize-1);
+	}
+
+	/**
+	 * Write the whole conversation, spilled events first, one event per line.
+	 */
+	public void save(Writer out) throws IOException {
+		if(spill!=null) spill.copyTo(out);
+		for(int i=0;i<size;++i) {
+			String str = getElementAt(i).toString();
+			out.write(str);
+			if(!str.endsWith("\n")) out.write('\n');
+		}
+	}
+
+	/**
+	 * @param query the text to find.  Not case sensitive.
+	 * @return the index of every event in memory that contains the query, in order.
+	 */
+	public List<Integer> search(String query) {
+		List<Integer> found = new ArrayList<>();
+		String needle = query.trim().toLowerCase();
+		if(needle.isEmpty()) return found;
+
+		List<String> words = new ArrayList<>();
+		forEachWord(needle,words::add);
+		if(words.isEmpty()) {
+			// nothing to look up, so look at everything.
+			for(int i=0;i<size;++i) {
+				if(contains(getElementAt(i),needle)) found.add(i);
+			}
+			return found;
+		}
+
+		// the longest word is likely the rarest.
+		String longest = Collections.max(words,Comparator.comparingInt(String::length));
+		TreeSet<Long> candidates = new TreeSet<>();
+		for(ArrayDeque<Long> postings : index.subMap(longest,longest+Character.MAX_VALUE).values()) {
+			candidates.addAll(postings);
+		}
+		for(long sequence : candidates) {
+			int i = (int)(sequence-firstSequence);
+			if(contains(getElementAt(i),needle)) found.add(i);
+		}
+		return found;
+	}
+
+	/**
+	 * @return the index of the first event after <code>from</code> that contains the query, going around to the
+	 * start if need be, or -1.
+	 */
+	public int findNext(String query,int from) {
+		List<Integer> found = search(query);
+		if(found.isEmpty()) return -1;
+		for(int i : found) {
+			if(i>from) return i;
+		}
+		return found.get(0);
+	}
+
+	private static boolean contains(ConversationEvent e,String lowerCaseNeedle) {
+		return e.whatWasSaid.toLowerCase().contains(lowerCaseNeedle);
+	}
+
+	private interface WordListener {
+		void onWord(String word);
+	}
+
+	/**
+	 * Split text into lower case words of letters and digits.
+	 */
+	private static void forEachWord(String text,WordListener listener) {
+		int len = text.length();
+		int i=0;
+		while(i<len) {
+			while(i<len && !Character.isLetterOrDigit(text.charAt(i))) i++;
+			int wordStart = i;
+			while(i<len && Character.isLetterOrDigit(text.charAt(i))) i++;
+			if(i>wordStart) {
+				listener.onWord(text.substring(wordStart,Math.min(i,wordStart+MAX_WORD_LENGTH)).toLowerCase());
+			}
+		}
+	}
+}
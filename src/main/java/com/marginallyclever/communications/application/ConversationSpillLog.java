@@ -0,0 +1,106 @@
+package com.marginallyclever.communications.application;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>A compressed file of the lines that no longer fit in a {@link ConversationHistoryModel}.  Lines are gathered in
+ * memory and written {@value #MEMBER_LINES} at a time, each group as its own gzip member appended to the file.  A
+ * file of many members is still one valid gzip file, so nothing has to be rewritten and a crash loses at most the
+ * last group.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ConversationSpillLog implements Closeable {
+	private static final int MEMBER_LINES = 1000;
+
+	private final File file;
+	private final StringBuilder pending = new StringBuilder();
+	private int pendingLines;
+	private long lines;
+
+	public ConversationSpillLog(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return a log in the temporary folder that is deleted when the app closes.
+	 */
+	public static ConversationSpillLog createTemporary() throws IOException {
+		File file = File.createTempFile("conversation",".log.gz");
+		file.deleteOnExit();
+		return new ConversationSpillLog(file);
+	}
+
+	public void add(String line) throws IOException {
+		pending.append(line);
+		if(!line.endsWith("\n")) pending.append('\n');
+		pendingLines++;
+		lines++;
+		if(pendingLines>=MEMBER_LINES) flush();
+	}
+
+	/**
+	 * Write the lines gathered so far as one gzip member.
+	 */
+	public void flush() throws IOException {
+		if(pendingLines==0) return;
+		try(Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file,true)),StandardCharsets.UTF_8)) {
+			out.append(pending);
+		}
+		pending.setLength(0);
+		pendingLines=0;
+	}
+
+	/**
+	 * Write every line in the log, oldest first.
+	 */
+	public void copyTo(Writer out) throws IOException {
+		flush();
+		if(!file.exists() || file.length()==0) return;
+		try(Reader in = new InputStreamReader(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))),StandardCharsets.UTF_8)) {
+			in.transferTo(out);
+		}
+	}
+
+	/**
+	 * Forget every line.
+	 */
+	public void clear() throws IOException {
+		pending.setLength(0);
+		pendingLines=0;
+		lines=0;
+		new FileOutputStream(file).close();
+	}
+
+	/**
+	 * @return the number of lines in the log.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the size of the file in bytes, not counting lines that have not been written yet.
+	 */
+	public long getFileSize() {
+		return file.length();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Delete the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		pending.setLength(0);
+		pendingLines=0;
+		if(file.exists() && !file.delete()) throw new IOException("could not delete "+file);
+	}
+}
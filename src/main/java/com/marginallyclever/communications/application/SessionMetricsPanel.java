@@ -0,0 +1,90 @@
+package com.marginallyclever.communications.application;
+
+import com.marginallyclever.communications.session.LatencyHistogram;
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionMetrics;
+import com.marginallyclever.communications.transport.TransportMetrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.Serial;
+
+/**
+ * One line of {@link SessionMetrics} and {@link TransportMetrics} under the conversation, so a stutter can be
+ * blamed on the link, the controller or the sender while it happens.  Updated twice a second while showing.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionMetricsPanel extends JPanel {
+	@Serial
+	private static final long serialVersionUID = 1L;
+	private static final int REFRESH_MS = 500;
+
+	private final JLabel lines = new JLabel();
+	private final JLabel bytes = new JLabel();
+	private final JLabel latency = new JLabel();
+	private final JLabel blocked = new JLabel();
+	private final JLabel problems = new JLabel();
+	private final JLabel buffer = new JLabel();
+	private final Timer timer = new Timer(REFRESH_MS,(e)->refresh());
+	private SessionLayer session;
+
+	public SessionMetricsPanel() {
+		super(new FlowLayout(FlowLayout.LEADING,12,2));
+		add(lines);
+		add(bytes);
+		add(latency);
+		add(blocked);
+		add(problems);
+		add(buffer);
+		lines.setToolTipText("lines received and sent");
+		bytes.setToolTipText("bytes per second received and sent");
+		latency.setToolTipText("time from sending a command to hearing ok: median, 99th percentile and longest");
+		blocked.setToolTipText("share of time with lines waiting and no room in the controller");
+		problems.setToolTipText("resends and errors asked for by the controller");
+		buffer.setToolTipText("controller buffer in use, and the most ever in use");
+		refresh();
+	}
+
+	/**
+	 * @param session the session to watch, or null for none.
+	 */
+	public void setSession(SessionLayer session) {
+		this.session = session;
+		refresh();
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		super.removeNotify();
+	}
+
+	private void refresh() {
+		if(session==null) {
+			lines.setText("not connected");
+			bytes.setText("");
+			latency.setText("");
+			blocked.setText("");
+			problems.setText("");
+			buffer.setText("");
+			return;
+		}
+		SessionMetrics m = session.getSessionMetrics();
+		TransportMetrics t = session.getTransportMetrics();
+		LatencyHistogram h = m.getLatency();
+		lines.setText("lines "+m.getLinesIn()+" in, "+m.getLinesOut()+" out");
+		bytes.setText(String.format("%.0f B/s in, %.0f B/s out",t.getBytesInPerSecond(),t.getBytesOutPerSecond()));
+		latency.setText(String.format("ok %.1f / %.1f / %.1f ms",h.getPercentileMillis(0.5),h.getPercentileMillis(0.99),h.getMaxMillis()));
+		blocked.setText(String.format("blocked %.1f%%",m.getBlockedPercent()));
+		problems.setText("resends "+m.getResends()+", errors "+m.getErrors());
+		buffer.setText("buffer "+m.getOccupancy()+"/"+m.getCapacity()+" (peak "+m.getPeakOccupancy()+")");
+	}
+}
@@ -1,10 +1,16 @@
 package com.marginallyclever.communications.application;
 
+import com.marginallyclever.communications.jointstate.JointStateDecoder;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
 import com.marginallyclever.communications.session.SessionLayerListener;
+import com.marginallyclever.communications.session.SessionMetrics;
+import com.marginallyclever.communications.session.SessionMetricsJMX;
 import com.marginallyclever.convenience.log.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -22,9 +28,14 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 	 */
 	@Serial
 	private static final long serialVersionUID = 1032123255711692874L;
+	private static final Logger logger = LoggerFactory.getLogger(TextInterfaceToSessionLayer.class);
 	private final ChooseConnectionPanel myConnectionChoice = new ChooseConnectionPanel();
 	private final TextInterfaceWithHistory myInterface = new TextInterfaceWithHistory();
-	private SessionLayer mySession;
+	private final SessionMetricsPanel metricsPanel = new SessionMetricsPanel();
+	private volatile SessionLayer mySession;
+	// the name of the JMX bean of mySession, or null.
+	private ObjectName metricsName;
+	private JointStateDecoder.Listener jointStateListener;
 
 	public TextInterfaceToSessionLayer() {
 		super();
@@ -34,6 +45,7 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 		
 		add(myConnectionChoice,BorderLayout.NORTH);
 		add(myInterface,BorderLayout.CENTER);
+		add(metricsPanel,BorderLayout.SOUTH);
 		
 		myInterface.setEnabled(false);
 		myInterface.addActionListener( (evt) -> {
@@ -44,6 +56,7 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 			
 			try {
 				mySession.sendMessage(str);
+				mySession.getSessionMetrics().addLineOut();
 			} catch (Exception e1) {
 				JOptionPane.showMessageDialog(this,e1.getLocalizedMessage(),"Error",JOptionPane.ERROR_MESSAGE);
 			}
@@ -63,18 +76,59 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 	}
 	
 	public void setNetworkSession(SessionLayer session) {
-		if(mySession!=null) mySession.removeListener(this);
+		if(mySession!=null) {
+			mySession.removeListener(this);
+			mySession.setJointStateListener(null);
+			SessionMetricsJMX.unregister(metricsName);
+			metricsName = null;
+		}
 		mySession = session;
-		if(mySession!=null) mySession.addListener(this);
+		if(mySession!=null) {
+			mySession.addListener(this);
+			mySession.setJointStateListener(jointStateListener);
+			metricsName = SessionMetricsJMX.register(mySession);
+		}
+		metricsPanel.setSession(mySession);
 		
 		myConnectionChoice.setNetworkSession(session);
 		myInterface.setEnabled(mySession!=null);
 	}
 
+	/**
+	 * @param listener hears binary joint state frames from this and every later session.
+	 */
+	public void setJointStateListener(JointStateDecoder.Listener listener) {
+		jointStateListener = listener;
+		if(mySession!=null) mySession.setJointStateListener(listener);
+	}
+
+	/**
+	 * @return the metrics of the current session, or null if there is none.  Presentation layers report what they
+	 * know of the protocol here.
+	 */
+	public SessionMetrics getSessionMetrics() {
+		SessionLayer session = mySession;
+		return session==null ? null : session.getSessionMetrics();
+	}
+
 	public void sendCommand(String str) {
 		myInterface.sendCommand(str);
 	}
 	
+	/**
+	 * Send one byte straight to the session, with no newline and no history.  For the real-time commands of
+	 * firmware like GRBL.
+	 * @param command the byte to send.
+	 */
+	public void sendRealtime(char command) {
+		if(mySession==null) return;
+		try {
+			mySession.sendMessage(String.valueOf(command));
+		} catch (Exception e) {
+			logger.error("real-time command failed: "+e.getMessage());
+		}
+	}
+
 	public String getCommand() {
 		return myInterface.getCommand();
 	}
@@ -87,6 +141,8 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 	public void networkSessionEvent(SessionLayerEvent evt) {
 		if(evt.flag == SessionLayerEvent.DATA_AVAILABLE) {
 			myInterface.addToHistory(mySession.getName(),((String)evt.data).trim());
+		} else if(evt.flag == SessionLayerEvent.DATA_DROPPED) {
+			myInterface.addToHistory(mySession.getName(),"... "+evt.data+" lines not shown ...");
 		}
 	}
 
@@ -119,6 +175,13 @@ public class TextInterfaceToSessionLayer extends JPanel implements SessionLayerL
 		mySession.addListener(a);
 	}
 	
+	/**
+	 * @param a will hear every event in order on a background thread, away from the Event Dispatch Thread.
+	 */
+	public void addBackgroundNetworkSessionListener(SessionLayerListener a) {
+		mySession.addBackgroundListener(a);
+	}
+
 	public void removeNetworkSessionListener(SessionLayerListener a) {
 		mySession.removeListener(a);
 	}
@@ -0,0 +1,135 @@
+package com.marginallyclever.communications.fleet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>One command sent to every device of a {@link FleetManager}, and how closely together it went out and was
+ * answered.</p>
+ * <p>Send skew is the time between handing the command to the first and the last session.  Answer skew is the time
+ * between the first and the last <code>ok</code>, which adds the link and the controllers, and is the better guess at
+ * how far apart the machines really started.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FleetBroadcast {
+	private final String command;
+	private final List<FleetDevice> devices;
+	private final long [] sentNanos;
+	private final long [] ackNanos;
+	private final String [] failures;
+	private final CountDownLatch sentLatch = new CountDownLatch(1);
+	private final CountDownLatch ackLatch;
+
+	FleetBroadcast(String command,List<FleetDevice> devices) {
+		this.command = command;
+		this.devices = devices;
+		sentNanos = new long[devices.size()];
+		ackNanos = new long[devices.size()];
+		failures = new String[devices.size()];
+		ackLatch = new CountDownLatch(devices.size());
+	}
+
+	// on the fleet thread.
+	void send() {
+		for(int i=0;i<devices.size();++i) {
+			final int index = i;
+			try {
+				sentNanos[i] = devices.get(i).send(command,(nanos)->onAck(index,nanos));
+			} catch(Exception e) {
+				failures[i] = e.getMessage()==null ? e.toString() : e.getMessage();
+				ackLatch.countDown();
+			}
+		}
+		sentLatch.countDown();
+	}
+
+	private void onAck(int index,long nanos) {
+		synchronized(ackNanos) {
+			ackNanos[index] = nanos;
+		}
+		ackLatch.countDown();
+	}
+
+	/**
+	 * Wait for every device to answer.
+	 * @return true if they all answered, or failed to send, in time.
+	 */
+	public boolean await(long millis) throws InterruptedException {
+		return ackLatch.await(millis,TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Wait for the command to be handed to every session.
+	 */
+	public void awaitSent() throws InterruptedException {
+		sentLatch.await();
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public List<FleetDevice> getDevices() {
+		return devices;
+	}
+
+	/**
+	 * @return the ms between handing the command to the first and the last device.
+	 */
+	public double getSendSkewMillis() {
+		try {
+			awaitSent();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return spread(sentNanos);
+	}
+
+	/**
+	 * @return the ms between the first and the last answer, among the devices that have answered.
+	 */
+	public double getAckSkewMillis() {
+		synchronized(ackNanos) {
+			return spread(ackNanos);
+		}
+	}
+
+	/**
+	 * @return the ms from handing the command to device i to its answer, or -1 if it has not answered.
+	 */
+	public double getRoundTripMillis(int i) {
+		synchronized(ackNanos) {
+			return ackNanos[i]==0 ? -1 : (ackNanos[i]-sentNanos[i])*1e-6;
+		}
+	}
+
+	/**
+	 * @return why the command could not be sent to device i, or null if it was sent.
+	 */
+	public String getFailure(int i) {
+		return failures[i];
+	}
+
+	/**
+	 * @return the number of devices that have answered.
+	 */
+	public int getAnswered() {
+		synchronized(ackNanos) {
+			return (int)Arrays.stream(ackNanos).filter((t)->t!=0).count();
+		}
+	}
+
+	private static double spread(long [] times) {
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for(long t : times) {
+			if(t==0) continue;
+			min = Math.min(min,t);
+			max = Math.max(max,t);
+		}
+		return min>max ? 0 : (max-min)*1e-6;
+	}
+}
@@ -0,0 +1,171 @@
+package com.marginallyclever.communications.fleet;
+
+import com.marginallyclever.communications.session.LatencyHistogram;
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.session.SessionLayerListener;
+import com.marginallyclever.communications.session.SessionMetrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>One controller in a {@link FleetManager}.  Listens to its {@link SessionLayer} on the shared background pool,
+ * counts the oks that answer each command sent through the fleet, and keeps a {@link Health} that the manager
+ * updates a few times a second.</p>
+ * <p>Every command sent through the fleet is expected to be answered by one line that starts with <code>ok</code>
+ * or <code>error</code>, in order, as Marlin and GRBL do.  An answer that arrives while no fleet command is waiting
+ * belongs to whoever else is sending on the session, such as a presentation layer, and is left for it to count.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FleetDevice {
+	/**
+	 * How a device is doing, worst last.
+	 */
+	public enum Health {
+		// nothing waiting for an answer.
+		IDLE,
+		// commands waiting, and answers are coming.
+		BUSY,
+		// answers are slow, or the controller asked for resends or reported errors since the last check.
+		SLOW,
+		// commands waiting, and nothing heard for too long.
+		SILENT,
+		// the connection is closed.
+		CLOSED
+	}
+
+	/**
+	 * Waits for the answer to one command.
+	 */
+	interface AckWaiter {
+		void onAck(long nanos);
+	}
+
+	private static class Waiting {
+		final long ackNumber;
+		final AckWaiter waiter;
+
+		Waiting(long ackNumber,AckWaiter waiter) {
+			this.ackNumber = ackNumber;
+			this.waiter = waiter;
+		}
+	}
+
+	private final SessionLayer session;
+	private final SessionLayerListener listener = this::onSessionEvent;
+	// commands sent through the fleet, and answers heard.
+	private volatile long sent;
+	private volatile long acks;
+	private final Queue<Waiting> waiting = new ConcurrentLinkedQueue<>();
+	private volatile long lastHeardNanos = System.nanoTime();
+	private volatile Health health = Health.IDLE;
+	// resends, errors and round trips at the last check, to judge only what happened since.
+	private long lastProblems;
+	private long lastAckCount;
+	private double lastAckMillis;
+
+	FleetDevice(SessionLayer session) {
+		this.session = session;
+	}
+
+	void attach() {
+		session.addBackgroundListener(listener);
+	}
+
+	void detach() {
+		session.removeListener(listener);
+	}
+
+	// on the shared background pool.
+	private void onSessionEvent(SessionLayerEvent evt) {
+		if(evt.flag!=SessionLayerEvent.DATA_AVAILABLE) return;
+		long now = System.nanoTime();
+		lastHeardNanos = now;
+		String message = (String)evt.data;
+		if(!message.startsWith("ok") && !message.startsWith("error")) return;
+		// not an answer to the fleet.
+		if(acks>=sent) return;
+		session.getSessionMetrics().commandAcknowledged();
+		long n = ++acks;
+		Waiting w;
+		while((w = waiting.peek())!=null && w.ackNumber<=n) {
+			waiting.remove();
+			w.waiter.onAck(now);
+		}
+	}
+
+	/**
+	 * Send a command and expect one answer.  Call from one thread at a time.
+	 * @param command the line, with or without a newline.
+	 * @param waiter hears when the answer arrives, or null.
+	 * @return the time the command was handed to the session, from {@link System#nanoTime()}.
+	 */
+	long send(String command,AckWaiter waiter) throws Exception {
+		if(!command.endsWith("\n")) command += "\n";
+		sent++;
+		if(waiter!=null) waiting.add(new Waiting(sent,waiter));
+		SessionMetrics metrics = session.getSessionMetrics();
+		metrics.commandSent();
+		long t = System.nanoTime();
+		session.sendMessage(command);
+		metrics.addLineOut();
+		return t;
+	}
+
+	/**
+	 * Work out the health again.  Called by the manager a few times a second.
+	 * @return true if it changed.
+	 */
+	boolean updateHealth(long now,long silentNanos,double slowMillis) {
+		Health h;
+		SessionMetrics metrics = session.getSessionMetrics();
+		long problems = metrics.getResends()+metrics.getErrors();
+		boolean newProblems = problems!=lastProblems;
+		lastProblems = problems;
+		// the mean round trip since the last check.
+		LatencyHistogram latency = metrics.getLatency();
+		long count = latency.getCount();
+		double total = latency.getMeanMillis()*count;
+		boolean slow = count>lastAckCount && (total-lastAckMillis)/(count-lastAckCount)>slowMillis;
+		lastAckCount = count;
+		lastAckMillis = total;
+		boolean waitingForAnswer = metrics.getCommandsWaiting()>0;
+		if(!session.isOpen()) h = Health.CLOSED;
+		else if(waitingForAnswer && now-lastHeardNanos>silentNanos) h = Health.SILENT;
+		else if(newProblems || slow) h = Health.SLOW;
+		else if(waitingForAnswer) h = Health.BUSY;
+		else h = Health.IDLE;
+		boolean changed = h!=health;
+		health = h;
+		return changed;
+	}
+
+	public SessionLayer getSession() {
+		return session;
+	}
+
+	public String getName() {
+		return session.getName();
+	}
+
+	public Health getHealth() {
+		return health;
+	}
+
+	/**
+	 * @return seconds since anything was heard.
+	 */
+	public double getSecondsSinceHeard() {
+		return (System.nanoTime()-lastHeardNanos)*1e-9;
+	}
+
+	/**
+	 * @return the number of answers heard to commands sent through the fleet.
+	 */
+	public long getAcks() {
+		return acks;
+	}
+}
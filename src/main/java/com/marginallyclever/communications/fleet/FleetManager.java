@@ -0,0 +1,177 @@
+package com.marginallyclever.communications.fleet;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Many controllers at once, such as every arm in a work cell.  Sends one command to all of them as close together
+ * as it can, measures how far apart they went out and were answered, and keeps the {@link FleetDevice.Health} of each
+ * up to date.</p>
+ * <p>The manager adds no thread per device.  Sockets are read by the shared
+ * {@link com.marginallyclever.communications.transport.SessionEventLoop}, events reach the manager on the shared
+ * pool of the {@link com.marginallyclever.communications.session.SessionEventDispatcher}, and the manager itself runs
+ * broadcasts and health checks on one thread of its own.  A quiet device costs nothing but one health check, and
+ * the cost of a busy one is the lines it sends.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FleetManager {
+	private static final Logger logger = LoggerFactory.getLogger(FleetManager.class);
+	public static final int DEFAULT_HEALTH_MILLIS = 250;
+	public static final int DEFAULT_SILENT_MILLIS = 2000;
+	public static final double DEFAULT_SLOW_MILLIS = 250;
+
+	/**
+	 * Hears when devices come, go, or change health.  Called on the fleet thread.
+	 */
+	public interface Listener {
+		void onFleetChanged(FleetManager fleet);
+	}
+
+	private final List<FleetDevice> devices = new CopyOnWriteArrayList<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r)->{
+		Thread t = new Thread(r,"FleetManager");
+		t.setDaemon(true);
+		return t;
+	});
+	private final ScheduledFuture<?> healthCheck;
+	private volatile long silentNanos = DEFAULT_SILENT_MILLIS*1_000_000L;
+	private volatile double slowMillis = DEFAULT_SLOW_MILLIS;
+
+	public FleetManager() {
+		this(DEFAULT_HEALTH_MILLIS);
+	}
+
+	/**
+	 * @param healthMillis how often to check the health of every device.
+	 */
+	public FleetManager(int healthMillis) {
+		healthCheck = executor.scheduleWithFixedDelay(this::checkHealth,healthMillis,healthMillis,TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Add an open session to the fleet.
+	 * @return the device.
+	 */
+	public FleetDevice add(SessionLayer session) {
+		FleetDevice device = new FleetDevice(session);
+		device.attach();
+		devices.add(device);
+		logger.info("added "+session.getName()+", "+devices.size()+" in fleet.");
+		executor.execute(this::notifyListeners);
+		return device;
+	}
+
+	/**
+	 * Remove a device from the fleet.  The connection is left open.
+	 */
+	public void remove(FleetDevice device) {
+		if(!devices.remove(device)) return;
+		device.detach();
+		executor.execute(this::notifyListeners);
+	}
+
+	/**
+	 * Close every connection and stop the fleet thread.
+	 */
+	public void closeAll() {
+		healthCheck.cancel(false);
+		for(FleetDevice d : devices) {
+			d.detach();
+			d.getSession().closeConnection();
+		}
+		devices.clear();
+		executor.shutdown();
+	}
+
+	/**
+	 * @return a copy of the devices, in the order they were added.
+	 */
+	public List<FleetDevice> getDevices() {
+		return new ArrayList<>(devices);
+	}
+
+	/**
+	 * Send one command to every open device, one after another on the fleet thread with nothing in between.
+	 * @param command the line to send.
+	 * @return how it went.  Returns at once; use {@link FleetBroadcast#await(long)} to wait for the answers.
+	 */
+	public FleetBroadcast broadcast(String command) {
+		List<FleetDevice> open = new ArrayList<>();
+		for(FleetDevice d : devices) {
+			if(d.getSession().isOpen()) open.add(d);
+		}
+		FleetBroadcast b = new FleetBroadcast(command,open);
+		executor.execute(b::send);
+		return b;
+	}
+
+	/**
+	 * Send a command to one device, in order with any broadcast.
+	 */
+	public void send(FleetDevice device,String command) {
+		executor.execute(()->{
+			try {
+				device.send(command,null);
+			} catch(Exception e) {
+				logger.warn(device.getName()+": "+e.getMessage());
+			}
+		});
+	}
+
+	// on the fleet thread.
+	private void checkHealth() {
+		long now = System.nanoTime();
+		boolean changed = false;
+		for(FleetDevice d : devices) {
+			changed |= d.updateHealth(now,silentNanos,slowMillis);
+		}
+		if(changed) notifyListeners();
+	}
+
+	/**
+	 * @return how many devices are in each {@link FleetDevice.Health}, indexed by ordinal.
+	 */
+	public int [] getHealthCounts() {
+		int [] counts = new int[FleetDevice.Health.values().length];
+		for(FleetDevice d : devices) counts[d.getHealth().ordinal()]++;
+		return counts;
+	}
+
+	/**
+	 * @param ms a device with commands waiting and nothing heard for this long is {@link FleetDevice.Health#SILENT}.
+	 */
+	public void setSilentMillis(int ms) {
+		silentNanos = ms*1_000_000L;
+	}
+
+	/**
+	 * @param ms a device whose mean round trip since the last check is longer is {@link FleetDevice.Health#SLOW}.
+	 */
+	public void setSlowMillis(double ms) {
+		slowMillis = ms;
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	private void notifyListeners() {
+		for(Listener listener : listeners) listener.onFleetChanged(this);
+	}
+}
@@ -0,0 +1,220 @@
+package com.marginallyclever.communications.fleet;
+
+import com.marginallyclever.communications.session.LatencyHistogram;
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerManager;
+import com.marginallyclever.communications.session.SessionMetrics;
+import com.marginallyclever.convenience.log.Log;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A table of every device in a {@link FleetManager}, one row each, with a box to send a command to all of them.
+ * The health column is colored so trouble stands out at a glance.</p>
+ * <p>The whole table is redrawn twice a second by one timer, however many devices there are and however busy they
+ * are.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FleetPanel extends JPanel {
+	@Serial
+	private static final long serialVersionUID = 1L;
+	private static final int REFRESH_MS = 500;
+	private static final int BROADCAST_TIMEOUT_MS = 10000;
+
+	private final FleetManager fleet;
+	private final FleetTableModel model = new FleetTableModel();
+	private final JTable table = new JTable(model);
+	private final JTextField commandField = new JTextField(20);
+	private final JLabel summary = new JLabel();
+	private final JLabel lastBroadcast = new JLabel(" ");
+	private final Timer timer = new Timer(REFRESH_MS,(e)->refresh());
+	private final FleetManager.Listener fleetListener = (f)->SwingUtilities.invokeLater(this::reload);
+
+	public FleetPanel(FleetManager fleet) {
+		super(new BorderLayout());
+		this.fleet = fleet;
+
+		JButton bAdd = new JButton("Add...");
+		bAdd.addActionListener((e)->{
+			SessionLayer s = SessionLayerManager.requestNewSession(this);
+			if(s!=null) fleet.add(s);
+		});
+		JButton bRemove = new JButton("Remove");
+		bRemove.addActionListener((e)->removeSelected());
+		JButton bSend = new JButton("Send to all");
+		bSend.addActionListener((e)->sendToAll());
+		commandField.addActionListener((e)->sendToAll());
+
+		JToolBar bar = new JToolBar();
+		bar.setFloatable(false);
+		bar.add(bAdd);
+		bar.add(bRemove);
+		bar.addSeparator();
+		bar.add(commandField);
+		bar.add(bSend);
+
+		JPanel status = new JPanel(new GridLayout(0,1));
+		status.add(summary);
+		status.add(lastBroadcast);
+
+		table.setDefaultRenderer(FleetDevice.Health.class,new HealthRenderer());
+		table.setFillsViewportHeight(true);
+
+		add(bar,BorderLayout.NORTH);
+		add(new JScrollPane(table),BorderLayout.CENTER);
+		add(status,BorderLayout.SOUTH);
+		reload();
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		fleet.addListener(fleetListener);
+		timer.start();
+		reload();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		fleet.removeListener(fleetListener);
+		super.removeNotify();
+	}
+
+	private void removeSelected() {
+		int [] rows = table.getSelectedRows();
+		List<FleetDevice> chosen = new ArrayList<>();
+		for(int r : rows) chosen.add(model.devices.get(table.convertRowIndexToModel(r)));
+		for(FleetDevice d : chosen) {
+			fleet.remove(d);
+			d.getSession().closeConnection();
+		}
+	}
+
+	private void sendToAll() {
+		String command = commandField.getText().trim();
+		if(command.isEmpty()) return;
+		FleetBroadcast b = fleet.broadcast(command);
+		lastBroadcast.setText("'"+command+"' sent to "+b.getDevices().size()+"...");
+		// wait for the answers away from the Event Dispatch Thread.
+		new SwingWorker<Boolean,Void>() {
+			@Override
+			protected Boolean doInBackground() throws Exception {
+				return b.await(BROADCAST_TIMEOUT_MS);
+			}
+
+			@Override
+			protected void done() {
+				lastBroadcast.setText(String.format("'%s': %d/%d answered, send skew %.2f ms, answer skew %.2f ms",
+						command,b.getAnswered(),b.getDevices().size(),b.getSendSkewMillis(),b.getAckSkewMillis()));
+			}
+		}.execute();
+	}
+
+	// whole list changed.
+	private void reload() {
+		model.devices = fleet.getDevices();
+		model.fireTableDataChanged();
+		refresh();
+	}
+
+	// same devices, new numbers.
+	private void refresh() {
+		if(model.getRowCount()>0) model.fireTableRowsUpdated(0,model.getRowCount()-1);
+		int [] counts = fleet.getHealthCounts();
+		StringBuilder sb = new StringBuilder(model.getRowCount()+" devices:");
+		for(FleetDevice.Health h : FleetDevice.Health.values()) {
+			if(counts[h.ordinal()]>0) sb.append(" ").append(counts[h.ordinal()]).append(" ").append(h.name().toLowerCase());
+		}
+		summary.setText(sb.toString());
+	}
+
+	private static class FleetTableModel extends AbstractTableModel {
+		private static final String [] COLUMNS = {"Device","Health","Last heard (s)","Lines in","Lines out",
+				"B/s in","ok p50 (ms)","ok p99 (ms)","Waiting","Resends","Errors"};
+		private List<FleetDevice> devices = new ArrayList<>();
+
+		@Override
+		public int getRowCount() {
+			return devices.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return switch(column) {
+				case 0 -> String.class;
+				case 1 -> FleetDevice.Health.class;
+				case 2, 5, 6, 7 -> Double.class;
+				default -> Long.class;
+			};
+		}
+
+		@Override
+		public Object getValueAt(int row,int column) {
+			FleetDevice d = devices.get(row);
+			SessionLayer s = d.getSession();
+			SessionMetrics m = s.getSessionMetrics();
+			LatencyHistogram h = m.getLatency();
+			return switch(column) {
+				case 0 -> d.getName();
+				case 1 -> d.getHealth();
+				case 2 -> Math.round(d.getSecondsSinceHeard()*10)/10.0;
+				case 3 -> m.getLinesIn();
+				case 4 -> m.getLinesOut();
+				case 5 -> (double)Math.round(s.getTransportMetrics().getBytesInPerSecond());
+				case 6 -> Math.round(h.getPercentileMillis(0.5)*10)/10.0;
+				case 7 -> Math.round(h.getPercentileMillis(0.99)*10)/10.0;
+				case 8 -> (long)m.getCommandsWaiting();
+				case 9 -> m.getResends();
+				default -> m.getErrors();
+			};
+		}
+	}
+
+	private static class HealthRenderer extends DefaultTableCellRenderer {
+		// in the order of FleetDevice.Health: idle, busy, slow, silent, closed.
+		private static final Color [] COLORS = {
+				new Color(0xC8E6C9), new Color(0xBBDEFB), new Color(0xFFF59D), new Color(0xFFAB91), new Color(0xE0E0E0)
+		};
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table,Object value,boolean isSelected,boolean hasFocus,int row,int column) {
+			super.getTableCellRendererComponent(table,value,isSelected,hasFocus,row,column);
+			if(!isSelected) setBackground(COLORS[((FleetDevice.Health)value).ordinal()]);
+			return this;
+		}
+	}
+
+	// TEST
+
+	public static void main(String[] args) {
+		Log.start();
+		try {
+			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+		} catch(Exception ignored) {}
+		JFrame frame = new JFrame(FleetPanel.class.getName());
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setPreferredSize(new Dimension(900,400));
+		frame.add(new FleetPanel(new FleetManager()));
+		frame.pack();
+		frame.setVisible(true);
+	}
+}
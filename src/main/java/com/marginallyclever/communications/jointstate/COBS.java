@@ -0,0 +1,77 @@
+package com.marginallyclever.communications.jointstate;
+
+/**
+ * <p><a href="https://en.wikipedia.org/wiki/Consistent_Overhead_Byte_Stuffing">Consistent Overhead Byte Stuffing</a>.
+ * Encoding removes every zero byte at a cost of at most one byte in 254, so a zero can mark the edge of a frame.</p>
+ * <p>Both methods write into an array given by the caller and make no memory.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public final class COBS {
+	private COBS() {}
+
+	/**
+	 * @return the most bytes {@link #encode} can write for <code>length</code> bytes of input.
+	 */
+	public static int maxEncodedLength(int length) {
+		return length+length/254+1;
+	}
+
+	/**
+	 * @param src the bytes to encode.
+	 * @param offset the first byte.
+	 * @param length the number of bytes.
+	 * @param dst where to write.  Must have room for {@link #maxEncodedLength(int)} bytes from dstOffset.
+	 * @param dstOffset the first byte to write.
+	 * @return the number of bytes written.  None of them are zero.
+	 */
+	public static int encode(byte [] src,int offset,int length,byte [] dst,int dstOffset) {
+		int codeIndex = dstOffset;
+		int out = dstOffset+1;
+		int code = 1;
+		int end = offset+length;
+		for(int i=offset;i<end;++i) {
+			byte b = src[i];
+			if(b!=0) {
+				dst[out++] = b;
+				code++;
+			}
+			if(b==0 || code==0xFF) {
+				dst[codeIndex] = (byte)code;
+				code = 1;
+				codeIndex = out++;
+				// a full block at the very end needs no extra code byte.
+				if(b!=0 && i==end-1) {
+					return codeIndex-dstOffset;
+				}
+			}
+		}
+		dst[codeIndex] = (byte)code;
+		return out-dstOffset;
+	}
+
+	/**
+	 * Decode in place or into another array.  <code>dst</code> may be <code>src</code> with the same offset, because
+	 * the output is never longer than the input and never ahead of it.
+	 * @return the number of bytes written, or -1 if the input is not valid COBS.
+	 */
+	public static int decode(byte [] src,int offset,int length,byte [] dst,int dstOffset) {
+		int end = offset+length;
+		int in = offset;
+		int out = dstOffset;
+		while(in<end) {
+			int code = src[in++] & 0xFF;
+			if(code==0) return -1;
+			int blockEnd = in+code-1;
+			if(blockEnd>end) return -1;
+			while(in<blockEnd) {
+				byte b = src[in++];
+				if(b==0) return -1;
+				dst[out++] = b;
+			}
+			if(code!=0xFF && in<end) dst[out++] = 0;
+		}
+		return out-dstOffset;
+	}
+}
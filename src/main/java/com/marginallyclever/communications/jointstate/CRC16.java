@@ -0,0 +1,33 @@
+package com.marginallyclever.communications.jointstate;
+
+/**
+ * CRC-16/CCITT-FALSE (polynomial 0x1021, start 0xFFFF), the check most small controllers have a routine for.
+ * Table driven, one lookup per byte.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public final class CRC16 {
+	private static final int [] TABLE = new int[256];
+
+	static {
+		for(int i=0;i<256;++i) {
+			int crc = i<<8;
+			for(int j=0;j<8;++j) {
+				crc = (crc & 0x8000)!=0 ? (crc<<1)^0x1021 : crc<<1;
+			}
+			TABLE[i] = crc & 0xFFFF;
+		}
+	}
+
+	private CRC16() {}
+
+	public static int compute(byte [] data,int offset,int length) {
+		int crc = 0xFFFF;
+		int end = offset+length;
+		for(int i=offset;i<end;++i) {
+			crc = ((crc<<8) ^ TABLE[((crc>>8) ^ data[i]) & 0xFF]) & 0xFFFF;
+		}
+		return crc;
+	}
+}
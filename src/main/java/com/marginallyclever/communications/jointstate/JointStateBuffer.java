@@ -0,0 +1,80 @@
+package com.marginallyclever.communications.jointstate;
+
+/**
+ * <p>Holds the newest joint positions from a {@link JointStateDecoder} until the UI is ready for them.  The reader
+ * thread writes each frame into a ring of fixed size and the UI drains it a few times a second, so the Event
+ * Dispatch Thread never sees one event per frame.  If the UI does not drain in time the oldest samples are
+ * overwritten and counted.</p>
+ * <p>The 32 bit microsecond clock of the controller is unwrapped into seconds that count up forever.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointStateBuffer implements JointStateDecoder.Listener {
+	/**
+	 * Hears each sample, oldest first.
+	 */
+	public interface SampleListener {
+		/**
+		 * @param time seconds on the controller clock.
+		 * @param position the position of each joint.  Only good until this returns.
+		 * @param count the number of joints.
+		 */
+		void onSample(double time,float [] position,int count);
+	}
+
+	private final double [] times;
+	private final float [][] positions;
+	private final int [] counts;
+	private long head, tail, overwritten;
+	private long lastMicros = -1;
+	private long wraps;
+
+	/**
+	 * @param capacity the most samples held between drains.
+	 */
+	public JointStateBuffer(int capacity) {
+		capacity = Math.max(1,capacity);
+		times = new double[capacity];
+		positions = new float[capacity][JointStateFrame.MAX_JOINTS];
+		counts = new int[capacity];
+	}
+
+	@Override
+	public synchronized void onJointState(JointStateFrame frame) {
+		long micros = frame.timestampMicros;
+		if(lastMicros>=0 && micros<lastMicros) wraps++;
+		lastMicros = micros;
+
+		int slot = (int)(tail%times.length);
+		times[slot] = ((wraps<<32)+micros)*1e-6;
+		System.arraycopy(frame.position,0,positions[slot],0,frame.jointCount);
+		counts[slot] = frame.jointCount;
+		tail++;
+		if(tail-head>times.length) {
+			head++;
+			overwritten++;
+		}
+	}
+
+	/**
+	 * Send every sample held to the listener and forget them.
+	 * @return the number of samples sent.
+	 */
+	public synchronized int drain(SampleListener listener) {
+		int n = (int)(tail-head);
+		while(head<tail) {
+			int slot = (int)(head%times.length);
+			listener.onSample(times[slot],positions[slot],counts[slot]);
+			head++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of samples lost because nobody drained them in time.
+	 */
+	public synchronized long getOverwritten() {
+		return overwritten;
+	}
+}
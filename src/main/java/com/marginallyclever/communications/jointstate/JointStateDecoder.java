@@ -0,0 +1,143 @@
+package com.marginallyclever.communications.jointstate;
+
+import java.util.Arrays;
+
+/**
+ * <p>Turns the bytes of binary frames back into {@link JointStateFrame}s.  The caller finds the zero byte that opens
+ * a frame, calls {@link #startFrame()}, then passes bytes to {@link #accept} until it says the frame is over.  That
+ * way text and frames can share one link.</p>
+ * <p>Every array is made once, when the decoder is made.  Each frame is decoded in place and read into the same
+ * {@link JointStateFrame}, so thousands of frames a second make no garbage.</p>
+ * <p>A frame that is too long, is not valid COBS, fails its CRC or is not understood is counted and skipped.  A
+ * frame that is too long also ends binary mode at once, so a stray zero byte costs at most one frame of text.</p>
+ * <p>Use from one thread at a time.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointStateDecoder {
+	/**
+	 * Hears each good frame.
+	 */
+	public interface Listener {
+		/**
+		 * @param frame only good until this returns.  Copy what you need.
+		 */
+		void onJointState(JointStateFrame frame);
+	}
+
+	private final byte [] raw = new byte[COBS.maxEncodedLength(JointStateFrame.MAX_MESSAGE_SIZE)];
+	private int rawLength;
+	private boolean inFrame;
+	private final JointStateFrame frame = new JointStateFrame();
+	// the last sequence number of each device, or -1.
+	private final int [] lastSequence = new int[256];
+
+	private long frames, crcErrors, badFrames, lostFrames;
+
+	public JointStateDecoder() {
+		Arrays.fill(lastSequence,-1);
+	}
+
+	/**
+	 * The zero byte that opens a frame has been read.
+	 */
+	public void startFrame() {
+		inFrame = true;
+		rawLength = 0;
+	}
+
+	/**
+	 * @return true between {@link #startFrame()} and the end of the frame.
+	 */
+	public boolean isInFrame() {
+		return inFrame;
+	}
+
+	/**
+	 * Read the bytes of the current frame, up to and including the zero byte that closes it.
+	 * @return the number of bytes used.  Less than length if the frame ended.
+	 */
+	public int accept(byte [] data,int offset,int length,Listener listener) {
+		int end = offset+length;
+		int i = offset;
+		while(i<end) {
+			byte b = data[i++];
+			if(b==0) {
+				inFrame = false;
+				finishFrame(listener);
+				return i-offset;
+			}
+			if(rawLength==raw.length) {
+				// too long to be a frame.  give the rest back.
+				inFrame = false;
+				badFrames++;
+				return i-1-offset;
+			}
+			raw[rawLength++] = b;
+		}
+		return length;
+	}
+
+	private void finishFrame(Listener listener) {
+		// two zeros in a row are an empty frame, and mean nothing.
+		if(rawLength==0) return;
+		int n = COBS.decode(raw,0,rawLength,raw,0);
+		if(n<JointStateFrame.HEADER_SIZE+JointStateFrame.CRC_SIZE) {
+			badFrames++;
+			return;
+		}
+		int crc = JointStateFrame.getShort(raw,n-JointStateFrame.CRC_SIZE);
+		if(crc!=CRC16.compute(raw,0,n-JointStateFrame.CRC_SIZE)) {
+			crcErrors++;
+			return;
+		}
+		if(!frame.read(raw,0,n)) {
+			badFrames++;
+			return;
+		}
+		int last = lastSequence[frame.deviceId];
+		if(last>=0) {
+			int gap = (frame.sequence-last-1) & 0xFFFF;
+			// a huge gap is more likely a restart than half a minute of lost frames.
+			if(gap<0x8000) lostFrames += gap;
+		}
+		lastSequence[frame.deviceId] = frame.sequence;
+		frames++;
+		listener.onJointState(frame);
+	}
+
+	/**
+	 * Forget the current frame and the sequence numbers.  Call when a connection opens.
+	 */
+	public void clear() {
+		inFrame = false;
+		rawLength = 0;
+		Arrays.fill(lastSequence,-1);
+	}
+
+	/**
+	 * @return the number of good frames.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getCrcErrors() {
+		return crcErrors;
+	}
+
+	/**
+	 * @return the number of frames that were too long, not valid COBS, or not understood.
+	 */
+	public long getBadFrames() {
+		return badFrames;
+	}
+
+	/**
+	 * @return the number of frames missing from the sequence numbers.
+	 */
+	public long getLostFrames() {
+		return lostFrames;
+	}
+}
@@ -0,0 +1,29 @@
+package com.marginallyclever.communications.jointstate;
+
+/**
+ * Writes {@link JointStateFrame}s in the binary format, with the zero byte before and after.  For simulated
+ * controllers and tests; a real controller does the same in its firmware.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointStateEncoder {
+	/**
+	 * The most bytes one frame can take on the wire.
+	 */
+	public static final int MAX_FRAME_SIZE = COBS.maxEncodedLength(JointStateFrame.MAX_MESSAGE_SIZE)+2;
+
+	private final byte [] message = new byte[JointStateFrame.MAX_MESSAGE_SIZE];
+
+	/**
+	 * @param out where to write.  Must have room for {@link #MAX_FRAME_SIZE} bytes from offset.
+	 * @return the number of bytes written.
+	 */
+	public int encode(JointStateFrame frame,byte [] out,int offset) {
+		int length = frame.write(message,0);
+		out[offset] = 0;
+		int n = COBS.encode(message,0,length,out,offset+1);
+		out[offset+1+n] = 0;
+		return n+2;
+	}
+}
@@ -0,0 +1,110 @@
+package com.marginallyclever.communications.jointstate;
+
+/**
+ * <p>The state of every joint of one arm at one moment, as sent by the controller in binary mode.  A decoder fills
+ * the same frame again for every message, so a listener must copy what it wants to keep.</p>
+ * <p>On the wire a frame is a zero byte, the COBS encoding of the message below, and another zero byte.  Text
+ * never contains a zero byte, so frames and text lines can share one link.  All numbers are little-endian.</p>
+ * <pre>
+ * offset  size  field
+ * 0       1     version, {@value #VERSION}
+ * 1       1     type, {@value #TYPE_JOINT_STATE}
+ * 2       1     device id
+ * 3       1     joint count n, at most {@value #MAX_JOINTS}
+ * 4       2     sequence number, counts up and wraps
+ * 6       4     timestamp in microseconds on the controller clock, wraps
+ * 10      4n    position of each joint, float, degrees
+ * 10+4n   4n    velocity of each joint, float, degrees/s
+ * 10+8n   4n    current of each motor, float, amps
+ * 10+12n  2     CRC-16/CCITT-FALSE of every byte before it
+ * </pre>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointStateFrame {
+	public static final int VERSION = 1;
+	public static final int TYPE_JOINT_STATE = 1;
+	public static final int MAX_JOINTS = 16;
+	static final int HEADER_SIZE = 10;
+	static final int CRC_SIZE = 2;
+	public static final int MAX_MESSAGE_SIZE = HEADER_SIZE+12*MAX_JOINTS+CRC_SIZE;
+
+	public int deviceId;
+	public int jointCount;
+	public int sequence;
+	public long timestampMicros;
+	public final float [] position = new float[MAX_JOINTS];
+	public final float [] velocity = new float[MAX_JOINTS];
+	public final float [] current = new float[MAX_JOINTS];
+
+	/**
+	 * @return the size of the message for n joints, before COBS.
+	 */
+	public static int messageSize(int n) {
+		return HEADER_SIZE+12*n+CRC_SIZE;
+	}
+
+	/**
+	 * Write this frame as a message, with its CRC.
+	 * @return the number of bytes written.
+	 */
+	public int write(byte [] out,int offset) {
+		int n = jointCount;
+		if(n<0 || n>MAX_JOINTS) throw new IllegalStateException("joint count "+n);
+		int i = offset;
+		out[i++] = (byte)VERSION;
+		out[i++] = (byte)TYPE_JOINT_STATE;
+		out[i++] = (byte)deviceId;
+		out[i++] = (byte)n;
+		i = putShort(out,i,sequence);
+		i = putInt(out,i,(int)timestampMicros);
+		for(int j=0;j<n;++j) i = putInt(out,i,Float.floatToRawIntBits(position[j]));
+		for(int j=0;j<n;++j) i = putInt(out,i,Float.floatToRawIntBits(velocity[j]));
+		for(int j=0;j<n;++j) i = putInt(out,i,Float.floatToRawIntBits(current[j]));
+		i = putShort(out,i,CRC16.compute(out,offset,i-offset));
+		return i-offset;
+	}
+
+	/**
+	 * Read a message into this frame.  The CRC must already be checked.
+	 * @return false if the message is not a joint state this code understands.
+	 */
+	boolean read(byte [] in,int offset,int length) {
+		if(length<HEADER_SIZE+CRC_SIZE) return false;
+		if(in[offset]!=VERSION || in[offset+1]!=TYPE_JOINT_STATE) return false;
+		int n = in[offset+3] & 0xFF;
+		if(n>MAX_JOINTS || length!=messageSize(n)) return false;
+		deviceId = in[offset+2] & 0xFF;
+		jointCount = n;
+		sequence = getShort(in,offset+4);
+		timestampMicros = getInt(in,offset+6) & 0xFFFFFFFFL;
+		int i = offset+HEADER_SIZE;
+		for(int j=0;j<n;++j,i+=4) position[j] = Float.intBitsToFloat(getInt(in,i));
+		for(int j=0;j<n;++j,i+=4) velocity[j] = Float.intBitsToFloat(getInt(in,i));
+		for(int j=0;j<n;++j,i+=4) current[j] = Float.intBitsToFloat(getInt(in,i));
+		return true;
+	}
+
+	static int putShort(byte [] b,int i,int v) {
+		b[i] = (byte)v;
+		b[i+1] = (byte)(v>>8);
+		return i+2;
+	}
+
+	static int putInt(byte [] b,int i,int v) {
+		b[i] = (byte)v;
+		b[i+1] = (byte)(v>>8);
+		b[i+2] = (byte)(v>>16);
+		b[i+3] = (byte)(v>>24);
+		return i+4;
+	}
+
+	static int getShort(byte [] b,int i) {
+		return (b[i] & 0xFF) | (b[i+1] & 0xFF)<<8;
+	}
+
+	static int getInt(byte [] b,int i) {
+		return (b[i] & 0xFF) | (b[i+1] & 0xFF)<<8 | (b[i+2] & 0xFF)<<16 | (b[i+3] & 0xFF)<<24;
+	}
+}
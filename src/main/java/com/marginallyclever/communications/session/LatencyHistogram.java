@@ -0,0 +1,82 @@
+package com.marginallyclever.communications.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long things took in buckets that double in width, from 1 microsecond to over an hour.  Recording is
+ * one increment and never makes memory, so it can be done for every line.  Percentiles are found to within one
+ * bucket, then guessed by assuming the times in that bucket are spread evenly.  Safe to use from any thread.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 32;
+
+	// bucket i counts times from 2^i to 2^(i+1) microseconds.  bucket 0 also counts less than 1us.
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if(nanos<0) return;
+		long micros = Math.max(1,nanos/1000);
+		int i = Math.min(BUCKETS-1,63-Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(i);
+		count.incrementAndGet();
+		sumNanos.addAndGet(nanos);
+		maxNanos.accumulateAndGet(nanos,Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean in milliseconds, or 0 if nothing was recorded.
+	 */
+	public double getMeanMillis() {
+		long n = count.get();
+		return n>0 ? sumNanos.get()*1e-6/n : 0;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get()*1e-6;
+	}
+
+	/**
+	 * @param p from 0 to 1.  0.5 is the median.
+	 * @return the time that fraction p of the records were at or below, in milliseconds.  0 if nothing was recorded.
+	 */
+	public double getPercentileMillis(double p) {
+		long [] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i=0;i<BUCKETS;++i) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if(total==0) return 0;
+		double rank = Math.max(0,Math.min(1,p))*total;
+		long seen = 0;
+		for(int i=0;i<BUCKETS;++i) {
+			if(snapshot[i]==0) continue;
+			if(seen+snapshot[i]>=rank) {
+				double low = i==0 ? 0 : (1L<<i);
+				double high = 1L<<(i+1);
+				double micros = low+(high-low)*(rank-seen)/snapshot[i];
+				return Math.min(micros*1e-3,getMaxMillis());
+			}
+			seen += snapshot[i];
+		}
+		return getMaxMillis();
+	}
+
+	public void clear() {
+		for(int i=0;i<BUCKETS;++i) buckets.set(i,0);
+		count.set(0);
+		sumNanos.set(0);
+		maxNanos.set(0);
+	}
+}
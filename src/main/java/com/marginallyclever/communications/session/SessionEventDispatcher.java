@@ -0,0 +1,183 @@
+package com.marginallyclever.communications.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Delivers the events of one {@link SessionLayer} to its listeners.</p>
+ * <p>UI listeners are called on the Event Dispatch Thread.  Events wait in a queue and are delivered in batches,
+ * at most one batch every {@link #setBatchMillis(int)} ms, so a chatty controller costs one runnable per frame
+ * instead of one per line.  If the UI falls behind and the queue is full, further lines are dropped and a single
+ * {@link SessionLayerEvent#DATA_DROPPED} event in their place says how many.  Other events are never dropped.</p>
+ * <p>Background listeners, such as presentation layers, get every event in order on a small shared pool of
+ * threads and never touch the Event Dispatch Thread.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionEventDispatcher {
+	private static final Logger logger = LoggerFactory.getLogger(SessionEventDispatcher.class);
+	// about one frame at 60Hz.
+	public static final int DEFAULT_BATCH_MILLIS = 16;
+	public static final int DEFAULT_UI_CAPACITY = 2000;
+	private static final ExecutorService backgroundPool = Executors.newFixedThreadPool(
+			Math.max(2,Runtime.getRuntime().availableProcessors()/2),(r)->{
+				Thread t = new Thread(r,"SessionLayer listener");
+				t.setDaemon(true);
+				return t;
+			});
+
+	private final List<SessionLayerListener> uiListeners = new CopyOnWriteArrayList<>();
+	private final List<SessionLayerListener> backgroundListeners = new CopyOnWriteArrayList<>();
+
+	// guarded by this.  Two queues are swapped on each flush so neither grows past its first use.
+	private ArrayDeque<SessionLayerEvent> uiQueue = new ArrayDeque<>();
+	private ArrayDeque<SessionLayerEvent> uiBatch = new ArrayDeque<>();
+	private int uiCapacity = DEFAULT_UI_CAPACITY;
+	private int uiQueuedData;
+	private SessionLayerEvent dropNotice;
+	private boolean flushScheduled;
+	private long droppedLines, batches;
+	private final Timer flushTimer = new Timer(DEFAULT_BATCH_MILLIS,(e)->flushUI());
+
+	private final Queue<SessionLayerEvent> backgroundQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean backgroundDraining = new AtomicBoolean();
+
+	public SessionEventDispatcher() {
+		flushTimer.setRepeats(false);
+	}
+
+	public void addUIListener(SessionLayerListener listener) {
+		uiListeners.add(listener);
+	}
+
+	public void addBackgroundListener(SessionLayerListener listener) {
+		backgroundListeners.add(listener);
+	}
+
+	public void removeListener(SessionLayerListener listener) {
+		uiListeners.remove(listener);
+		backgroundListeners.remove(listener);
+	}
+
+	/**
+	 * Queue an event for every listener.  Safe to call from any thread, and never blocks.
+	 */
+	public void dispatch(SessionLayerEvent evt) {
+		if(!backgroundListeners.isEmpty()) {
+			backgroundQueue.add(evt);
+			if(backgroundDraining.compareAndSet(false,true)) backgroundPool.execute(this::drainBackground);
+		}
+		if(!uiListeners.isEmpty()) queueUI(evt);
+	}
+
+	private synchronized void queueUI(SessionLayerEvent evt) {
+		if(evt.flag==SessionLayerEvent.DATA_AVAILABLE) {
+			if(uiQueuedData>=uiCapacity) {
+				droppedLines++;
+				if(dropNotice==null) {
+					dropNotice = new SessionLayerEvent(evt.getSource(),SessionLayerEvent.DATA_DROPPED,1);
+					uiQueue.add(dropNotice);
+				} else {
+					dropNotice.data = (Integer)dropNotice.data+1;
+				}
+				return;
+			}
+			uiQueuedData++;
+		}
+		uiQueue.add(evt);
+		if(!flushScheduled) {
+			flushScheduled = true;
+			if(flushTimer.getInitialDelay()<=0) SwingUtilities.invokeLater(this::flushUI);
+			else flushTimer.start();
+		}
+	}
+
+	// on the Event Dispatch Thread.
+	private void flushUI() {
+		ArrayDeque<SessionLayerEvent> batch;
+		synchronized(this) {
+			batch = uiQueue;
+			uiQueue = uiBatch;
+			uiBatch = batch;
+			uiQueuedData = 0;
+			dropNotice = null;
+			flushScheduled = false;
+			batches++;
+		}
+		SessionLayerEvent evt;
+		while((evt = batch.poll())!=null) {
+			for(SessionLayerListener a : uiListeners) {
+				try {
+					a.networkSessionEvent(evt);
+				} catch (Exception e) {
+					logger.error("listener failed: "+e.getMessage(),e);
+				}
+			}
+		}
+	}
+
+	private void drainBackground() {
+		do {
+			SessionLayerEvent evt;
+			while((evt = backgroundQueue.poll())!=null) {
+				for(SessionLayerListener a : backgroundListeners) {
+					try {
+						a.networkSessionEvent(evt);
+					} catch (Exception e) {
+						logger.error("listener failed: "+e.getMessage(),e);
+					}
+				}
+			}
+			backgroundDraining.set(false);
+			// an event may have arrived after the last poll and before the flag was cleared.
+		} while(!backgroundQueue.isEmpty() && backgroundDraining.compareAndSet(false,true));
+	}
+
+	/**
+	 * @param ms the most time a line waits before the UI sees it.  0 delivers on the next turn of the Event Dispatch
+	 *           Thread.
+	 */
+	public void setBatchMillis(int ms) {
+		flushTimer.setInitialDelay(Math.max(0,ms));
+	}
+
+	public int getBatchMillis() {
+		return flushTimer.getInitialDelay();
+	}
+
+	/**
+	 * @param capacity the most lines waiting for the UI before more are dropped.
+	 */
+	public synchronized void setUICapacity(int capacity) {
+		uiCapacity = Math.max(1,capacity);
+	}
+
+	public synchronized int getUICapacity() {
+		return uiCapacity;
+	}
+
+	/**
+	 * @return the number of lines the UI never saw because it fell behind.
+	 */
+	public synchronized long getDroppedLines() {
+		return droppedLines;
+	}
+
+	/**
+	 * @return the number of batches delivered to the UI.
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+}
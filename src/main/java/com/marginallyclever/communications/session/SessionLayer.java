@@ -1,9 +1,12 @@
 package com.marginallyclever.communications.session;
 
+import com.marginallyclever.communications.jointstate.JointStateDecoder;
+import com.marginallyclever.communications.transport.LineFramer;
 import com.marginallyclever.communications.transport.TransportLayer;
+import com.marginallyclever.communications.transport.TransportMetrics;
+import com.marginallyclever.communications.transport.replay.SessionRecorder;
 
-import javax.swing.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  * Created on 4/12/15.
@@ -28,27 +31,168 @@ public abstract class SessionLayer {
 	
 	abstract public TransportLayer getTransportLayer();
 
+	// traffic since the connection opened.
+	private transient TransportMetrics transportMetrics = new TransportMetrics();
+	// lines, latency and flow control since the connection opened.
+	private transient SessionMetrics sessionMetrics = new SessionMetrics();
+	// splits received bytes into lines.
+	private final transient LineFramer framer = new LineFramer();
+	private final transient LineFramer.LineListener lineListener = this::onLine;
+	// reads binary joint state frames mixed in with the text, if anyone is listening.
+	private transient volatile JointStateDecoder jointStateDecoder;
+	private transient volatile JointStateDecoder.Listener jointStateListener;
+	private transient byte [] scratch;
+	// writes every byte in and out to a log, if recording.
+	private transient volatile SessionRecorder recorder;
+
+	public TransportMetrics getTransportMetrics() {
+		return transportMetrics;
+	}
+
+	public SessionMetrics getSessionMetrics() {
+		return sessionMetrics;
+	}
+
+	/**
+	 * Start counting again, and forget any part of a line.  Call when a connection opens.
+	 */
+	protected void resetTransport() {
+		transportMetrics = new TransportMetrics();
+		sessionMetrics = new SessionMetrics();
+		framer.clear();
+		if(jointStateDecoder!=null) jointStateDecoder.clear();
+	}
+
+	/**
+	 * Split bytes into lines with a {@link LineFramer} and send each line to the listeners.  Only the new bytes are
+	 * searched for the end of a line.  Empty lines are skipped.  Call from one thread at a time.
+	 * @param data the bytes received, from position to limit.
+	 */
+	protected void receiveBytes(ByteBuffer data) {
+		SessionRecorder r = recorder;
+		if(r!=null) r.received(data);
+		JointStateDecoder.Listener listener = jointStateListener;
+		if(listener==null) {
+			framer.accept(data,lineListener);
+			return;
+		}
+		if(data.hasArray()) {
+			receiveMixed(data.array(),data.arrayOffset()+data.position(),data.remaining(),listener);
+		} else {
+			if(scratch==null) scratch = new byte[64*1024];
+			while(data.hasRemaining()) {
+				int n = Math.min(scratch.length,data.remaining());
+				data.get(scratch,0,n);
+				receiveMixed(scratch,0,n,listener);
+			}
+		}
+		data.position(data.limit());
+	}
+
+	/**
+	 * Text lines and binary frames on one link.  A zero byte never appears in text, so it opens a frame.
+	 */
+	private void receiveMixed(byte [] data,int offset,int length,JointStateDecoder.Listener listener) {
+		JointStateDecoder decoder = jointStateDecoder;
+		int end = offset+length;
+		int i = offset;
+		while(i<end) {
+			if(decoder.isInFrame()) {
+				i += decoder.accept(data,i,end-i,listener);
+				continue;
+			}
+			int zero = i;
+			while(zero<end && data[zero]!=0) zero++;
+			framer.accept(data,i,zero-i,lineListener);
+			if(zero<end) decoder.startFrame();
+			i = zero+1;
+		}
+	}
+
+	/**
+	 * Read binary joint state frames as well as text.  See {@link com.marginallyclever.communications.jointstate.JointStateFrame}
+	 * for the format.
+	 * @param listener hears each frame on the thread that reads the connection, and must not block.  Null to read
+	 *                 text only.
+	 */
+	public void setJointStateListener(JointStateDecoder.Listener listener) {
+		if(listener!=null && jointStateDecoder==null) jointStateDecoder = new JointStateDecoder();
+		jointStateListener = listener;
+	}
+
+	/**
+	 * @return the decoder of binary frames, or null if none has been read.
+	 */
+	public JointStateDecoder getJointStateDecoder() {
+		return jointStateDecoder;
+	}
+
+	/**
+	 * Start writing every byte in and out to a log, to play back later with a
+	 * {@link com.marginallyclever.communications.transport.replay.ReplaySession}.  Stops any recording before.
+	 * @param recorder the log, or null to stop recording.
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		SessionRecorder old = this.recorder;
+		this.recorder = recorder;
+		if(old!=null && old!=recorder) old.close();
+	}
+
+	public SessionRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Subclasses call this with every byte they send, so it can be recorded.
+	 */
+	protected void recordSent(byte [] bytes) {
+		SessionRecorder r = recorder;
+		if(r!=null) r.sent(bytes,0,bytes.length);
+	}
+
+	private void onLine(byte [] line,int length) {
+		String str = LineFramer.toString(line,length).trim();
+		if(str.isEmpty()) return;
+		sessionMetrics.addLineIn();
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.DATA_AVAILABLE,str));
+	}
+
+	/**
+	 * @return the framer that splits received bytes into lines.
+	 */
+	public LineFramer getLineFramer() {
+		return framer;
+	}
+
 
 	// OBSERVER PATTERN
 	
-	private final transient ArrayList<SessionLayerListener> listeners = new ArrayList<>();
+	private final transient SessionEventDispatcher dispatcher = new SessionEventDispatcher();
 	
+	/**
+	 * @param listener will hear events on the Event Dispatch Thread, in batches.  Lines may be dropped if the UI
+	 *                 falls behind.  See {@link SessionEventDispatcher}.
+	 */
 	public void addListener(SessionLayerListener listener) {
-		listeners.add(listener);
+		dispatcher.addUIListener(listener);
+	}
+
+	/**
+	 * @param listener will hear every event in order, on a background thread.
+	 */
+	public void addBackgroundListener(SessionLayerListener listener) {
+		dispatcher.addBackgroundListener(listener);
 	}
 
 	public void removeListener(SessionLayerListener listener) {
-		listeners.remove(listener);
+		dispatcher.removeListener(listener);
+	}
+
+	public SessionEventDispatcher getDispatcher() {
+		return dispatcher;
 	}
 
 	protected void notifyListeners(SessionLayerEvent evt) {
-		SwingUtilities.invokeLater(new Runnable() {
-            @Override
-			public void run() {
-				for (SessionLayerListener a : listeners) {
-					a.networkSessionEvent(evt);
-				}
-            }
-		});
+		dispatcher.dispatch(evt);
 	}
 }
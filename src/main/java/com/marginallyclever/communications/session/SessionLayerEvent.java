@@ -17,6 +17,8 @@ public class SessionLayerEvent extends EventObject {
 	public static final int SEND_BUFFER_EMPTY=3;
 	// data has arrived.  Data is (String)data.
 	public static final int DATA_AVAILABLE=4;
+	// the UI fell behind and some lines were not delivered to it.  The number of lines is (Integer)data.
+	public static final int DATA_DROPPED=5;
 
 	public int flag;
 	public Object data;
@@ -2,7 +2,9 @@ package com.marginallyclever.communications.session;
 
 import com.marginallyclever.communications.transport.TransportLayer;
 import com.marginallyclever.communications.transport.TransportLayerPanel;
+import com.marginallyclever.communications.transport.replay.ReplayTransportLayer;
 import com.marginallyclever.communications.transport.serial.SerialTransportLayer;
+import com.marginallyclever.communications.transport.sim.SimulatedTransportLayer;
 import com.marginallyclever.communications.transport.tcp.TCPTransportLayer;
 import com.marginallyclever.robotoverlord.swing.translator.Translator;
 
@@ -17,6 +19,8 @@ import java.awt.*;
 public class SessionLayerManager {
 	static private final TransportLayer serial = new SerialTransportLayer();
 	static private final TransportLayer tcp = new TCPTransportLayer();
+	static private final TransportLayer simulator = new SimulatedTransportLayer();
+	static private final TransportLayer replay = new ReplayTransportLayer();
 	static private int selectedLayer=0;
 	
 	/**
@@ -28,6 +32,8 @@ public class SessionLayerManager {
 		JTabbedPane tabs = new JTabbedPane();
 		tabs.addTab(Translator.get("Local"), serial.getTransportLayerPanel());
 		tabs.addTab(Translator.get("Remote"), tcp.getTransportLayerPanel());
+		tabs.addTab(Translator.get("Simulator"), simulator.getTransportLayerPanel());
+		tabs.addTab(Translator.get("Replay"), replay.getTransportLayerPanel());
 		tabs.setSelectedIndex(selectedLayer);
 		
 		JPanel top = new JPanel(new BorderLayout());
@@ -0,0 +1,184 @@
+package com.marginallyclever.communications.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>What one {@link SessionLayer} has done since it opened, to tell a slow link from a full controller from a slow
+ * sender:</p>
+ * <ul>
+ *     <li>lines in and out.  Bytes are counted by {@link com.marginallyclever.communications.transport.TransportMetrics},</li>
+ *     <li>the time from sending a command to hearing its ok, in a {@link LatencyHistogram},</li>
+ *     <li>the time the sender had lines waiting but could not send because the controller was full,</li>
+ *     <li>resends and errors asked for by the controller, and</li>
+ *     <li>how full the buffer of the controller is, as far as the sender knows.</li>
+ * </ul>
+ * <p>The session counts lines in.  The presentation layer, which knows the protocol, reports the rest.  Safe to
+ * use from any thread.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionMetrics {
+	// the most commands waiting for an ok that are timed.  More are not timed.
+	private static final int MAX_TIMED = 256;
+
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong linesIn = new AtomicLong();
+	private final AtomicLong linesOut = new AtomicLong();
+	private final AtomicLong resends = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	// guarded by this.  the time each command waiting for an ok was sent, oldest first.
+	private final long [] sentTimes = new long[MAX_TIMED];
+	private int sentHead, sentCount;
+	private boolean blocked;
+	private long blockedSince, blockedNanos;
+	private int occupancy, capacity, peakOccupancy;
+	private long occupancySamples;
+	private double occupancySum;
+
+	public void addLineIn() {
+		linesIn.incrementAndGet();
+	}
+
+	public void addLineOut() {
+		linesOut.incrementAndGet();
+	}
+
+	/**
+	 * A command that will be answered with ok has been sent.
+	 */
+	public synchronized void commandSent() {
+		if(sentCount==MAX_TIMED) return;
+		sentTimes[(sentHead+sentCount)%MAX_TIMED] = System.nanoTime();
+		sentCount++;
+	}
+
+	/**
+	 * The oldest command waiting has been answered.
+	 */
+	public synchronized void commandAcknowledged() {
+		if(sentCount==0) return;
+		latency.record(System.nanoTime()-sentTimes[sentHead]);
+		sentHead = (sentHead+1)%MAX_TIMED;
+		sentCount--;
+	}
+
+	/**
+	 * Forget the commands waiting for an ok, such as after a reset of the controller.
+	 */
+	public synchronized void clearSent() {
+		sentHead = 0;
+		sentCount = 0;
+	}
+
+	/**
+	 * @param blocked true while the sender has lines to send and the controller has no room for them.
+	 */
+	public synchronized void setBlocked(boolean blocked) {
+		if(this.blocked==blocked) return;
+		long now = System.nanoTime();
+		if(blocked) blockedSince = now;
+		else blockedNanos += now-blockedSince;
+		this.blocked = blocked;
+	}
+
+	public void addResend() {
+		resends.incrementAndGet();
+	}
+
+	public void addError() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * @param used how much of the controller buffer is in use, in lines or bytes.
+	 * @param capacity the size of the buffer, in the same unit.
+	 */
+	public synchronized void setOccupancy(int used,int capacity) {
+		this.occupancy = used;
+		this.capacity = capacity;
+		peakOccupancy = Math.max(peakOccupancy,used);
+		occupancySamples++;
+		occupancySum += capacity>0 ? (double)used/capacity : 0;
+	}
+
+	public long getLinesIn() {
+		return linesIn.get();
+	}
+
+	public long getLinesOut() {
+		return linesOut.get();
+	}
+
+	public long getResends() {
+		return resends.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the time spent blocked at the send limit, in seconds.
+	 */
+	public synchronized double getBlockedSeconds() {
+		long n = blockedNanos;
+		if(blocked) n += System.nanoTime()-blockedSince;
+		return n*1e-9;
+	}
+
+	/**
+	 * @return seconds since the session opened.
+	 */
+	public double getElapsed() {
+		return (System.nanoTime()-startNanos)*1e-9;
+	}
+
+	/**
+	 * @return the share of the time spent blocked at the send limit, in percent.
+	 */
+	public double getBlockedPercent() {
+		double t = getElapsed();
+		return t>0 ? 100*getBlockedSeconds()/t : 0;
+	}
+
+	public synchronized int getOccupancy() {
+		return occupancy;
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int getPeakOccupancy() {
+		return peakOccupancy;
+	}
+
+	/**
+	 * @return the mean of every occupancy reported, as a percent of capacity.
+	 */
+	public synchronized double getMeanOccupancyPercent() {
+		return occupancySamples>0 ? 100*occupancySum/occupancySamples : 0;
+	}
+
+	/**
+	 * @return the number of commands sent and not yet answered, as far as they are timed.
+	 */
+	public synchronized int getCommandsWaiting() {
+		return sentCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("lines in %d out %d, ok p50 %.2fms p99 %.2fms max %.2fms, blocked %.1f%%, resends %d, errors %d, buffer %d/%d (peak %d)",
+				getLinesIn(),getLinesOut(),latency.getPercentileMillis(0.5),latency.getPercentileMillis(0.99),
+				latency.getMaxMillis(),getBlockedPercent(),getResends(),getErrors(),getOccupancy(),getCapacity(),
+				getPeakOccupancy());
+	}
+}
@@ -0,0 +1,148 @@
+package com.marginallyclever.communications.session;
+
+import com.marginallyclever.communications.transport.TransportMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * <p>Shows the {@link SessionMetrics} and {@link TransportMetrics} of one {@link SessionLayer} over JMX, so they can
+ * be watched and graphed with tools like JConsole or VisualVM while a job runs.  Every attribute is read only and
+ * read fresh from the session, so the bean stays good when the session opens again and starts new metrics.</p>
+ * <p>The bean is dynamic so that JMX does not need to reach into this module by reflection.</p>
+ * <p>The name is <code>com.marginallyclever.communications:type=Session,name="...",id=N</code>.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionMetricsJMX implements DynamicMBean {
+	private static final Logger logger = LoggerFactory.getLogger(SessionMetricsJMX.class);
+	public static final String DOMAIN = "com.marginallyclever.communications";
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private static class Reading {
+		final String type;
+		final String description;
+		final Function<SessionLayer,Object> getter;
+
+		Reading(String type,String description,Function<SessionLayer,Object> getter) {
+			this.type = type;
+			this.description = description;
+			this.getter = getter;
+		}
+	}
+
+	private static final Map<String,Reading> READINGS = new LinkedHashMap<>();
+	static {
+		add("LinesIn","long","lines received",(s)->s.getSessionMetrics().getLinesIn());
+		add("LinesOut","long","lines sent",(s)->s.getSessionMetrics().getLinesOut());
+		add("BytesIn","long","bytes received",(s)->s.getTransportMetrics().getBytesIn());
+		add("BytesOut","long","bytes sent",(s)->s.getTransportMetrics().getBytesOut());
+		add("BytesInPerSecond","double","mean bytes received per second",(s)->s.getTransportMetrics().getBytesInPerSecond());
+		add("BytesOutPerSecond","double","mean bytes sent per second",(s)->s.getTransportMetrics().getBytesOutPerSecond());
+		add("Acknowledged","long","commands timed from send to ok",(s)->s.getSessionMetrics().getLatency().getCount());
+		add("LatencyMeanMillis","double","mean time from send to ok",(s)->s.getSessionMetrics().getLatency().getMeanMillis());
+		add("LatencyP50Millis","double","median time from send to ok",(s)->s.getSessionMetrics().getLatency().getPercentileMillis(0.5));
+		add("LatencyP90Millis","double","90th percentile of time from send to ok",(s)->s.getSessionMetrics().getLatency().getPercentileMillis(0.9));
+		add("LatencyP99Millis","double","99th percentile of time from send to ok",(s)->s.getSessionMetrics().getLatency().getPercentileMillis(0.99));
+		add("LatencyMaxMillis","double","longest time from send to ok",(s)->s.getSessionMetrics().getLatency().getMaxMillis());
+		add("CommandsWaiting","int","commands sent and not yet acknowledged",(s)->s.getSessionMetrics().getCommandsWaiting());
+		add("BlockedSeconds","double","time spent with lines waiting and no room in the controller",(s)->s.getSessionMetrics().getBlockedSeconds());
+		add("BlockedPercent","double","share of time spent blocked at the send limit",(s)->s.getSessionMetrics().getBlockedPercent());
+		add("Resends","long","resends asked for by the controller",(s)->s.getSessionMetrics().getResends());
+		add("Errors","long","errors reported by the controller",(s)->s.getSessionMetrics().getErrors());
+		add("Occupancy","int","controller buffer in use",(s)->s.getSessionMetrics().getOccupancy());
+		add("Capacity","int","controller buffer size",(s)->s.getSessionMetrics().getCapacity());
+		add("PeakOccupancy","int","most of the controller buffer in use",(s)->s.getSessionMetrics().getPeakOccupancy());
+		add("MeanOccupancyPercent","double","mean use of the controller buffer",(s)->s.getSessionMetrics().getMeanOccupancyPercent());
+		add("CpuPercent","double","share of one core spent reading",(s)->s.getTransportMetrics().getCpuPercent());
+	}
+
+	private static void add(String name,String type,String description,Function<SessionLayer,Object> getter) {
+		READINGS.put(name,new Reading(type,description,getter));
+	}
+
+	private final SessionLayer session;
+	private final MBeanInfo info;
+
+	public SessionMetricsJMX(SessionLayer session) {
+		this.session = session;
+		MBeanAttributeInfo [] attributes = new MBeanAttributeInfo[READINGS.size()];
+		int i=0;
+		for(Map.Entry<String,Reading> e : READINGS.entrySet()) {
+			attributes[i++] = new MBeanAttributeInfo(e.getKey(),e.getValue().type,e.getValue().description,true,false,false);
+		}
+		info = new MBeanInfo(getClass().getName(),"communication metrics of one session",attributes,null,null,null);
+	}
+
+	/**
+	 * Register a bean for this session with the platform MBean server.
+	 * @return the name it was registered under, or null if it could not be.
+	 */
+	public static ObjectName register(SessionLayer session) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN+":type=Session,name="+ObjectName.quote(session.getName())
+					+",id="+nextId.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new SessionMetricsJMX(session),name);
+			return name;
+		} catch(JMException e) {
+			logger.warn("could not register session metrics: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @param name as returned by {@link #register(SessionLayer)}.  Null is ignored.
+	 */
+	public static void unregister(ObjectName name) {
+		if(name==null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch(JMException e) {
+			logger.warn("could not unregister session metrics: "+e.getMessage());
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Reading reading = READINGS.get(attribute);
+		if(reading==null) throw new AttributeNotFoundException(attribute);
+		return reading.getter.apply(session);
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName()+" is read only");
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for(String name : attributes) {
+			Reading reading = READINGS.get(name);
+			if(reading!=null) list.add(new Attribute(name,reading.getter.apply(session)));
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName,Object[] params,String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return info;
+	}
+}
@@ -0,0 +1,196 @@
+package com.marginallyclever.communications.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Splits a stream of bytes into lines.  Bytes go into a ring of fixed size and only the bytes added since the
+ * last call are searched for the end of a line, so a long burst costs time in proportion to its length.  Each
+ * complete line is copied once into a line buffer that is used again for the next line, so no memory is made per
+ * line.</p>
+ * <p>A line ends with <code>\n</code>.  A <code>\r</code> before it is dropped.  A line longer than the ring is
+ * cut: the first part is sent on its own, the rest is thrown away up to the next <code>\n</code> and counted by
+ * {@link #getOversizedLines()}.  Memory never grows past the size given to the constructor.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class LineFramer {
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Hears each line.
+	 */
+	public interface LineListener {
+		/**
+		 * @param line the bytes of the line, without the end of line.  Only good until this returns.
+		 * @param length the number of bytes in the line.
+		 */
+		void onLine(byte [] line,int length);
+	}
+
+	private final byte [] ring;
+	private final int mask;
+	private final byte [] line;
+	// the first byte of the current line, and where the next byte will go.  Both count up forever.
+	private long head, tail;
+	// true while throwing away the end of an oversized line.
+	private boolean discarding;
+	private long lines, oversizedLines, bytesDiscarded;
+
+	public LineFramer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the longest line, in bytes.  Rounded up to a power of two.
+	 */
+	public LineFramer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2,capacity)-1)<<1;
+		ring = new byte[size];
+		mask = size-1;
+		line = new byte[size];
+	}
+
+	/**
+	 * Add bytes and send every line they complete.
+	 * @param data the bytes, from position to limit.  All of them are used.
+	 * @param listener hears each complete line.
+	 */
+	public void accept(ByteBuffer data,LineListener listener) {
+		if(data.hasArray()) {
+			accept(data.array(),data.arrayOffset()+data.position(),data.remaining(),listener);
+			data.position(data.limit());
+			return;
+		}
+		while(data.hasRemaining()) {
+			byte b = data.get();
+			if(discarding) {
+				if(b=='\n') discarding = false;
+				else bytesDiscarded++;
+				continue;
+			}
+			if(b=='\n') {
+				emit(listener);
+				continue;
+			}
+			if(tail-head==ring.length) {
+				// no room.  send what fits and throw away the rest of this line.
+				emit(listener);
+				oversizedLines++;
+				discarding = true;
+				bytesDiscarded++;
+				continue;
+			}
+			ring[(int)(tail & mask)] = b;
+			tail++;
+		}
+	}
+
+	/**
+	 * Add bytes from an array.  Each run of bytes up to the end of a line is found and copied in bulk.
+	 */
+	public void accept(byte [] data,int offset,int length,LineListener listener) {
+		int end = offset+length;
+		int i = offset;
+		while(i<end) {
+			int newline = indexOf(data,i,end);
+			if(discarding) {
+				if(newline<0) {
+					bytesDiscarded += end-i;
+					return;
+				}
+				bytesDiscarded += newline-i;
+				discarding = false;
+				i = newline+1;
+				continue;
+			}
+			int chunkEnd = newline<0 ? end : newline;
+			int count = chunkEnd-i;
+			int free = ring.length-(int)(tail-head);
+			if(count>free) {
+				// no room.  send what fits and throw away the rest of this line.
+				copyIn(data,i,free);
+				i += free;
+				emit(listener);
+				oversizedLines++;
+				discarding = true;
+				continue;
+			}
+			copyIn(data,i,count);
+			i = chunkEnd;
+			if(newline>=0) {
+				emit(listener);
+				i = newline+1;
+			}
+		}
+	}
+
+	private static int indexOf(byte [] data,int from,int to) {
+		for(int i=from;i<to;++i) {
+			if(data[i]=='\n') return i;
+		}
+		return -1;
+	}
+
+	private void copyIn(byte [] data,int offset,int count) {
+		int start = (int)(tail & mask);
+		int first = Math.min(count,ring.length-start);
+		System.arraycopy(data,offset,ring,start,first);
+		System.arraycopy(data,offset+first,ring,0,count-first);
+		tail += count;
+	}
+
+	private void emit(LineListener listener) {
+		int length = (int)(tail-head);
+		int start = (int)(head & mask);
+		int first = Math.min(length,ring.length-start);
+		System.arraycopy(ring,start,line,0,first);
+		System.arraycopy(ring,0,line,first,length-first);
+		head = tail;
+		if(length>0 && line[length-1]=='\r') length--;
+		lines++;
+		listener.onLine(line,length);
+	}
+
+	/**
+	 * Forget the part of a line received so far.
+	 */
+	public void clear() {
+		head = tail = 0;
+		discarding = false;
+	}
+
+	/**
+	 * @return the number of bytes waiting for the end of their line.
+	 */
+	public int getPending() {
+		return (int)(tail-head);
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of lines that were too long and were cut.
+	 */
+	public long getOversizedLines() {
+		return oversizedLines;
+	}
+
+	public long getBytesDiscarded() {
+		return bytesDiscarded;
+	}
+
+	/**
+	 * @return a line as text.  Controllers send ASCII, so each byte is one character.
+	 */
+	public static String toString(byte [] line,int length) {
+		return new String(line,0,length,StandardCharsets.ISO_8859_1);
+	}
+}
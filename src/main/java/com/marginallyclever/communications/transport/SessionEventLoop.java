@@ -0,0 +1,275 @@
+package com.marginallyclever.communications.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>One thread that reads and writes every socket connection with a {@link Selector}, so many connections cost one
+ * thread and no CPU while they are quiet.  Each read takes everything waiting, up to 64kB, and hands it to the
+ * {@link Handler} of the connection in one call.</p>
+ * <p>Some transports only have an {@link InputStream}, such as an SSH channel.  {@link #readStream} reads those with
+ * blocking reads of everything available, on a shared pool of threads that sleep while there is nothing to read.</p>
+ * <p>Handlers are called on the loop thread and must not block.  A handler that throws is logged and its connection
+ * is closed.  The loop and every other connection keep running.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public final class SessionEventLoop implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(SessionEventLoop.class);
+	private static final int READ_BUFFER_SIZE = 64*1024;
+	private static SessionEventLoop shared;
+	private static final ExecutorService streamReaders = Executors.newCachedThreadPool((r)->{
+		Thread t = new Thread(r,"SessionEventLoop stream reader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Hears what happens on one connection.
+	 */
+	public interface Handler {
+		/**
+		 * The connection is registered and about to be read.  Called on the loop thread before any other call.
+		 */
+		default void onRegistered(Connection connection) {}
+
+		/**
+		 * Bytes have arrived.  The buffer is only good until this returns.
+		 * @param data the bytes, from position to limit.
+		 */
+		void onBytes(ByteBuffer data);
+
+		/**
+		 * The connection has closed.
+		 * @param cause the error that closed it, or null if the other end closed it or {@link Connection#close()}
+		 *              was called.
+		 */
+		void onClosed(IOException cause);
+	}
+
+	/**
+	 * One socket registered with the loop.
+	 */
+	public final class Connection {
+		private final SocketChannel channel;
+		private final Handler handler;
+		private final TransportMetrics metrics;
+		private final Queue<ByteBuffer> toWrite = new ConcurrentLinkedQueue<>();
+		private SelectionKey key;
+		private volatile boolean open = true;
+
+		private Connection(SocketChannel channel,Handler handler,TransportMetrics metrics) {
+			this.channel = channel;
+			this.handler = handler;
+			this.metrics = metrics;
+		}
+
+		/**
+		 * Queue bytes to send.  Safe to call from any thread.
+		 */
+		public void write(ByteBuffer data) {
+			if(!open) return;
+			toWrite.add(data);
+			submit(()->{
+				if(key!=null && key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			});
+		}
+
+		public void close() {
+			submit(()->closeConnection(this,null));
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public TransportMetrics getMetrics() {
+			return metrics;
+		}
+	}
+
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+	public SessionEventLoop() throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this,"SessionEventLoop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the loop shared by every session in the app.
+	 */
+	public static synchronized SessionEventLoop getShared() throws IOException {
+		if(shared==null) shared = new SessionEventLoop();
+		return shared;
+	}
+
+	/**
+	 * Watch a connected socket.  The socket is made non-blocking.
+	 * @return the connection, for writing and closing.
+	 */
+	public Connection register(SocketChannel channel,Handler handler,TransportMetrics metrics) throws IOException {
+		channel.configureBlocking(false);
+		Connection connection = new Connection(channel,handler,metrics);
+		submit(()->{
+			try {
+				int ops = SelectionKey.OP_READ;
+				// writes queued before the channel was registered.
+				if(!connection.toWrite.isEmpty()) ops |= SelectionKey.OP_WRITE;
+				connection.key = channel.register(selector,ops,connection);
+				handler.onRegistered(connection);
+			} catch (ClosedChannelException e) {
+				closeConnection(connection,e);
+			} catch (RuntimeException e) {
+				handlerFailed(connection,e);
+			}
+		});
+		return connection;
+	}
+
+	/**
+	 * Read a stream on a pooled thread until it ends.  Each read takes everything the stream has ready.
+	 */
+	public static void readStream(InputStream in,Handler handler,TransportMetrics metrics) {
+		streamReaders.execute(()->{
+			byte [] buffer = new byte[READ_BUFFER_SIZE];
+			IOException cause = null;
+			try {
+				int n;
+				while((n = in.read(buffer))>=0) {
+					long cpu = TransportMetrics.threadCpuTime();
+					if(n>0) handler.onBytes(ByteBuffer.wrap(buffer,0,n));
+					metrics.addRead(n,TransportMetrics.threadCpuTime()-cpu);
+				}
+			} catch (IOException e) {
+				cause = e;
+			} catch (RuntimeException e) {
+				logger.error("stream handler failed, closing the stream.",e);
+				cause = new IOException("handler failed",e);
+				try {
+					in.close();
+				} catch (IOException e2) {
+					logger.debug("close failed: "+e2.getMessage());
+				}
+			}
+			try {
+				handler.onClosed(cause);
+			} catch (RuntimeException e) {
+				logger.error("stream handler failed to close.",e);
+			}
+		});
+	}
+
+	private void submit(Runnable task) {
+		tasks.add(task);
+		if(Thread.currentThread()!=thread) selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while(selector.isOpen()) {
+			try {
+				// a task queued by a handler on this thread does not wake the selector, so do not wait for one.
+				if(tasks.isEmpty()) selector.select();
+				else selector.selectNow();
+			} catch (IOException e) {
+				logger.error("select failed: "+e.getMessage());
+				return;
+			}
+			Runnable task;
+			while((task = tasks.poll())!=null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					logger.error("task failed.",e);
+				}
+			}
+
+			Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+			while(i.hasNext()) {
+				SelectionKey key = i.next();
+				i.remove();
+				Connection connection = (Connection)key.attachment();
+				try {
+					if(key.isReadable()) read(connection);
+					if(key.isValid() && key.isWritable()) write(connection);
+				} catch (CancelledKeyException e) {
+					closeConnection(connection,null);
+				} catch (IOException e) {
+					closeConnection(connection,e);
+				} catch (RuntimeException e) {
+					handlerFailed(connection,e);
+				}
+			}
+		}
+	}
+
+	private void read(Connection connection) throws IOException {
+		long cpu = TransportMetrics.threadCpuTime();
+		readBuffer.clear();
+		int n = connection.channel.read(readBuffer);
+		if(n<0) {
+			closeConnection(connection,null);
+			return;
+		}
+		readBuffer.flip();
+		if(n>0) connection.handler.onBytes(readBuffer);
+		connection.metrics.addRead(n,TransportMetrics.threadCpuTime()-cpu);
+	}
+
+	private void write(Connection connection) throws IOException {
+		ByteBuffer data;
+		while((data = connection.toWrite.peek())!=null) {
+			int n = connection.channel.write(data);
+			connection.metrics.addWrite(n);
+			if(data.hasRemaining()) return;  // socket is full, wait for the next OP_WRITE.
+			connection.toWrite.remove();
+		}
+		connection.key.interestOps(SelectionKey.OP_READ);
+		// a write may have been queued between the last peek and now.
+		if(!connection.toWrite.isEmpty()) connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * A handler threw.  Close only its connection so the loop keeps serving the others.
+	 */
+	private void handlerFailed(Connection connection,RuntimeException e) {
+		logger.error("handler failed, closing the connection.",e);
+		closeConnection(connection,new IOException("handler failed",e));
+	}
+
+	private void closeConnection(Connection connection,IOException cause) {
+		if(!connection.open) return;
+		connection.open = false;
+		if(connection.key!=null) connection.key.cancel();
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			logger.debug("close failed: "+e.getMessage());
+		}
+		try {
+			connection.handler.onClosed(cause);
+		} catch (RuntimeException e) {
+			logger.error("handler failed to close.",e);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.marginallyclever.communications.transport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the traffic of one connection and the CPU time spent reading it.  Safe to read from any thread.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class TransportMetrics {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong cpuNanos = new AtomicLong();
+
+	/**
+	 * @return the CPU time of this thread in nanoseconds, or 0 if the JVM cannot tell.
+	 */
+	public static long threadCpuTime() {
+		return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * @param bytes the number of bytes read.
+	 * @param cpu the CPU time spent reading and handling them, in nanoseconds.
+	 */
+	public void addRead(int bytes,long cpu) {
+		bytesIn.addAndGet(bytes);
+		reads.incrementAndGet();
+		cpuNanos.addAndGet(cpu);
+	}
+
+	public void addWrite(int bytes) {
+		bytesOut.addAndGet(bytes);
+		writes.incrementAndGet();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * @return the number of reads.  Bytes in / reads is the average size of a read.
+	 */
+	public long getReads() {
+		return reads.get();
+	}
+
+	public long getWrites() {
+		return writes.get();
+	}
+
+	public long getCpuNanos() {
+		return cpuNanos.get();
+	}
+
+	/**
+	 * @return seconds since the connection opened.
+	 */
+	public double getElapsed() {
+		return (System.nanoTime()-startNanos)*1e-9;
+	}
+
+	public double getBytesInPerSecond() {
+		double t = getElapsed();
+		return t>0 ? bytesIn.get()/t : 0;
+	}
+
+	public double getBytesOutPerSecond() {
+		double t = getElapsed();
+		return t>0 ? bytesOut.get()/t : 0;
+	}
+
+	/**
+	 * @return the share of one CPU core spent on this connection, in percent.
+	 */
+	public double getCpuPercent() {
+		double t = getElapsed();
+		return t>0 ? 100.0*cpuNanos.get()*1e-9/t : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("in %d bytes (%.0f B/s, %d reads), out %d bytes (%.0f B/s), cpu %.2f%%",
+				getBytesIn(),getBytesInPerSecond(),getReads(),getBytesOut(),getBytesOutPerSecond(),getCpuPercent());
+	}
+}
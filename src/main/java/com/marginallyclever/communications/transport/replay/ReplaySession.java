@@ -0,0 +1,185 @@
+package com.marginallyclever.communications.transport.replay;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.TransportLayer;
+import com.marginallyclever.communications.transport.TransportMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A session that plays back a recording made by {@link SessionRecorder}, as if the controller were there.  The
+ * bytes received are given to the listeners in the same pieces and the same order they first arrived, so the
+ * framing, the presentation layer and everything above can be tested and profiled against real traffic without the
+ * machine.</p>
+ * <p>The connection name is <code>replay:path/to/file</code>, optionally followed by <code>?speed=1</code>.  Speed 1
+ * keeps the recorded timing, 2 plays twice as fast, and 0 or <code>max</code> plays as fast as possible.  Whatever
+ * the app sends is counted and dropped; the recording does not wait for it.  The connection closes at the end of
+ * the recording.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ReplaySession extends SessionLayer {
+	private static final Logger logger = LoggerFactory.getLogger(ReplaySession.class);
+	public static final String PREFIX = "replay:";
+
+	private final TransportLayer transportLayer;
+	private Thread player;
+	private String connectionName = "";
+	private volatile boolean portOpened = false;
+	private double speed = 1;
+	private final AtomicLong recordedBytesSent = new AtomicLong();
+	private final AtomicLong recordsPlayed = new AtomicLong();
+
+	public ReplaySession(TransportLayer layer) {
+		super();
+		this.transportLayer = layer;
+	}
+
+	@Override
+	public void openConnection(String name) throws Exception {
+		if(portOpened) return;
+		String spec = name.startsWith(PREFIX) ? name.substring(PREFIX.length()) : name;
+		double newSpeed = 1;
+		int q = spec.lastIndexOf('?');
+		if(q>=0) {
+			newSpeed = parseSpeed(spec.substring(q+1));
+			spec = spec.substring(0,q);
+		}
+		SessionRecordingReader reader = new SessionRecordingReader(new File(spec));
+		logger.info("replaying "+reader.getConnectionName()+" recorded "+new Date(reader.getStartMillis()));
+
+		speed = newSpeed;
+		recordedBytesSent.set(0);
+		recordsPlayed.set(0);
+		resetTransport();
+		connectionName = name;
+		portOpened = true;
+		player = new Thread(()->play(reader),"ReplaySession "+spec);
+		player.setDaemon(true);
+		player.start();
+	}
+
+	private static double parseSpeed(String settings) {
+		for(String pair : settings.split("&")) {
+			String [] kv = pair.split("=",2);
+			if(kv.length<2 || !kv[0].trim().equalsIgnoreCase("speed")) {
+				throw new IllegalArgumentException("unknown setting "+pair);
+			}
+			String value = kv[1].trim().toLowerCase(Locale.ROOT);
+			double s = value.equals("max") ? 0 : Double.parseDouble(value);
+			if(s<0) throw new IllegalArgumentException("speed must not be negative");
+			return s;
+		}
+		return 1;
+	}
+
+	private void play(SessionRecordingReader reader) {
+		IOException failure = null;
+		long start = System.nanoTime();
+		try(reader) {
+			while(portOpened && reader.next()) {
+				if(reader.getType()==SessionRecorder.SENT) {
+					recordedBytesSent.addAndGet(reader.getLength());
+					continue;
+				}
+				if(speed>0) waitUntil(start+(long)(reader.getTimeNanos()/speed));
+				if(!portOpened) break;
+				long cpu = TransportMetrics.threadCpuTime();
+				receiveBytes(ByteBuffer.wrap(reader.getData(),0,reader.getLength()));
+				getTransportMetrics().addRead(reader.getLength(),TransportMetrics.threadCpuTime()-cpu);
+				recordsPlayed.incrementAndGet();
+			}
+		} catch(IOException e) {
+			failure = e;
+		}
+		if(!portOpened) return;
+		portOpened = false;
+		if(failure!=null) {
+			logger.warn(connectionName+": "+failure.getMessage());
+			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.TRANSPORT_ERROR,failure.getLocalizedMessage()));
+		}
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.CONNECTION_CLOSED,null));
+	}
+
+	private void waitUntil(long nanos) {
+		long wait;
+		while(portOpened && (wait = nanos-System.nanoTime())>0) {
+			LockSupport.parkNanos(wait);
+		}
+	}
+
+	/**
+	 * Wait for the recording to finish playing.
+	 * @param millis the most time to wait.
+	 * @return true if it finished.
+	 */
+	public boolean awaitEnd(long millis) throws InterruptedException {
+		Thread t = player;
+		if(t==null) return true;
+		t.join(millis);
+		return !t.isAlive();
+	}
+
+	@Override
+	public void closeConnection() {
+		if(!portOpened) return;
+		portOpened = false;
+		Thread t = player;
+		if(t!=null) LockSupport.unpark(t);
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.CONNECTION_CLOSED,null));
+	}
+
+	@Override
+	public void reconnect() throws Exception {
+		openConnection(connectionName);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return portOpened;
+	}
+
+	@Override
+	public String getName() {
+		return connectionName;
+	}
+
+	@Override
+	public void sendMessage(String msg) throws Exception {
+		if(!portOpened) return;
+		byte [] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+		recordSent(bytes);
+		getTransportMetrics().addWrite(bytes.length);
+	}
+
+	@Override
+	public TransportLayer getTransportLayer() {
+		return transportLayer;
+	}
+
+	/**
+	 * @return the number of reads played so far.
+	 */
+	public long getRecordsPlayed() {
+		return recordsPlayed.get();
+	}
+
+	/**
+	 * @return the number of bytes the app sent when the recording was made, as far as it has played.  Compare with
+	 * {@link #getTransportMetrics()} to see if the app now says more or less than it did.
+	 */
+	public long getRecordedBytesSent() {
+		return recordedBytesSent.get();
+	}
+}
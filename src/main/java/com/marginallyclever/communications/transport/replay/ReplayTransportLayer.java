@@ -0,0 +1,40 @@
+package com.marginallyclever.communications.transport.replay;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.transport.TransportLayer;
+import com.marginallyclever.communications.transport.TransportLayerPanel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens a {@link ReplaySession} that plays back a recording of a real controller.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ReplayTransportLayer implements TransportLayer {
+	private static final Logger logger = LoggerFactory.getLogger(ReplayTransportLayer.class);
+
+	public ReplayTransportLayer() {}
+
+	/**
+	 * @param connectionName see {@link ReplaySession} for the format.
+	 * @return the session, or null if the recording could not be opened.
+	 */
+	@Override
+	public SessionLayer openConnection(String connectionName) {
+		ReplaySession session = new ReplaySession(this);
+		try {
+			session.openConnection(connectionName);
+		} catch (Exception e) {
+			logger.error("could not open "+connectionName+": "+e.getMessage());
+			return null;
+		}
+		return session;
+	}
+
+	@Override
+	public TransportLayerPanel getTransportLayerPanel() {
+		return new ReplayTransportLayerPanel(this);
+	}
+}
@@ -0,0 +1,57 @@
+package com.marginallyclever.communications.transport.replay;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.transport.TransportLayerPanel;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+
+/**
+ * A panel for choosing a recording to play back, and how fast.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ReplayTransportLayerPanel extends TransportLayerPanel {
+	private static final String [] SPEEDS = {"1","2","10","max"};
+
+	private final ReplayTransportLayer layer;
+	private final JTextField fileField = new JTextField(lastFile,20);
+	private final JComboBox<String> speedBox = new JComboBox<>(SPEEDS);
+	private final JFileChooser chooser = new JFileChooser();
+
+	private static String lastFile = "";
+	private static String lastSpeed = SPEEDS[0];
+
+	public ReplayTransportLayerPanel(ReplayTransportLayer layer) {
+		this.layer = layer;
+
+		JButton browse = new JButton("...");
+		browse.addActionListener((e)->{
+			if(chooser.showOpenDialog(this)==JFileChooser.APPROVE_OPTION) {
+				fileField.setText(chooser.getSelectedFile().getAbsolutePath());
+			}
+		});
+		JPanel fileRow = new JPanel(new BorderLayout());
+		fileRow.add(fileField,BorderLayout.CENTER);
+		fileRow.add(browse,BorderLayout.LINE_END);
+
+		this.setBorder(new EmptyBorder(5,5,5,5));
+		this.setLayout(new GridLayout(0, 1));
+		this.add(new JLabel("Recording",JLabel.LEADING));
+		this.add(fileRow);
+		this.add(new JLabel("Speed (times real time)",JLabel.LEADING));
+		this.add(speedBox);
+
+		speedBox.setSelectedItem(lastSpeed);
+	}
+
+	@Override
+	public SessionLayer openConnection() {
+		lastFile = fileField.getText().trim();
+		lastSpeed = (String)speedBox.getSelectedItem();
+		if(lastFile.isEmpty()) return null;
+		return layer.openConnection(ReplaySession.PREFIX+lastFile+"?speed="+lastSpeed);
+	}
+}
@@ -0,0 +1,142 @@
+package com.marginallyclever.communications.transport.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Writes every byte a session sends and receives to a compact binary log, with the time of each read or write to
+ * the nanosecond.  {@link SessionRecordingReader} reads it back and {@link ReplaySession} plays it.</p>
+ * <p>The file starts with a header:</p>
+ * <pre>
+ * int    {@link #MAGIC}
+ * byte   {@link #VERSION}
+ * long   wall clock when recording started, in ms since 1970
+ * UTF    the name of the connection
+ * </pre>
+ * <p>followed by one record for each read or write:</p>
+ * <pre>
+ * byte   {@link #RECEIVED} or {@link #SENT}
+ * varint nanoseconds since the record before, or since the start
+ * varint number of bytes
+ * byte[] the bytes, as they crossed the link
+ * </pre>
+ * <p>A varint is 7 bits per byte, lowest first, with the top bit set on every byte but the last.  Most records of a
+ * text protocol are a few bytes of header and one line.</p>
+ * <p>Safe to use from any thread.  If the log cannot be written the recording stops and the session carries on.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionRecorder implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(SessionRecorder.class);
+
+	// "ROSR", robot overlord session recording.
+	public static final int MAGIC = 0x524F5352;
+	public static final int VERSION = 1;
+	public static final int RECEIVED = 0;
+	public static final int SENT = 1;
+
+	private final DataOutputStream out;
+	private long lastNanos;
+	private long records, bytes;
+	private boolean closed;
+	// copies the bytes of direct buffers.
+	private byte [] scratch;
+
+	public SessionRecorder(File file,String connectionName) throws IOException {
+		this(new FileOutputStream(file),connectionName);
+	}
+
+	public SessionRecorder(OutputStream stream,String connectionName) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(stream,64*1024));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		out.writeUTF(connectionName==null ? "" : connectionName);
+		lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * Record bytes received.
+	 * @param data from position to limit.  The position is not changed.
+	 */
+	public synchronized void received(ByteBuffer data) {
+		if(closed) return;
+		int length = data.remaining();
+		if(data.hasArray()) {
+			write(RECEIVED,data.array(),data.arrayOffset()+data.position(),length);
+			return;
+		}
+		if(scratch==null || scratch.length<length) scratch = new byte[Math.max(length,4096)];
+		data.duplicate().get(scratch,0,length);
+		write(RECEIVED,scratch,0,length);
+	}
+
+	/**
+	 * Record bytes sent.
+	 */
+	public synchronized void sent(byte [] data,int offset,int length) {
+		if(closed) return;
+		write(SENT,data,offset,length);
+	}
+
+	private void write(int type,byte [] data,int offset,int length) {
+		long now = System.nanoTime();
+		try {
+			out.writeByte(type);
+			writeVarLong(out,now-lastNanos);
+			writeVarLong(out,length);
+			out.write(data,offset,length);
+		} catch(IOException e) {
+			logger.error("recording stopped: "+e.getMessage());
+			close();
+			return;
+		}
+		lastNanos = now;
+		records++;
+		bytes += length;
+	}
+
+	static void writeVarLong(DataOutput out,long value) throws IOException {
+		while((value & ~0x7FL)!=0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * @return the number of reads and writes recorded.
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the number of bytes recorded, not counting the headers.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Write anything buffered and close the log.  Later reads and writes are not recorded.
+	 */
+	@Override
+	public synchronized void close() {
+		if(closed) return;
+		closed = true;
+		try {
+			out.close();
+		} catch(IOException e) {
+			logger.error("could not close recording: "+e.getMessage());
+		}
+	}
+}
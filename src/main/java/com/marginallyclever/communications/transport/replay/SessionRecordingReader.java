@@ -0,0 +1,121 @@
+package com.marginallyclever.communications.transport.replay;
+
+import java.io.*;
+
+/**
+ * Reads a log made by {@link SessionRecorder}, one record at a time.  The bytes of each record are read into the
+ * same array, so a long recording makes little garbage.  Use from one thread at a time.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SessionRecordingReader implements Closeable {
+	private final DataInputStream in;
+	private final long startMillis;
+	private final String connectionName;
+
+	private int type;
+	private long timeNanos;
+	private byte [] data = new byte[4096];
+	private int length;
+
+	public SessionRecordingReader(File file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	/**
+	 * @throws IOException if the stream is not a recording, or is a version this cannot read.
+	 */
+	public SessionRecordingReader(InputStream stream) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(stream,64*1024));
+		if(in.readInt()!=SessionRecorder.MAGIC) {
+			in.close();
+			throw new IOException("not a session recording");
+		}
+		int version = in.readUnsignedByte();
+		if(version!=SessionRecorder.VERSION) {
+			in.close();
+			throw new IOException("session recording version "+version+" is not supported");
+		}
+		startMillis = in.readLong();
+		connectionName = in.readUTF();
+	}
+
+	/**
+	 * Read the next record.
+	 * @return false at the end of the recording.  A record cut short, as by a crash while recording, is also the end.
+	 * @throws IOException if the recording could not be read.
+	 */
+	public boolean next() throws IOException {
+		int t = in.read();
+		if(t<0) return false;
+		try {
+			long delta = readVarLong(in);
+			long n = readVarLong(in);
+			if(t!=SessionRecorder.RECEIVED && t!=SessionRecorder.SENT) throw new IOException("unknown record type "+t);
+			if(n<0 || n>Integer.MAX_VALUE-8) throw new IOException("record of "+n+" bytes is too long");
+			if(data.length<n) data = new byte[(int)Math.max(n,data.length*2L)];
+			in.readFully(data,0,(int)n);
+			type = t;
+			timeNanos += delta;
+			length = (int)n;
+		} catch(EOFException e) {
+			return false;
+		}
+		return true;
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for(int shift=0;shift<64;shift+=7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80)==0) return value;
+		}
+		throw new IOException("bad varint");
+	}
+
+	/**
+	 * @return {@link SessionRecorder#RECEIVED} or {@link SessionRecorder#SENT}.
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return nanoseconds from the start of the recording to this record.
+	 */
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	 * @return the bytes of this record, from 0 to {@link #getLength()}.  Only good until the next call to {@link #next()}.
+	 */
+	public byte [] getData() {
+		return data;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the wall clock when the recording started, in ms since 1970.
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the name of the connection that was recorded.
+	 */
+	public String getConnectionName() {
+		return connectionName;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
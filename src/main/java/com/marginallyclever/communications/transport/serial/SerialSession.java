@@ -3,6 +3,7 @@ package com.marginallyclever.communications.transport.serial;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
 import com.marginallyclever.communications.transport.TransportLayer;
+import com.marginallyclever.communications.transport.TransportMetrics;
 import jssc.SerialPort;
 import jssc.SerialPortEvent;
 import jssc.SerialPortEventListener;
@@ -10,6 +11,8 @@ import jssc.SerialPortException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+
 
 /**
  * Encapsulate all serial receive/transmit at the session layer of the OSI model.
@@ -25,9 +28,6 @@ public final class SerialSession extends SessionLayer implements SerialPortEvent
 	private String connectionName = "";
 	private boolean portOpened = false;
 
-	// parsing input from outside source
-	private String inputBuffer = "";
-
 	public SerialSession(SerialTransportLayer layer) {
 		super();
 		transportLayer = layer;
@@ -66,6 +66,7 @@ public final class SerialSession extends SessionLayer implements SerialPortEvent
 			serialPort = new SerialPort(portName);
 			serialPort.openPort();// Open serial port
 			serialPort.setParams(baud, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+			resetTransport();
 			serialPort.addEventListener(this);
 	
 			connectionName = portName;
@@ -83,10 +84,10 @@ public final class SerialSession extends SessionLayer implements SerialPortEvent
 		if(!events.isRXCHAR()) return;
 		if(!portOpened) return;
 		
-		String rawInput, oneLine;
-		int x;
-		
 		int len = events.getEventValue();
+		if( len<=0 ) return;
+
+		long cpu = TransportMetrics.threadCpuTime();
 		byte [] buffer;
 		try {
 			buffer = serialPort.readBytes(len);
@@ -94,22 +95,11 @@ public final class SerialSession extends SessionLayer implements SerialPortEvent
 			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.TRANSPORT_ERROR,e.getLocalizedMessage()));
 			return;
 		}
-		
-		if( len<=0 ) return;
-		
-		rawInput = new String(buffer,0,len);
-		inputBuffer += rawInput;
-		
+		if( buffer==null ) return;
+
 		// each line ends with a \n.
-		for( x=inputBuffer.indexOf("\n"); x!=-1; x=inputBuffer.indexOf("\n") ) {
-			x++;
-			oneLine = inputBuffer.substring(0,x);
-			inputBuffer = inputBuffer.substring(x);
-
-			//logger.info("SerialConnection SEND " + msg.trim());
-			
-			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.DATA_AVAILABLE,oneLine));
-		}
+		receiveBytes(ByteBuffer.wrap(buffer));
+		getTransportMetrics().addRead(buffer.length,TransportMetrics.threadCpuTime()-cpu);
 	}
 
 	@Override
@@ -118,7 +108,10 @@ public final class SerialSession extends SessionLayer implements SerialPortEvent
 
 		//logger.info("SerialConnection RECV " + msg.trim());
 		
-		serialPort.writeBytes(msg.getBytes());
+		byte [] bytes = msg.getBytes();
+		serialPort.writeBytes(bytes);
+		recordSent(bytes);
+		getTransportMetrics().addWrite(bytes.length);
 	}
 
 	// connect to the last port
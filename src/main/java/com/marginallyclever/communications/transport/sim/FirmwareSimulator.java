@@ -0,0 +1,552 @@
+package com.marginallyclever.communications.transport.sim;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * <p>A robot controller that runs in this process on a simulated clock, so presentation layers can be tested and
+ * measured without hardware and give the same answer every time.  It speaks enough of
+ * <a href="https://marlinfw.org/">Marlin</a> or <a href="https://github.com/gnea/grbl">GRBL</a> to stream to:</p>
+ * <ul>
+ *     <li>a serial link that moves baud/10 bytes per second each way,</li>
+ *     <li>an RX buffer of fixed size.  Bytes that arrive when it is full are lost and counted as overflows,</li>
+ *     <li>a parser that takes one whole line at a time and spends a fixed time on each command,</li>
+ *     <li>a planner of fixed depth whose first move runs for distance / feed rate, moving the axes of a virtual
+ *     arm as it goes,</li>
+ *     <li>a delay before the host hears each answer, for USB and the operating system, and</li>
+ *     <li>lines damaged on the way in, at a chosen rate, from a seeded random source.</li>
+ * </ul>
+ * <p>Marlin lines may carry a line number and checksum (<code>N12 G1 X3*45</code>).  A damaged line, a bad checksum or
+ * a line number out of order is answered with <code>Resend:</code> and the line is not run.  Lines after it are
+ * ignored and answered the same way until the missing line arrives.  GRBL has no resend; a damaged line is answered
+ * with <code>error:</code>.</p>
+ * <p>Call {@link #advance(double)} to move the clock.  Safe to use from more than one thread.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FirmwareSimulator {
+	public enum Dialect { MARLIN, GRBL }
+
+	private static final double DEFAULT_FEED_RATE = 1000;  // units/min
+	private static final double RAPID_FEED_RATE = 5000;  // units/min
+	// the clock never moves more than this in one step, in seconds.
+	private static final double MAX_STEP = 1e-4;
+
+	private final Dialect dialect;
+	private int rxBufferSize = 128;
+	private int plannerDepth = 16;
+	private double bytesPerSecond = 250000/10.0;
+	private double commandLatency = 0.0005;
+	private double responseLatency = 0.002;
+	private double lineErrorRate = 0;
+	private Random random = new Random(0);
+	private String axes = "XYZUVW";
+	private Consumer<String> listener = (s)->{};
+
+	private double now;
+	// bytes on the wire to the controller, and the fraction of the next byte already sent.
+	private final StringBuilder wire = new StringBuilder();
+	private double wireCredit;
+	private final StringBuilder rx = new StringBuilder();
+	// true if a byte of the line now in rx was damaged on the way in.
+	private boolean rxDamaged;
+	// a line taken from rx that is waiting for the parser, for room in the planner, or for the planner to empty.
+	private String parsing;
+	private boolean parsingDamaged;
+	private double parseRemaining;
+	private boolean parsed;
+	private final Deque<double[]> planner = new ArrayDeque<>();
+	// the move now running.  each block holds the start of every axis, the end of every axis, then the duration.
+	private double blockElapsed;
+	// answers on their way to the host, with the time each arrives.
+	private final Deque<String> responses = new ArrayDeque<>();
+	private final Deque<Double> responseTimes = new ArrayDeque<>();
+
+	// where each axis will be when the planner is empty.
+	private double[] target = new double[axes.length()];
+	// where each axis is now.
+	private double[] position = new double[axes.length()];
+	private double feedRate = DEFAULT_FEED_RATE;
+	private boolean rapid = false;
+	private boolean held = false;
+	// the line number of the last good Marlin line.
+	private long lastLineNumber = 0;
+
+	private long linesProcessed, linesDamaged, resendsRequested, errorsSent, overflows;
+	private double busyTime;
+	private double starvedTime;
+	// the time the planner last ran dry, or -1 if it has not run anything yet or is not empty.
+	private double emptySince = -1;
+
+	public FirmwareSimulator(Dialect dialect) {
+		this.dialect = dialect;
+		if(dialect==Dialect.GRBL) {
+			bytesPerSecond = 115200/10.0;
+			plannerDepth = 15;
+		}
+	}
+
+	// SETTINGS
+
+	/**
+	 * @param size the size of the serial RX buffer in bytes.
+	 */
+	public synchronized void setRxBufferSize(int size) {
+		rxBufferSize = Math.max(1,size);
+	}
+
+	public synchronized int getRxBufferSize() {
+		return rxBufferSize;
+	}
+
+	/**
+	 * @param depth the number of moves the planner holds.
+	 */
+	public synchronized void setPlannerDepth(int depth) {
+		plannerDepth = Math.max(1,depth);
+	}
+
+	public synchronized int getPlannerDepth() {
+		return plannerDepth;
+	}
+
+	public synchronized void setBaud(double baud) {
+		bytesPerSecond = baud/10.0;
+	}
+
+	/**
+	 * @param seconds the time to parse and run one command before it is answered.
+	 */
+	public synchronized void setCommandLatency(double seconds) {
+		commandLatency = Math.max(0,seconds);
+	}
+
+	/**
+	 * @param seconds the time from the controller sending an answer to the host reading it.
+	 */
+	public synchronized void setResponseLatency(double seconds) {
+		responseLatency = Math.max(0,seconds);
+	}
+
+	/**
+	 * @param rate the chance from 0 to 1 that any one line is damaged on the way in.
+	 * @param seed the seed of the random source, so a run can be repeated.
+	 */
+	public synchronized void setLineErrorRate(double rate,long seed) {
+		lineErrorRate = Math.max(0,Math.min(1,rate));
+		random = new Random(seed);
+	}
+
+	/**
+	 * @param axes the letter of each axis of the virtual arm, in order.  For example "XYZUVW".
+	 */
+	public synchronized void setAxes(String axes) {
+		this.axes = axes.toUpperCase(Locale.ROOT);
+		target = new double[axes.length()];
+		position = new double[axes.length()];
+		planner.clear();
+	}
+
+	public synchronized String getAxes() {
+		return axes;
+	}
+
+	public Dialect getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * @param listener hears every line the controller sends, without the newline.  Called inside
+	 *                 {@link #advance(double)}.
+	 */
+	public synchronized void setListener(Consumer<String> listener) {
+		this.listener = listener;
+	}
+
+	// WIRE
+
+	/**
+	 * The host sends bytes.  They reach the controller at the speed of the link.
+	 */
+	public synchronized void write(String data) {
+		wire.append(data);
+	}
+
+	/**
+	 * Move the clock forward.
+	 * @param dt seconds.
+	 */
+	public synchronized void advance(double dt) {
+		while(dt>0) {
+			double step = Math.min(dt,MAX_STEP);
+			if(isIdle()) step = dt;
+			receiveBytes(step);
+			parse(step);
+			runPlanner(step);
+			now += step;
+			deliverResponses();
+			dt -= step;
+		}
+	}
+
+	private void receiveBytes(double dt) {
+		if(wire.length()==0) {
+			wireCredit = 0;
+			return;
+		}
+		wireCredit += dt*bytesPerSecond;
+		int count = Math.min(wire.length(),(int)wireCredit);
+		wireCredit -= count;
+		for(int i=0;i<count;++i) {
+			char c = wire.charAt(i);
+			if(dialect==Dialect.GRBL && isGRBLRealtime(c)) {
+				onGRBLRealtime(c);
+			} else if(rx.length()>=rxBufferSize) {
+				// lost.  the line it belonged to is now damaged.
+				overflows++;
+				rxDamaged = true;
+			} else {
+				rx.append(c);
+			}
+		}
+		wire.delete(0,count);
+	}
+
+	private void parse(double dt) {
+		if(parsing==null) {
+			int end = rx.indexOf("\n");
+			if(end<0) return;
+			parsing = rx.substring(0,end).strip();
+			rx.delete(0,end+1);
+			parsingDamaged = rxDamaged || (lineErrorRate>0 && random.nextDouble()<lineErrorRate);
+			rxDamaged = false;
+			parseRemaining = commandLatency;
+			parsed = false;
+		}
+		if(held) return;
+		parseRemaining -= dt;
+		if(parseRemaining>0) return;
+
+		if(!parsed) {
+			parsed = true;
+			if(parsingDamaged) linesDamaged++;
+			String command = dialect==Dialect.MARLIN ? checkMarlinLine(parsing,parsingDamaged) : parsing;
+			if(command==null) {
+				parsing = null;
+				return;
+			}
+			if(dialect==Dialect.GRBL && parsingDamaged) {
+				errorsSent++;
+				respond("error:2");
+				parsing = null;
+				return;
+			}
+			parsing = command;
+		}
+		if(!execute(parsing)) return;
+		parsing = null;
+		linesProcessed++;
+		respond("ok");
+	}
+
+	/**
+	 * Check the line number and checksum of a Marlin line.
+	 * @return the command without line number and checksum, or null if a resend was asked for.
+	 */
+	private String checkMarlinLine(String line,boolean damaged) {
+		if(!line.startsWith("N")) return line;
+		int star = line.lastIndexOf('*');
+		int space = line.indexOf(' ');
+		long number;
+		try {
+			number = Long.parseLong(line.substring(1,space<0 ? (star<0 ? line.length() : star) : space));
+		} catch (NumberFormatException e) {
+			return requestResend("Error:Line Number is not Last Line Number+1, Last Line: "+lastLineNumber);
+		}
+		if(damaged || star<0 || !checksumMatches(line,star)) {
+			return requestResend("Error:checksum mismatch, Last Line: "+lastLineNumber);
+		}
+		String command = line.substring(space<0 ? star : space,star).strip();
+		// M110 sets the line number.
+		if(command.startsWith("M110")) {
+			lastLineNumber = number;
+			return command;
+		}
+		if(number!=lastLineNumber+1) {
+			return requestResend("Error:Line Number is not Last Line Number+1, Last Line: "+lastLineNumber);
+		}
+		lastLineNumber = number;
+		return command;
+	}
+
+	private static boolean checksumMatches(String line,int star) {
+		byte checksum = 0;
+		for(int i=0;i<star;++i) checksum ^= (byte)line.charAt(i);
+		try {
+			return Integer.parseInt(line.substring(star+1).strip())==checksum;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private String requestResend(String error) {
+		resendsRequested++;
+		respond(error);
+		respond("Resend: "+(lastLineNumber+1));
+		respond("ok");
+		return null;
+	}
+
+	/**
+	 * Run one command.
+	 * @return false if it must wait, for room in the planner or for the planner to empty.
+	 */
+	private boolean execute(String line) {
+		if(line.isEmpty()) return true;
+		String [] words = line.toUpperCase(Locale.ROOT).split("\\s+");
+		String command = words[0];
+		switch(command) {
+			case "G0", "G00" -> { rapid = true; return move(words); }
+			case "G1", "G01" -> { rapid = false; return move(words); }
+			case "G92" -> {
+				if(!planner.isEmpty()) return false;
+				readAxes(words,target);
+				System.arraycopy(target,0,position,0,target.length);
+			}
+			case "M114" -> respond(getM114());
+			case "M400" -> { return planner.isEmpty(); }
+			case "M112" -> reset();
+			default -> {
+				if(command.startsWith("G") || command.startsWith("M") || command.startsWith("$")) break;
+				// a bare move like "X10 Y5" uses the last G0 or G1.
+				return move(words);
+			}
+		}
+		return true;
+	}
+
+	private boolean move(String [] words) {
+		if(planner.size()>=plannerDepth) return false;
+		double [] next = target.clone();
+		boolean moves = readAxes(words,next);
+		if(!moves) return true;
+		double distance = 0;
+		for(int i=0;i<next.length;++i) distance += (next[i]-target[i])*(next[i]-target[i]);
+		distance = Math.sqrt(distance);
+		double feed = rapid ? RAPID_FEED_RATE : feedRate;
+		double duration = feed>0 ? distance/(feed/60.0) : 0;
+
+		int n = target.length;
+		double [] block = new double[n*2+1];
+		System.arraycopy(target,0,block,0,n);
+		System.arraycopy(next,0,block,n,n);
+		block[n*2] = duration;
+		if(planner.isEmpty()) {
+			blockElapsed = 0;
+			if(emptySince>=0) starvedTime += now-emptySince;
+		}
+		emptySince = -1;
+		planner.add(block);
+		target = next;
+		return true;
+	}
+
+	/**
+	 * Read axis words and the feed rate.
+	 * @return true if any axis word was found.
+	 */
+	private boolean readAxes(String [] words,double [] values) {
+		boolean found = false;
+		for(String word : words) {
+			if(word.length()<2) continue;
+			double value;
+			try {
+				value = Double.parseDouble(word.substring(1));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			char letter = word.charAt(0);
+			if(letter=='F') {
+				feedRate = value;
+				continue;
+			}
+			int axis = axes.indexOf(letter);
+			if(axis>=0 && letter!='G' && letter!='M' && letter!='N') {
+				values[axis] = value;
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	private void runPlanner(double dt) {
+		if(planner.isEmpty() || held) return;
+		busyTime += dt;
+		blockElapsed += dt;
+		int n = position.length;
+		while(!planner.isEmpty()) {
+			double [] block = planner.peek();
+			double duration = block[n*2];
+			if(blockElapsed<duration) {
+				double t = blockElapsed/duration;
+				for(int i=0;i<n;++i) position[i] = block[i]+(block[n+i]-block[i])*t;
+				return;
+			}
+			System.arraycopy(block,n,position,0,n);
+			blockElapsed -= duration;
+			planner.remove();
+		}
+		blockElapsed = 0;
+		emptySince = now+dt;
+	}
+
+	private static boolean isGRBLRealtime(char c) {
+		return c=='?' || c=='!' || c=='~' || c==0x18;
+	}
+
+	private void onGRBLRealtime(char c) {
+		switch(c) {
+			case '?' -> respond(getStatus());
+			case '!' -> held = true;
+			case '~' -> held = false;
+			case 0x18 -> {
+				reset();
+				respond("Grbl 1.1h ['$' for help]");
+			}
+			default -> {}
+		}
+	}
+
+	/**
+	 * Stop and forget everything in the buffers, like an emergency stop or a soft reset.  The arm stays where it is.
+	 */
+	private void reset() {
+		rx.setLength(0);
+		rxDamaged = false;
+		parsing = null;
+		planner.clear();
+		blockElapsed = 0;
+		target = position.clone();
+		held = false;
+		emptySince = -1;
+	}
+
+	private void respond(String message) {
+		responses.add(message);
+		responseTimes.add(now+responseLatency+(message.length()+2)/bytesPerSecond);
+	}
+
+	private void deliverResponses() {
+		while(!responseTimes.isEmpty() && responseTimes.peek()<=now+1e-12) {
+			responseTimes.remove();
+			listener.accept(responses.remove());
+		}
+	}
+
+	// REPORTS
+
+	/**
+	 * @return the answer to M114, such as <code>X:0.00 Y:270.00 Z:0.00 Count X:0 Y:0 Z:0</code>.
+	 */
+	public synchronized String getM114() {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<axes.length();++i) {
+			sb.append(axes.charAt(i)).append(':').append(String.format(Locale.ROOT,"%.2f",position[i])).append(' ');
+		}
+		sb.append("Count");
+		for(int i=0;i<axes.length();++i) sb.append(' ').append(axes.charAt(i)).append(":0");
+		return sb.toString();
+	}
+
+	/**
+	 * @return a GRBL 1.1 status report.
+	 */
+	public synchronized String getStatus() {
+		StringBuilder sb = new StringBuilder("<");
+		sb.append(held ? "Hold" : planner.isEmpty() ? "Idle" : "Run").append("|WPos:");
+		for(int i=0;i<position.length;++i) {
+			if(i>0) sb.append(',');
+			sb.append(String.format(Locale.ROOT,"%.3f",position[i]));
+		}
+		sb.append("|Bf:").append(plannerDepth-planner.size()).append(',').append(rxBufferSize-rx.length());
+		sb.append("|FS:").append(planner.isEmpty() ? 0 : (int)feedRate).append(",0>");
+		return sb.toString();
+	}
+
+	/**
+	 * @return true if nothing is on the wire, in the buffers or moving.
+	 */
+	public synchronized boolean isIdle() {
+		return wire.length()==0 && rx.length()==0 && parsing==null && planner.isEmpty() && responses.isEmpty();
+	}
+
+	/**
+	 * @return where each axis of the virtual arm is now, in the order of {@link #getAxes()}.
+	 */
+	public synchronized double[] getPosition() {
+		return Arrays.copyOf(position,position.length);
+	}
+
+	public synchronized double getTime() {
+		return now;
+	}
+
+	public synchronized long getLinesProcessed() {
+		return linesProcessed;
+	}
+
+	/**
+	 * @return the number of lines that arrived damaged, by injection or by overflow.
+	 */
+	public synchronized long getLinesDamaged() {
+		return linesDamaged;
+	}
+
+	public synchronized long getResendsRequested() {
+		return resendsRequested;
+	}
+
+	public synchronized long getErrorsSent() {
+		return errorsSent;
+	}
+
+	/**
+	 * @return the number of bytes lost because the RX buffer was full.
+	 */
+	public synchronized long getOverflows() {
+		return overflows;
+	}
+
+	/**
+	 * @return the time spent moving, in seconds.
+	 */
+	public synchronized double getBusyTime() {
+		return busyTime;
+	}
+
+	/**
+	 * @return the time the planner was empty between two moves, in seconds.  The arm stutters when this is high.
+	 */
+	public synchronized double getStarvedTime() {
+		return starvedTime;
+	}
+
+	public synchronized int getPlannerCount() {
+		return planner.size();
+	}
+
+	public synchronized int getRxCount() {
+		return rx.length();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.ROOT,"%s: %d lines in %.3fs, busy %.1f%%, damaged %d, resends %d, errors %d, overflows %d",
+				dialect,linesProcessed,now,now>0 ? 100*busyTime/now : 0,linesDamaged,resendsRequested,errorsSent,overflows);
+	}
+}
@@ -0,0 +1,167 @@
+package com.marginallyclever.communications.transport.sim;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.TransportLayer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A session with a {@link FirmwareSimulator} in this process.  The connection name is
+ * <code>sim:marlin</code> or <code>sim:grbl</code>, optionally followed by settings such as
+ * <code>sim:marlin?rx=128&amp;planner=16&amp;latency=0.5&amp;errors=0.01&amp;seed=1&amp;baud=250000&amp;axes=XYZUVW</code>.
+ * Latency is in milliseconds and errors is the chance that a line is damaged.</p>
+ * <p>By default the clock of the simulator follows the wall clock, ticked every millisecond by a shared thread.  A
+ * session made with a manual clock only moves when {@link #advance(double)} is called, so tests give the same
+ * answer every time.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SimulatedSession extends SessionLayer {
+	public static final String PREFIX = "sim:";
+	// the clock of a session that follows the wall clock never jumps more than this, in seconds.
+	private static final double MAX_TICK = 0.05;
+	private static final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor((r)->{
+		Thread t = new Thread(r,"SimulatedSession clock");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final TransportLayer transportLayer;
+	private final boolean manualClock;
+	private FirmwareSimulator firmware;
+	private ScheduledFuture<?> ticker;
+	private long lastTick;
+	private String connectionName = "";
+	private volatile boolean portOpened = false;
+
+	public SimulatedSession(TransportLayer layer) {
+		this(layer,false);
+	}
+
+	/**
+	 * @param manualClock true if the simulator only moves when {@link #advance(double)} is called.
+	 */
+	public SimulatedSession(TransportLayer layer,boolean manualClock) {
+		super();
+		this.transportLayer = layer;
+		this.manualClock = manualClock;
+	}
+
+	@Override
+	public void openConnection(String name) throws Exception {
+		if(portOpened) return;
+		firmware = createFirmware(name);
+		firmware.setListener(this::onFirmwareLine);
+		resetTransport();
+		connectionName = name;
+		portOpened = true;
+		if(!manualClock) {
+			lastTick = System.nanoTime();
+			ticker = clock.scheduleAtFixedRate(this::tick,1,1,TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Make a simulator from a connection name.
+	 */
+	public static FirmwareSimulator createFirmware(String name) {
+		String spec = name.startsWith(PREFIX) ? name.substring(PREFIX.length()) : name;
+		String [] parts = spec.split("\\?",2);
+		FirmwareSimulator firmware = new FirmwareSimulator(FirmwareSimulator.Dialect.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)));
+		if(parts.length<2) return firmware;
+
+		double errors = 0;
+		long seed = 0;
+		for(String pair : parts[1].split("&")) {
+			String [] kv = pair.split("=",2);
+			if(kv.length<2) throw new IllegalArgumentException("expected key=value, got "+pair);
+			String value = kv[1].trim();
+			switch(kv[0].trim().toLowerCase(Locale.ROOT)) {
+				case "rx" -> firmware.setRxBufferSize(Integer.parseInt(value));
+				case "planner" -> firmware.setPlannerDepth(Integer.parseInt(value));
+				case "latency" -> firmware.setCommandLatency(Double.parseDouble(value)/1000.0);
+				case "response" -> firmware.setResponseLatency(Double.parseDouble(value)/1000.0);
+				case "baud" -> firmware.setBaud(Double.parseDouble(value));
+				case "errors" -> errors = Double.parseDouble(value);
+				case "seed" -> seed = Long.parseLong(value);
+				case "axes" -> firmware.setAxes(value);
+				default -> throw new IllegalArgumentException("unknown setting "+kv[0]);
+			}
+		}
+		firmware.setLineErrorRate(errors,seed);
+		return firmware;
+	}
+
+	private void tick() {
+		long t = System.nanoTime();
+		double dt = Math.min(MAX_TICK,(t-lastTick)*1e-9);
+		lastTick = t;
+		firmware.advance(dt);
+	}
+
+	/**
+	 * Move the clock of the simulator.  Answers are sent to the listeners before this returns.
+	 * @param dt seconds.
+	 */
+	public void advance(double dt) {
+		if(portOpened) firmware.advance(dt);
+	}
+
+	private void onFirmwareLine(String line) {
+		byte [] bytes = (line+"\n").getBytes(StandardCharsets.ISO_8859_1);
+		receiveBytes(ByteBuffer.wrap(bytes));
+		getTransportMetrics().addRead(bytes.length,0);
+	}
+
+	@Override
+	public void closeConnection() {
+		if(!portOpened) return;
+		portOpened = false;
+		if(ticker!=null) ticker.cancel(false);
+		ticker = null;
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.CONNECTION_CLOSED,null));
+	}
+
+	@Override
+	public void reconnect() throws Exception {
+		openConnection(connectionName);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return portOpened;
+	}
+
+	@Override
+	public String getName() {
+		return connectionName;
+	}
+
+	@Override
+	public void sendMessage(String msg) throws Exception {
+		if(!portOpened) return;
+		firmware.write(msg);
+		recordSent(msg.getBytes(StandardCharsets.ISO_8859_1));
+		getTransportMetrics().addWrite(msg.length());
+	}
+
+	@Override
+	public TransportLayer getTransportLayer() {
+		return transportLayer;
+	}
+
+	/**
+	 * @return the simulated controller, to read its position and counters.
+	 */
+	public FirmwareSimulator getFirmware() {
+		return firmware;
+	}
+}
@@ -0,0 +1,41 @@
+package com.marginallyclever.communications.transport.sim;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.transport.TransportLayer;
+import com.marginallyclever.communications.transport.TransportLayerPanel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens a {@link SimulatedSession} to a controller that runs in this process.  For trying the app and testing the
+ * presentation layers without hardware.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SimulatedTransportLayer implements TransportLayer {
+	private static final Logger logger = LoggerFactory.getLogger(SimulatedTransportLayer.class);
+
+	public SimulatedTransportLayer() {}
+
+	/**
+	 * @param connectionName see {@link SimulatedSession} for the format.
+	 * @return the session, or null if the name could not be understood.
+	 */
+	@Override
+	public SessionLayer openConnection(String connectionName) {
+		SimulatedSession session = new SimulatedSession(this);
+		try {
+			session.openConnection(connectionName);
+		} catch (Exception e) {
+			logger.error("could not open "+connectionName+": "+e.getMessage());
+			return null;
+		}
+		return session;
+	}
+
+	@Override
+	public TransportLayerPanel getTransportLayerPanel() {
+		return new SimulatedTransportLayerPanel(this);
+	}
+}
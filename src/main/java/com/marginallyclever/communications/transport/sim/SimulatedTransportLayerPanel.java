@@ -0,0 +1,61 @@
+package com.marginallyclever.communications.transport.sim;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.transport.TransportLayerPanel;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.util.Locale;
+
+/**
+ * A panel for choosing the firmware and the limits of a simulated controller.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SimulatedTransportLayerPanel extends TransportLayerPanel {
+	private final SimulatedTransportLayer layer;
+	private final JComboBox<FirmwareSimulator.Dialect> dialectBox = new JComboBox<>(FirmwareSimulator.Dialect.values());
+	private final JSpinner rxSpinner;
+	private final JSpinner plannerSpinner;
+	private final JSpinner latencySpinner;
+	private final JSpinner errorSpinner;
+
+	private static FirmwareSimulator.Dialect lastDialect = FirmwareSimulator.Dialect.MARLIN;
+	private static int lastRx = 128;
+	private static int lastPlanner = 16;
+	private static double lastLatency = 0.5;
+	private static double lastErrors = 0;
+
+	public SimulatedTransportLayerPanel(SimulatedTransportLayer layer) {
+		this.layer = layer;
+
+		this.setBorder(new EmptyBorder(5,5,5,5));
+		this.setLayout(new GridLayout(0, 1));
+		this.add(new JLabel("Firmware",JLabel.LEADING));
+		this.add(dialectBox);
+		this.add(new JLabel("RX buffer (bytes)",JLabel.LEADING));
+		this.add(rxSpinner = new JSpinner(new SpinnerNumberModel(lastRx,16,65536,16)));
+		this.add(new JLabel("Planner depth",JLabel.LEADING));
+		this.add(plannerSpinner = new JSpinner(new SpinnerNumberModel(lastPlanner,1,256,1)));
+		this.add(new JLabel("Command latency (ms)",JLabel.LEADING));
+		this.add(latencySpinner = new JSpinner(new SpinnerNumberModel(lastLatency,0,1000,0.1)));
+		this.add(new JLabel("Damaged lines (0...1)",JLabel.LEADING));
+		this.add(errorSpinner = new JSpinner(new SpinnerNumberModel(lastErrors,0,1,0.01)));
+
+		dialectBox.setSelectedItem(lastDialect);
+	}
+
+	@Override
+	public SessionLayer openConnection() {
+		lastDialect = (FirmwareSimulator.Dialect)dialectBox.getSelectedItem();
+		lastRx = ((Number)rxSpinner.getValue()).intValue();
+		lastPlanner = ((Number)plannerSpinner.getValue()).intValue();
+		lastLatency = ((Number)latencySpinner.getValue()).doubleValue();
+		lastErrors = ((Number)errorSpinner.getValue()).doubleValue();
+		return layer.openConnection(String.format(Locale.ROOT,"%s%s?rx=%d&planner=%d&latency=%s&errors=%s&seed=%d",
+				SimulatedSession.PREFIX,lastDialect.name().toLowerCase(Locale.ROOT),lastRx,lastPlanner,
+				lastLatency,lastErrors,System.nanoTime()));
+	}
+}
@@ -0,0 +1,127 @@
+package com.marginallyclever.communications.transport.tcp;
+
+import com.marginallyclever.communications.transport.SessionEventLoop;
+import com.marginallyclever.communications.transport.TransportMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * <p>A stand-in controller on this computer, for testing {@link RawTCPSession} without a network.  Every line a
+ * client sends is passed to a responder and the answer, if any, is sent back with a newline.  The default answers
+ * "ok" to everything, like a controller that is never busy.</p>
+ * <p>Clients are served by their own {@link SessionEventLoop}.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class LoopbackServer implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(LoopbackServer.class);
+
+	private final ServerSocketChannel server;
+	private final SessionEventLoop loop;
+	private final Thread acceptThread;
+	private final Function<String,String> responder;
+	private final List<SessionEventLoop.Connection> clients = new CopyOnWriteArrayList<>();
+
+	public LoopbackServer() throws IOException {
+		this((line)->"ok");
+	}
+
+	/**
+	 * @param responder turns each line received into an answer.  Null means no answer.
+	 */
+	public LoopbackServer(Function<String,String> responder) throws IOException {
+		this.responder = responder;
+		loop = new SessionEventLoop();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("127.0.0.1",0));
+		acceptThread = new Thread(this::acceptClients,"LoopbackServer");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	/**
+	 * @return the address to give {@link RawTCPSession#openConnection(String)}.
+	 */
+	public String getAddress() throws IOException {
+		InetSocketAddress address = (InetSocketAddress)server.getLocalAddress();
+		return RawTCPSession.PREFIX+address.getHostString()+":"+address.getPort();
+	}
+
+	private void acceptClients() {
+		while(server.isOpen()) {
+			try {
+				SocketChannel channel = server.accept();
+				channel.socket().setTcpNoDelay(true);
+				loop.register(channel,new Client(),new TransportMetrics());
+			} catch (IOException e) {
+				if(server.isOpen()) logger.warn("accept failed: "+e.getMessage());
+			}
+		}
+	}
+
+	private class Client implements SessionEventLoop.Handler {
+		private SessionEventLoop.Connection connection;
+		private final StringBuilder line = new StringBuilder();
+
+		@Override
+		public void onRegistered(SessionEventLoop.Connection connection) {
+			this.connection = connection;
+			clients.add(connection);
+		}
+
+		@Override
+		public void onBytes(ByteBuffer data) {
+			StringBuilder reply = null;
+			while(data.hasRemaining()) {
+				char c = (char)(data.get() & 0xFF);
+				if(c!='\n') {
+					line.append(c);
+					continue;
+				}
+				String answer = responder.apply(line.toString().trim());
+				line.setLength(0);
+				if(answer==null) continue;
+				if(reply==null) reply = new StringBuilder();
+				reply.append(answer).append('\n');
+			}
+			// one write for every line in this read.
+			if(reply!=null) connection.write(ByteBuffer.wrap(reply.toString().getBytes(StandardCharsets.ISO_8859_1)));
+		}
+
+		@Override
+		public void onClosed(IOException cause) {
+			clients.remove(connection);
+		}
+	}
+
+	/**
+	 * Send a line to every client, as if the controller said something on its own.
+	 */
+	public void broadcast(String line) {
+		for(SessionEventLoop.Connection c : clients) {
+			c.write(ByteBuffer.wrap((line+"\n").getBytes(StandardCharsets.ISO_8859_1)));
+		}
+	}
+
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		for(SessionEventLoop.Connection c : clients) c.close();
+	}
+}
@@ -0,0 +1,111 @@
+package com.marginallyclever.communications.transport.tcp;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.SessionEventLoop;
+import com.marginallyclever.communications.transport.TransportLayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A plain TCP connection to a controller, such as a serial-to-network bridge.  The socket is read and written by the
+ * shared {@link SessionEventLoop}, so a dozen controllers cost one thread.
+ * The connection name is <code>tcp://host:port</code> or <code>host:port</code>.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public final class RawTCPSession extends SessionLayer implements SessionEventLoop.Handler {
+	private static final Logger logger = LoggerFactory.getLogger(RawTCPSession.class);
+	public static final String PREFIX = "tcp://";
+
+	private final TransportLayer transportLayer;
+	private final SessionEventLoop loop;
+	private SessionEventLoop.Connection connection;
+	private String connectionName = "";
+	private volatile boolean portOpened = false;
+
+	public RawTCPSession(TransportLayer layer) throws IOException {
+		this(layer,SessionEventLoop.getShared());
+	}
+
+	public RawTCPSession(TransportLayer layer,SessionEventLoop loop) {
+		super();
+		this.transportLayer = layer;
+		this.loop = loop;
+	}
+
+	@Override
+	public void openConnection(String address) throws Exception {
+		if(portOpened) return;
+		String hostAndPort = address.startsWith(PREFIX) ? address.substring(PREFIX.length()) : address;
+		int i = hostAndPort.lastIndexOf(':');
+		if(i<0) throw new IllegalArgumentException("expected host:port, got "+address);
+		String host = hostAndPort.substring(0,i);
+		int port = Integer.parseInt(hostAndPort.substring(i+1));
+
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(host,port));
+		channel.socket().setTcpNoDelay(true);
+		resetTransport();
+		connectionName = address;
+		portOpened = true;
+		connection = loop.register(channel,this,getTransportMetrics());
+	}
+
+	@Override
+	public void closeConnection() {
+		if(!portOpened) return;
+		portOpened = false;
+		if(connection!=null) connection.close();
+	}
+
+	@Override
+	public void onBytes(ByteBuffer data) {
+		if(portOpened) receiveBytes(data);
+	}
+
+	@Override
+	public void onClosed(IOException cause) {
+		if(!portOpened) return;
+		portOpened = false;
+		if(cause!=null) {
+			logger.warn(connectionName+" closed: "+cause.getMessage());
+			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.TRANSPORT_ERROR,cause.getLocalizedMessage()));
+		}
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.CONNECTION_CLOSED,null));
+	}
+
+	@Override
+	public void sendMessage(String msg) throws Exception {
+		if(!portOpened) return;
+		byte [] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+		recordSent(bytes);
+		connection.write(ByteBuffer.wrap(bytes));
+	}
+
+	@Override
+	public void reconnect() throws Exception {
+		openConnection(connectionName);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return portOpened;
+	}
+
+	@Override
+	public String getName() {
+		return connectionName;
+	}
+
+	@Override
+	public TransportLayer getTransportLayer() {
+		return transportLayer;
+	}
+}
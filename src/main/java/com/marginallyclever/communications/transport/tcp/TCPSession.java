@@ -5,23 +5,27 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.SessionEventLoop;
 import com.marginallyclever.communications.transport.TransportLayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 
 /**
- * SSH TCP/IP connection to a Raspberry Pi and then open a picocom session to /dev/ttyACM0
+ * <p>SSH TCP/IP connection to a Raspberry Pi and then open a picocom session to /dev/ttyACM0</p>
+ * <p>The SSH channel is read by {@link SessionEventLoop#readStream} with blocking reads of everything available, so
+ * a quiet connection costs no CPU.</p>
  * @author Dan Royer 
  * @since 1.6.0 (2020-04-08)
  */
-public final class TCPSession extends SessionLayer implements Runnable {
+public final class TCPSession extends SessionLayer implements SessionEventLoop.Handler {
 	private static final Logger logger = LoggerFactory.getLogger(TCPSession.class);
     private static final String SHELL_TO_SERIAL_COMMAND = " ~/Robot-Overlord-App/arduino/connect.sh";
 	private static final int DEFAULT_TCP_PORT = 22;
@@ -29,17 +33,12 @@ public final class TCPSession extends SessionLayer implements Runnable {
     private JSch jsch=new JSch();
     private Session session;
     private ChannelExec channel;
-    private BufferedReader inputStream;
-    private PrintWriter outputStream;
+    private InputStream inputStream;
+    private OutputStream outputStream;
     
 	private TransportLayer transportLayer;
 	private String connectionName = "";
-	private boolean portOpened = false;
-	private Thread thread;
-	private boolean keepPolling;
-
-	
-	private String inputBuffer = "";
+	private volatile boolean portOpened = false;
 
 	
 	public TCPSession(TransportLayer layer) {
@@ -85,30 +84,26 @@ public final class TCPSession extends SessionLayer implements Runnable {
 	    channel.setCommand(SHELL_TO_SERIAL_COMMAND);
 	    channel.connect();
 	    // remember the data streams
-	    inputStream = new BufferedReader(new InputStreamReader(channel.getInputStream()));
-	    outputStream = new PrintWriter(channel.getOutputStream());
+	    inputStream = channel.getInputStream();
+	    outputStream = channel.getOutputStream();
 	    
 		connectionName = ipAddress;
+		resetTransport();
 		portOpened = true;
-		keepPolling=true;
-
-		thread = new Thread(this);
-		thread.start();
+		SessionEventLoop.readStream(inputStream,this,getTransportMetrics());
 	}
 
 	@Override
 	public void closeConnection() {
 		if (!portOpened) return;
+		portOpened = false;
 		if (channel != null) {
-			keepPolling=false;
-
-			outputStream.flush();
-			outputStream.close();
 			try {
+				outputStream.flush();
+				outputStream.close();
 				inputStream.close();
 			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.warn("close failed: "+e.getMessage());
 			}
 			channel.disconnect();
 			channel = null;
@@ -117,52 +112,21 @@ public final class TCPSession extends SessionLayer implements Runnable {
 			session.disconnect();
 			session=null;
 		}
-		portOpened = false;
 	}
 	
-	// Begins when Thread.start() is called in the constructor
 	@Override
-	public void run() {
-		StringBuilder input = new StringBuilder();
-		
-		while(keepPolling) {
-			try {
-				if(inputStream.ready()) {
-					input.append((char)inputStream.read());
-				}
-				String inputAsString = input.toString();
-				if(inputAsString.endsWith("\n")) {
-					dataAvailable(inputAsString.length(),inputAsString);
-					input.setLength(0);
-				}
-			}
-			catch (IOException e) {
-				e.printStackTrace();
-				closeConnection();
-			}
-		}
+	public void onBytes(ByteBuffer data) {
+		if(portOpened) receiveBytes(data);
 	}
 
-	protected void dataAvailable(int len,String message) {
-		if( !portOpened || len==0 ) return;
-		
-		inputBuffer += message;
-		
-		// each line ends with a \n.
-		int x;
-
-		for( x=inputBuffer.indexOf("\n"); x!=-1; x=inputBuffer.indexOf("\n") ) {
-			// include \n in line.
-			++x;
-			// extract the line
-			String oneLine = inputBuffer.substring(0,x).trim();
-			inputBuffer = inputBuffer.substring(x);
-
-			if(oneLine.isEmpty()) return;
-			
-			reportDataReceived(oneLine);
-			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.DATA_AVAILABLE,oneLine));
+	@Override
+	public void onClosed(IOException cause) {
+		if(!portOpened) return;
+		if(cause!=null) {
+			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.TRANSPORT_ERROR,cause.getLocalizedMessage()));
 		}
+		closeConnection();
+		notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.CONNECTION_CLOSED,null));
 	}
 
 	@Override
@@ -170,11 +134,14 @@ public final class TCPSession extends SessionLayer implements Runnable {
 		if( !portOpened || outputStream==null ) return;
 
 		try {
-			outputStream.write(msg);
+			byte [] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+			outputStream.write(bytes);
 			outputStream.flush();
+			recordSent(bytes);
+			getTransportMetrics().addWrite(bytes.length);
 			reportDataSent(msg);
 		}
-		catch(IndexOutOfBoundsException e1) {
+		catch(IndexOutOfBoundsException | IOException e1) {
 			notifyListeners(new SessionLayerEvent(this, SessionLayerEvent.TRANSPORT_ERROR,e1.getLocalizedMessage()));
 		}
 	}
@@ -7,7 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Lists available TCP connections and opens a connection of that type to a robot
+ * Lists available TCP connections and opens a connection of that type to a robot.  A name that starts with
+ * {@value RawTCPSession#PREFIX} opens a {@link RawTCPSession}, anything else opens a {@link TCPSession} over SSH.
  *
  * @author Dan
  * @since v7.1.0.0
@@ -33,9 +34,12 @@ public class TCPTransportLayer implements TransportLayer {
 
 		logger.info("Connecting to " + parts[parts.length - 1]);
 		// if(connectionName.equals(recentPort)) return null;
-		TCPSession connection = new TCPSession(this);
+		SessionLayer connection;
 
 		try {
+			// tcp://host:port is a plain socket.  anything else is SSH to a Raspberry Pi.
+			if(connectionName.startsWith(RawTCPSession.PREFIX)) connection = new RawTCPSession(this);
+			else connection = new TCPSession(this);
 			connection.openConnection(connectionName);
 			logger.info("Connect OK");
 		} catch (Exception e) {
@@ -18,10 +18,12 @@ public class TCPTransportLayerPanel extends TransportLayerPanel {
 	private final JTextField portField;
 	private final JTextField userField;
 	private final JPasswordField passwordField;
+	private final JCheckBox sshBox;
 	private static String userName = "pi";
 	private static String portNumber = "22";
 	private static String connectionName = "raspberrypi";
 	private static String lastPassword = "";
+	private static boolean useSSH = true;
 	
 	TCPTransportLayerPanel(TCPTransportLayer tcpLayer) {
 		this.layer=tcpLayer;
@@ -36,6 +38,7 @@ public class TCPTransportLayerPanel extends TransportLayerPanel {
 		this.add(userField = new JTextField(userName));
 		this.add(new JLabel("Password",JLabel.LEADING));
 		this.add(passwordField = new JPasswordField());
+		this.add(sshBox = new JCheckBox("SSH to a serial port",useSSH));
 		
 		connectionField.setText(connectionName);
 		portField.setText(portNumber);
@@ -48,6 +51,8 @@ public class TCPTransportLayerPanel extends TransportLayerPanel {
 		portNumber = portField.getText();
 		userName = userField.getText();
 		lastPassword = String.copyValueOf(passwordField.getPassword());
+		useSSH = sshBox.isSelected();
+		if(!useSSH) return layer.openConnection(RawTCPSession.PREFIX+connectionName+":"+portNumber);
 		return layer.openConnection(userName+":"+lastPassword+"@"+connectionField.getText()+":"+portNumber);
 	}
 }
@@ -0,0 +1,334 @@
+package com.marginallyclever.convenience.helpers;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * <p>Matrix math on flat, row-major <code>double[]</code> arrays.  Element (row,col) of a matrix with n columns is
+ * at <code>row*n+col</code>.  4x4 methods also take an offset so many matrices can live in one array, one after
+ * the other.</p>
+ * <p>Nothing here allocates.  The caller provides every output and any scratch space, so these methods are safe
+ * to use in the inner loops of forward kinematics, inverse kinematics and jacobians.  Unless a method says
+ * otherwise, outputs must not overlap inputs.</p>
+ * <p>Compare with {@link MatrixHelper}, which works on <code>double[][]</code> and returns new arrays.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class FlatMatrixHelper {
+    public static final int MATRIX4_SIZE = 16;
+    private static final double EPSILON = 1e-12;
+
+    /**
+     * @param m will be set to the 4x4 identity.
+     * @param mo where the matrix starts in m.
+     */
+    public static void identity4(double[] m, int mo) {
+        for (int i = 0; i < MATRIX4_SIZE; ++i) m[mo + i] = (i % 5 == 0) ? 1 : 0;
+    }
+
+    /**
+     * @param m the matrix to copy.
+     * @param out will be filled with 16 doubles, row major.
+     * @param offset where to start writing.
+     */
+    public static void fromMatrix4d(Matrix4d m, double[] out, int offset) {
+        out[offset     ] = m.m00;  out[offset +  1] = m.m01;  out[offset +  2] = m.m02;  out[offset +  3] = m.m03;
+        out[offset +  4] = m.m10;  out[offset +  5] = m.m11;  out[offset +  6] = m.m12;  out[offset +  7] = m.m13;
+        out[offset +  8] = m.m20;  out[offset +  9] = m.m21;  out[offset + 10] = m.m22;  out[offset + 11] = m.m23;
+        out[offset + 12] = m.m30;  out[offset + 13] = m.m31;  out[offset + 14] = m.m32;  out[offset + 15] = m.m33;
+    }
+
+    /**
+     * @param m 16 doubles, row major.
+     * @param offset where to start reading.
+     * @param result will be filled with the matrix.
+     */
+    public static void toMatrix4d(double[] m, int offset, Matrix4d result) {
+        result.m00 = m[offset     ];  result.m01 = m[offset +  1];  result.m02 = m[offset +  2];  result.m03 = m[offset +  3];
+        result.m10 = m[offset +  4];  result.m11 = m[offset +  5];  result.m12 = m[offset +  6];  result.m13 = m[offset +  7];
+        result.m20 = m[offset +  8];  result.m21 = m[offset +  9];  result.m22 = m[offset + 10];  result.m23 = m[offset + 11];
+        result.m30 = m[offset + 12];  result.m31 = m[offset + 13];  result.m32 = m[offset + 14];  result.m33 = m[offset + 15];
+    }
+
+    /**
+     * c = a * b for 4x4 matrices.
+     */
+    public static void multiply4(double[] a, int ao, double[] b, int bo, double[] c, int co) {
+        for (int row = 0; row < 4; ++row) {
+            int ar = ao + row * 4;
+            double a0 = a[ar], a1 = a[ar + 1], a2 = a[ar + 2], a3 = a[ar + 3];
+            int cr = co + row * 4;
+            c[cr    ] = a0 * b[bo    ] + a1 * b[bo + 4] + a2 * b[bo +  8] + a3 * b[bo + 12];
+            c[cr + 1] = a0 * b[bo + 1] + a1 * b[bo + 5] + a2 * b[bo +  9] + a3 * b[bo + 13];
+            c[cr + 2] = a0 * b[bo + 2] + a1 * b[bo + 6] + a2 * b[bo + 10] + a3 * b[bo + 14];
+            c[cr + 3] = a0 * b[bo + 3] + a1 * b[bo + 7] + a2 * b[bo + 11] + a3 * b[bo + 15];
+        }
+    }
+
+    /**
+     * c = inverse(a) for a 4x4 matrix made only of rotation and translation.  Much faster than {@link #invert4}.
+     */
+    public static void invertRigid4(double[] a, int ao, double[] c, int co) {
+        double tx = a[ao + 3], ty = a[ao + 7], tz = a[ao + 11];
+        for (int row = 0; row < 3; ++row) {
+            double r0 = a[ao + row], r1 = a[ao + 4 + row], r2 = a[ao + 8 + row];
+            int cr = co + row * 4;
+            c[cr    ] = r0;
+            c[cr + 1] = r1;
+            c[cr + 2] = r2;
+            c[cr + 3] = -(r0 * tx + r1 * ty + r2 * tz);
+        }
+        c[co + 12] = 0;
+        c[co + 13] = 0;
+        c[co + 14] = 0;
+        c[co + 15] = 1;
+    }
+
+    /**
+     * c = inverse(a) for any 4x4 matrix, by cofactors.
+     * @return false if a is singular.  c is not changed.
+     */
+    public static boolean invert4(double[] a, int ao, double[] c, int co) {
+        double a00 = a[ao     ], a01 = a[ao +  1], a02 = a[ao +  2], a03 = a[ao +  3];
+        double a10 = a[ao +  4], a11 = a[ao +  5], a12 = a[ao +  6], a13 = a[ao +  7];
+        double a20 = a[ao +  8], a21 = a[ao +  9], a22 = a[ao + 10], a23 = a[ao + 11];
+        double a30 = a[ao + 12], a31 = a[ao + 13], a32 = a[ao + 14], a33 = a[ao + 15];
+
+        double b00 = a00 * a11 - a01 * a10;
+        double b01 = a00 * a12 - a02 * a10;
+        double b02 = a00 * a13 - a03 * a10;
+        double b03 = a01 * a12 - a02 * a11;
+        double b04 = a01 * a13 - a03 * a11;
+        double b05 = a02 * a13 - a03 * a12;
+        double b06 = a20 * a31 - a21 * a30;
+        double b07 = a20 * a32 - a22 * a30;
+        double b08 = a20 * a33 - a23 * a30;
+        double b09 = a21 * a32 - a22 * a31;
+        double b10 = a21 * a33 - a23 * a31;
+        double b11 = a22 * a33 - a23 * a32;
+
+        double det = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+        if (Math.abs(det) < EPSILON) return false;
+        double inv = 1.0 / det;
+
+        c[co     ] = ( a11 * b11 - a12 * b10 + a13 * b09) * inv;
+        c[co +  1] = (-a01 * b11 + a02 * b10 - a03 * b09) * inv;
+        c[co +  2] = ( a31 * b05 - a32 * b04 + a33 * b03) * inv;
+        c[co +  3] = (-a21 * b05 + a22 * b04 - a23 * b03) * inv;
+        c[co +  4] = (-a10 * b11 + a12 * b08 - a13 * b07) * inv;
+        c[co +  5] = ( a00 * b11 - a02 * b08 + a03 * b07) * inv;
+        c[co +  6] = (-a30 * b05 + a32 * b02 - a33 * b01) * inv;
+        c[co +  7] = ( a20 * b05 - a22 * b02 + a23 * b01) * inv;
+        c[co +  8] = ( a10 * b10 - a11 * b08 + a13 * b06) * inv;
+        c[co +  9] = (-a00 * b10 + a01 * b08 - a03 * b06) * inv;
+        c[co + 10] = ( a30 * b04 - a31 * b02 + a33 * b00) * inv;
+        c[co + 11] = (-a20 * b04 + a21 * b02 - a23 * b00) * inv;
+        c[co + 12] = (-a10 * b09 + a11 * b07 - a12 * b06) * inv;
+        c[co + 13] = ( a00 * b09 - a01 * b07 + a02 * b06) * inv;
+        c[co + 14] = (-a30 * b03 + a31 * b01 - a32 * b00) * inv;
+        c[co + 15] = ( a20 * b03 - a21 * b01 + a22 * b00) * inv;
+        return true;
+    }
+
+    /**
+     * c = a * b, where a is m*k and b is k*n.  c is m*n.
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n) {
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int x = 0; x < k; ++x) sum += a[i * k + x] * b[x * n + j];
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * c = a * transpose(b), where a is m*k and b is n*k.  c is m*n.
+     */
+    public static void multiplyABt(double[] a, double[] b, double[] c, int m, int k, int n) {
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int x = 0; x < k; ++x) sum += a[i * k + x] * b[j * k + x];
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * c = transpose(a) * b, where a is k*m and b is k*n.  c is m*n.
+     */
+    public static void multiplyAtB(double[] a, double[] b, double[] c, int m, int k, int n) {
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int x = 0; x < k; ++x) sum += a[x * m + i] * b[x * n + j];
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * @param a rows*cols.
+     * @param out will be filled with cols*rows.
+     */
+    public static void transpose(double[] a, int rows, int cols, double[] out) {
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < cols; ++j) {
+                out[j * rows + i] = a[i * cols + j];
+            }
+        }
+    }
+
+    /**
+     * y = a * x, where a is rows*cols.
+     */
+    public static void multiplyVector(double[] a, int rows, int cols, double[] x, double[] y) {
+        for (int i = 0; i < rows; ++i) {
+            double sum = 0;
+            for (int j = 0; j < cols; ++j) sum += a[i * cols + j] * x[j];
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * y = transpose(a) * x, where a is rows*cols.
+     */
+    public static void multiplyTransposeVector(double[] a, int rows, int cols, double[] x, double[] y) {
+        for (int j = 0; j < cols; ++j) {
+            double sum = 0;
+            for (int i = 0; i < rows; ++i) sum += a[i * cols + j] * x[i];
+            y[j] = sum;
+        }
+    }
+
+    /**
+     * Solve a * x = b by gaussian elimination with partial pivoting.  a and b are destroyed.  The answer is left in b.
+     * @param a n*n.
+     * @param b n.
+     * @return false if a is singular.
+     */
+    public static boolean solve(double[] a, double[] b, int n) {
+        for (int col = 0; col < n; ++col) {
+            int pivot = col;
+            for (int row = col + 1; row < n; ++row) {
+                if (Math.abs(a[row * n + col]) > Math.abs(a[pivot * n + col])) pivot = row;
+            }
+            if (Math.abs(a[pivot * n + col]) < EPSILON) return false;
+            if (pivot != col) {
+                swapRows(a, 0, n, col, pivot);
+                double t = b[col];
+                b[col] = b[pivot];
+                b[pivot] = t;
+            }
+            for (int row = col + 1; row < n; ++row) {
+                double f = a[row * n + col] / a[col * n + col];
+                for (int k = col; k < n; ++k) a[row * n + k] -= f * a[col * n + k];
+                b[row] -= f * b[col];
+            }
+        }
+        for (int row = n - 1; row >= 0; --row) {
+            double sum = b[row];
+            for (int k = row + 1; k < n; ++k) sum -= a[row * n + k] * b[k];
+            b[row] = sum / a[row * n + row];
+        }
+        return true;
+    }
+
+    /**
+     * out = inverse(a) by Gauss-Jordan elimination with partial pivoting.
+     * @param a n*n.  Not changed.
+     * @param n the size of a.
+     * @param out n*n.  Will be filled with the inverse.
+     * @param scratch at least n*n doubles.
+     * @return false if a is singular.
+     */
+    public static boolean invert(double[] a, int n, double[] out, double[] scratch) {
+        return invert(a, 0, n, out, 0, scratch, 0);
+    }
+
+    private static boolean invert(double[] a, int ao, int n, double[] out, int oo, double[] work, int wo) {
+        System.arraycopy(a, ao, work, wo, n * n);
+        for (int i = 0; i < n * n; ++i) out[oo + i] = (i % (n + 1) == 0) ? 1 : 0;
+
+        for (int col = 0; col < n; ++col) {
+            int pivot = col;
+            for (int row = col + 1; row < n; ++row) {
+                if (Math.abs(work[wo + row * n + col]) > Math.abs(work[wo + pivot * n + col])) pivot = row;
+            }
+            if (Math.abs(work[wo + pivot * n + col]) < EPSILON) return false;
+            if (pivot != col) {
+                swapRows(work, wo, n, col, pivot);
+                swapRows(out, oo, n, col, pivot);
+            }
+            double inv = 1.0 / work[wo + col * n + col];
+            for (int k = 0; k < n; ++k) {
+                work[wo + col * n + k] *= inv;
+                out[oo + col * n + k] *= inv;
+            }
+            for (int row = 0; row < n; ++row) {
+                if (row == col) continue;
+                double f = work[wo + row * n + col];
+                if (f == 0) continue;
+                for (int k = 0; k < n; ++k) {
+                    work[wo + row * n + k] -= f * work[wo + col * n + k];
+                    out[oo + row * n + k] -= f * out[oo + col * n + k];
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void swapRows(double[] a, int ao, int n, int r0, int r1) {
+        for (int k = 0; k < n; ++k) {
+            double t = a[ao + r0 * n + k];
+            a[ao + r0 * n + k] = a[ao + r1 * n + k];
+            a[ao + r1 * n + k] = t;
+        }
+    }
+
+    /**
+     * Damped pseudo-inverse of a rows*cols matrix such as a 6*N jacobian.
+     * <ul>
+     *     <li>rows &lt;= cols: transpose(j) * inverse(j * transpose(j) + lambda^2 * I)</li>
+     *     <li>rows &gt; cols: inverse(transpose(j) * j + lambda^2 * I) * transpose(j)</li>
+     * </ul>
+     * @param j rows*cols.
+     * @param lambda the damping.  Zero for the Moore-Penrose pseudo-inverse.
+     * @param out cols*rows.  Will be filled with the pseudo-inverse.
+     * @param scratch at least 3*min(rows,cols)^2 doubles.
+     * @return false if the matrix is singular.
+     */
+    public static boolean pseudoInverse(double[] j, int rows, int cols, double lambda, double[] out, double[] scratch) {
+        int n = Math.min(rows, cols);
+        int nn = n * n;
+        // scratch holds three n*n blocks: the square matrix, its inverse, and work space.
+        if (rows <= cols) multiplyABt(j, j, scratch, rows, cols, rows);
+        else multiplyAtB(j, j, scratch, cols, rows, cols);
+        for (int i = 0; i < n; ++i) scratch[i * n + i] += lambda * lambda;
+
+        if (!invert(scratch, 0, n, scratch, nn, scratch, 2 * nn)) return false;
+
+        if (rows <= cols) {
+            // out (cols*rows) = transpose(j) * inverse
+            for (int r = 0; r < cols; ++r) {
+                for (int c = 0; c < rows; ++c) {
+                    double sum = 0;
+                    for (int x = 0; x < rows; ++x) sum += j[x * cols + r] * scratch[nn + x * n + c];
+                    out[r * rows + c] = sum;
+                }
+            }
+        } else {
+            // out (cols*rows) = inverse * transpose(j)
+            for (int r = 0; r < cols; ++r) {
+                for (int c = 0; c < rows; ++c) {
+                    double sum = 0;
+                    for (int x = 0; x < cols; ++x) sum += scratch[nn + r * n + x] * j[c * cols + x];
+                    out[r * rows + c] = sum;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -79,6 +79,7 @@ public class MainMenu extends JMenuBar {
         menu.add(new JMenuItem(UndoSystem.getCommandRedo()));
         menu.add(new JSeparator());
         menu.add(new JMenuItem(new EditPreferencesAction(app,this)));
+        menu.add(new JMenuItem(new ShowFleetPanelAction(app.getFleet())));
         return menu;
     }
 
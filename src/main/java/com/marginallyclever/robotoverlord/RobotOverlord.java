@@ -1,5 +1,6 @@
 package com.marginallyclever.robotoverlord;
 
+import com.marginallyclever.communications.fleet.FleetManager;
 import com.marginallyclever.convenience.helpers.PathHelper;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.convenience.log.LogPanel3;
@@ -102,6 +103,11 @@ public class RobotOverlord {
 
 	private final SystemManager systemManager;
 
+	/**
+	 * Every controller connected through the fleet panel.  Closed when the app closes.
+	 */
+	private final FleetManager fleet = new FleetManager();
+
 	public RobotOverlord() {
 		super();
 
@@ -248,6 +254,7 @@ public class RobotOverlord {
 			// Run this on another thread than the AWT event queue to make sure the call to Animator.stop() completes before exiting
 			new Thread(() -> {
 				renderPanel.stopAnimationSystem();
+				fleet.closeAll();
 				mainFrame.dispose();
 				Log.end();
 			}).start();
@@ -264,6 +271,10 @@ public class RobotOverlord {
 		return project;
 	}
 
+	public FleetManager getFleet() {
+		return fleet;
+	}
+
 	public void showLogDialog() {
 		logFrame.setVisible(true);
 	}
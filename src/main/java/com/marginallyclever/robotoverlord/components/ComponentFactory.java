@@ -6,6 +6,7 @@ import com.marginallyclever.robotoverlord.components.motors.DCMotorComponent;
 import com.marginallyclever.robotoverlord.components.motors.ServoComponent;
 import com.marginallyclever.robotoverlord.components.motors.StepperMotorComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
 import com.marginallyclever.robotoverlord.components.shapes.*;
 import com.marginallyclever.robotoverlord.components.vehicle.VehicleComponent;
@@ -47,6 +48,7 @@ public abstract class ComponentFactory {
 			RobotComponent.class,
 			//RobotArmComponent.class,
 			ArmEndEffectorComponent.class,
+			ReachabilityMapComponent.class,
 
 			CrabRobotComponent.class,
 			DogRobotComponent.class,
@@ -54,6 +56,7 @@ public abstract class ComponentFactory {
 			GCodePathComponent.class,
 			ProgramPathComponent.class,
 			ProgramComponent.class,
+			ProgramInterlockComponent.class,
 			ProjectorComponent.class,
 
 			RobotGripperComponent.class,
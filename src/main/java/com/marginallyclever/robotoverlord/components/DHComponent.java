@@ -31,6 +31,15 @@ public class DHComponent extends ShapeComponent implements PropertyChangeListene
     public final DoubleParameter jointMax = new DoubleParameter("Max",180.0);
     public final DoubleParameter jointMin = new DoubleParameter("Min",-180.0);
     public final DoubleParameter jointHome = new DoubleParameter("Home",0.0);
+    // motion limits.  degrees for revolute joints, cm for prismatic joints.
+    public static final double DEFAULT_MAX_VELOCITY = 90.0;
+    public static final double DEFAULT_MAX_ACCELERATION = 360.0;
+    public static final double DEFAULT_MAX_JERK = 3600.0;
+    // the smallest velocity or acceleration limit allowed.  trajectories cannot be planned with a limit of zero.
+    public static final double MIN_LIMIT = 1e-3;
+    public final DoubleParameter maxVelocity = new DoubleParameter("Max velocity (/s)",DEFAULT_MAX_VELOCITY);
+    public final DoubleParameter maxAcceleration = new DoubleParameter("Max acceleration (/s^2)",DEFAULT_MAX_ACCELERATION);
+    public final DoubleParameter maxJerk = new DoubleParameter("Max jerk (/s^3)",DEFAULT_MAX_JERK);
 
     @Override
     public void onAttach() {
@@ -46,9 +55,18 @@ public class DHComponent extends ShapeComponent implements PropertyChangeListene
         myR.addPropertyChangeListener(this);
         alpha.addPropertyChangeListener(this);
         theta.addPropertyChangeListener(this);
+        // every change goes through set(), including the inspector and parseJSON().
+        maxVelocity.addPropertyChangeListener((e)->clamp(maxVelocity,MIN_LIMIT));
+        maxAcceleration.addPropertyChangeListener((e)->clamp(maxAcceleration,MIN_LIMIT));
+        maxJerk.addPropertyChangeListener((e)->clamp(maxJerk,0));
         setVisible(false);
     }
 
+    private static void clamp(DoubleParameter parameter,double min) {
+        // also catches NaN.
+        if(!(parameter.get()>=min)) parameter.set(min);
+    }
+
     @Override
     public JSONObject toJSON(SerializationContext context) {
         JSONObject jo = super.toJSON(context);
@@ -61,6 +79,9 @@ public class DHComponent extends ShapeComponent implements PropertyChangeListene
         jo.put("ThetaHome", jointHome.toJSON(context));
         jo.put("Revolute", isRevolute.toJSON(context));
         jo.put("Home", jointHome.toJSON(context));
+        jo.put("MaxVelocity", maxVelocity.toJSON(context));
+        jo.put("MaxAcceleration", maxAcceleration.toJSON(context));
+        jo.put("MaxJerk", maxJerk.toJSON(context));
         return jo;
     }
 
@@ -76,6 +97,9 @@ public class DHComponent extends ShapeComponent implements PropertyChangeListene
         if(jo.has("ThetaHome")) jointHome.parseJSON(jo.getJSONObject("ThetaHome"),context);
         if(jo.has("Revolute")) isRevolute.parseJSON(jo.getJSONObject("Revolute"),context);
         if(jo.has("Home")) jointHome.parseJSON(jo.getJSONObject("Home"),context);
+        if(jo.has("MaxVelocity")) maxVelocity.parseJSON(jo.getJSONObject("MaxVelocity"),context);
+        if(jo.has("MaxAcceleration")) maxAcceleration.parseJSON(jo.getJSONObject("MaxAcceleration"),context);
+        if(jo.has("MaxJerk")) maxJerk.parseJSON(jo.getJSONObject("MaxJerk"),context);
         refreshLocalMatrix();
     }
 
@@ -256,6 +280,41 @@ public class DHComponent extends ShapeComponent implements PropertyChangeListene
         jointHome.set(t);
     }
 
+    /**
+     * @return the velocity limit of this joint, in degrees/s (revolute) or cm/s (prismatic).  Never less than
+     * {@link #MIN_LIMIT}.
+     */
+    public double getMaxVelocity() {
+        return maxVelocity.get();
+    }
+
+    public void setMaxVelocity(double v) {
+        maxVelocity.set(v);
+    }
+
+    /**
+     * @return the acceleration limit of this joint, in degrees/s^2 (revolute) or cm/s^2 (prismatic).  Never less
+     * than {@link #MIN_LIMIT}.
+     */
+    public double getMaxAcceleration() {
+        return maxAcceleration.get();
+    }
+
+    public void setMaxAcceleration(double v) {
+        maxAcceleration.set(v);
+    }
+
+    /**
+     * @return the jerk limit of this joint, in degrees/s^3 (revolute) or cm/s^3 (prismatic).  Zero for no limit.
+     */
+    public double getMaxJerk() {
+        return maxJerk.get();
+    }
+
+    public void setMaxJerk(double v) {
+        maxJerk.set(v);
+    }
+
     public double getJointValue() {
         if(isRevolute.get())
             return getTheta();
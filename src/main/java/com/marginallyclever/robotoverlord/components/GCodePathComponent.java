@@ -4,15 +4,20 @@ import com.jogamp.opengl.GL3;
 import com.marginallyclever.convenience.helpers.MatrixHelper;
 import com.marginallyclever.convenience.helpers.OpenGLHelper;
 import com.marginallyclever.robotoverlord.SerializationContext;
+import com.marginallyclever.robotoverlord.parameters.BooleanParameter;
 import com.marginallyclever.robotoverlord.parameters.DoubleParameter;
 import com.marginallyclever.robotoverlord.parameters.IntParameter;
 import com.marginallyclever.robotoverlord.parameters.StringParameter;
 import com.marginallyclever.robotoverlord.systems.render.gcodepath.*;
-import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
+import com.marginallyclever.robotoverlord.systems.render.mesh.ArcMesh;
+import com.marginallyclever.robotoverlord.systems.render.mesh.ChunkedPolylineMesh;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.vecmath.Point3d;
+import java.io.IOException;
 
 /**
  * A {@link RenderComponent} that uses a {@link PathWalker} to systems a {@link GCodePath}.
@@ -21,17 +26,54 @@ import javax.vecmath.Point3d;
  */
 @ComponentDependency(components = {PoseComponent.class})
 public class GCodePathComponent extends ShapeComponent implements WalkablePath<Point3d> {
+    private static final Logger logger = LoggerFactory.getLogger(GCodePathComponent.class);
     public final StringParameter filename = new StringParameter("File","");
     public final IntParameter numCommands = new IntParameter("Commands",0);
     public final DoubleParameter distanceMeasured = new DoubleParameter("Distance",0);
     public final IntParameter getCommand = new IntParameter("Show",0);
+    public final IntParameter progress = new IntParameter("Progress %",100);
+    public final DoubleParameter arcTolerance = new DoubleParameter("Arc tolerance (mm)",0.01);
+    public final BooleanParameter arcsOnGPU = new BooleanParameter("Draw arcs on GPU",false);
+    public final DoubleParameter maxSpeed = new DoubleParameter("Max speed (mm/s)",200);
+    public final DoubleParameter acceleration = new DoubleParameter("Acceleration (mm/s^2)",1000);
+    public final DoubleParameter junctionDeviation = new DoubleParameter("Junction deviation (mm)",0.013);
+    public final DoubleParameter duration = new DoubleParameter("Duration (s)",0);
     private final double maxStepSize = 0.1;
     private Point3d location;
     private GCodePath gCodePath;
+    private PathLengthIndex lengthIndex;
+    private LookAheadPlanner planner;
+    /**
+     * Big files are mapped instead of loaded.  gCodePath is then the window around the part being shown.
+     */
+    private MappedGCodeFile mappedFile;
+    private GCodeWindow window;
+    /**
+     * elementEnd[i] is the number of vertexes in the mesh after element i of gCodePath.
+     */
+    private int[] elementEnd;
+    /**
+     * Arcs drawn by the GPU when {@link #arcsOnGPU} is on.  elementArcEnd[i] is the number of arcs after element i.
+     */
+    private final ArcMesh arcMesh = new ArcMesh();
+    private int[] elementArcEnd;
 
     public GCodePathComponent() {
         super();
         filename.addPropertyChangeListener(e->load(filename.get()));
+        progress.addPropertyChangeListener(e->updateDrawRange());
+        arcTolerance.addPropertyChangeListener(e->{
+            // arcs on the GPU follow the tolerance as they are drawn.  the line strip only needs building again
+            // when it holds the arcs, or the GPU arcs were split too coarsely.
+            double tolerance = getChordTolerance();
+            if(arcsOnGPU.get() && !arcMesh.needsRebuild(tolerance)) arcMesh.setChordTolerance(tolerance);
+            else drawEntirePath();
+            updateDuration();
+        });
+        arcsOnGPU.addPropertyChangeListener(e->drawEntirePath());
+        maxSpeed.addPropertyChangeListener(e->updateDuration());
+        acceleration.addPropertyChangeListener(e->updateDuration());
+        junctionDeviation.addPropertyChangeListener(e->updateDuration());
     }
 
     @Override
@@ -41,6 +83,7 @@ public class GCodePathComponent extends ShapeComponent implements WalkablePath<P
         boolean tex = OpenGLHelper.disableTextureStart(gl);
 
         myMesh.render(gl);
+        if(arcsOnGPU.get()) arcMesh.render(gl);
 
         if(location!=null) {
             MatrixHelper.drawMatrix(location,3).render(gl);
@@ -50,59 +93,183 @@ public class GCodePathComponent extends ShapeComponent implements WalkablePath<P
     }
 
     private void drawEntirePath() {
-        PathWalker pathWalker = new PathWalker(null,gCodePath,maxStepSize);
+        if(gCodePath==null) return;
+        // no step limit, so arcs have only as many points as the tolerance needs.
+        PathWalker pathWalker = newPathWalker(null,0);
+        double tolerance = getChordTolerance();
+        pathWalker.setChordTolerance(tolerance);
+        boolean gpu = arcsOnGPU.get();
 
-        if(myMesh==null) myMesh = new Mesh();
-        myMesh.clear();
-        myMesh.setRenderStyle(GL3.GL_LINE_STRIP);
+        if(!(myMesh instanceof ChunkedPolylineMesh)) myMesh = new ChunkedPolylineMesh();
+        ChunkedPolylineMesh mesh = (ChunkedPolylineMesh)myMesh;
+        mesh.clear();
+        arcMesh.clear();
+        arcMesh.setChordTolerance(tolerance);
+        elementEnd = new int[gCodePath.size()];
+        elementArcEnd = new int[gCodePath.size()];
+        Point3d previous = new Point3d();
+        int previousIndex = -1;
 
         while (pathWalker.hasNext()) {
             pathWalker.next();
             Point3d currentPosition = pathWalker.getCurrentPosition();
-            GCodePathElement currentElement = pathWalker.getCurrentElement();
-            String command = currentElement.getCommand();
+            String command = pathWalker.getCurrentCommand();
+            int index = pathWalker.getCurrentIndex();
+            GCodeArc arc = pathWalker.getCurrentArc();
 
             if (command.equalsIgnoreCase("G0") || command.equalsIgnoreCase("G1")) {
-                if(currentElement.getExtrusion()==null) {
+                if(!gCodePath.hasExtrusion(index)) {
                     // rapid
-                    myMesh.addColor(0, 0, 1,0.25f);
+                    addPoint(mesh, currentPosition, 0, 0, 1, 0.25f);
                 } else {
                     // extrusion / milling movement
-                    myMesh.addColor(1, 0, 0,1);
+                    addPoint(mesh, currentPosition, 1, 0, 0, 1);
+                }
+            } else if (arc!=null && gpu) {
+                // the GPU draws the arc.  the strip jumps over it with invisible points.
+                if(index!=previousIndex) {
+                    arcMesh.addArc(arc.getCenterX(),arc.getCenterY(),arc.getStartZ(),arc.getRadius(),
+                            arc.getStartAngle(),arc.getSweep(),arc.getDeltaZ(),0,1,0,1);
+                    Point3d end = new Point3d();
+                    arc.getPoint(1,end);
+                    addPoint(mesh, previous, 0, 1, 0, 0);
+                    addPoint(mesh, end, 0, 1, 0, 0);
+                    addPoint(mesh, end, 0, 1, 0, 1);
                 }
-                myMesh.addVertex( (float)currentPosition.x, (float)currentPosition.y, (float)currentPosition.z );
             } else if (command.equalsIgnoreCase("G2") || command.equalsIgnoreCase("G3")) {
                 // arc
-                myMesh.addColor(0, 1, 0, 1);
-                myMesh.addVertex( (float)currentPosition.x, (float)currentPosition.y, (float)currentPosition.z );
+                addPoint(mesh, currentPosition, 0, 1, 0, 1);
             } // else unknown, ignore.
+            elementEnd[index] = mesh.getNumVertices();
+            elementArcEnd[index] = arcMesh.getNumArcs();
+            previous.set(currentPosition);
+            previousIndex = index;
         }
+        mesh.end();
+        arcMesh.updateCuboid();
+        updateDrawRange();
+    }
+
+    /**
+     * @return {@link #arcTolerance} in path units.
+     */
+    private double getChordTolerance() {
+        return Math.max(0,arcTolerance.get()) * Slic3rGCodePathLoader.MM_TO_CM;
+    }
+
+    private void addPoint(ChunkedPolylineMesh mesh, Point3d p, float r, float g, float b, float a) {
+        mesh.addPoint((float)p.x, (float)p.y, (float)p.z, r, g, b, a);
+    }
+
+    /**
+     * Show the part of the path selected by {@link #progress} without building the mesh again.
+     */
+    public void updateDrawRange() {
+        if(!(myMesh instanceof ChunkedPolylineMesh) || elementEnd==null) return;
+        ChunkedPolylineMesh mesh = (ChunkedPolylineMesh)myMesh;
+        int percent = Math.max(0,Math.min(100,progress.get()));
+        int elements = elementEnd.length;
+        if(percent<100 && elementEnd.length>0) {
+            if(window!=null) {
+                // a mapped file shows the window around the progress, which is through the whole file.  lines
+                // and elements are not the same, so the end of the drawing is close but not exact.
+                long line = mappedFile.getLinesIndexed() * percent / 100;
+                showLine(line);
+                elements = (int)Math.max(0,Math.min(elementEnd.length,line - window.getFirstLine()));
+            } else {
+                elements = (int)((long)elementEnd.length * percent / 100);
+            }
+        }
+        mesh.setDrawRange(0,elements==elementEnd.length ? mesh.getNumVertices() : getVerticesBefore(elements));
+        arcMesh.setDrawRange(0,elements<=0 ? 0 : elementArcEnd[elements-1]);
+    }
+
+    /**
+     * @return the number of vertexes made by the elements before this one.
+     */
+    private int getVerticesBefore(int element) {
+        if(element<=0) return 0;
+        element = Math.min(element,elementEnd.length);
+        return elementEnd[element-1];
     }
 
     public void updateLocation() {
         location = get(getCommand.get());
     }
 
-    private double calculateDistance() {
-        double sum = 0;
+    /**
+     * @return the distance index of the current path, built again if the path has changed since the last call.
+     */
+    private PathLengthIndex getLengthIndex() {
+        if(gCodePath==null) return null;
+        if(window!=null) {
+            // the index of the mapped file grows in the background.
+            numCommands.set((int)Math.min(Integer.MAX_VALUE,mappedFile.getLinesIndexed()));
+            distanceMeasured.set(mappedFile.getDistanceIndexed());
+            return window.getIndex();
+        }
+        if(lengthIndex==null || !lengthIndex.isValidFor(gCodePath)) {
+            lengthIndex = new PathLengthIndex(gCodePath,maxStepSize);
+            distanceMeasured.set(lengthIndex.getLength());
+        }
+        return lengthIndex;
+    }
 
-        PoseComponent myPose = this.getEntity().getComponent(PoseComponent.class);
-        PathWalker pathWalker = new PathWalker(myPose,gCodePath,maxStepSize);
-        Point3d now = new Point3d();
-        Point3d next = new Point3d();
-        while (pathWalker.hasNext()) {
-            pathWalker.next();
-            next.set(pathWalker.getCurrentPosition());
-            sum += now.distance(next);
-            now.set(next);
+    /**
+     * @return the motion plan of the current path, made again if the path or the machine limits have changed, or
+     * null if there is no path or a big file is mapped.
+     */
+    public LookAheadPlanner getPlanner() {
+        if(gCodePath==null || window!=null) return null;
+        if(planner==null || !planner.isValidFor(gCodePath)) {
+            double mmToPath = Slic3rGCodePathLoader.MM_TO_CM;
+            planner = new LookAheadPlanner(gCodePath,
+                    Math.max(1e-6,maxSpeed.get()) * mmToPath,
+                    Math.max(1e-6,acceleration.get()) * mmToPath,
+                    junctionDeviation.get() * mmToPath,
+                    Math.max(0,arcTolerance.get()) * mmToPath);
+            duration.set(planner.getDuration());
         }
-        return sum;
+        return planner;
+    }
+
+    private void updateDuration() {
+        planner = null;
+        if(getPlanner()==null) duration.set(0.0);
+    }
+
+    /**
+     * Where the tool is after running the program for some time, following the machine limits.
+     * @param t seconds since the start of the program.
+     * @return position in world at time t, or null if there is no plan.
+     */
+    public Point3d getAtTime(double t) {
+        LookAheadPlanner plan = getPlanner();
+        if(plan==null) return null;
+        Point3d result = new Point3d();
+        plan.getPositionAt(t,result);
+        PoseComponent myPose = this.getEntity().getComponent(PoseComponent.class);
+        myPose.getWorld().transform(result);
+        return result;
     }
 
     public PathWalker getPathWalker() {
         if(gCodePath==null) return null;
         PoseComponent myPose = this.getEntity().getComponent(PoseComponent.class);
-        return new PathWalker(myPose,gCodePath,maxStepSize);
+        return newPathWalker(myPose,maxStepSize);
+    }
+
+    private PathWalker newPathWalker(PoseComponent pose,double stepSize) {
+        if(window!=null) return window.getPathWalker(pose,stepSize);
+        return new PathWalker(pose,gCodePath,stepSize);
+    }
+
+    /**
+     * @return the path, or null if nothing is loaded.  When a big file is mapped this is only the part around the
+     * last position asked for.
+     */
+    public GCodePath getGCodePath() {
+        return gCodePath;
     }
 
     public double getNumCommands() {
@@ -111,6 +278,7 @@ public class GCodePathComponent extends ShapeComponent implements WalkablePath<P
 
     @Override
     public double getDistanceMeasured() {
+        getLengthIndex();
         return distanceMeasured.get();
     }
 
@@ -121,34 +289,31 @@ public class GCodePathComponent extends ShapeComponent implements WalkablePath<P
      */
     @Override
     public Point3d get(double d) {
-        double sum = 0;
-        if(gCodePath==null) return null;
+        PathLengthIndex index = getLengthIndex();
+        if(index==null) return null;
 
-        PoseComponent myPose = this.getEntity().getComponent(PoseComponent.class);
-        PathWalker pathWalker = new PathWalker(null,gCodePath,5);
-        Point3d now = new Point3d();
-        Point3d nextPosition;
-        while (pathWalker.hasNext()) {
-            pathWalker.next();
-            nextPosition = pathWalker.getCurrentPosition();
-            double stepSize = now.distance(nextPosition);
-            if(d>=sum && d<sum+stepSize) {
-                double t = (d-sum)/stepSize;
-                Point3d result = new Point3d();
-                result.interpolate(now,nextPosition,t);
-                myPose.getWorld().transform(result);
-                return result;
-            }
-            sum += stepSize;
-            now = nextPosition;
+        if(window!=null && !index.contains(d)) {
+            index = moveWindow(d);
+            if(index==null) return null;
         }
-        return null;
+
+        Point3d result = new Point3d();
+        if(!index.get(d,result)) return null;
+        PoseComponent myPose = this.getEntity().getComponent(PoseComponent.class);
+        myPose.getWorld().transform(result);
+        return result;
     }
 
     @Override
     public JSONObject toJSON(SerializationContext context) {
         JSONObject jo = super.toJSON(context);
         jo.put("filename",filename.toJSON(context));
+        jo.put("progress",progress.toJSON(context));
+        jo.put("arcTolerance",arcTolerance.toJSON(context));
+        jo.put("arcsOnGPU",arcsOnGPU.toJSON(context));
+        jo.put("maxSpeed",maxSpeed.toJSON(context));
+        jo.put("acceleration",acceleration.toJSON(context));
+        jo.put("junctionDeviation",junctionDeviation.toJSON(context));
         return jo;
     }
 
@@ -156,26 +321,109 @@ public class GCodePathComponent extends ShapeComponent implements WalkablePath<P
     public void parseJSON(JSONObject jo,SerializationContext context) throws JSONException {
         super.parseJSON(jo,context);
         filename.parseJSON(jo.getJSONObject("filename"),context);
+        if(jo.has("progress")) progress.parseJSON(jo.getJSONObject("progress"),context);
+        if(jo.has("arcTolerance")) arcTolerance.parseJSON(jo.getJSONObject("arcTolerance"),context);
+        if(jo.has("arcsOnGPU")) arcsOnGPU.parseJSON(jo.getJSONObject("arcsOnGPU"),context);
+        if(jo.has("maxSpeed")) maxSpeed.parseJSON(jo.getJSONObject("maxSpeed"),context);
+        if(jo.has("acceleration")) acceleration.parseJSON(jo.getJSONObject("acceleration"),context);
+        if(jo.has("junctionDeviation")) junctionDeviation.parseJSON(jo.getJSONObject("junctionDeviation"),context);
     }
 
     public void load(String filename) {
-        gCodePath = PathFactory.load(filename);
+        closeMappedFile();
+        mappedFile = PathFactory.openMapped(filename,maxStepSize);
+        if(mappedFile!=null) {
+            setWindow(decode(0));
+        } else {
+            gCodePath = PathFactory.load(filename);
+        }
         drawEntirePath();
         updateNumCommands();
     }
 
+    private void closeMappedFile() {
+        if(mappedFile==null) return;
+        try {
+            mappedFile.close();
+        } catch(IOException e) {
+            logger.warn("Failed to close "+filename.get()+": "+e.getMessage());
+        }
+        mappedFile = null;
+        window = null;
+    }
+
+    private GCodeWindow decode(long line) {
+        try {
+            return mappedFile.decodeAtLine(line);
+        } catch(IOException e) {
+            logger.error("Failed to read gcodepath: "+e.getMessage());
+            return null;
+        }
+    }
+
+    private void setWindow(GCodeWindow w) {
+        window = w;
+        gCodePath = w==null ? null : w.getPath();
+        lengthIndex = null;
+    }
+
+    /**
+     * Decode the part of a mapped file around a distance.
+     * @return the index of the new window, or null if the distance has not been indexed yet.
+     */
+    private PathLengthIndex moveWindow(double d) {
+        GCodeWindow w;
+        try {
+            w = mappedFile.decodeAtDistance(d);
+        } catch(IOException e) {
+            logger.error("Failed to read gcodepath: "+e.getMessage());
+            return null;
+        }
+        if(w==null) return null;
+        setWindow(w);
+        drawEntirePath();
+        return w.getIndex();
+    }
+
+    /**
+     * Show the part of the program around a line, for example the line being executed.  Does nothing unless a big
+     * file is mapped, because then the whole program is already shown.
+     * @param line the line number, counting from zero.
+     */
+    public void showLine(long line) {
+        if(mappedFile==null || (window!=null && window.containsLine(line))) return;
+        GCodeWindow w = decode(line);
+        if(w==null) return;
+        setWindow(w);
+        drawEntirePath();
+    }
+
+    /**
+     * @return the mapped file, or null if the whole file was loaded.
+     */
+    public MappedGCodeFile getMappedFile() {
+        return mappedFile;
+    }
+
     private void updateNumCommands() {
         if(gCodePath==null) {
             numCommands.set(0);
+            distanceMeasured.set(0.0);
+            lengthIndex = null;
             location = null;
         } else {
-            numCommands.set(gCodePath.getElements().size());
-            distanceMeasured.set(calculateDistance());
+            numCommands.set(gCodePath.size());
+            getLengthIndex();
             updateLocation();
         }
+        updateDuration();
     }
 
     public void reload() {
+        if(mappedFile!=null) {
+            load(filename.get());
+            return;
+        }
         PathFactory.reload(gCodePath);
     }
 }
@@ -124,6 +124,21 @@ public class PoseComponent extends Component implements PropertyChangeListener {
         return result;
     }
 
+    /**
+     * Same as {@link #getWorld()}, without making any new matrices.
+     * @param result will be set to the cumulative pose in the hierarchy of entities.
+     */
+    public void getWorld(Matrix4d result) {
+        result.set(local);
+
+        PoseComponent pose = this;
+        while(pose.getEntity()!=null) {
+            pose = pose.getEntity().findFirstComponentInParents(PoseComponent.class);
+            if(pose==null) return;
+            result.mul(pose.local, result);
+        }
+    }
+
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
         refreshLocalMatrix();
@@ -0,0 +1,88 @@
+package com.marginallyclever.robotoverlord.components;
+
+import com.jogamp.opengl.GL3;
+import com.marginallyclever.convenience.helpers.OpenGLHelper;
+import com.marginallyclever.robotoverlord.SerializationContext;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.parameters.DoubleParameter;
+import com.marginallyclever.robotoverlord.parameters.IntParameter;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability.ReachabilityMap;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability.ReachabilityMapFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Displays the {@link ReachabilityMap} of the {@link RobotComponent} in a parent {@link Entity} as a cloud of points.
+ * Green points are where the arm is most dexterous, red points are near a singularity.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+@ComponentDependency(components = {PoseComponent.class})
+public class ReachabilityMapComponent extends ShapeComponent {
+    public final IntParameter samples = new IntParameter("Samples",500000);
+    public final DoubleParameter voxelSize = new DoubleParameter("Voxel size (cm)",1.0);
+    public transient final IntParameter voxels = new IntParameter("Voxels",0);
+
+    private transient ReachabilityMap map;
+
+    public ReachabilityMapComponent() {
+        super();
+    }
+
+    /**
+     * @return the robot in a parent entity, or null.
+     */
+    public RobotComponent getRobot() {
+        Entity entity = getEntity();
+        if(entity==null) return null;
+        return entity.findFirstComponentInParents(RobotComponent.class);
+    }
+
+    /**
+     * Fetch or build the map for the robot.  May take a few seconds the first time.
+     */
+    public void build() {
+        RobotComponent robot = getRobot();
+        if(robot==null) return;
+        setMap(ReachabilityMapFactory.get(robot, samples.get(), voxelSize.get()));
+    }
+
+    public void setMap(ReachabilityMap map) {
+        this.map = map;
+        if(map==null) {
+            setModel(null);
+            voxels.set(0);
+        } else {
+            setModel(map.createMesh());
+            voxels.set(map.size());
+        }
+    }
+
+    public ReachabilityMap getMap() {
+        return map;
+    }
+
+    @Override
+    public void render(GL3 gl) {
+        if( !getEnabled() || !getVisible() || myMesh==null ) return;
+        boolean tex = OpenGLHelper.disableTextureStart(gl);
+        myMesh.render(gl);
+        OpenGLHelper.disableTextureEnd(gl,tex);
+    }
+
+    @Override
+    public JSONObject toJSON(SerializationContext context) {
+        JSONObject jo = super.toJSON(context);
+        jo.put("samples",samples.toJSON(context));
+        jo.put("voxelSize",voxelSize.toJSON(context));
+        return jo;
+    }
+
+    @Override
+    public void parseJSON(JSONObject jo, SerializationContext context) throws JSONException {
+        super.parseJSON(jo,context);
+        if(jo.has("samples")) samples.parseJSON(jo.getJSONObject("samples"),context);
+        if(jo.has("voxelSize")) voxelSize.parseJSON(jo.getJSONObject("voxelSize"),context);
+    }
+}
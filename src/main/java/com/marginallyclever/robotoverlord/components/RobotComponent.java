@@ -3,6 +3,7 @@ package com.marginallyclever.robotoverlord.components;
 import com.marginallyclever.convenience.helpers.MatrixHelper;
 import com.marginallyclever.robotoverlord.SerializationContext;
 import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.parameters.BooleanParameter;
 import com.marginallyclever.robotoverlord.parameters.DoubleParameter;
 import com.marginallyclever.robotoverlord.parameters.ReferenceParameter;
 import com.marginallyclever.robotoverlord.robots.Robot;
@@ -34,6 +35,8 @@ public class RobotComponent extends Component implements Robot, ComponentWithRef
     public final ReferenceParameter gcodePath = new ReferenceParameter("Path");
 
     public DoubleParameter desiredLinearVelocity = new DoubleParameter("Desired Linear Velocity (cm/s)",1);
+    public DoubleParameter desiredLinearAcceleration = new DoubleParameter("Desired Linear Acceleration (cm/s/s)",10);
+    public BooleanParameter stopOnCollision = new BooleanParameter("Stop on collision",true);
 
     @Override
     public void onAttach() {
@@ -302,6 +305,8 @@ public class RobotComponent extends Component implements Robot, ComponentWithRef
         JSONObject jo = super.toJSON(context);
 
         jo.put("gcodepath", gcodePath.toJSON(context));
+        jo.put("linearAcceleration", desiredLinearAcceleration.toJSON(context));
+        jo.put("stopOnCollision", stopOnCollision.toJSON(context));
 
         return jo;
     }
@@ -311,6 +316,8 @@ public class RobotComponent extends Component implements Robot, ComponentWithRef
         super.parseJSON(jo,context);
 
         if(jo.has("gcodepath")) gcodePath.parseJSON(jo.getJSONObject("gcodepath"),context);
+        if(jo.has("linearAcceleration")) desiredLinearAcceleration.parseJSON(jo.getJSONObject("linearAcceleration"),context);
+        if(jo.has("stopOnCollision")) stopOnCollision.parseJSON(jo.getJSONObject("stopOnCollision"),context);
     }
 
     public String getGCodePathEntityUUID() {
@@ -6,14 +6,15 @@ import com.marginallyclever.robotoverlord.components.ComponentWithReferences;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
 import com.marginallyclever.robotoverlord.entity.Entity;
 import com.marginallyclever.robotoverlord.parameters.BooleanParameter;
+import com.marginallyclever.robotoverlord.parameters.DoubleParameter;
 import com.marginallyclever.robotoverlord.parameters.IntParameter;
 import com.marginallyclever.robotoverlord.parameters.ReferenceParameter;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.CompiledProgram;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.beans.PropertyChangeListener;
 import java.util.Map;
-import java.util.Stack;
 
 /**
  * The ProgramComponent holds run-time information about the program being executed by a robot.
@@ -35,7 +36,17 @@ public class ProgramComponent extends Component implements ComponentWithReferenc
     public ReferenceParameter stepEntity = new ReferenceParameter("Step",null);
     private BooleanParameter isRunning = new BooleanParameter("Running",false);
     public IntParameter mode = new IntParameter("mode",RUN_STEP);
-    private final Stack<Object> stack = new Stack<>();
+    public final DoubleParameter cycleTime = new DoubleParameter("Cycle time (s)",0);
+    // time since the start of this pass through the program, in seconds.
+    private double runTime;
+    // the motion planned for the current step and the time since that step started, in seconds.
+    private Object stepMotion;
+    private double stepTime;
+    // the program flattened for the executor, and the index of the current instruction.  -1 before the first.
+    private CompiledProgram compiledProgram;
+    private int programCounter = -1;
+    // true while the current step waits for an interlock held by another program.
+    private boolean waiting;
 
     public ProgramComponent() {
         super();
@@ -52,7 +63,71 @@ public class ProgramComponent extends Component implements ComponentWithReferenc
     public void reset() {
         isRunning.set(false);
         stepEntity.set((String)null);
-        stack.clear();
+        runTime = 0;
+        clearStepMotion();
+        programCounter = -1;
+        waiting = false;
+    }
+
+    public double getRunTime() {
+        return runTime;
+    }
+
+    public void addRunTime(double dt) {
+        runTime += dt;
+    }
+
+    /**
+     * Record the time of the pass that just finished and start timing the next pass.
+     */
+    public void finishCycle() {
+        cycleTime.set(runTime);
+        runTime = 0;
+    }
+
+    public Object getStepMotion() {
+        return stepMotion;
+    }
+
+    public void setStepMotion(Object motion) {
+        stepMotion = motion;
+        stepTime = 0;
+    }
+
+    public void clearStepMotion() {
+        setStepMotion(null);
+    }
+
+    public double getStepTime() {
+        return stepTime;
+    }
+
+    public void addStepTime(double dt) {
+        stepTime += dt;
+    }
+
+    public CompiledProgram getCompiledProgram() {
+        return compiledProgram;
+    }
+
+    public void setCompiledProgram(CompiledProgram compiledProgram) {
+        this.compiledProgram = compiledProgram;
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    public void setProgramCounter(int programCounter) {
+        this.programCounter = programCounter;
+    }
+
+    public boolean isWaiting() {
+        return waiting;
+    }
+
+    public void setWaiting(boolean waiting) {
+        this.waiting = waiting;
     }
 
     @Override
@@ -78,22 +153,6 @@ public class ProgramComponent extends Component implements ComponentWithReferenc
         isRunning.addPropertyChangeListener(arg0);
     }
 
-    public void popStack() {
-        stack.pop();
-    }
-
-    public void pushStack(Object obj) {
-        stack.push(obj);
-    }
-
-    public Object peekStack() {
-        return stack.peek();
-    }
-
-    public int getStackDepth() {
-        return stack.size();
-    }
-
     @Override
     public void updateReferences(Map<String, String> oldToNewIDMap) {
         programEntity.updateReferences(oldToNewIDMap);
@@ -0,0 +1,49 @@
+package com.marginallyclever.robotoverlord.components.program;
+
+import com.marginallyclever.robotoverlord.SerializationContext;
+import com.marginallyclever.robotoverlord.parameters.IntParameter;
+import com.marginallyclever.robotoverlord.parameters.StringParameter;
+import org.json.JSONObject;
+
+/**
+ * <p>A {@link ProgramInterlockComponent} shares something in the cell between robots, such as a fixture or a
+ * conveyor.  Every interlock with the same lock name is the same lock, no matter which program it is in.</p>
+ * <ul>
+ *     <li>Acquire waits until fewer than capacity programs hold the lock, then holds it.</li>
+ *     <li>Release lets go of the lock so the next program can have it.</li>
+ * </ul>
+ * <p>A capacity of 1 is a mutex: "wait until arm B clears the fixture".  More than 1 is a counting semaphore.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ProgramInterlockComponent extends ProgramStepComponent {
+    public static final String[] ACTION_NAMES = {"Acquire", "Release"};
+    public static final int ACQUIRE = 0;
+    public static final int RELEASE = 1;
+
+    public final StringParameter lockName = new StringParameter("Lock", "fixture");
+    public final IntParameter action = new IntParameter("Action", ACQUIRE);
+    public final IntParameter capacity = new IntParameter("Capacity", 1);
+
+    public ProgramInterlockComponent() {
+        super();
+    }
+
+    @Override
+    public JSONObject toJSON(SerializationContext context) {
+        JSONObject jo = super.toJSON(context);
+        jo.put("lockName", lockName.toJSON(context));
+        jo.put("action", action.toJSON(context));
+        jo.put("capacity", capacity.toJSON(context));
+        return jo;
+    }
+
+    @Override
+    public void parseJSON(JSONObject jo, SerializationContext context) {
+        super.parseJSON(jo, context);
+        if (jo.has("lockName")) lockName.parseJSON(jo.getJSONObject("lockName"), context);
+        if (jo.has("action")) action.parseJSON(jo.getJSONObject("action"), context);
+        if (jo.has("capacity")) capacity.parseJSON(jo.getJSONObject("capacity"), context);
+    }
+}
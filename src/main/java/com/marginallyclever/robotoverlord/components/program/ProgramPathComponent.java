@@ -4,6 +4,7 @@ import com.jogamp.opengl.GL3;
 import com.marginallyclever.robotoverlord.SerializationContext;
 import com.marginallyclever.robotoverlord.components.PoseComponent;
 import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.parameters.BooleanParameter;
 import com.marginallyclever.robotoverlord.parameters.DoubleParameter;
 import com.marginallyclever.robotoverlord.parameters.IntParameter;
 import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
@@ -26,6 +27,7 @@ public class ProgramPathComponent extends ProgramStepComponent {
     //public static final int MOVE_BEZIER = 2;
     public IntParameter moveType = new IntParameter("Move Type",MOVE_RAPID);
     public DoubleParameter moveSpeed = new DoubleParameter("Move Speed",1.0);
+    public BooleanParameter avoidCollisions = new BooleanParameter("Avoid collisions",true);
 
     public ProgramPathComponent() {
         super();
@@ -105,6 +107,7 @@ public class ProgramPathComponent extends ProgramStepComponent {
         JSONObject jo = super.toJSON(context);
         jo.put("moveType",moveType.toJSON(context));
         jo.put("moveSpeed",moveSpeed.toJSON(context));
+        jo.put("avoidCollisions",avoidCollisions.toJSON(context));
         return jo;
     }
 
@@ -113,5 +116,6 @@ public class ProgramPathComponent extends ProgramStepComponent {
         super.parseJSON(jo,context);
         moveType.parseJSON(jo.getJSONObject("moveType"),context);
         moveSpeed.parseJSON(jo.getJSONObject("moveSpeed"),context);
+        if(jo.has("avoidCollisions")) avoidCollisions.parseJSON(jo.getJSONObject("avoidCollisions"),context);
     }
 }
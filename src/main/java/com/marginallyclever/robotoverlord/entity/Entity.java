@@ -7,6 +7,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Entities are nodes in a tree of data that can find each other and observe/be
@@ -20,6 +21,9 @@ public class Entity {
 	public static final String PATH_PREVIOUS = "..";
 	public static final String PATH_CURRENT = ".";
 
+	// counts components added to or removed from any entity.
+	private static final AtomicLong componentChanges = new AtomicLong();
+
 	private String name;
 
 	protected transient Entity parent;
@@ -240,6 +244,7 @@ public class Entity {
 	public void addComponent(Component c) {
 		if(containsAnInstanceOfTheSameClass(c)) return;
 		components.add(c);
+		componentChanges.incrementAndGet();
 		c.setEntity(this);
 		addComponentDependencies(c.getClass());
 		c.onAttach();
@@ -258,7 +263,15 @@ public class Entity {
 	}
 
 	public void removeComponent(Component c) {
-		components.remove(c);
+		if(components.remove(c)) componentChanges.incrementAndGet();
+	}
+
+	/**
+	 * @return a count that changes every time a component is added to or removed from any entity.  Compare two
+	 * counts to see if anything changed in between.
+	 */
+	public static long getComponentChanges() {
+		return componentChanges.get();
 	}
 
 	/**
@@ -32,8 +32,6 @@ import javax.vecmath.Vector3d;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.List;
 import java.util.Queue;
 import java.util.*;
@@ -368,29 +366,16 @@ public class OpenGLRenderPanel implements RenderPanel, GLEventListener, MouseLis
         for(EditorTool tool : editorTools) tool.handleKeyEvent(e);
     }
 
-    private String [] readResource(String resourceName) {
-        ArrayList<String> lines = new ArrayList<>();
-        try(BufferedReader reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(this.getClass().getResourceAsStream(resourceName))))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line+"\n");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return lines.toArray(new String[0]);
-    }
-
     private void createShaderPrograms(GL3 gl3) {
         shaderDefault = new ShaderProgram(gl3,
-            readResource("default_330.vert"),
-            readResource("default_330.frag"));
+            ShaderProgram.readResource(getClass(),"default_330.vert"),
+            ShaderProgram.readResource(getClass(),"default_330.frag"));
         shaderOutline = new ShaderProgram(gl3,
-            readResource("outline_330.vert"),
-            readResource("outline_330.frag"));
+            ShaderProgram.readResource(getClass(),"outline_330.vert"),
+            ShaderProgram.readResource(getClass(),"outline_330.frag"));
         shaderHUD = new ShaderProgram(gl3,
-            readResource("default_330.vert"),
-            readResource("givenColor_330.frag"));
+            ShaderProgram.readResource(getClass(),"default_330.vert"),
+            ShaderProgram.readResource(getClass(),"givenColor_330.frag"));
     }
 
     private void destroyShaderPrograms(GL3 gl) {
@@ -0,0 +1,46 @@
+package com.marginallyclever.robotoverlord.swing.actions;
+
+import com.marginallyclever.communications.fleet.FleetManager;
+import com.marginallyclever.communications.fleet.FleetPanel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Show the {@link FleetPanel} of the application's {@link FleetManager}.  There is one window, shown again each
+ * time, so the devices stay connected while it is closed.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ShowFleetPanelAction extends AbstractAction {
+    private final FleetManager fleet;
+    private JFrame frame;
+
+    public ShowFleetPanelAction(FleetManager fleet) {
+        super("Fleet...");
+        this.fleet = fleet;
+    }
+
+    /**
+     * Invoked when an action occurs.
+     *
+     * @param e the event to be processed
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if(frame==null) {
+            Component source = (Component) e.getSource();
+            frame = new JFrame("Fleet");
+            frame.setContentPane(new FleetPanel(fleet));
+            frame.setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+            frame.setPreferredSize(new Dimension(800,400));
+            frame.setSize(800,400);
+            frame.pack();
+            frame.setLocationRelativeTo(SwingUtilities.getWindowAncestor(source));
+        }
+        frame.setVisible(true);
+        frame.toFront();
+    }
+}
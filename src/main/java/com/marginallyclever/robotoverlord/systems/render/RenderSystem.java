@@ -86,6 +86,13 @@ public class RenderSystem implements EntitySystem {
         view.add(pathComponent.numCommands).setReadOnly(true);
         view.add(pathComponent.distanceMeasured).setReadOnly(true);
         view.add(pathComponent.getCommand).addPropertyChangeListener((e)->pathComponent.updateLocation());
+        view.addRange(pathComponent.progress,100,0);
+        view.add(pathComponent.arcTolerance);
+        view.add(pathComponent.arcsOnGPU);
+        view.add(pathComponent.maxSpeed);
+        view.add(pathComponent.acceleration);
+        view.add(pathComponent.junctionDeviation);
+        view.add(pathComponent.duration).setReadOnly(true);
     }
 
     public void decoratePath(ComponentSwingViewFactory view, Component component) {
@@ -93,6 +100,7 @@ public class RenderSystem implements EntitySystem {
         ArrayList<FileFilter> filters = PathFactory.getAllExtensions();
         view.add(programPathComponent.moveSpeed);
         view.addComboBox(programPathComponent.moveType, ProgramPathComponent.MOVE_TYPE_NAMES);
+        view.add(programPathComponent.avoidCollisions);
     }
 
     public void decorateLinearPattern(ComponentSwingViewFactory view, Component component) {
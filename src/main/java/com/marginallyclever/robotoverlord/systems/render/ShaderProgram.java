@@ -8,9 +8,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 /**
- * A wrapper for vertex and fragment shader pairs that provides a simple interface for setting uniforms.
+ * A wrapper for vertex and fragment shader pairs, with an optional geometry shader, that provides a simple
+ * interface for setting uniforms.
  *
  * @author Dan Royer
  * @since 2.5.9
@@ -19,13 +25,43 @@ public class ShaderProgram {
     private static final Logger logger = LoggerFactory.getLogger(ShaderProgram.class);
     private final int programId;
     private final int vertexShaderId;
+    private final int geometryShaderId;
     private final int fragmentShaderId;
 
     public ShaderProgram(GL3 gl, String[] vertexCode, String[] fragmentCode) {
+        this(gl, vertexCode, null, fragmentCode);
+    }
+
+    /**
+     * Read shader source that is packaged next to a class.
+     * @param owner the class the resource name is relative to.
+     * @param resourceName the file name, for example "default_330.vert".
+     * @return the source, one line per element, each ending in a newline.  Empty if it cannot be read.
+     */
+    public static String[] readResource(Class<?> owner, String resourceName) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Objects.requireNonNull(owner.getResourceAsStream(resourceName))))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line + "\n");
+            }
+        } catch (Exception e) {
+            logger.error("Failed to read " + resourceName + ": " + e.getMessage());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * @param geometryCode the geometry shader, or null for none.
+     */
+    public ShaderProgram(GL3 gl, String[] vertexCode, String[] geometryCode, String[] fragmentCode) {
         vertexShaderId = loadShader(gl, GL3.GL_VERTEX_SHADER, vertexCode,"vertex");
+        geometryShaderId = geometryCode == null ? 0 : loadShader(gl, GL3.GL_GEOMETRY_SHADER, geometryCode,"geometry");
         fragmentShaderId = loadShader(gl, GL3.GL_FRAGMENT_SHADER, fragmentCode,"fragment");
         programId = gl.glCreateProgram();
         gl.glAttachShader(programId, vertexShaderId);
+        if (geometryShaderId != 0) gl.glAttachShader(programId, geometryShaderId);
         gl.glAttachShader(programId, fragmentShaderId);
         gl.glLinkProgram(programId);
         if (!checkStatus(gl, programId, GL3.GL_LINK_STATUS)) {
@@ -93,6 +129,10 @@ public class ShaderProgram {
         gl.glDetachShader(programId, fragmentShaderId);
         gl.glDeleteShader(vertexShaderId);
         gl.glDeleteShader(fragmentShaderId);
+        if (geometryShaderId != 0) {
+            gl.glDetachShader(programId, geometryShaderId);
+            gl.glDeleteShader(geometryShaderId);
+        }
         gl.glDeleteProgram(programId);
     }
 
@@ -0,0 +1,126 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import javax.vecmath.Point3d;
+
+/**
+ * <p>A G2 (clockwise) or G3 (counter-clockwise) move in the XY plane.  I and J are the center of the arc relative to
+ * the start.  Z moves in a straight line from start to end, so the arc may be a helix.  When the start and the end
+ * are the same the arc is a full circle.</p>
+ * <p>The length is exact, and {@link #getSegments(double, double)} picks the fewest line segments that stay within
+ * a chord error of the true arc.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GCodeArc {
+    private static final double EPSILON = 1e-9;
+
+    private double centerX, centerY;
+    private double radius;
+    private double startAngle;
+    private double sweep;
+    private double startZ, deltaZ;
+
+    /**
+     * @param clockwise true for G2, false for G3.
+     * @param start where the move starts.
+     * @param endX where the move ends.
+     * @param endY where the move ends.
+     * @param endZ where the move ends.
+     * @param i the center of the arc relative to the start.
+     * @param j the center of the arc relative to the start.
+     */
+    public void set(boolean clockwise, Point3d start, double endX, double endY, double endZ, double i, double j) {
+        centerX = start.x + i;
+        centerY = start.y + j;
+        radius = Math.sqrt(i * i + j * j);
+        startAngle = Math.atan2(-j, -i);
+        double endAngle = Math.atan2(endY - centerY, endX - centerX);
+        sweep = endAngle - startAngle;
+        boolean closed = Math.abs(endX - start.x) < EPSILON && Math.abs(endY - start.y) < EPSILON;
+        if (closed) {
+            sweep = clockwise ? -2 * Math.PI : 2 * Math.PI;
+        } else if (clockwise) {
+            if (sweep > 0) sweep -= 2 * Math.PI;
+        } else {
+            if (sweep < 0) sweep += 2 * Math.PI;
+        }
+        startZ = start.z;
+        deltaZ = endZ - start.z;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return the angle of the start around the center, in radians.
+     */
+    public double getStartAngle() {
+        return startAngle;
+    }
+
+    /**
+     * @return the angle from start to end in radians.  Negative for clockwise arcs.
+     */
+    public double getSweep() {
+        return sweep;
+    }
+
+    public double getStartZ() {
+        return startZ;
+    }
+
+    public double getDeltaZ() {
+        return deltaZ;
+    }
+
+    /**
+     * @return the exact length of the arc, including the change in Z.
+     */
+    public double getLength() {
+        double flat = radius * Math.abs(sweep);
+        return Math.sqrt(flat * flat + deltaZ * deltaZ);
+    }
+
+    /**
+     * @param tolerance the furthest a segment may be from the true arc.
+     * @return the largest angle one segment may cover.
+     */
+    public static double getMaxSegmentAngle(double radius, double tolerance) {
+        if (tolerance <= 0 || radius <= tolerance) return Math.PI;
+        // the sagitta of a chord over angle a is r*(1-cos(a/2)).
+        return 2 * Math.acos(1 - tolerance / radius);
+    }
+
+    /**
+     * @param tolerance the furthest a segment may be from the true arc.  0 for no limit.
+     * @param maxStepSize the longest a segment may be.  0 for no limit.
+     * @return the number of line segments needed to draw this arc.
+     */
+    public int getSegments(double tolerance, double maxStepSize) {
+        double angle = Math.min(getMaxSegmentAngle(radius, tolerance), Math.PI / 2);
+        int n = (int) Math.ceil(Math.abs(sweep) / angle);
+        if (maxStepSize > 0) n = Math.max(n, (int) Math.ceil(getLength() / maxStepSize));
+        return Math.max(1, n);
+    }
+
+    /**
+     * @param t 0 at the start, 1 at the end.
+     * @param result where to put the point.
+     */
+    public void getPoint(double t, Point3d result) {
+        double a = startAngle + sweep * t;
+        result.x = centerX + radius * Math.cos(a);
+        result.y = centerY + radius * Math.sin(a);
+        result.z = startZ + deltaZ * t;
+    }
+}
@@ -1,18 +1,56 @@
 package com.marginallyclever.robotoverlord.systems.render.gcodepath;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 /**
- * A path made of GCode commands.
+ * <p>A path made of GCode commands.</p>
+ * <p>Elements are stored in columns - one array per value - instead of one object per element.  A print with
+ * millions of moves would otherwise cost an object, five boxed numbers and a list node per move.  Commands and
+ * comments repeat a lot, so each is stored once in a table and elements keep an index into that table.  The rarely
+ * used values (u, v, w, tool change, I/O operation) are kept in a sparse map.</p>
+ * <p>Walk the path with {@link PathWalker} or read the columns by index.  {@link #getElement(int)} builds a
+ * {@link GCodePathElement} on demand.</p>
  *
  * @author Dan Royer
  * @since 2.5.6
  */
-public class GCodePath {
+public class GCodePath implements Iterable<GCodePathElement> {
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * The most distinct commands one path can hold.  Opcodes are stored in a byte.
+     */
+    public static final int MAX_COMMANDS = 256;
+    /**
+     * Returned by {@link #getCommentIndex(int)} when an element has no comment.
+     */
+    public static final int NO_COMMENT = -1;
+
     private String sourceName;
-    private final LinkedList<GCodePathElement> elements = new LinkedList<>();
     private boolean dirty = false;
+    private long version = 0;
+
+    private int size = 0;
+    private byte[] opcodes = new byte[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] z = new double[INITIAL_CAPACITY];
+    /**
+     * extrusion.  NaN means "do not extrude".
+     */
+    private double[] e = new double[INITIAL_CAPACITY];
+    /**
+     * feed rate.  NaN means "use the default".
+     */
+    private double[] f = new double[INITIAL_CAPACITY];
+    private double[] i = new double[INITIAL_CAPACITY];
+    private double[] j = new double[INITIAL_CAPACITY];
+    private int[] comments = new int[INITIAL_CAPACITY];
+
+    private final List<String> commandTable = new ArrayList<>();
+    private final Map<String,Integer> commandIndex = new HashMap<>();
+    private final List<String> commentTable = new ArrayList<>();
+    private final Map<String,Integer> commentIndex = new HashMap<>();
+    private final Map<Integer,GCodePathElement> extras = new HashMap<>();
 
     public GCodePath() {}
 
@@ -25,7 +63,13 @@ public class GCodePath {
     }
 
     public void clear() {
-        elements.clear();
+        version++;
+        size = 0;
+        commandTable.clear();
+        commandIndex.clear();
+        commentTable.clear();
+        commentIndex.clear();
+        extras.clear();
     }
 
     public void setDirty(boolean b) {
@@ -36,11 +80,220 @@ public class GCodePath {
         return dirty;
     }
 
+    /**
+     * @return a number that changes every time the path changes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of elements in the path.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a copy of an element to the path.
+     * @param element the element to copy.
+     */
     public void addElement(GCodePathElement element) {
-        elements.add(element);
+        Double ex = element.getExtrusion();
+        Double fr = element.getFeedrate();
+        int index = add(getOpcode(element.getCommand()),
+                element.getX(), element.getY(), element.getZ(),
+                ex == null ? Double.NaN : ex,
+                fr == null ? Double.NaN : fr,
+                element.getI(), element.getJ(),
+                NO_COMMENT);
+        if (element.getU() != 0 || element.getV() != 0 || element.getW() != 0
+                || element.getToolChange() != null || element.getIoOperation() != null) {
+            extras.put(index, new GCodePathElement(element));
+        }
+    }
+
+    /**
+     * Append an element to the path.
+     * @param opcode from {@link #getOpcode(String)}
+     * @param e the extrusion, or NaN for none.
+     * @param f the feed rate, or NaN for none.
+     * @param comment from {@link #getCommentIndex(String)} or {@link #NO_COMMENT}.
+     * @return the index of the new element.
+     */
+    public int add(int opcode, double x, double y, double z, double e, double f, double i, double j, int comment) {
+        if (size == opcodes.length) grow();
+        version++;
+        int n = size++;
+        this.opcodes[n] = (byte) opcode;
+        this.x[n] = x;
+        this.y[n] = y;
+        this.z[n] = z;
+        this.e[n] = e;
+        this.f[n] = f;
+        this.i[n] = i;
+        this.j[n] = j;
+        this.comments[n] = comment;
+        return n;
+    }
+
+    private void grow() {
+        int capacity = opcodes.length * 2;
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        e = Arrays.copyOf(e, capacity);
+        f = Arrays.copyOf(f, capacity);
+        i = Arrays.copyOf(i, capacity);
+        j = Arrays.copyOf(j, capacity);
+        comments = Arrays.copyOf(comments, capacity);
+    }
+
+    /**
+     * Find or add a command in the command table.
+     * @param command for example "G1"
+     * @return the opcode of the command.
+     * @throws IllegalStateException if the path already has {@link #MAX_COMMANDS} different commands.
+     */
+    public int getOpcode(String command) {
+        Integer index = commandIndex.get(command);
+        if (index != null) return index;
+        if (commandTable.size() == MAX_COMMANDS) {
+            throw new IllegalStateException("More than " + MAX_COMMANDS + " different commands.");
+        }
+        index = commandTable.size();
+        commandTable.add(command);
+        commandIndex.put(command, index);
+        return index;
+    }
+
+    /**
+     * Find or add a comment in the comment table.
+     * @param comment the text of the comment.
+     * @return the index of the comment.
+     */
+    public int getCommentIndex(String comment) {
+        Integer index = commentIndex.get(comment);
+        if (index != null) return index;
+        index = commentTable.size();
+        commentTable.add(comment);
+        commentIndex.put(comment, index);
+        return index;
+    }
+
+    /**
+     * @param opcode from {@link #getOpcode(String)}
+     * @return the command with that opcode.
+     */
+    public String getCommandName(int opcode) {
+        return commandTable.get(opcode);
+    }
+
+    public int getNumCommentsInTable() {
+        return commentTable.size();
+    }
+
+    public int getOpcode(int index) {
+        return opcodes[index] & 0xff;
+    }
+
+    public String getCommand(int index) {
+        return commandTable.get(opcodes[index] & 0xff);
+    }
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public double getY(int index) {
+        return y[index];
+    }
+
+    public double getZ(int index) {
+        return z[index];
+    }
+
+    /**
+     * @return the extrusion of the element, or NaN if it does not extrude.
+     */
+    public double getExtrusion(int index) {
+        return e[index];
+    }
+
+    public boolean hasExtrusion(int index) {
+        return !Double.isNaN(e[index]);
+    }
+
+    /**
+     * @return the feed rate of the element, or NaN if it uses the default.
+     */
+    public double getFeedrate(int index) {
+        return f[index];
+    }
+
+    public double getI(int index) {
+        return i[index];
+    }
+
+    public double getJ(int index) {
+        return j[index];
+    }
+
+    /**
+     * @return the index of the comment of this element in the comment table, or {@link #NO_COMMENT}.
+     */
+    public int getCommentIndex(int index) {
+        return comments[index];
+    }
+
+    /**
+     * @return the comment of this element, or null.
+     */
+    public String getComment(int index) {
+        int c = comments[index];
+        return c == NO_COMMENT ? null : commentTable.get(c);
+    }
+
+    /**
+     * Build a new {@link GCodePathElement} from the columns.  Changes to the element are not written back.
+     * @param index the element to read.
+     * @return a new element.
+     */
+    public GCodePathElement getElement(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        GCodePathElement extra = extras.get(index);
+        GCodePathElement element = extra != null ? new GCodePathElement(extra) : new GCodePathElement(getCommand(index));
+        element.setCommand(getCommand(index));
+        element.setX(x[index]);
+        element.setY(y[index]);
+        element.setZ(z[index]);
+        element.setExtrusion(Double.isNaN(e[index]) ? null : e[index]);
+        element.setFeedrate(Double.isNaN(f[index]) ? null : f[index]);
+        element.setI(i[index]);
+        element.setJ(j[index]);
+        return element;
     }
 
+    /**
+     * @return a read-only view of the path.  Each element is built when it is read.
+     */
     public List<GCodePathElement> getElements() {
-        return elements;
+        return new AbstractList<>() {
+            @Override
+            public GCodePathElement get(int index) {
+                return getElement(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<GCodePathElement> iterator() {
+        return getElements().iterator();
     }
 }
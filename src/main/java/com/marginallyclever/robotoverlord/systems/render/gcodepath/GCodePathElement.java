@@ -44,6 +44,11 @@ public class GCodePathElement {
      */
     private Double extrusion;
 
+    /**
+     * The arc center offsets.  If null, they are read from the command.
+     */
+    private Double i, j;
+
     public GCodePathElement(String command) {
         this.command = command;
         this.x = 0;
@@ -70,6 +75,8 @@ public class GCodePathElement {
         this.toolChange = other.toolChange;
         this.ioOperation = other.ioOperation;
         this.extrusion = other.extrusion;
+        this.i = other.i;
+        this.j = other.j;
     }
 
     @Override
@@ -186,11 +193,19 @@ public class GCodePathElement {
     }
 
     public double getI() {
-        return getValue("I");
+        return i != null ? i : getValue("I");
+    }
+
+    public void setI(double i) {
+        this.i = i;
     }
 
     public double getJ() {
-        return getValue("J");
+        return j != null ? j : getValue("J");
+    }
+
+    public void setJ(double j) {
+        this.j = j;
     }
 
     private double getValue(String key) {
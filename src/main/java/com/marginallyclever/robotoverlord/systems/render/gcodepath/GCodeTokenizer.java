@@ -0,0 +1,325 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Reads GCode one byte at a time and appends the moves to a {@link GCodePath}.  There are no regular expressions,
+ * no {@link String#split(String)} and no object per line - words are read straight from the bytes and numbers are
+ * parsed by hand.</p>
+ * <p>X, Y, Z and F are modal: an element keeps the last value until a line changes it.  E, I and J belong to the
+ * line they are on.  A line with axis words and no command repeats the last G0, G1, G2 or G3.  A line with more
+ * than one command makes one element per command, and the axis words go to the command before them.</p>
+ * <p>Comments in <code>;</code> or <code>( )</code> are kept in the comment table of the path.  A comment on a line
+ * of its own goes to the next element.  Line numbers (N) and checksums (*) are ignored.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GCodeTokenizer {
+    private static final int BUFFER_SIZE = 65536;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final double scale;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int pos;
+    private long linesRead;
+
+    private GCodePath path;
+    /**
+     * command text packed into a long -> opcode.  Only valid for one path.
+     */
+    private final Map<Long,Integer> opcodeCache = new HashMap<>();
+
+    // modal state
+    private double x, y, z, f;
+    private String lastMotionCommand;
+    private int lastMotionOpcode;
+    private int pendingComment;
+
+    // the element being built
+    private boolean hasElement;
+    private int opcode;
+    private double e, i, j;
+    private int comment;
+
+    /**
+     * @param scale every X, Y, Z, E, F, I and J is multiplied by this.
+     */
+    public GCodeTokenizer(double scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Read all of a stream and append the elements to a path.
+     * @param inputStream the source.  It is not closed.
+     * @param path the destination.
+     * @return the number of lines read.
+     * @throws IOException if the stream cannot be read.
+     */
+    public long tokenize(InputStream inputStream, GCodePath path) throws IOException {
+        reset();
+        return resume(inputStream, path);
+    }
+
+    /**
+     * Forget the modal state.
+     */
+    public void reset() {
+        setState(0, 0, 0, Double.NaN, null);
+    }
+
+    /**
+     * Set the modal state, as if the lines before the next call to {@link #resume(InputStream, GCodePath)} had
+     * been read.
+     * @param lastMotionCommand the command repeated by a line with no command, or null.
+     */
+    public void setState(double x, double y, double z, double f, String lastMotionCommand) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.f = f;
+        this.lastMotionCommand = lastMotionCommand;
+    }
+
+    /**
+     * Read all of a stream and append the elements to a path, starting from the modal state left by the last call
+     * or set by {@link #setState(double, double, double, double, String)}.
+     * @param inputStream the source.  It is not closed.
+     * @param path the destination.
+     * @return the number of lines read.
+     * @throws IOException if the stream cannot be read.
+     */
+    public long resume(InputStream inputStream, GCodePath path) throws IOException {
+        this.path = path;
+        opcodeCache.clear();
+        lastMotionOpcode = -1;
+        pendingComment = GCodePath.NO_COMMENT;
+        linesRead = 0;
+        lineLength = 0;
+
+        int n;
+        while ((n = inputStream.read(buffer)) > 0) {
+            for (int k = 0; k < n; ++k) {
+                byte b = buffer[k];
+                if (b == '\n') {
+                    parseLine();
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        byte[] bigger = new byte[line.length * 2];
+                        System.arraycopy(line, 0, bigger, 0, lineLength);
+                        line = bigger;
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        if (lineLength > 0) parseLine();
+        this.path = null;
+        return linesRead;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getFeedrate() {
+        return f;
+    }
+
+    public String getLastMotionCommand() {
+        return lastMotionCommand;
+    }
+
+    private void parseLine() {
+        linesRead++;
+        pos = 0;
+        hasElement = false;
+
+        while (pos < lineLength) {
+            int c = line[pos];
+            if (c == ' ' || c == '\t' || c == '\r') {
+                pos++;
+            } else if (c == ';') {
+                setComment(readComment(pos + 1, lineLength));
+                break;
+            } else if (c == '(') {
+                int end = pos + 1;
+                while (end < lineLength && line[end] != ')') end++;
+                setComment(readComment(pos + 1, end));
+                pos = end + 1;
+            } else if (c == '%' || c == '*') {
+                break;
+            } else {
+                if (c >= 'a' && c <= 'z') c -= 'a' - 'A';
+                pos++;
+                if (c == 'G' || c == 'M' || c == 'T') {
+                    if (readCommand(c)) break;
+                } else {
+                    readAxis(c);
+                }
+            }
+        }
+        finishElement();
+    }
+
+    /**
+     * Read a command word and start a new element.
+     * @return true if the rest of the line is text that belongs to the command.
+     */
+    private boolean readCommand(int letter) {
+        finishElement();
+
+        // skip leading zeros so that G01 is G1.
+        while (pos + 1 < lineLength && line[pos] == '0' && isDigit(line[pos + 1])) pos++;
+        int start = pos;
+        while (pos < lineLength && (isDigit(line[pos]) || line[pos] == '.')) pos++;
+        if (pos == start) return false;
+
+        int opcode = getOpcode(letter, start, pos);
+        startElement(opcode);
+        int number = readInt(start, pos);
+        if (letter == 'G' && pos - start == 1 && number <= 3) {
+            lastMotionOpcode = opcode;
+            lastMotionCommand = path.getCommandName(opcode);
+        }
+        // messages and file names would be read as words.
+        return letter == 'M' && (number == 23 || number == 28 || number == 30 || number == 32 || number == 117 || number == 118);
+    }
+
+    private void readAxis(int letter) {
+        double value = readNumber();
+        if (Double.isNaN(value)) return;
+        if (letter != 'X' && letter != 'Y' && letter != 'Z' && letter != 'E' && letter != 'F'
+                && letter != 'I' && letter != 'J') return;
+
+        if (!hasElement) {
+            // a modal move repeats the last move command.
+            if (lastMotionCommand == null) return;
+            if (lastMotionOpcode < 0) lastMotionOpcode = path.getOpcode(lastMotionCommand);
+            startElement(lastMotionOpcode);
+        }
+        value *= scale;
+        switch (letter) {
+            case 'X' -> x = value;
+            case 'Y' -> y = value;
+            case 'Z' -> z = value;
+            case 'E' -> e = value;
+            case 'F' -> f = value;
+            case 'I' -> i = value;
+            case 'J' -> j = value;
+        }
+    }
+
+    private void startElement(int opcode) {
+        hasElement = true;
+        this.opcode = opcode;
+        e = Double.NaN;
+        i = 0;
+        j = 0;
+        comment = GCodePath.NO_COMMENT;
+    }
+
+    private void finishElement() {
+        if (!hasElement) return;
+        if (comment == GCodePath.NO_COMMENT) comment = pendingComment;
+        pendingComment = GCodePath.NO_COMMENT;
+        path.add(opcode, x, y, z, e, f, i, j, comment);
+        hasElement = false;
+    }
+
+    private void setComment(int index) {
+        if (index == GCodePath.NO_COMMENT) return;
+        if (hasElement) comment = index;
+        else pendingComment = index;
+    }
+
+    private int readComment(int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        if (start == end) return GCodePath.NO_COMMENT;
+        return path.getCommentIndex(new String(line, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    private int getOpcode(int letter, int start, int end) {
+        if (end - start > 7) {
+            return path.getOpcode((char) letter + new String(line, start, end - start, StandardCharsets.US_ASCII));
+        }
+        long key = letter;
+        for (int k = start; k < end; ++k) key = (key << 8) | line[k];
+        Integer found = opcodeCache.get(key);
+        if (found == null) {
+            found = path.getOpcode((char) letter + new String(line, start, end - start, StandardCharsets.US_ASCII));
+            opcodeCache.put(key, found);
+        }
+        return found;
+    }
+
+    private int readInt(int start, int end) {
+        int value = 0;
+        for (int k = start; k < end && isDigit(line[k]); ++k) value = value * 10 + (line[k] - '0');
+        return value;
+    }
+
+    /**
+     * Read a decimal number at pos.  There is no exponent in GCode.
+     * @return the number, or NaN if there are no digits.
+     */
+    private double readNumber() {
+        while (pos < lineLength && (line[pos] == ' ' || line[pos] == '\t')) pos++;
+        boolean negative = false;
+        if (pos < lineLength && (line[pos] == '-' || line[pos] == '+')) {
+            negative = line[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        double big = 0;
+        for (; pos < lineLength; ++pos) {
+            byte b = line[pos];
+            if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (isDigit(b)) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) fractionDigits++;
+                } else if (!fraction) {
+                    // too many digits to be exact.  keep the magnitude.
+                    big++;
+                }
+                digits++;
+            } else break;
+        }
+        if (digits == 0) return Double.NaN;
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        if (big > 0) value *= Math.pow(10, big);
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
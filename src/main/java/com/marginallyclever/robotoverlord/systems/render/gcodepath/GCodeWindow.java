@@ -0,0 +1,79 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+
+import javax.vecmath.Point3d;
+
+/**
+ * A few thousand lines decoded from a {@link MappedGCodeFile}, with the machine state before the first line.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GCodeWindow {
+    private final GCodePath path;
+    private final long firstLine;
+    private final long lineCount;
+    private final Point3d start;
+    private final boolean relative;
+    private final PathLengthIndex index;
+
+    GCodeWindow(GCodePath path, long firstLine, long lineCount, Point3d start, boolean relative,
+                double startDistance, double maxStepSize) {
+        this.path = path;
+        this.firstLine = firstLine;
+        this.lineCount = lineCount;
+        this.start = new Point3d(start);
+        this.relative = relative;
+        this.index = new PathLengthIndex(path, maxStepSize, start, relative, startDistance);
+    }
+
+    public GCodePath getPath() {
+        return path;
+    }
+
+    /**
+     * @return the line number in the file of the first line in the window, counting from zero.
+     */
+    public long getFirstLine() {
+        return firstLine;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public boolean containsLine(long line) {
+        return line >= firstLine && line < firstLine + lineCount;
+    }
+
+    /**
+     * @return where the machine is before the first element, in path coordinates.
+     */
+    public Point3d getStart() {
+        return new Point3d(start);
+    }
+
+    /**
+     * @return true if the machine is in relative mode (G91) before the first element.
+     */
+    public boolean isRelative() {
+        return relative;
+    }
+
+    /**
+     * @return the distance index of the window.  Distances are measured from the start of the file.
+     */
+    public PathLengthIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return a walker that starts where the machine is before the window.
+     */
+    public PathWalker getPathWalker(PoseComponent poseComponent, double maxStepSize) {
+        PathWalker walker = new PathWalker(poseComponent, path, maxStepSize);
+        walker.setStart(start, relative);
+        return walker;
+    }
+}
@@ -0,0 +1,373 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import javax.vecmath.Point3d;
+import java.util.Arrays;
+
+/**
+ * <p>Estimates how long a machine takes to run a {@link GCodePath}, the way Marlin and GRBL plan their moves.  Every
+ * straight move, and every segment of an arc, is a block with a trapezoid speed profile: speed up at a constant
+ * acceleration, cruise at the feed rate, slow down at a constant acceleration.</p>
+ * <ul>
+ *     <li>The speed through the corner between two blocks comes from the junction deviation: the fastest speed at
+ *     which the tool could follow a circle that stays within that distance of the corner.</li>
+ *     <li>A backward pass makes sure every block can slow down in time for the next one.  A forward pass makes sure
+ *     every block can reach its entry speed from the one before.  The machine starts and ends at rest.</li>
+ *     <li>The profiles then give the time at the start of every block, the total time, and the position at any
+ *     time.</li>
+ * </ul>
+ * <p>The planner keeps a few plain arrays with one entry per block and does no allocation per block, so millions of
+ * blocks take seconds.  Feed rates are in path units per minute.  G0 moves at the max speed.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class LookAheadPlanner {
+    private final GCodePath path;
+    private final long version;
+    private final double maxSpeed;
+    private final double acceleration;
+    private final double junctionDeviation;
+
+    private int count;
+    /**
+     * where each block ends.  The machine starts at the origin.
+     */
+    private double[] x, y, z;
+    private double[] length;
+    /**
+     * entry[i] is the speed at the start of block i.  entry[count] is zero.
+     */
+    private double[] entry;
+    /**
+     * the highest speed of each block, after the passes.
+     */
+    private double[] peak;
+    /**
+     * startTime[i] is the time at the start of block i.  startTime[count] is the duration.
+     */
+    private double[] startTime;
+    /**
+     * startDistance[i] is the length of the path before block i.
+     */
+    private double[] startDistance;
+    /**
+     * the index in the path of the element that made each block.
+     */
+    private int[] element;
+
+    /**
+     * @param path the path to plan.
+     * @param maxSpeed the fastest the machine moves, in path units per second.  G0 moves at this speed.
+     * @param acceleration the acceleration of the machine, in path units per second squared.
+     * @param junctionDeviation how far the tool may stray from a corner, in path units.  Bigger is faster.
+     * @param chordTolerance how far the segments of an arc may stray from the arc, in path units.
+     */
+    public LookAheadPlanner(GCodePath path, double maxSpeed, double acceleration, double junctionDeviation,
+                            double chordTolerance) {
+        if (maxSpeed <= 0) throw new IllegalArgumentException("maxSpeed must be greater than zero.");
+        if (acceleration <= 0) throw new IllegalArgumentException("acceleration must be greater than zero.");
+        this.path = path;
+        this.version = path.getVersion();
+        this.maxSpeed = maxSpeed;
+        this.acceleration = acceleration;
+        this.junctionDeviation = Math.max(0, junctionDeviation);
+
+        double[] nominal = buildBlocks(chordTolerance);
+        double[] maxEntry = findJunctionSpeeds(nominal);
+        backwardPass(maxEntry);
+        forwardPass();
+        measureTime(nominal);
+    }
+
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        length = new double[capacity];
+        element = new int[capacity];
+    }
+
+    /**
+     * Walk the path and make one block per step that moves.
+     * @return the nominal speed of every block.
+     */
+    private double[] buildBlocks(double chordTolerance) {
+        int capacity = Math.max(16, path.size());
+        allocate(capacity);
+        double[] nominal = new double[capacity];
+        double feed = maxSpeed;
+        double px = 0, py = 0, pz = 0;
+
+        PathWalker walker = new PathWalker(null, path, 0);
+        walker.setChordTolerance(chordTolerance);
+        while (walker.hasNext()) {
+            walker.next();
+            int index = walker.getCurrentIndex();
+            double f = path.getFeedrate(index);
+            if (f > 0) feed = f / 60.0;
+
+            Point3d p = walker.getCurrentPosition();
+            double dx = p.x - px;
+            double dy = p.y - py;
+            double dz = p.z - pz;
+            double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (d < 1e-9) continue;
+
+            if (count == x.length) {
+                int n = count * 2;
+                x = Arrays.copyOf(x, n);
+                y = Arrays.copyOf(y, n);
+                z = Arrays.copyOf(z, n);
+                length = Arrays.copyOf(length, n);
+                element = Arrays.copyOf(element, n);
+                nominal = Arrays.copyOf(nominal, n);
+            }
+            x[count] = p.x;
+            y[count] = p.y;
+            z[count] = p.z;
+            length[count] = d;
+            element[count] = index;
+            nominal[count] = walker.getCurrentCommand().equals("G0") ? maxSpeed : Math.min(maxSpeed, feed);
+            count++;
+            px = p.x;
+            py = p.y;
+            pz = p.z;
+        }
+        entry = new double[count + 1];
+        peak = new double[count];
+        startTime = new double[count + 1];
+        startDistance = new double[count + 1];
+        return nominal;
+    }
+
+    /**
+     * @return the fastest each block may start, from the corner it makes with the block before.
+     */
+    private double[] findJunctionSpeeds(double[] nominal) {
+        double[] maxEntry = new double[count + 1];
+        // the machine starts and ends at rest.
+        for (int i = 1; i < count; ++i) {
+            double v = Math.min(nominal[i - 1], nominal[i]);
+            // cos of the angle between the two directions.  1 is straight on, -1 turns back.
+            double ax = x[i - 1] - (i > 1 ? x[i - 2] : 0);
+            double ay = y[i - 1] - (i > 1 ? y[i - 2] : 0);
+            double az = z[i - 1] - (i > 1 ? z[i - 2] : 0);
+            double bx = x[i] - x[i - 1];
+            double by = y[i] - y[i - 1];
+            double bz = z[i] - z[i - 1];
+            double cos = (ax * bx + ay * by + az * bz) / (length[i - 1] * length[i]);
+            maxEntry[i] = Math.min(v, getJunctionSpeed(cos, acceleration, junctionDeviation));
+        }
+        return maxEntry;
+    }
+
+    /**
+     * The speed at which a circle that just touches both moves and stays within the junction deviation of the
+     * corner can be followed at the given acceleration.
+     * @param cos the cos of the angle between the direction of the move before and the move after.
+     * @return the fastest speed through the corner.
+     */
+    static double getJunctionSpeed(double cos, double acceleration, double junctionDeviation) {
+        if (cos > 0.999999) return Double.MAX_VALUE;
+        if (cos < -0.999999) return 0;
+        // half of the angle between the moves, seen from inside the corner.
+        double sinHalf = Math.sqrt(0.5 * (1 + cos));
+        return Math.sqrt(acceleration * junctionDeviation * sinHalf / (1 - sinHalf));
+    }
+
+    /**
+     * From the last block to the first, each block must be able to slow down to the entry speed of the next.
+     */
+    private void backwardPass(double[] maxEntry) {
+        entry[count] = 0;
+        for (int i = count - 1; i > 0; --i) {
+            double limit = Math.sqrt(entry[i + 1] * entry[i + 1] + 2 * acceleration * length[i]);
+            entry[i] = Math.min(maxEntry[i], limit);
+        }
+        if (count > 0) entry[0] = 0;
+    }
+
+    /**
+     * From the first block to the last, each block must be able to reach the entry speed of the next.
+     */
+    private void forwardPass() {
+        for (int i = 0; i < count; ++i) {
+            double limit = Math.sqrt(entry[i] * entry[i] + 2 * acceleration * length[i]);
+            if (entry[i + 1] > limit) entry[i + 1] = limit;
+        }
+    }
+
+    /**
+     * Fit a trapezoid (or a triangle, if the block is too short to reach the feed rate) to every block and add up
+     * the times.
+     */
+    private void measureTime(double[] nominal) {
+        for (int i = 0; i < count; ++i) {
+            double v0 = entry[i];
+            double v1 = entry[i + 1];
+            double vp = Math.min(nominal[i], Math.sqrt((2 * acceleration * length[i] + v0 * v0 + v1 * v1) / 2));
+            vp = Math.max(vp, Math.max(v0, v1));
+            peak[i] = vp;
+            startTime[i + 1] = startTime[i] + getBlockTime(i);
+            startDistance[i + 1] = startDistance[i] + length[i];
+        }
+    }
+
+    private double getBlockTime(int i) {
+        double v0 = entry[i];
+        double v1 = entry[i + 1];
+        double vp = peak[i];
+        if (vp <= 0) return 0;
+        double up = (vp * vp - v0 * v0) / (2 * acceleration);
+        double down = (vp * vp - v1 * v1) / (2 * acceleration);
+        double cruise = Math.max(0, length[i] - up - down);
+        return (vp - v0) / acceleration + cruise / vp + (vp - v1) / acceleration;
+    }
+
+    /**
+     * @param path the path that is about to be queried.
+     * @return true if this plan was made from the same path and the path has not changed since.
+     */
+    public boolean isValidFor(GCodePath path) {
+        return this.path == path && version == path.getVersion();
+    }
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    public double getJunctionDeviation() {
+        return junctionDeviation;
+    }
+
+    /**
+     * @return the number of blocks.
+     */
+    public int getNumBlocks() {
+        return count;
+    }
+
+    /**
+     * @return the time to run the whole path, in seconds.
+     */
+    public double getDuration() {
+        return startTime[count];
+    }
+
+    /**
+     * @return the length of the path.
+     */
+    public double getLength() {
+        return startDistance[count];
+    }
+
+    /**
+     * @param block the block index.
+     * @return the time at the start of the block, in seconds.
+     */
+    public double getStartTime(int block) {
+        return startTime[block];
+    }
+
+    /**
+     * @param block the block index.
+     * @return the speed at the start of the block.
+     */
+    public double getEntrySpeed(int block) {
+        return entry[block];
+    }
+
+    /**
+     * @param block the block index.
+     * @return the highest speed of the block.
+     */
+    public double getPeakSpeed(int block) {
+        return peak[block];
+    }
+
+    /**
+     * @param block the block index.
+     * @return the index in the path of the element that made the block.
+     */
+    public int getElement(int block) {
+        return element[block];
+    }
+
+    /**
+     * @param t the time since the start, in seconds.
+     * @return the block running at time t.  The first block before the start, the last block after the end.
+     */
+    public int getBlockAt(double t) {
+        if (count == 0) return -1;
+        int lo = 0;
+        int hi = count;
+        // invariant: startTime[lo] <= t < startTime[hi]
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (startTime[mid] <= t) lo = mid;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @param t the time since the start, in seconds.
+     * @return the index in the path of the element running at time t, or -1 if nothing moves.
+     */
+    public int getElementAt(double t) {
+        int block = getBlockAt(t);
+        return block < 0 ? -1 : element[block];
+    }
+
+    /**
+     * @param t the time since the start, in seconds.
+     * @return the distance travelled at time t.
+     */
+    public double getDistanceAt(double t) {
+        if (count == 0 || t <= 0) return 0;
+        if (t >= startTime[count]) return startDistance[count];
+        int i = getBlockAt(t);
+        return startDistance[i] + getDistanceInBlock(i, t - startTime[i]);
+    }
+
+    private double getDistanceInBlock(int i, double t) {
+        double v0 = entry[i];
+        double v1 = entry[i + 1];
+        double vp = peak[i];
+        double a = acceleration;
+        double tUp = (vp - v0) / a;
+        double up = (vp * vp - v0 * v0) / (2 * a);
+        if (t <= tUp) return v0 * t + 0.5 * a * t * t;
+        double down = (vp * vp - v1 * v1) / (2 * a);
+        double cruise = Math.max(0, length[i] - up - down);
+        double tCruise = vp > 0 ? cruise / vp : 0;
+        if (t <= tUp + tCruise) return up + vp * (t - tUp);
+        double s = t - tUp - tCruise;
+        return Math.min(length[i], up + cruise + vp * s - 0.5 * a * s * s);
+    }
+
+    /**
+     * @param t the time since the start, in seconds.
+     * @param result gets the position at time t, in path coordinates.
+     */
+    public void getPositionAt(double t, Point3d result) {
+        if (count == 0 || t <= 0) {
+            result.set(0, 0, 0);
+            return;
+        }
+        if (t >= startTime[count]) {
+            result.set(x[count - 1], y[count - 1], z[count - 1]);
+            return;
+        }
+        int i = getBlockAt(t);
+        double f = getDistanceInBlock(i, t - startTime[i]) / length[i];
+        double sx = i > 0 ? x[i - 1] : 0;
+        double sy = i > 0 ? y[i - 1] : 0;
+        double sz = i > 0 ? z[i - 1] : 0;
+        result.set(sx + (x[i] - sx) * f, sy + (y[i] - sy) * f, sz + (z[i] - sz) * f);
+    }
+}
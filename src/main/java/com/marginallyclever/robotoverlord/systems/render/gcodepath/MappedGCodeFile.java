@@ -0,0 +1,300 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Point3d;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A GCode file too big to parse up front.  The file is memory mapped, so the operating system pages it in and out
+ * and the heap does not grow with the file.  A background thread reads the whole file once and keeps a checkpoint
+ * every {@link #LINES_PER_BLOCK} lines: where the block starts, the modal state of the machine and the length of the
+ * program so far.  {@link #decodeAtLine(long)} and {@link #decodeAtDistance(double)} then parse only the few blocks
+ * around a position into a {@link GCodeWindow}.</p>
+ * <p>The first window can be decoded as soon as the file is open, before the index is done.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class MappedGCodeFile implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedGCodeFile.class);
+    public static final int LINES_PER_BLOCK = 1024;
+    /**
+     * The number of blocks in a window.  The block with the position of interest is in the middle.
+     */
+    public static final int BLOCKS_PER_WINDOW = 3;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * The state of the machine at the start of a block.
+     */
+    private static class Checkpoint {
+        long offset;
+        long line;
+        double x, y, z, f;
+        String lastMotionCommand;
+        final Point3d position = new Point3d();
+        boolean relative;
+        double distance;
+    }
+
+    private final String filename;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+    private final double scale;
+    private final double maxStepSize;
+
+    /**
+     * checkpoints.get(i) is the start of block i.  Block i can be decoded when checkpoint i+1 exists.  The last
+     * checkpoint of a finished index is at the end of the file.
+     */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private volatile boolean complete = false;
+    private volatile boolean closed = false;
+    private Thread indexer;
+
+    /**
+     * Map a file.  Call {@link #startIndexing()} to build the index.
+     * @param filename the file to map.
+     * @param scale every X, Y, Z, E, F, I and J is multiplied by this.
+     * @param maxStepSize the maximum distance between points in arcs when measuring the program.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MappedGCodeFile(String filename, double scale, double maxStepSize) throws IOException {
+        this.filename = filename;
+        this.scale = scale;
+        this.maxStepSize = maxStepSize;
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        length = channel.size();
+        int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+        }
+        Checkpoint first = new Checkpoint();
+        first.f = Double.NaN;
+        checkpoints.add(first);
+    }
+
+    /**
+     * Build the index in a background thread.
+     */
+    public synchronized void startIndexing() {
+        if (indexer != null) return;
+        indexer = new Thread(this::buildIndex, "GCode index " + filename);
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    private void buildIndex() {
+        long startTime = System.nanoTime();
+        GCodeTokenizer tokenizer = new GCodeTokenizer(scale);
+        GCodePath scratch = new GCodePath();
+        Checkpoint last = getCheckpoint(0);
+        try {
+            while (last.offset < length && !closed) {
+                long end = findLineEnd(last.offset, LINES_PER_BLOCK);
+                scratch.clear();
+                tokenizer.setState(last.x, last.y, last.z, last.f, last.lastMotionCommand);
+                long lines = tokenizer.resume(new MappedInputStream(last.offset, end), scratch);
+
+                Checkpoint next = new Checkpoint();
+                next.offset = end;
+                next.line = last.line + lines;
+                next.x = tokenizer.getX();
+                next.y = tokenizer.getY();
+                next.z = tokenizer.getZ();
+                next.f = tokenizer.getFeedrate();
+                next.lastMotionCommand = tokenizer.getLastMotionCommand();
+                next.position.set(last.position);
+                PathWalker walker = new PathWalker(null, scratch, maxStepSize);
+                walker.setStart(last.position, last.relative);
+                while (walker.hasNext()) {
+                    walker.next();
+                    next.position.set(walker.getCurrentPosition());
+                }
+                next.distance = last.distance + walker.getDistance();
+                next.relative = walker.isRelative();
+
+                synchronized (this) {
+                    checkpoints.add(next);
+                }
+                last = next;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to index {}: {}", filename, e.getMessage());
+            return;
+        }
+        if (closed) return;
+        complete = true;
+        double seconds = Math.max(1e-9, (System.nanoTime() - startTime) * 1e-9);
+        logger.info("Indexed {} lines of {} in {}ms ({} lines/s).",
+                last.line, filename, Math.round(seconds * 1000), Math.round(last.line / seconds));
+    }
+
+    /**
+     * @return the offset just after the given number of lines, or the end of the file.
+     */
+    private long findLineEnd(long offset, int lines) {
+        while (offset < length) {
+            MappedByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int i = (int) (offset % SEGMENT_SIZE);
+            int limit = segment.limit();
+            for (; i < limit; ++i) {
+                if (segment.get(i) == '\n' && --lines == 0) {
+                    return offset - (offset % SEGMENT_SIZE) + i + 1;
+                }
+            }
+            offset = offset - (offset % SEGMENT_SIZE) + limit;
+        }
+        return length;
+    }
+
+    private synchronized Checkpoint getCheckpoint(int index) {
+        return checkpoints.get(index);
+    }
+
+    /**
+     * @return true when the whole file has been indexed.
+     */
+    public boolean isIndexComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the number of lines indexed so far.  When the index is complete this is the number of lines.
+     */
+    public synchronized long getLinesIndexed() {
+        return checkpoints.get(checkpoints.size() - 1).line;
+    }
+
+    /**
+     * @return the length of the program indexed so far.  When the index is complete this is the whole length.
+     */
+    public synchronized double getDistanceIndexed() {
+        return checkpoints.get(checkpoints.size() - 1).distance;
+    }
+
+    public long getFileSize() {
+        return length;
+    }
+
+    /**
+     * Decode the blocks around a line.  The first window is available before the index is built.
+     * @param line the line number, counting from zero.
+     * @return the window, or null if that line has not been indexed yet.
+     * @throws IOException if the file cannot be read.
+     */
+    public GCodeWindow decodeAtLine(long line) throws IOException {
+        if (line < 0) return null;
+        int block = (int) (line / LINES_PER_BLOCK);
+        if (block + 1 >= getCheckpointCount()) {
+            if (line >= LINES_PER_BLOCK * BLOCKS_PER_WINDOW) return null;
+            // the index has not reached this line yet, but the first window does not need it.
+            long end = findLineEnd(0, LINES_PER_BLOCK * BLOCKS_PER_WINDOW);
+            return decode(getCheckpoint(0), end);
+        }
+        return decodeAround(block);
+    }
+
+    /**
+     * Decode the blocks around a distance along the program.
+     * @param d the distance from the start of the program.
+     * @return the window, or null if that distance has not been indexed yet.
+     * @throws IOException if the file cannot be read.
+     */
+    public GCodeWindow decodeAtDistance(double d) throws IOException {
+        int block;
+        synchronized (this) {
+            int n = checkpoints.size();
+            if (n < 2 || !(d >= 0 && d < checkpoints.get(n - 1).distance)) return null;
+            // the last block that starts at or before d.
+            int lo = 0;
+            int hi = n - 1;
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (checkpoints.get(mid).distance <= d) lo = mid;
+                else hi = mid;
+            }
+            block = lo;
+        }
+        return decodeAround(block);
+    }
+
+    private synchronized int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    private GCodeWindow decodeAround(int block) throws IOException {
+        Checkpoint first;
+        Checkpoint end;
+        synchronized (this) {
+            int a = Math.max(0, block - BLOCKS_PER_WINDOW / 2);
+            int b = Math.min(checkpoints.size() - 1, a + BLOCKS_PER_WINDOW);
+            first = checkpoints.get(a);
+            end = checkpoints.get(b);
+        }
+        return decode(first, end.offset);
+    }
+
+    private GCodeWindow decode(Checkpoint first, long endOffset) throws IOException {
+        GCodeTokenizer tokenizer = new GCodeTokenizer(scale);
+        tokenizer.setState(first.x, first.y, first.z, first.f, first.lastMotionCommand);
+        GCodePath path = new GCodePath();
+        path.setSourceName(filename);
+        long lines = tokenizer.resume(new MappedInputStream(first.offset, endOffset), path);
+        return new GCodeWindow(path, first.line, lines, first.position, first.relative, first.distance, maxStepSize);
+    }
+
+    /**
+     * Stop the index and release the file.  The mapped memory is released when the garbage collector finds it.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Reads part of the mapped file.  Uses absolute reads, so many can read the same segments at once.
+     */
+    private class MappedInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        MappedInputStream(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            if (position >= end) return -1;
+            byte b = segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+            position++;
+            return b & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) {
+            if (position >= end) return -1;
+            MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+            int index = (int) (position % SEGMENT_SIZE);
+            int n = (int) Math.min(count, Math.min(end - position, segment.limit() - index));
+            segment.get(index, buffer, offset, n);
+            position += n;
+            return n;
+        }
+    }
+}
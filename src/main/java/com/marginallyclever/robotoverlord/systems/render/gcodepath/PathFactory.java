@@ -7,6 +7,8 @@ import org.slf4j.LoggerFactory;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -23,6 +25,11 @@ public class PathFactory {
             new Slic3rGCodePathLoader(),
     };
 
+    /**
+     * Files bigger than this are memory mapped and decoded a window at a time.  See {@link MappedGCodeFile}.
+     */
+    public static final long MAPPED_FILE_SIZE = 64L * 1024 * 1024;
+
     // the pool of all mesh loaded
     private static final LinkedList<GCodePath> pathPool = new LinkedList<>();
 
@@ -89,6 +96,28 @@ public class PathFactory {
         }
     }
 
+    /**
+     * Open a big GCode file without loading it.
+     * @param filename the file to open.  Files in zip archives cannot be mapped.
+     * @param maxStepSize the maximum distance between points in arcs when measuring the program.
+     * @return the mapped file, already indexing, or null if the file is small enough to {@link #load(String)}.
+     */
+    public static MappedGCodeFile openMapped(String filename, double maxStepSize) {
+        if(filename == null || !filename.toLowerCase().endsWith("gcode")) return null;
+        File file = new File(filename);
+        if(!file.isFile() || file.length() < MAPPED_FILE_SIZE) return null;
+
+        try {
+            logger.info("Mapping "+filename);
+            MappedGCodeFile mapped = new MappedGCodeFile(filename,Slic3rGCodePathLoader.MM_TO_CM,maxStepSize);
+            mapped.startIndexing();
+            return mapped;
+        } catch(IOException e) {
+            logger.error("Failed to map gcodepath: "+e.getMessage());
+            return null;
+        }
+    }
+
     public static void reload(GCodePath myGCodePath) {
         myGCodePath.clear();
         attemptLoad(myGCodePath.getSourceName(), myGCodePath);
@@ -0,0 +1,166 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import javax.vecmath.Point3d;
+import java.util.Arrays;
+
+/**
+ * <p>The points of a {@link GCodePath} as walked by {@link PathWalker}, with the distance from the start to each
+ * point.  Built once per path so that finding the position at a distance is a binary search instead of a walk.
+ * Distances come from {@link PathWalker#getDistance()}, so arcs have their true length.</p>
+ * <p>The walk starts at the origin, same as {@link PathWalker}, unless a start is given.  Callers that step along the
+ * path a little at a time hit the segment of the last lookup or the one after it, so those are tried before
+ * searching.</p>
+ * <p>The index remembers the {@link GCodePath#getVersion()} it was built from.  Use {@link #isValidFor(GCodePath)}
+ * to find out when it must be built again.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class PathLengthIndex {
+    private final GCodePath path;
+    private final long version;
+    private final double maxStepSize;
+    private int count;
+    private double[] x, y, z;
+    /**
+     * distance[i] is the length of the path from the first point to point i.
+     */
+    private double[] distance;
+    private int cursor = 0;
+
+    /**
+     * @param path the path to index.
+     * @param maxStepSize the maximum distance between points in arcs.
+     */
+    public PathLengthIndex(GCodePath path, double maxStepSize) {
+        this(path, maxStepSize, new Point3d(), false, 0);
+    }
+
+    /**
+     * Index part of a longer program.
+     * @param path the part to index.
+     * @param maxStepSize the maximum distance between points in arcs.
+     * @param start where the machine is before the first element.
+     * @param relative true if the machine is in relative mode (G91) before the first element.
+     * @param startDistance the length of the program before the first element.
+     */
+    public PathLengthIndex(GCodePath path, double maxStepSize, Point3d start, boolean relative, double startDistance) {
+        this.path = path;
+        this.version = path.getVersion();
+        this.maxStepSize = maxStepSize;
+
+        int capacity = Math.max(16, path.size() + 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        distance = new double[capacity];
+        x[0] = start.x;
+        y[0] = start.y;
+        z[0] = start.z;
+        distance[0] = startDistance;
+        count = 1;
+
+        PathWalker walker = new PathWalker(null, path, maxStepSize);
+        walker.setStart(start, relative);
+        while (walker.hasNext()) {
+            walker.next();
+            Point3d p = walker.getCurrentPosition();
+            if (count == x.length) grow();
+            x[count] = p.x;
+            y[count] = p.y;
+            z[count] = p.z;
+            // arcs are measured exactly, so the distance between two points may be a little more than the chord.
+            distance[count] = startDistance + walker.getDistance();
+            count++;
+        }
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+    }
+
+    /**
+     * @param path the path that is about to be queried.
+     * @return true if this index was built from the same path and the path has not changed since.
+     */
+    public boolean isValidFor(GCodePath path) {
+        return this.path == path && version == path.getVersion();
+    }
+
+    public double getMaxStepSize() {
+        return maxStepSize;
+    }
+
+    /**
+     * @return the distance at the end of the path.  For a whole program this is its length.
+     */
+    public double getLength() {
+        return distance[count - 1];
+    }
+
+    /**
+     * @return the distance at the start of the path.  Zero unless this is part of a longer program.
+     */
+    public double getStartDistance() {
+        return distance[0];
+    }
+
+    /**
+     * @return true if {@link #get(double, Point3d)} can find d.
+     */
+    public boolean contains(double d) {
+        return d >= distance[0] && d < distance[count - 1];
+    }
+
+    /**
+     * @return the number of points, including the origin.
+     */
+    public int getNumPoints() {
+        return count;
+    }
+
+    /**
+     * Find the position at a distance along the path.
+     * @param d the distance from the start.
+     * @param result where to put the position, in path coordinates.
+     * @return false if d is not in [start distance, length).
+     */
+    public boolean get(double d, Point3d result) {
+        if (!contains(d)) return false;
+
+        int k = findSegment(d);
+        double length = distance[k + 1] - distance[k];
+        double t = length > 0 ? (d - distance[k]) / length : 0;
+        result.x = x[k] + (x[k + 1] - x[k]) * t;
+        result.y = y[k] + (y[k + 1] - y[k]) * t;
+        result.z = z[k] + (z[k + 1] - z[k]) * t;
+        return true;
+    }
+
+    /**
+     * @return the index k of the segment where distance[k] &lt;= d &lt; distance[k+1].
+     */
+    private int findSegment(double d) {
+        // try the last segment and the one after it.
+        for (int k = cursor; k < cursor + 2 && k + 1 < count; ++k) {
+            if (distance[k] <= d && d < distance[k + 1]) {
+                cursor = k;
+                return k;
+            }
+        }
+        int lo = 0;
+        int hi = count - 1;
+        // invariant: distance[lo] <= d < distance[hi]
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (distance[mid] <= d) lo = mid;
+            else hi = mid;
+        }
+        cursor = lo;
+        return lo;
+    }
+}
@@ -2,20 +2,31 @@ package com.marginallyclever.robotoverlord.systems.render.gcodepath;
 import com.marginallyclever.robotoverlord.components.PoseComponent;
 
 import javax.vecmath.Point3d;
-import java.util.Iterator;
 
 /**
- * Walks a {@link GCodePath}, breaking arcs into line segments.
+ * Walks a {@link GCodePath}, breaking arcs into line segments.  Arcs are split into the fewest segments that stay
+ * within {@link #getChordTolerance()} of the true arc, so small arcs get few points and big arcs do not look
+ * faceted.  {@link #getDistance()} measures arcs exactly, not along the segments.
  * @author Dan Royer
  */
 public class PathWalker {
-    private final Iterator<GCodePathElement> iterator;
+    /**
+     * The default chord error, in path units.
+     */
+    public static final double DEFAULT_CHORD_TOLERANCE = 0.001;
+
+    private final GCodePath path;
+    private int index = -1;
     private GCodePathElement currentElement;
+    private String currentCommand;
     private final double maxStepSize;
+    private double chordTolerance = DEFAULT_CHORD_TOLERANCE;
     private final Point3d currentPosition = new Point3d();
     private int currentArcSegment, totalArcSegments;
+    private final GCodeArc arc = new GCodeArc();
+    private double distance = 0;
+    private double arcStartDistance;
     boolean relativeMoves=false;
-    double centerX, centerY, radius;
     /**
      * The {@link PoseComponent} which converts local gcodepath coordinates to world coordinates.
      */
@@ -25,33 +36,62 @@ public class PathWalker {
      * Initialize the gcodepath walker.
      * @param poseComponent converts local gcodepath coordinates to world coordinates.
      * @param path the gcodepath to walk.
-     * @param maxStepSize the maximum distance between points in arc segments.
+     * @param maxStepSize the maximum distance between points in arc segments, or 0 for no limit.
      */
     public PathWalker(PoseComponent poseComponent, GCodePath path,double maxStepSize) {
         this.poseComponent = poseComponent;
-        this.iterator = path.getElements().iterator();
+        this.path = path;
         this.maxStepSize = maxStepSize;
         this.currentArcSegment = 0;
         this.totalArcSegments = 0;
     }
 
+    /**
+     * Start somewhere other than the origin, for walking part of a longer program.  Call before {@link #next()}.
+     * @param position where the machine is before the first element, in path coordinates.
+     * @param relative true if the machine is in relative mode (G91) before the first element.
+     */
+    public void setStart(Point3d position, boolean relative) {
+        currentPosition.set(position);
+        relativeMoves = relative;
+    }
+
+    /**
+     * @return true if the last G90 or G91 was G91.
+     */
+    public boolean isRelative() {
+        return relativeMoves;
+    }
+
     public boolean hasNext() {
-        return iterator.hasNext() || currentArcSegment < totalArcSegments;
+        return index + 1 < path.size() || currentArcSegment < totalArcSegments;
+    }
+
+    /**
+     * @param tolerance the furthest an arc segment may be from the true arc, in path units.  0 to split arcs by
+     *                  the max step size only.
+     */
+    public void setChordTolerance(double tolerance) {
+        chordTolerance = Math.max(0, tolerance);
+    }
+
+    public double getChordTolerance() {
+        return chordTolerance;
     }
 
     public void next() {
         if (currentArcSegment < totalArcSegments) {
-            double angleFraction = (double) currentArcSegment / totalArcSegments;
-            double angleDelta = currentElement.isClockwise() ? -angleFraction * 2 * Math.PI : angleFraction * 2 * Math.PI;
-
-            currentPosition.x = centerX + radius * Math.cos(angleDelta);
-            currentPosition.y = centerY + radius * Math.sin(angleDelta);
             currentArcSegment++;
+            nextArcPoint();
             return;
         }
 
-        currentElement = iterator.next();
-        String command = currentElement.getCommand();
+        index++;
+        currentElement = null;
+        currentCommand = path.getCommand(index);
+        String command = currentCommand;
+        totalArcSegments = 0;
+        currentArcSegment = 0;
 
         if (command.equals("G90")) {
             relativeMoves = false;
@@ -61,35 +101,75 @@ public class PathWalker {
             return;
         }
 
+        double x = path.getX(index);
+        double y = path.getY(index);
+        double z = path.getZ(index);
+        if (relativeMoves) {
+            x += currentPosition.x;
+            y += currentPosition.y;
+            z += currentPosition.z;
+        }
+
         if (command.equals("G2") || command.equals("G3")) {
-            double i = currentElement.getI();
-            double j = currentElement.getJ();
-            centerX = currentElement.getX() - i;
-            centerY = currentElement.getY() - j;
-            radius = Math.sqrt(i * i + j * j);
-            double circumference = 2.0 * Math.PI * radius;
-            totalArcSegments = (int)Math.ceil(circumference / maxStepSize);
+            arc.set(command.equals("G2"), currentPosition, x, y, z, path.getI(index), path.getJ(index));
+            arcStartDistance = distance;
+            totalArcSegments = arc.getSegments(chordTolerance, maxStepSize);
             currentArcSegment = 1;
-        } else {
-            totalArcSegments = 0;
-            currentArcSegment = 0;
+            nextArcPoint();
+            return;
         }
 
-        if (relativeMoves) {
-            currentPosition.x += currentElement.getX();
-            currentPosition.y += currentElement.getY();
-            currentPosition.z += currentElement.getZ();
-        } else {
-            currentPosition.x = currentElement.getX();
-            currentPosition.y = currentElement.getY();
-            currentPosition.z = currentElement.getZ();
-        }
+        double dx = x - currentPosition.x;
+        double dy = y - currentPosition.y;
+        double dz = z - currentPosition.z;
+        distance += Math.sqrt(dx * dx + dy * dy + dz * dz);
+        currentPosition.set(x, y, z);
+    }
+
+    private void nextArcPoint() {
+        double t = (double) currentArcSegment / totalArcSegments;
+        if (currentArcSegment == totalArcSegments) t = 1;
+        arc.getPoint(t, currentPosition);
+        distance = arcStartDistance + arc.getLength() * t;
+    }
+
+    /**
+     * @return the length of the path from the start to the current position.  Arcs are measured exactly.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the arc being walked, or null if the current element is not an arc.  Changes with every arc.
+     */
+    public GCodeArc getCurrentArc() {
+        return totalArcSegments > 0 ? arc : null;
     }
 
+    /**
+     * @return a copy of the current element.  Prefer {@link #getCurrentIndex()} and the columns of the path in loops.
+     */
     public GCodePathElement getCurrentElement() {
+        if (currentElement == null && index >= 0) currentElement = path.getElement(index);
         return currentElement;
     }
 
+    /**
+     * @return the index of the current element in the path, or -1 before the first call to {@link #next()}.
+     */
+    public int getCurrentIndex() {
+        return index;
+    }
+
+    public String getCurrentCommand() {
+        return currentCommand;
+    }
+
+    public GCodePath getPath() {
+        return path;
+    }
+
 
     public Point3d getCurrentPosition() {
         if(poseComponent==null) return new Point3d(currentPosition);
@@ -0,0 +1,260 @@
+package com.marginallyclever.robotoverlord.systems.render.mesh;
+
+import com.jogamp.opengl.GL3;
+import com.marginallyclever.convenience.helpers.OpenGLHelper;
+import com.marginallyclever.robotoverlord.systems.render.ShaderProgram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Arcs drawn from their center, radius and angles instead of from points.  Each arc is one vertex and a geometry
+ * shader splits it into line segments on the GPU, so the number of segments follows {@link #setChordTolerance(double)}
+ * at draw time.</p>
+ * <p>An arc that needs more than {@link #MAX_SEGMENTS} segments is stored as several shorter arcs, split for the
+ * tolerance at the time it was added.  A coarser tolerance later needs nothing built again.  A finer one may need more
+ * pieces than were stored; {@link #needsRebuild(double)} says when the arcs must be added again.  The shader is used
+ * only while drawing; the shader that was in use before is restored after.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ArcMesh extends Mesh {
+    private static final Logger logger = LoggerFactory.getLogger(ArcMesh.class);
+    /**
+     * The most segments the geometry shader makes from one arc.  Must match arc_330.geom.
+     */
+    public static final int MAX_SEGMENTS = 64;
+    private static final int FLOATS_PER_ARC = 12;
+
+    /**
+     * center x, center y, start z, radius, start angle, sweep, r, g, b, a, change in z, unused.
+     */
+    private float[] data = new float[FLOATS_PER_ARC * 64];
+    private int numArcs;
+    private int drawFirst = 0;
+    private int drawCount = Integer.MAX_VALUE;
+    private double chordTolerance = 0.001;
+    // the largest tolerance any arc was split for since the last clear.
+    private double splitTolerance = 0;
+    private boolean isDirty = true;
+
+    private ShaderProgram shader;
+    private int[] vao;
+    private int[] vbo;
+    private final int[] program = new int[1];
+    private final float[] projection = new float[16];
+    private final float[] view = new float[16];
+    private final float[] model = new float[16];
+
+    public ArcMesh() {
+        super(GL3.GL_POINTS);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        numArcs = 0;
+        splitTolerance = 0;
+        drawFirst = 0;
+        drawCount = Integer.MAX_VALUE;
+        isDirty = true;
+    }
+
+    /**
+     * Add an arc in the XY plane.  Z changes evenly from start to end.
+     * @param startAngle the angle of the start around the center, in radians.
+     * @param sweep the angle from start to end in radians.  Negative for clockwise.
+     */
+    public void addArc(double centerX, double centerY, double startZ, double radius, double startAngle, double sweep,
+                       double deltaZ, float r, float g, float b, float a) {
+        int pieces = Math.max(1, (int) Math.ceil(getSegments(radius, sweep, chordTolerance) / (double) MAX_SEGMENTS));
+        splitTolerance = Math.max(splitTolerance, chordTolerance);
+        for (int i = 0; i < pieces; ++i) {
+            if ((numArcs + 1) * FLOATS_PER_ARC > data.length) data = Arrays.copyOf(data, data.length * 2);
+            int k = numArcs * FLOATS_PER_ARC;
+            data[k] = (float) centerX;
+            data[k + 1] = (float) centerY;
+            data[k + 2] = (float) (startZ + deltaZ * i / pieces);
+            data[k + 3] = (float) radius;
+            data[k + 4] = (float) (startAngle + sweep * i / pieces);
+            data[k + 5] = (float) (sweep / pieces);
+            data[k + 6] = r;
+            data[k + 7] = g;
+            data[k + 8] = b;
+            data[k + 9] = a;
+            data[k + 10] = (float) (deltaZ / pieces);
+            data[k + 11] = 0;
+            numArcs++;
+        }
+        isDirty = true;
+    }
+
+    /**
+     * @return the number of segments the shader makes, if there were no limit.  Same sums as arc_330.geom.
+     */
+    static int getSegments(double radius, double sweep, double tolerance) {
+        double maxAngle = Math.PI / 2;
+        if (tolerance > 0 && radius > tolerance) {
+            maxAngle = Math.min(maxAngle, 2 * Math.acos(1 - tolerance / radius));
+        }
+        return Math.max(1, (int) Math.ceil(Math.abs(sweep) / maxAngle));
+    }
+
+    /**
+     * @param tolerance the furthest a segment may be from the true arc.  Takes effect at the next draw.  Arcs added
+     *                  before this was called keep their number of pieces; see {@link #needsRebuild(double)}.
+     */
+    public void setChordTolerance(double tolerance) {
+        chordTolerance = Math.max(0, tolerance);
+    }
+
+    /**
+     * @param tolerance a tolerance that may be given to {@link #setChordTolerance(double)}.
+     * @return true if some arc already added would need more than {@link #MAX_SEGMENTS} segments per piece at this
+     * tolerance, so the arcs should be cleared and added again.
+     */
+    public boolean needsRebuild(double tolerance) {
+        // zero has no chord limit, which is the coarsest of all.
+        return numArcs > 0 && tolerance > 0 && tolerance < splitTolerance;
+    }
+
+    public double getChordTolerance() {
+        return chordTolerance;
+    }
+
+    /**
+     * Draw only some of the arcs.
+     * @param first the first arc to draw.
+     * @param count the number of arcs to draw.
+     */
+    public void setDrawRange(int first, int count) {
+        drawFirst = Math.max(0, first);
+        drawCount = Math.max(0, count);
+    }
+
+    /**
+     * @return the number of arcs.  Long arcs count as more than one.
+     */
+    public int getNumArcs() {
+        return numArcs;
+    }
+
+    @Override
+    public int getNumVertices() {
+        return numArcs;
+    }
+
+    @Override
+    public boolean getHasColors() {
+        return true;
+    }
+
+    /**
+     * @return the start of arc t.
+     */
+    @Override
+    public Vector3d getVertex(int t) {
+        if (t < 0 || t >= numArcs) throw new IndexOutOfBoundsException(t);
+        int k = t * FLOATS_PER_ARC;
+        return new Vector3d(
+                data[k] + data[k + 3] * Math.cos(data[k + 4]),
+                data[k + 1] + data[k + 3] * Math.sin(data[k + 4]),
+                data[k + 2]);
+    }
+
+    @Override
+    public void updateCuboid() {
+        Point3d boundBottom = new Point3d(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        Point3d boundTop = new Point3d(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+        for (int i = 0; i < numArcs; ++i) {
+            int k = i * FLOATS_PER_ARC;
+            double radius = data[k + 3];
+            double z2 = data[k + 2] + data[k + 10];
+            boundBottom.x = Math.min(boundBottom.x, data[k] - radius);
+            boundBottom.y = Math.min(boundBottom.y, data[k + 1] - radius);
+            boundBottom.z = Math.min(boundBottom.z, Math.min(data[k + 2], z2));
+            boundTop.x = Math.max(boundTop.x, data[k] + radius);
+            boundTop.y = Math.max(boundTop.y, data[k + 1] + radius);
+            boundTop.z = Math.max(boundTop.z, Math.max(data[k + 2], z2));
+        }
+        AABB.setBounds(boundTop, boundBottom);
+    }
+
+    @Override
+    public void unload(GL3 gl) {
+        super.unload(gl);
+        destroyBuffers(gl);
+        if (shader != null) {
+            shader.delete(gl);
+            shader = null;
+        }
+    }
+
+    @Override
+    public void render(GL3 gl) {
+        int count = (int) Math.min((long) numArcs - drawFirst, drawCount);
+        if (count <= 0) return;
+        if (!ChunkedPolylineMesh.readMatrices(gl, program, projection, view, model)) return;
+        if (shader == null) {
+            shader = new ShaderProgram(gl,
+                    ShaderProgram.readResource(ArcMesh.class, "arc_330.vert"),
+                    ShaderProgram.readResource(ArcMesh.class, "arc_330.geom"),
+                    ShaderProgram.readResource(ArcMesh.class, "arc_330.frag"));
+        }
+        if (vao == null) createBuffers(gl);
+        if (isDirty) updateBuffers(gl);
+
+        shader.use(gl);
+        // the matrices were read back column major, so they go in as they are.
+        gl.glUniformMatrix4fv(shader.getUniformLocation(gl, "projectionMatrix"), 1, false, projection, 0);
+        gl.glUniformMatrix4fv(shader.getUniformLocation(gl, "viewMatrix"), 1, false, view, 0);
+        gl.glUniformMatrix4fv(shader.getUniformLocation(gl, "modelMatrix"), 1, false, model, 0);
+        shader.set1f(gl, "chordTolerance", (float) chordTolerance);
+
+        gl.glBindVertexArray(vao[0]);
+        gl.glDrawArrays(GL3.GL_POINTS, drawFirst, count);
+        gl.glBindVertexArray(0);
+        gl.glUseProgram(program[0]);
+        OpenGLHelper.checkGLError(gl, logger);
+    }
+
+    private void createBuffers(GL3 gl) {
+        vao = new int[1];
+        vbo = new int[1];
+        gl.glGenVertexArrays(1, vao, 0);
+        gl.glGenBuffers(1, vbo, 0);
+    }
+
+    private void updateBuffers(GL3 gl) {
+        int stride = FLOATS_PER_ARC * BYTES_PER_FLOAT;
+        gl.glBindVertexArray(vao[0]);
+        gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo[0]);
+        gl.glBufferData(GL3.GL_ARRAY_BUFFER, (long) numArcs * stride,
+                FloatBuffer.wrap(data, 0, numArcs * FLOATS_PER_ARC), GL3.GL_STATIC_DRAW);
+        // same attribute locations as Mesh, with other meanings.  see arc_330.vert.
+        gl.glEnableVertexAttribArray(0);
+        gl.glVertexAttribPointer(0, 3, GL3.GL_FLOAT, false, stride, 0);
+        gl.glEnableVertexAttribArray(1);
+        gl.glVertexAttribPointer(1, 3, GL3.GL_FLOAT, false, stride, 3L * BYTES_PER_FLOAT);
+        gl.glEnableVertexAttribArray(2);
+        gl.glVertexAttribPointer(2, 4, GL3.GL_FLOAT, false, stride, 6L * BYTES_PER_FLOAT);
+        gl.glEnableVertexAttribArray(3);
+        gl.glVertexAttribPointer(3, 2, GL3.GL_FLOAT, false, stride, 10L * BYTES_PER_FLOAT);
+        gl.glBindVertexArray(0);
+        isDirty = false;
+    }
+
+    private void destroyBuffers(GL3 gl) {
+        if (vao == null) return;
+        gl.glDeleteBuffers(1, vbo, 0);
+        gl.glDeleteVertexArrays(1, vao, 0);
+        vao = null;
+        vbo = null;
+        isDirty = true;
+    }
+}
@@ -0,0 +1,526 @@
+package com.marginallyclever.robotoverlord.systems.render.mesh;
+
+import com.jogamp.opengl.GL3;
+import com.marginallyclever.convenience.helpers.OpenGLHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A colored line strip with millions of points.  {@link Mesh} keeps boxed floats in lists and sends everything
+ * again after any change.  This keeps the points in fixed size chunks of plain arrays instead.  Each chunk is sent
+ * to the GPU once and has its own bounding box.</p>
+ * <ul>
+ *     <li>Chunks outside the view are not drawn.</li>
+ *     <li>Chunks that are small on screen draw a simplified copy of themselves.</li>
+ *     <li>{@link #setDrawRange(int, int)} picks which points are drawn, so scrubbing through a program does not
+ *     rebuild anything.</li>
+ * </ul>
+ * <p>Consecutive chunks share one point so the strip has no gaps.  The chunk that is being filled is drawn when
+ * {@link #end()} is called.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ChunkedPolylineMesh extends Mesh {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedPolylineMesh.class);
+    public static final int CHUNK_SIZE = 65536;
+    /**
+     * Chunks smaller than this fraction of the view height are drawn simplified.
+     */
+    public static final double LOD_SCREEN_SIZE = 0.1;
+    /**
+     * The simplified copy of a chunk is never further than this fraction of the chunk size from the original.
+     */
+    public static final double LOD_TOLERANCE = 0.005;
+
+    static class Chunk {
+        float[] positions = new float[CHUNK_SIZE * 3];
+        float[] colors = new float[CHUNK_SIZE * 4];
+        /**
+         * the index of the first point of this chunk in the whole strip.
+         */
+        int first;
+        int count;
+        final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+        // the simplified copy
+        float[] lodPositions;
+        float[] lodColors;
+        /**
+         * lodSource[i] is the index in this chunk of simplified point i.
+         */
+        int[] lodSource;
+        int lodCount;
+
+        // GPU state: one vertex array for the full detail, one for the simplified copy.
+        int[] vao;
+        int[] vbo;
+
+        void add(float x, float y, float z, float r, float g, float b, float a) {
+            int p = count * 3;
+            positions[p] = x;
+            positions[p + 1] = y;
+            positions[p + 2] = z;
+            int c = count * 4;
+            colors[c] = r;
+            colors[c + 1] = g;
+            colors[c + 2] = b;
+            colors[c + 3] = a;
+            count++;
+            if (x < min[0]) min[0] = x;
+            if (y < min[1]) min[1] = y;
+            if (z < min[2]) min[2] = z;
+            if (x > max[0]) max[0] = x;
+            if (y > max[1]) max[1] = y;
+            if (z > max[2]) max[2] = z;
+        }
+    }
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    /**
+     * Chunks removed by {@link #clear()} that still have buffers on the GPU.
+     */
+    private final List<Chunk> retired = new ArrayList<>();
+    private Chunk filling;
+    private int numPoints;
+    private int drawFirst = 0;
+    private int drawCount = Integer.MAX_VALUE;
+
+    private final int[] program = new int[1];
+    private final float[] projection = new float[16];
+    private final float[] view = new float[16];
+    private final float[] model = new float[16];
+    private final float[] clip = new float[16];
+    private final float[] scratch = new float[16];
+    private int chunksDrawn;
+    private int chunksSimplified;
+
+    public ChunkedPolylineMesh() {
+        super(GL3.GL_LINE_STRIP);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        synchronized (chunks) {
+            retired.addAll(chunks);
+            chunks.clear();
+        }
+        filling = null;
+        numPoints = 0;
+        drawFirst = 0;
+        drawCount = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Add a point to the end of the strip.
+     */
+    public void addPoint(float x, float y, float z, float r, float g, float b, float a) {
+        if (filling == null) {
+            filling = new Chunk();
+            filling.first = numPoints;
+        } else if (filling.count == CHUNK_SIZE) {
+            finishChunk();
+            Chunk next = new Chunk();
+            // repeat the last point so the strip has no gap.
+            int p = (CHUNK_SIZE - 1) * 3;
+            int c = (CHUNK_SIZE - 1) * 4;
+            next.first = numPoints - 1;
+            next.add(filling.positions[p], filling.positions[p + 1], filling.positions[p + 2],
+                    filling.colors[c], filling.colors[c + 1], filling.colors[c + 2], filling.colors[c + 3]);
+            filling = next;
+        }
+        filling.add(x, y, z, r, g, b, a);
+        numPoints++;
+    }
+
+    /**
+     * Finish the strip.  Points added after this start a new chunk.
+     */
+    public void end() {
+        if (filling != null && filling.count > 0) finishChunk();
+        filling = null;
+        updateCuboid();
+    }
+
+    private void finishChunk() {
+        if (filling.count < CHUNK_SIZE) {
+            filling.positions = Arrays.copyOf(filling.positions, filling.count * 3);
+            filling.colors = Arrays.copyOf(filling.colors, filling.count * 4);
+        }
+        simplify(filling);
+        synchronized (chunks) {
+            chunks.add(filling);
+        }
+    }
+
+    /**
+     * Draw only some of the points.
+     * @param first the first point to draw.
+     * @param count the number of points to draw.
+     */
+    public void setDrawRange(int first, int count) {
+        drawFirst = Math.max(0, first);
+        drawCount = Math.max(0, count);
+    }
+
+    public int getDrawFirst() {
+        return drawFirst;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public int getNumChunks() {
+        synchronized (chunks) {
+            return chunks.size();
+        }
+    }
+
+    /**
+     * @return the number of chunks drawn in the last frame.
+     */
+    public int getChunksDrawn() {
+        return chunksDrawn;
+    }
+
+    /**
+     * @return the number of chunks drawn simplified in the last frame.
+     */
+    public int getChunksSimplified() {
+        return chunksSimplified;
+    }
+
+    /**
+     * @return the number of points in chunk i and in its simplified copy.
+     */
+    int[] getChunkSizes(int i) {
+        synchronized (chunks) {
+            Chunk c = chunks.get(i);
+            return new int[]{c.count, c.lodCount};
+        }
+    }
+
+    @Override
+    public int getNumVertices() {
+        return numPoints;
+    }
+
+    @Override
+    public boolean getHasColors() {
+        return true;
+    }
+
+    @Override
+    public Vector3d getVertex(int t) {
+        synchronized (chunks) {
+            // chunks after the first start with a copy of the last point of the chunk before.
+            for (Chunk c : chunks) {
+                int local = t - c.first;
+                if (local >= 0 && local < c.count) {
+                    return new Vector3d(c.positions[local * 3], c.positions[local * 3 + 1], c.positions[local * 3 + 2]);
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException(t);
+    }
+
+    @Override
+    public void updateCuboid() {
+        Point3d boundBottom = new Point3d(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        Point3d boundTop = new Point3d(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+        synchronized (chunks) {
+            for (Chunk c : chunks) {
+                boundBottom.x = Math.min(boundBottom.x, c.min[0]);
+                boundBottom.y = Math.min(boundBottom.y, c.min[1]);
+                boundBottom.z = Math.min(boundBottom.z, c.min[2]);
+                boundTop.x = Math.max(boundTop.x, c.max[0]);
+                boundTop.y = Math.max(boundTop.y, c.max[1]);
+                boundTop.z = Math.max(boundTop.z, c.max[2]);
+            }
+        }
+        AABB.setBounds(boundTop, boundBottom);
+    }
+
+    @Override
+    public void unload(GL3 gl) {
+        super.unload(gl);
+        synchronized (chunks) {
+            for (Chunk c : chunks) destroyBuffers(gl, c);
+            for (Chunk c : retired) destroyBuffers(gl, c);
+            retired.clear();
+        }
+    }
+
+    @Override
+    public void render(GL3 gl) {
+        List<Chunk> list;
+        synchronized (chunks) {
+            for (Chunk c : retired) destroyBuffers(gl, c);
+            retired.clear();
+            list = new ArrayList<>(chunks);
+        }
+        boolean canCull = readClipMatrix(gl);
+        long drawEnd = (long) drawFirst + drawCount;
+        chunksDrawn = 0;
+        chunksSimplified = 0;
+
+        for (Chunk c : list) {
+            int a = Math.max(0, drawFirst - c.first);
+            int b = (int) Math.min(c.count, drawEnd - c.first);
+            if (b - a < 2) continue;
+            if (canCull && !isVisible(clip, c.min, c.max)) continue;
+
+            if (c.vao == null) createBuffers(gl, c);
+            boolean simple = canCull && c.lodCount < c.count
+                    && getScreenSize(clip, projection, c.min, c.max) < LOD_SCREEN_SIZE;
+            if (simple) {
+                int la = lowerBound(c.lodSource, c.lodCount, a);
+                int lb = lowerBound(c.lodSource, c.lodCount, b);
+                if (lb - la < 2) continue;
+                gl.glBindVertexArray(c.vao[1]);
+                gl.glDrawArrays(GL3.GL_LINE_STRIP, la, lb - la);
+                chunksSimplified++;
+            } else {
+                gl.glBindVertexArray(c.vao[0]);
+                gl.glDrawArrays(GL3.GL_LINE_STRIP, a, b - a);
+            }
+            chunksDrawn++;
+        }
+        gl.glBindVertexArray(0);
+        OpenGLHelper.checkGLError(gl, logger);
+    }
+
+    private void createBuffers(GL3 gl, Chunk c) {
+        c.vao = new int[2];
+        c.vbo = new int[4];
+        gl.glGenVertexArrays(2, c.vao, 0);
+        gl.glGenBuffers(4, c.vbo, 0);
+        upload(gl, c.vao[0], c.vbo[0], c.vbo[1], c.positions, c.colors, c.count);
+        upload(gl, c.vao[1], c.vbo[2], c.vbo[3], c.lodPositions, c.lodColors, c.lodCount);
+        OpenGLHelper.checkGLError(gl, logger);
+    }
+
+    private void upload(GL3 gl, int vao, int positionBuffer, int colorBuffer,
+                        float[] positions, float[] colors, int count) {
+        gl.glBindVertexArray(vao);
+        // same attribute locations as Mesh: 0 position, 2 color.
+        FloatBuffer data = FloatBuffer.wrap(positions, 0, count * 3);
+        gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, positionBuffer);
+        gl.glBufferData(GL3.GL_ARRAY_BUFFER, (long) count * 3 * BYTES_PER_FLOAT, data, GL3.GL_STATIC_DRAW);
+        gl.glEnableVertexAttribArray(0);
+        gl.glVertexAttribPointer(0, 3, GL3.GL_FLOAT, false, 0, 0);
+
+        data = FloatBuffer.wrap(colors, 0, count * 4);
+        gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, colorBuffer);
+        gl.glBufferData(GL3.GL_ARRAY_BUFFER, (long) count * 4 * BYTES_PER_FLOAT, data, GL3.GL_STATIC_DRAW);
+        gl.glEnableVertexAttribArray(2);
+        gl.glVertexAttribPointer(2, 4, GL3.GL_FLOAT, false, 0, 0);
+        gl.glDisableVertexAttribArray(1);
+        gl.glDisableVertexAttribArray(3);
+        gl.glBindVertexArray(0);
+    }
+
+    private void destroyBuffers(GL3 gl, Chunk c) {
+        if (c.vao == null) return;
+        gl.glDeleteBuffers(4, c.vbo, 0);
+        gl.glDeleteVertexArrays(2, c.vao, 0);
+        c.vao = null;
+        c.vbo = null;
+    }
+
+    /**
+     * Read the matrices of the current shader so chunks can be culled without asking the caller for the camera.
+     * @return false if the shader does not have the usual matrices.
+     */
+    private boolean readClipMatrix(GL3 gl) {
+        if (!readMatrices(gl, program, projection, view, model)) return false;
+        multiply(view, model, scratch);
+        multiply(projection, scratch, clip);
+        return true;
+    }
+
+    /**
+     * Read the column major projection, view and model matrices of the current shader.
+     * @param program gets the id of the current shader.
+     * @return false if there is no shader or it does not have the usual matrices.
+     */
+    static boolean readMatrices(GL3 gl, int[] program, float[] projection, float[] view, float[] model) {
+        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, program, 0);
+        if (program[0] == 0) return false;
+        int p = gl.glGetUniformLocation(program[0], "projectionMatrix");
+        int v = gl.glGetUniformLocation(program[0], "viewMatrix");
+        int m = gl.glGetUniformLocation(program[0], "modelMatrix");
+        if (p == -1 || v == -1 || m == -1) return false;
+        gl.glGetUniformfv(program[0], p, projection, 0);
+        gl.glGetUniformfv(program[0], v, view, 0);
+        gl.glGetUniformfv(program[0], m, model, 0);
+        return true;
+    }
+
+    /**
+     * out = a * b, all column major.
+     */
+    static void multiply(float[] a, float[] b, float[] out) {
+        for (int c = 0; c < 4; ++c) {
+            for (int r = 0; r < 4; ++r) {
+                out[c * 4 + r] = a[r] * b[c * 4] + a[4 + r] * b[c * 4 + 1]
+                        + a[8 + r] * b[c * 4 + 2] + a[12 + r] * b[c * 4 + 3];
+            }
+        }
+    }
+
+    /**
+     * @param clip the column major matrix from the chunk to clip space.
+     * @return false if all corners of the box are outside the same side of the view.
+     */
+    static boolean isVisible(float[] clip, float[] min, float[] max) {
+        int outside = 0x3f;
+        for (int i = 0; i < 8; ++i) {
+            float x = (i & 1) == 0 ? min[0] : max[0];
+            float y = (i & 2) == 0 ? min[1] : max[1];
+            float z = (i & 4) == 0 ? min[2] : max[2];
+            float cx = clip[0] * x + clip[4] * y + clip[8] * z + clip[12];
+            float cy = clip[1] * x + clip[5] * y + clip[9] * z + clip[13];
+            float cz = clip[2] * x + clip[6] * y + clip[10] * z + clip[14];
+            float cw = clip[3] * x + clip[7] * y + clip[11] * z + clip[15];
+            int flags = 0;
+            if (cx < -cw) flags |= 1;
+            if (cx > cw) flags |= 2;
+            if (cy < -cw) flags |= 4;
+            if (cy > cw) flags |= 8;
+            if (cz < -cw) flags |= 16;
+            if (cz > cw) flags |= 32;
+            outside &= flags;
+            if (outside == 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return roughly how much of the view height the box covers.  1 or more if the camera is inside the box.
+     */
+    static double getScreenSize(float[] clip, float[] projection, float[] min, float[] max) {
+        float x = (min[0] + max[0]) / 2;
+        float y = (min[1] + max[1]) / 2;
+        float z = (min[2] + max[2]) / 2;
+        double dx = max[0] - min[0];
+        double dy = max[1] - min[1];
+        double dz = max[2] - min[2];
+        double radius = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+        double w = clip[3] * x + clip[7] * y + clip[11] * z + clip[15];
+        if (w <= radius) return Double.MAX_VALUE;
+        // projection[5] is the vertical scale of a perspective or orthographic projection.
+        return radius * Math.abs(projection[5]) / w;
+    }
+
+    /**
+     * @return the first i in [0,count) where list[i] &gt;= value, or count.
+     */
+    private static int lowerBound(int[] list, int count, int value) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list[mid] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Build the simplified copy of a chunk with Douglas-Peucker.  Points where the color changes are always kept so
+     * the colors stay where they belong.
+     */
+    static void simplify(Chunk c) {
+        int n = c.count;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double dx = c.max[0] - c.min[0];
+        double dy = c.max[1] - c.min[1];
+        double dz = c.max[2] - c.min[2];
+        double tolerance = Math.sqrt(dx * dx + dy * dy + dz * dz) * LOD_TOLERANCE;
+        double tolerance2 = tolerance * tolerance;
+
+        for (int i = 1; i < n; ++i) {
+            if (!sameColor(c.colors, i - 1, i)) {
+                keep[i - 1] = true;
+                keep[i] = true;
+            }
+        }
+
+        int[] stack = new int[64];
+        int top = 0;
+        int start = 0;
+        for (int i = 1; i < n; ++i) {
+            if (!keep[i]) continue;
+            // simplify each run between kept points.
+            stack[top++] = start;
+            stack[top++] = i;
+            while (top > 0) {
+                int b = stack[--top];
+                int a = stack[--top];
+                if (b - a < 2) continue;
+                int worst = -1;
+                double worstDistance = tolerance2;
+                for (int k = a + 1; k < b; ++k) {
+                    double d = distanceToSegmentSquared(c.positions, k, a, b);
+                    if (d > worstDistance) {
+                        worstDistance = d;
+                        worst = k;
+                    }
+                }
+                if (worst < 0) continue;
+                keep[worst] = true;
+                if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = a;
+                stack[top++] = worst;
+                stack[top++] = worst;
+                stack[top++] = b;
+            }
+            start = i;
+        }
+
+        int count = 0;
+        for (boolean k : keep) if (k) count++;
+        c.lodPositions = new float[count * 3];
+        c.lodColors = new float[count * 4];
+        c.lodSource = new int[count];
+        int j = 0;
+        for (int i = 0; i < n; ++i) {
+            if (!keep[i]) continue;
+            System.arraycopy(c.positions, i * 3, c.lodPositions, j * 3, 3);
+            System.arraycopy(c.colors, i * 4, c.lodColors, j * 4, 4);
+            c.lodSource[j] = i;
+            j++;
+        }
+        c.lodCount = count;
+    }
+
+    private static boolean sameColor(float[] colors, int a, int b) {
+        a *= 4;
+        b *= 4;
+        return colors[a] == colors[b] && colors[a + 1] == colors[b + 1]
+                && colors[a + 2] == colors[b + 2] && colors[a + 3] == colors[b + 3];
+    }
+
+    private static double distanceToSegmentSquared(float[] p, int k, int a, int b) {
+        double ax = p[a * 3], ay = p[a * 3 + 1], az = p[a * 3 + 2];
+        double ux = p[b * 3] - ax, uy = p[b * 3 + 1] - ay, uz = p[b * 3 + 2] - az;
+        double vx = p[k * 3] - ax, vy = p[k * 3 + 1] - ay, vz = p[k * 3 + 2] - az;
+        double len2 = ux * ux + uy * uy + uz * uz;
+        double t = len2 > 0 ? Math.max(0, Math.min(1, (vx * ux + vy * uy + vz * uz) / len2)) : 0;
+        double ex = vx - ux * t, ey = vy - uy * t, ez = vz - uz * t;
+        return ex * ex + ey * ey + ez * ez;
+    }
+}
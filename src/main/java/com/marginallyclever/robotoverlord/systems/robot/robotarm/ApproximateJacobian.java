@@ -1,8 +1,10 @@
 package com.marginallyclever.robotoverlord.systems.robot.robotarm;
 
-import com.marginallyclever.convenience.helpers.MatrixHelper;
+import com.marginallyclever.convenience.helpers.FlatMatrixHelper;
 import com.marginallyclever.convenience.helpers.StringHelper;
 
+import java.util.Arrays;
+
 /**
  * This class is used to calculate the Jacobian matrix for a robot arm.
  * Each implementation can derive this class and fill in the jacobian matrix.
@@ -15,10 +17,18 @@ public abstract class ApproximateJacobian {
      */
     protected final double[][] jacobian;
     protected final int DOF;
+    // storage for the damped least squares solve, sized once so the IK loop does not allocate.
+    private final double[] flat;
+    private final double[] inverse;
+    private final double[] scratch;
 
     protected ApproximateJacobian(int DOF) {
         this.DOF = DOF;
         jacobian = new double[6][DOF];
+        flat = new double[6 * DOF];
+        inverse = new double[DOF * 6];
+        int n = Math.min(6, DOF);
+        scratch = new double[3 * n * n];
     }
 
     /**
@@ -41,54 +51,21 @@ public abstract class ApproximateJacobian {
 
     /**
      * See <a href="https://stackoverflow.com/a/53028167/1159440">5 DOF Inverse kinematics for Jacobian Matrices</a>.
-     * @return the inverse Jacobian matrix.
+     * Over and under determined systems use the Moore-Penrose pseudo-inverse.  Square systems use damped least
+     * squares.
+     * @return the inverse Jacobian matrix, DOF*6 doubles in row-major order.  The same array every call, overwritten
+     * by the next call.
      */
-    private double[][] getInverseJacobian() {
+    private double[] getInverseJacobian() {
         int rows = jacobian.length;
         int cols = jacobian[0].length;
-        if(rows<cols) return getPseudoInverseOverdetermined();
-        else if (rows>cols) return getPseudoInverseUnderdetermined();
-        else {
-            return getInverseDampedLeastSquares(0.0001);
-            //return MatrixHelper.invert(jacobian);  // old way
-        }
-    }
-
-    /**
-     * Moore-Penrose pseudo-inverse for over-determined systems.
-     * J_plus = J.transpose * (J*J.transpose()).inverse() // This is for
-     * @return the pseudo-inverse of the jacobian matrix.
-     */
-    private double[][] getPseudoInverseOverdetermined() {
-        double[][] jt = MatrixHelper.transpose(jacobian);
-        double[][] mm = MatrixHelper.multiplyMatrices(jacobian, jt);
-        double[][] ji = MatrixHelper.invert(mm);
-        return MatrixHelper.multiplyMatrices(jt, ji);
-    }
-
-    /**
-     * Moore-Penrose pseudo-inverse for under-determined systems.
-     * J_plus = (J.transpose()*J).inverse() * J.transpose()
-     * @return the pseudo-inverse of the jacobian matrix.
-     */
-    private double[][] getPseudoInverseUnderdetermined() {
-        double[][] jt = MatrixHelper.transpose(jacobian);
-        double[][] mm = MatrixHelper.multiplyMatrices(jt, jacobian);
-        double[][] ji = MatrixHelper.invert(mm);
-        return MatrixHelper.multiplyMatrices(ji, jt);
-    }
-
-    private double[][] getInverseDampedLeastSquares(double lambda) {
-        double[][] jt = MatrixHelper.transpose(jacobian);
-        double[][] jjt = MatrixHelper.multiplyMatrices(jacobian, jt);
+        for (int i = 0; i < rows; ++i) System.arraycopy(jacobian[i], 0, flat, i * cols, cols);
 
-        // Add lambda^2 * identity matrix to jjt
-        for (int i = 0; i < jacobian.length; i++) {
-            jjt[i][i] += lambda * lambda;
+        double lambda = (rows == cols) ? 0.0001 : 0;
+        if (!FlatMatrixHelper.pseudoInverse(flat, rows, cols, lambda, inverse, scratch)) {
+            Arrays.fill(inverse, Double.NaN);
         }
-
-        double[][] jjt_inv = MatrixHelper.invert(jjt);
-        return MatrixHelper.multiplyMatrices(jt, jjt_inv);
+        return inverse;
     }
 
     /**
@@ -98,14 +75,25 @@ public abstract class ApproximateJacobian {
      * @throws Exception if joint velocities have NaN values
      */
     public double[] getJointForceFromCartesianForce(final double[] cartesianVelocity) throws Exception {
-        double[][] inverseJacobian = getInverseJacobian();
-        double[] jointVelocity = new double[DOF];
+        return getJointForceFromCartesianForce(cartesianVelocity, new double[DOF]);
+    }
+
+    /**
+     * Use the Jacobian to get the joint velocity from the cartesian velocity, without allocating.
+     * @param cartesianVelocity 6 doubles - the XYZ translation and UVW rotation forces on the end effector.
+     * @param jointVelocity DOF doubles.  Will be filled with the joint velocity in degrees.
+     * @return jointVelocity
+     * @throws Exception if joint velocities have NaN values
+     */
+    public double[] getJointForceFromCartesianForce(final double[] cartesianVelocity, double[] jointVelocity) throws Exception {
+        double[] inverseJacobian = getInverseJacobian();
+        int rows = jacobian.length;
 
         // vector-matrix multiplication (y = x^T A)
         for (int j=0; j<DOF; ++j) {
             double sum = 0;
             for (int k=0; k<cartesianVelocity.length; ++k) {
-                sum += inverseJacobian[j][k] * cartesianVelocity[k];
+                sum += inverseJacobian[j*rows+k] * cartesianVelocity[k];
             }
             if (Double.isNaN(sum)) {
                 throw new Exception("Bad inverse Jacobian.  Singularity?");
@@ -0,0 +1,154 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramEventComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramStepComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A program tree flattened into a list of {@link Instruction}s, in the order {@link ProgramExecutorSystem} runs
+ * them.  Every instruction already knows its entity, the step that runs and the pose of that step, so running a
+ * program is an index that counts up instead of a search of the scene every tick.</p>
+ * <p>The entities are visited depth first: an entity, then its children, then its next sibling.  Each instruction
+ * entity runs the nearest {@link ProgramStepComponent} in itself or its parents.</p>
+ * <p>A compiled program remembers which program and which version of the scene it came from.  The time spent in
+ * each instruction is kept for profiling.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class CompiledProgram {
+    public static final int NOOP = 0;
+    public static final int PATH = 1;
+    public static final int EVENT = 2;
+    public static final int INTERLOCK = 3;
+
+    /**
+     * One step of a compiled program.
+     */
+    public static class Instruction {
+        public final int type;
+        public final Entity entity;
+        public final String uniqueID;
+        public final ProgramStepComponent step;
+        public final PoseComponent pose;
+
+        Instruction(Entity entity, ProgramStepComponent step) {
+            this.entity = entity;
+            this.uniqueID = entity.getUniqueID();
+            this.step = step;
+            if (step instanceof ProgramPathComponent) type = PATH;
+            else if (step instanceof ProgramEventComponent) type = EVENT;
+            else if (step instanceof ProgramInterlockComponent) type = INTERLOCK;
+            else type = NOOP;
+            // the waypoints of a path inherit its step but each has a pose of its own.
+            this.pose = entity.getComponent(PoseComponent.class);
+        }
+    }
+
+    private final Entity root;
+    private final long sceneVersion;
+    private final Instruction[] instructions;
+    private final Map<String, Integer> indexByID = new HashMap<>();
+    private final long[] nanos;
+    private final int[] ticks;
+
+    /**
+     * @param root the program.  Its children are the first steps.
+     * @param sceneVersion the version of the scene when the program was compiled.
+     */
+    public CompiledProgram(Entity root, long sceneVersion) {
+        this.root = root;
+        this.sceneVersion = sceneVersion;
+        List<Instruction> list = new ArrayList<>();
+        for (Entity child : root.getChildren()) {
+            compile(child, null, list);
+        }
+        instructions = list.toArray(new Instruction[0]);
+        for (int i = 0; i < instructions.length; ++i) {
+            indexByID.put(instructions[i].uniqueID, i);
+        }
+        nanos = new long[instructions.length];
+        ticks = new int[instructions.length];
+    }
+
+    private void compile(Entity entity, ProgramStepComponent inherited, List<Instruction> list) {
+        ProgramStepComponent step = entity.getComponent(ProgramStepComponent.class);
+        if (step == null) step = inherited;
+        list.add(new Instruction(entity, step));
+        for (Entity child : entity.getChildren()) {
+            compile(child, step, list);
+        }
+    }
+
+    /**
+     * @return true if this was compiled from the given program in the given version of the scene.
+     */
+    public boolean isValidFor(Entity root, long sceneVersion) {
+        return this.root == root && this.sceneVersion == sceneVersion;
+    }
+
+    public Entity getRoot() {
+        return root;
+    }
+
+    public int size() {
+        return instructions.length;
+    }
+
+    public Instruction get(int index) {
+        return instructions[index];
+    }
+
+    /**
+     * @param uniqueID the unique ID of a step entity.
+     * @return the index of the instruction for that entity, or -1 if it is not in this program.
+     */
+    public int indexOf(String uniqueID) {
+        if (uniqueID == null) return -1;
+        Integer i = indexByID.get(uniqueID);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Count the time spent running one tick of an instruction.
+     * @param index the instruction.
+     * @param nanoseconds the time spent.
+     */
+    public void addTime(int index, long nanoseconds) {
+        nanos[index] += nanoseconds;
+        ticks[index]++;
+    }
+
+    /**
+     * @return the total time spent running an instruction, in nanoseconds.
+     */
+    public long getNanos(int index) {
+        return nanos[index];
+    }
+
+    /**
+     * @return the number of ticks an instruction has run.
+     */
+    public int getTicks(int index) {
+        return ticks[index];
+    }
+
+    /**
+     * @return the index of the instruction that has taken the most time, or -1 if the program is empty.
+     */
+    public int getSlowest() {
+        int best = -1;
+        for (int i = 0; i < nanos.length; ++i) {
+            if (best == -1 || nanos[i] > nanos[best]) best = i;
+        }
+        return best;
+    }
+}
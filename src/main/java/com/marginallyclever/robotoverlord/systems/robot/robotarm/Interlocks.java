@@ -0,0 +1,75 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The locks named by {@link ProgramInterlockComponent}s and who holds them.  Holding a lock again is allowed and
+ * does not count twice.  Safe to share between the animation loop and a run in the background.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class Interlocks {
+    private final Map<String, Set<Object>> holders = new HashMap<>();
+
+    /**
+     * @param name the lock.
+     * @param owner who wants it.
+     * @param capacity how many owners may hold the lock at once.
+     * @return true if the owner now holds the lock.
+     */
+    public synchronized boolean tryAcquire(String name, Object owner, int capacity) {
+        Set<Object> set = holders.computeIfAbsent(name, (k) -> new LinkedHashSet<>());
+        if (set.contains(owner)) return true;
+        if (set.size() >= Math.max(1, capacity)) return false;
+        set.add(owner);
+        return true;
+    }
+
+    /**
+     * @return true if the owner held the lock.
+     */
+    public synchronized boolean release(String name, Object owner) {
+        Set<Object> set = holders.get(name);
+        if (set == null) return false;
+        boolean held = set.remove(owner);
+        if (set.isEmpty()) holders.remove(name);
+        return held;
+    }
+
+    /**
+     * Release every lock held by an owner.
+     * @return the names of the locks that were held.
+     */
+    public synchronized List<String> releaseAll(Object owner) {
+        List<String> released = new ArrayList<>();
+        for (String name : new ArrayList<>(holders.keySet())) {
+            if (release(name, owner)) released.add(name);
+        }
+        return released;
+    }
+
+    public synchronized boolean isHeldBy(String name, Object owner) {
+        Set<Object> set = holders.get(name);
+        return set != null && set.contains(owner);
+    }
+
+    /**
+     * @return the number of owners holding a lock.
+     */
+    public synchronized int getHolders(String name) {
+        Set<Object> set = holders.get(name);
+        return set == null ? 0 : set.size();
+    }
+
+    public synchronized void clear() {
+        holders.clear();
+    }
+}
@@ -0,0 +1,445 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.convenience.helpers.FlatMatrixHelper;
+import com.marginallyclever.robotoverlord.components.ArmEndEffectorComponent;
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * <p>A compiled, read-only snapshot of the kinematic chain of a {@link RobotComponent}.  The DH parameters, joint
+ * limits and the fixed transforms between bones are copied into flat arrays so that forward kinematics can be
+ * evaluated without walking the {@link Entity} tree or touching any {@link PoseComponent}.</p>
+ * <p>Instances are immutable.  All working storage is provided by the caller, so one chain can be shared by many
+ * threads at once.  Matrices are stored as 16 doubles in row-major order, the same order as m00...m33 in
+ * {@link Matrix4d}.  All poses are relative to the base of the robot.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class KinematicChain {
+    public static final int MATRIX_SIZE = 16;
+    // damped least squares: lambda^2
+    private static final double IK_DAMPING = 0.01;
+    // largest change to any joint in one IK step, degrees or cm.
+    private static final double IK_MAX_STEP = 10;
+
+    private final int dof;
+    private final boolean[] revolute;
+    private final double[] d;
+    private final double[] r;
+    private final double[] alpha;  // radians
+    private final double[] theta;  // radians
+    private final double[] jointMin;
+    private final double[] jointMax;
+    private final double[] jointHome;
+    private final double[] maxVelocity;
+    private final double[] maxAcceleration;
+    private final double[] maxJerk;
+    /**
+     * dof*16 values.  The fixed transform from the previous bone (or the base) to the parent of each bone.
+     * Identity when the bones are directly nested, as they usually are.
+     */
+    private final double[] preTransforms;
+    /**
+     * The fixed transform from the last bone to the end effector.
+     */
+    private final double[] toolOffset;
+    private final long hash;
+
+    /**
+     * Compile the current state of a robot.  The robot must have found its bones.
+     * @param robot the robot to compile.
+     */
+    public KinematicChain(RobotComponent robot) {
+        dof = robot.getNumBones();
+        revolute = new boolean[dof];
+        d = new double[dof];
+        r = new double[dof];
+        alpha = new double[dof];
+        theta = new double[dof];
+        jointMin = new double[dof];
+        jointMax = new double[dof];
+        jointHome = new double[dof];
+        maxVelocity = new double[dof];
+        maxAcceleration = new double[dof];
+        maxJerk = new double[dof];
+        preTransforms = new double[dof * MATRIX_SIZE];
+        toolOffset = new double[MATRIX_SIZE];
+
+        Matrix4d previousWorld = getWorld(robot.getEntity());
+        Matrix4d m = new Matrix4d();
+        for (int i = 0; i < dof; ++i) {
+            DHComponent bone = robot.getBone(i);
+            revolute[i] = bone.isRevolute();
+            d[i] = bone.getD();
+            r[i] = bone.getR();
+            alpha[i] = Math.toRadians(bone.getAlpha());
+            theta[i] = Math.toRadians(bone.getTheta());
+            jointMin[i] = bone.getJointMin();
+            jointMax[i] = bone.getJointMax();
+            jointHome[i] = bone.getJointHome();
+            maxVelocity[i] = bone.getMaxVelocity();
+            maxAcceleration[i] = bone.getMaxAcceleration();
+            maxJerk[i] = bone.getMaxJerk();
+
+            // pre = inverse(previous world) * world * inverse(local)
+            Matrix4d world = getWorld(bone.getEntity());
+            Matrix4d local = bone.getLocal();
+            local.invert();
+            m.invert(previousWorld);
+            m.mul(world);
+            m.mul(local);
+            toArray(m, preTransforms, i * MATRIX_SIZE);
+            previousWorld = world;
+        }
+
+        ArmEndEffectorComponent ee = robot.getEndEffector();
+        if (ee == null) {
+            FlatMatrixHelper.identity4(toolOffset, 0);
+        } else {
+            m.invert(previousWorld);
+            m.mul(getWorld(ee.getEntity()));
+            toArray(m, toolOffset, 0);
+        }
+
+        hash = computeHash();
+    }
+
+    private static Matrix4d getWorld(Entity entity) {
+        PoseComponent pose = entity.getComponent(PoseComponent.class);
+        if (pose != null) return pose.getWorld();
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        return m;
+    }
+
+    public int getDOF() {
+        return dof;
+    }
+
+    public boolean isRevolute(int i) {
+        return revolute[i];
+    }
+
+    public double getJointMin(int i) {
+        return jointMin[i];
+    }
+
+    public double getJointMax(int i) {
+        return jointMax[i];
+    }
+
+    public double getJointHome(int i) {
+        return jointHome[i];
+    }
+
+    /**
+     * @return the velocity limit of joint i, in degrees/s (revolute) or cm/s (prismatic).
+     */
+    public double getMaxVelocity(int i) {
+        return maxVelocity[i];
+    }
+
+    /**
+     * @return the acceleration limit of joint i, in degrees/s^2 (revolute) or cm/s^2 (prismatic).
+     */
+    public double getMaxAcceleration(int i) {
+        return maxAcceleration[i];
+    }
+
+    /**
+     * @return the jerk limit of joint i, in degrees/s^3 (revolute) or cm/s^3 (prismatic).  Zero for no limit.
+     */
+    public double getMaxJerk(int i) {
+        return maxJerk[i];
+    }
+
+    /**
+     * @return a 64-bit hash of every value that affects the forward kinematics of this chain.  Two robots with the
+     * same hash reach the same places.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Clamp joint values to the limits of each joint, the same way {@link DHComponent#setJointValueWRTLimits(double)}
+     * does.
+     * @param joints joint values in degrees (revolute) or cm (prismatic).  Modified in place.
+     */
+    public void clampToLimits(double[] joints) {
+        for (int i = 0; i < dof; ++i) {
+            double max = jointMax[i];
+            double min = jointMin[i];
+            if (revolute[i]) {
+                double middle = (max + min) / 2.0;
+                if (Math.abs(max - middle) + Math.abs(min - middle) < 360) {
+                    joints[i] = Math.max(Math.min(joints[i], max), min);
+                }
+            } else {
+                joints[i] = Math.max(Math.min(joints[i], max), min);
+            }
+        }
+    }
+
+    /**
+     * Calculate the pose of every bone and the end effector.
+     * @param joints joint values in degrees (revolute) or cm (prismatic).  Must be {@link #getDOF()} long.
+     * @param poses (dof+1)*16 doubles.  Will be filled with the pose of each bone followed by the end effector.
+     * @param axes null, or dof*16 doubles.  Will be filled with the frame of each joint before the joint moves.  The
+     *             Z axis of this frame is the joint axis.
+     */
+    public void getPoses(double[] joints, double[] poses, double[] axes) {
+        double[] dh = new double[MATRIX_SIZE];
+        double[] temp = new double[MATRIX_SIZE];
+        getPoses(joints, poses, axes, dh, temp);
+    }
+
+    /**
+     * Allocation free version of {@link #getPoses(double[], double[], double[])}.
+     * @param joints joint values in degrees (revolute) or cm (prismatic).  Must be {@link #getDOF()} long.
+     * @param poses (dof+1)*16 doubles.  Will be filled with the pose of each bone followed by the end effector.
+     * @param axes null, or dof*16 doubles.
+     * @param dh 16 doubles of scratch space.
+     * @param temp 16 doubles of scratch space.
+     */
+    public void getPoses(double[] joints, double[] poses, double[] axes, double[] dh, double[] temp) {
+        int previous = -1;
+        for (int i = 0; i < dof; ++i) {
+            int offset = i * MATRIX_SIZE;
+            // temp = previous * pre
+            if (previous < 0) System.arraycopy(preTransforms, offset, temp, 0, MATRIX_SIZE);
+            else FlatMatrixHelper.multiply4(poses, previous, preTransforms, offset, temp, 0);
+            if (axes != null) System.arraycopy(temp, 0, axes, offset, MATRIX_SIZE);
+
+            getDHMatrix(i, joints[i], dh);
+            FlatMatrixHelper.multiply4(temp, 0, dh, 0, poses, offset);
+            previous = offset;
+        }
+
+        int last = dof * MATRIX_SIZE;
+        if (previous < 0) System.arraycopy(toolOffset, 0, poses, last, MATRIX_SIZE);
+        else FlatMatrixHelper.multiply4(poses, previous, toolOffset, 0, poses, last);
+    }
+
+    /**
+     * Calculate the pose of the end effector.
+     * @param joints joint values in degrees (revolute) or cm (prismatic).
+     * @param result 16 doubles.  Will be filled with the end effector pose relative to the base.
+     */
+    public void getEndEffector(double[] joints, double[] result) {
+        double[] poses = new double[(dof + 1) * MATRIX_SIZE];
+        getPoses(joints, poses, null);
+        System.arraycopy(poses, dof * MATRIX_SIZE, result, 0, MATRIX_SIZE);
+    }
+
+    /**
+     * Calculate the geometric jacobian from the output of {@link #getPoses(double[], double[], double[])}.
+     * @param poses the bone and end effector poses.
+     * @param axes the joint axes.
+     * @param jacobian 6*dof doubles, row-major.  The first three rows are translation (cm/radian), the last three
+     *                 are rotation.
+     */
+    public void getJacobian(double[] poses, double[] axes, double[] jacobian) {
+        int ee = dof * MATRIX_SIZE;
+        double px = poses[ee + 3];
+        double py = poses[ee + 7];
+        double pz = poses[ee + 11];
+        for (int i = 0; i < dof; ++i) {
+            int a = i * MATRIX_SIZE;
+            double zx = axes[a + 2];
+            double zy = axes[a + 6];
+            double zz = axes[a + 10];
+            if (revolute[i]) {
+                double rx = px - axes[a + 3];
+                double ry = py - axes[a + 7];
+                double rz = pz - axes[a + 11];
+                jacobian[          i] = zy * rz - zz * ry;
+                jacobian[    dof + i] = zz * rx - zx * rz;
+                jacobian[2 * dof + i] = zx * ry - zy * rx;
+                jacobian[3 * dof + i] = zx;
+                jacobian[4 * dof + i] = zy;
+                jacobian[5 * dof + i] = zz;
+            } else {
+                jacobian[          i] = zx;
+                jacobian[    dof + i] = zy;
+                jacobian[2 * dof + i] = zz;
+                jacobian[3 * dof + i] = 0;
+                jacobian[4 * dof + i] = 0;
+                jacobian[5 * dof + i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Yoshikawa's measure of manipulability for the translation part of the jacobian, sqrt(det(Jv * Jv^T)).
+     * Zero at a singularity, larger when the end effector can move freely in every direction.
+     * @param jacobian 6*dof doubles as returned by {@link #getJacobian(double[], double[], double[])}.
+     * @return the manipulability.
+     */
+    public double getManipulability(double[] jacobian) {
+        double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+        for (int i = 0; i < dof; ++i) {
+            double x = jacobian[i];
+            double y = jacobian[dof + i];
+            double z = jacobian[2 * dof + i];
+            a00 += x * x;
+            a01 += x * y;
+            a02 += x * z;
+            a11 += y * y;
+            a12 += y * z;
+            a22 += z * z;
+        }
+        double det = a00 * (a11 * a22 - a12 * a12)
+                   - a01 * (a01 * a22 - a12 * a02)
+                   + a02 * (a01 * a12 - a11 * a02);
+        return det <= 0 ? 0 : Math.sqrt(det);
+    }
+
+    /**
+     * Damped least squares inverse kinematics.  Starting from the given joint values, nudge the joints until the end
+     * effector reaches the target.  Joint limits are respected.
+     * @param joints the starting joint values.  Will be filled with the best solution found.
+     * @param target 16 doubles.  The desired end effector pose relative to the base.
+     * @param positionOnly true to ignore the orientation of the target.
+     * @param maxIterations the most steps to take.
+     * @param tolerance the largest acceptable error, in cm and radians.
+     * @return true if the end effector is within tolerance of the target.
+     */
+    public boolean solveInverseKinematics(double[] joints, double[] target, boolean positionOnly, int maxIterations, double tolerance) {
+        int rows = positionOnly ? 3 : 6;
+        double[] poses = new double[(dof + 1) * MATRIX_SIZE];
+        double[] axes = new double[dof * MATRIX_SIZE];
+        double[] jacobian = new double[6 * dof];
+        double[] dh = new double[MATRIX_SIZE];
+        double[] temp = new double[MATRIX_SIZE];
+        double[] error = new double[6];
+        double[] a = new double[36];
+        double[] y = new double[6];
+        int ee = dof * MATRIX_SIZE;
+
+        for (int iteration = 0; iteration <= maxIterations; ++iteration) {
+            getPoses(joints, poses, axes, dh, temp);
+            getPoseError(poses, ee, target, error);
+            double worst = 0;
+            for (int i = 0; i < rows; ++i) worst = Math.max(worst, Math.abs(error[i]));
+            if (worst <= tolerance) return true;
+            if (iteration == maxIterations) break;
+
+            getJacobian(poses, axes, jacobian);
+            // a = J * J^T + lambda^2 * I, using only the first rows of J.
+            FlatMatrixHelper.multiplyABt(jacobian, jacobian, a, rows, dof, rows);
+            for (int i = 0; i < rows; ++i) a[i * rows + i] += IK_DAMPING;
+            System.arraycopy(error, 0, y, 0, rows);
+            if (!FlatMatrixHelper.solve(a, y, rows)) return false;
+            // dq = J^T * y
+            for (int k = 0; k < dof; ++k) {
+                double sum = 0;
+                for (int i = 0; i < rows; ++i) sum += jacobian[i * dof + k] * y[i];
+                if (revolute[k]) sum = Math.toDegrees(sum);
+                joints[k] += Math.max(-IK_MAX_STEP, Math.min(IK_MAX_STEP, sum));
+            }
+            clampToLimits(joints);
+        }
+        return false;
+    }
+
+    /**
+     * The difference between the end effector and a target pose.  Translation in cm, rotation as sin(angle)*axis.
+     */
+    private static void getPoseError(double[] poses, int ee, double[] target, double[] error) {
+        error[0] = target[3] - poses[ee + 3];
+        error[1] = target[7] - poses[ee + 7];
+        error[2] = target[11] - poses[ee + 11];
+        // rotation error = target * current^T.  Only the off diagonal elements are needed.
+        error[3] = (rowDot(target, 2, poses, ee + 4) - rowDot(target, 1, poses, ee + 8)) * 0.5;
+        error[4] = (rowDot(target, 0, poses, ee + 8) - rowDot(target, 2, poses, ee)) * 0.5;
+        error[5] = (rowDot(target, 1, poses, ee) - rowDot(target, 0, poses, ee + 4)) * 0.5;
+    }
+
+    /**
+     * @return the dot product of the rotation part of one row of a with three doubles of b.
+     */
+    private static double rowDot(double[] a, int row, double[] b, int bo) {
+        return a[row * 4] * b[bo] + a[row * 4 + 1] * b[bo + 1] + a[row * 4 + 2] * b[bo + 2];
+    }
+
+    /**
+     * Fill a matrix with the DH transform of one bone at a given joint value.
+     * @param i the bone index
+     * @param jointValue degrees (revolute) or cm (prismatic).
+     * @param m 16 doubles.
+     */
+    private void getDHMatrix(int i, double jointValue, double[] m) {
+        double t = revolute[i] ? Math.toRadians(jointValue % 360) : theta[i];
+        double dd = revolute[i] ? d[i] : jointValue;
+        double ct = Math.cos(t);
+        double st = Math.sin(t);
+        double ca = Math.cos(alpha[i]);
+        double sa = Math.sin(alpha[i]);
+        double rr = r[i];
+
+        m[ 0] = ct;   m[ 1] = -st * ca;  m[ 2] = st * sa;   m[ 3] = rr * ct;
+        m[ 4] = st;   m[ 5] = ct * ca;   m[ 6] = -ct * sa;  m[ 7] = rr * st;
+        m[ 8] = 0;    m[ 9] = sa;        m[10] = ca;        m[11] = dd;
+        m[12] = 0;    m[13] = 0;         m[14] = 0;         m[15] = 1;
+    }
+
+    /**
+     * @param m the matrix to copy.
+     * @param out will be filled with 16 doubles, row major.
+     * @param offset where to start writing.
+     */
+    public static void toArray(Matrix4d m, double[] out, int offset) {
+        FlatMatrixHelper.fromMatrix4d(m, out, offset);
+    }
+
+    /**
+     * @param m 16 doubles, row major.
+     * @param offset where to start reading.
+     * @return a new {@link Matrix4d}.
+     */
+    public static Matrix4d toMatrix4d(double[] m, int offset) {
+        Matrix4d result = new Matrix4d();
+        FlatMatrixHelper.toMatrix4d(m, offset, result);
+        return result;
+    }
+
+    private long computeHash() {
+        // 64-bit FNV-1a
+        long h = 0xcbf29ce484222325L;
+        h = hash(h, dof);
+        for (int i = 0; i < dof; ++i) {
+            h = hash(h, revolute[i] ? 1 : 0);
+            // the moving part of each joint does not change what the robot can reach.
+            h = hash(h, Double.doubleToLongBits(revolute[i] ? d[i] : theta[i]));
+            h = hash(h, Double.doubleToLongBits(r[i]));
+            h = hash(h, Double.doubleToLongBits(alpha[i]));
+            h = hash(h, Double.doubleToLongBits(jointMin[i]));
+            h = hash(h, Double.doubleToLongBits(jointMax[i]));
+        }
+        for (double v : preTransforms) h = hash(h, Double.doubleToLongBits(round(v)));
+        for (double v : toolOffset) h = hash(h, Double.doubleToLongBits(round(v)));
+        return h;
+    }
+
+    /**
+     * The fixed transforms are recovered by matrix inversion and carry a little noise.  Round it away so the hash is
+     * stable between sessions.
+     */
+    private static double round(double v) {
+        return Math.round(v * 1e6) / 1e6 + 0.0;
+    }
+
+    private static long hash(long h, long value) {
+        for (int i = 0; i < 8; ++i) {
+            h ^= (value >>> (i * 8)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
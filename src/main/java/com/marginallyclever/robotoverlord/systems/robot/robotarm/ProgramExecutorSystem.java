@@ -6,32 +6,103 @@ import com.marginallyclever.robotoverlord.components.RobotComponent;
 import com.marginallyclever.robotoverlord.components.RobotGripperComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramEventComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
-import com.marginallyclever.robotoverlord.components.program.ProgramStepComponent;
 import com.marginallyclever.robotoverlord.entity.Entity;
 import com.marginallyclever.robotoverlord.entity.EntityManager;
 import com.marginallyclever.robotoverlord.parameters.swing.ViewElementButton;
 import com.marginallyclever.robotoverlord.parameters.swing.ComponentSwingViewFactory;
 import com.marginallyclever.robotoverlord.robots.Robot;
 import com.marginallyclever.robotoverlord.systems.EntitySystem;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.ArmCollisionModel;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.planner.PlanResult;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.planner.RRTConnectPlanner;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory.CartesianTrajectory;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory.JointPathTrajectory;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory.JointTrajectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.swing.*;
 import javax.vecmath.Matrix4d;
+import java.awt.*;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ProgramExecutorSystem  implements EntitySystem {
     private static final Logger logger = LoggerFactory.getLogger(ProgramExecutorSystem.class);
+    private static final int IK_ITERATIONS = 200;
+    private static final double IK_TOLERANCE = 1e-3;
+    private static final long PLANNER_BUDGET_MS = 500;
+    private static final double PLANNER_RESOLUTION = 2;
     private final EntityManager entityManager;
+    // counts changes to the scene tree.  A compiled program from an older version is compiled again.
+    private volatile long sceneVersion = 0;
+    // locks shared by every program this system runs.
+    private final Interlocks interlocks = new Interlocks();
+    // plans around obstacles are made here so the animation loop does not wait for them.
+    private static final ExecutorService planners = Executors.newCachedThreadPool((r)->{
+        Thread t = new Thread(r,"ProgramPlanner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * A move around obstacles that is still being planned.  The step holds here until the plan arrives.
+     */
+    private static class PendingPlan {
+        final Future<PlanResult> result;
+        final ArmCollisionModel model;
+        final JointTrajectory direct;
+        final String robotName;
+
+        PendingPlan(Future<PlanResult> result,ArmCollisionModel model,JointTrajectory direct,String robotName) {
+            this.result = result;
+            this.model = model;
+            this.direct = direct;
+            this.robotName = robotName;
+        }
+
+        /**
+         * Wait for the plan if needed.
+         * @return the way around, or the direct move if no way was found.
+         */
+        Object get() {
+            PlanResult plan;
+            try {
+                plan = result.get();
+            } catch(Exception e) {
+                logger.warn("{} planning failed, moving directly.",robotName,e);
+                return direct;
+            }
+            if(plan==null) return direct;
+            logger.info("{}: {}",robotName,plan);
+            if(!plan.isSuccess()) {
+                logger.warn("{} found no collision free path, moving directly.",robotName);
+                return direct;
+            }
+            return new JointPathTrajectory(model.getChain(),plan.getPath());
+        }
+    }
 
     public ProgramExecutorSystem(EntityManager entityManager) {
         this.entityManager = entityManager;
+        entityManager.addListener((e)->sceneVersion++);
     }
 
     @Override
     public void decorate(ComponentSwingViewFactory view, Component component) {
         if( component instanceof ProgramComponent) decorateProgram(view,component);
+        if( component instanceof ProgramInterlockComponent) decorateInterlock(view,(ProgramInterlockComponent)component);
+    }
+
+    private void decorateInterlock(ComponentSwingViewFactory view, ProgramInterlockComponent interlock) {
+        view.add(interlock.lockName);
+        view.addComboBox(interlock.action, ProgramInterlockComponent.ACTION_NAMES);
+        view.add(interlock.capacity);
     }
 
     private void decorateProgram(ComponentSwingViewFactory view, Component component) {
@@ -39,13 +110,88 @@ public class ProgramExecutorSystem  implements EntitySystem {
         view.add(program.programEntity).addPropertyChangeListener((evt) -> {
             program.setRunning(false);
             program.stepEntity.set((String)null);
+            program.clearStepMotion();
+            interlocks.releaseAll(program);
         });
         view.add(program.stepEntity).setReadOnly(true);
+        view.add(program.cycleTime).setReadOnly(true);
 
         ViewElementButton bRun = view.addButton(program.getRunning()?"Pause":"Play");
         program.addRunningPropertyChangeListener( (evt) -> bRun.setText(program.getRunning()?"Pause":"Play") );
         bRun.addActionEventListener( (evt) -> program.setRunning(!program.getRunning()) );
         view.addComboBox(program.mode, ProgramComponent.MODE_NAMES);
+
+        ViewElementButton bReport = view.addButton("Run report");
+        bReport.addActionEventListener( (evt) -> runReport(bReport,program) );
+
+        ViewElementButton bSchedule = view.addButton("Schedule all programs");
+        bSchedule.addActionEventListener( (evt) -> runSchedule(bSchedule) );
+    }
+
+    /**
+     * Run every program in the scene together against one clock and show the {@link ScheduleReport}.  The run happens
+     * away from the Event Dispatch Thread and the report is shown when it is done.  The robots are put back where
+     * they were.
+     * @param button the button that requested the report.  It is disabled until the report is ready.
+     */
+    private void runSchedule(ViewElementButton button) {
+        button.setReadOnly(true);
+        new SwingWorker<ScheduleReport,Void>() {
+            @Override
+            protected ScheduleReport doInBackground() {
+                return new ProgramScheduler(entityManager,ProgramExecutorSystem.this).runAndRestore();
+            }
+
+            @Override
+            protected void done() {
+                button.setReadOnly(false);
+                try {
+                    showReport(button,"Schedule",get().toString());
+                } catch(Exception e) {
+                    logger.error("Schedule failed.",e);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Run the program from start to end as fast as possible and show the {@link ProgramRunReport}.  The run happens
+     * away from the Event Dispatch Thread and the report is shown when it is done.  The robot is put back where it
+     * was.
+     * @param button the button that requested the report.  It is disabled until the report is ready.
+     * @param program the program to run
+     */
+    private void runReport(ViewElementButton button,ProgramComponent program) {
+        if(program.getEntity().getComponent(RobotComponent.class)==null) {
+            logger.warn("Run report: this program has no robot.");
+            return;
+        }
+        program.setRunning(false);
+        button.setReadOnly(true);
+        new SwingWorker<ProgramRunReport,Void>() {
+            @Override
+            protected ProgramRunReport doInBackground() {
+                return new ProgramRunner(entityManager,ProgramExecutorSystem.this).runAndRestore(program);
+            }
+
+            @Override
+            protected void done() {
+                button.setReadOnly(false);
+                try {
+                    showReport(button,"Run report",get().toString());
+                } catch(Exception e) {
+                    logger.error("Run report failed.",e);
+                }
+            }
+        }.execute();
+    }
+
+    private void showReport(JComponent parent,String title,String message) {
+        logger.info(message);
+        JTextArea text = new JTextArea(message);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED,Font.PLAIN,12));
+        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(parent),new JScrollPane(text),title,JOptionPane.INFORMATION_MESSAGE);
     }
 
     /**
@@ -66,141 +212,162 @@ public class ProgramExecutorSystem  implements EntitySystem {
 
     private void updateProgram(ProgramComponent program, double dt) {
         if( !program.getRunning() ) return;
+        // a step that is still planning holds without blocking the animation loop.
+        step(program,dt,false);
+    }
+
+    /**
+     * Run one tick of a program, running or not.  {@link ProgramRunner} uses this to run a program without the
+     * animation loop.  A move that needs a plan waits for it, so the same program always takes the same ticks.
+     * @param program the program to run.
+     * @param dt the time step in seconds.
+     * @return true if the program reached its end in this tick.
+     */
+    public boolean step(ProgramComponent program, double dt) {
+        return step(program,dt,true);
+    }
 
+    /**
+     * @param waitForPlans true to wait for a move that is still being planned, false to hold the step until the
+     *                     plan arrives.
+     */
+    private boolean step(ProgramComponent program, double dt, boolean waitForPlans) {
         // ProgramComponent must be adjacent to a RobotComponent.
         RobotComponent robot = program.getEntity().getComponent(RobotComponent.class);
-        if( robot == null ) return;
+        if( robot == null ) return false;
 
         // must have program to run.
-        Entity programRoot = entityManager.findEntityByUniqueID(program.programEntity.get());
-        if(programRoot==null) return;
-
-        Entity programStep = getCurrentProgramStep(program);
-        if(programStep == null) {
-            programStep = getFirstProgramStep(programRoot);
-            if(programStep != null) {
-                pushStack(robot, program, programStep);
-            }
-        }
-        if(programStep == null) {
+        CompiledProgram code = getCompiledProgram(program);
+        if(code==null) return false;
+        if(code.size()==0) {
             // program is empty.
             program.setRunning(false);
-            return;
+            return true;
         }
-        // TODO check if programStep is a child of programRoot?
+
+        int pc = getProgramCounter(program,code);
         int mode = program.mode.get();
+        program.addRunTime(dt);
+        program.setWaiting(false);
 
-        boolean done = executeStep(robot,program,programStep,dt);
+        long start = System.nanoTime();
+        boolean done = executeInstruction(robot,program,code.get(pc),dt,waitForPlans);
+        code.addTime(pc,System.nanoTime()-start);
+        boolean finished = false;
         if(done) {
-            Entity nextStep = getNextStep(robot,program,programStep,programRoot);
-            if(nextStep==null) {
+            pc++;
+            if(pc>=code.size()) {
+                finished = true;
                 // no more steps to run.
+                program.finishCycle();
+                logger.info("Cycle time {}s", program.cycleTime.get());
+                int slowest = code.getSlowest();
+                logger.debug("Slowest step {} took {}ms over {} ticks.", code.get(slowest).entity.getName(),
+                        code.getNanos(slowest)/1e6, code.getTicks(slowest));
+                pc = -1;
                 if (mode == ProgramComponent.RUN_LOOP) {
                     // go back to start
-                    nextStep = programRoot.getChildren().get(0);
+                    pc = 0;
                 } else if(mode == ProgramComponent.RUN_TO_END) {
                     program.setRunning(false);
                 }
             }
-
-            program.stepEntity.set(nextStep==null ? null : nextStep.getUniqueID());
+            program.setProgramCounter(pc);
+            program.stepEntity.set(pc<0 ? null : code.get(pc).uniqueID);
         }
 
         if( mode == ProgramComponent.RUN_STEP ) {
             // step mode always stops after one step.
             program.setRunning(false);
         }
+        return finished;
     }
 
     /**
-     * Get the current step in the program.
-     * @param program the program to run.
-     * @return the current step in the program or null.
+     * @return the locks shared by the programs this system runs.
      */
-    private Entity getCurrentProgramStep(ProgramComponent program) {
-        // find step to run.  if no step, assume program start.
-        return entityManager.findEntityByUniqueID(program.stepEntity.get());
+    public Interlocks getInterlocks() {
+        return interlocks;
     }
 
-    private Entity getFirstProgramStep(Entity programRoot) {
-        List<Entity> children = programRoot.getChildren();
-        if(children.isEmpty()) return null;
-        return programRoot.getChildren().get(0);
+    /**
+     * @return the index of the instruction the next {@link #step} will run, or -1 if there is nothing to run.
+     */
+    int getCurrentInstruction(ProgramComponent program) {
+        CompiledProgram code = getCompiledProgram(program);
+        if(code==null || code.size()==0) return -1;
+        return getProgramCounter(program,code);
     }
 
     /**
-     * a program is a tree of entities.  walk the tree one step.
-     * @param programStep the current step in the program tree.
-     * @param programRoot the root of the program tree
-     * @return the next step in the program or null.
+     * @return a count that changes when entities are added, removed or renamed, or components are added to or
+     * removed from any entity.
      */
-    public Entity getNextStep(RobotComponent robot,ProgramComponent program,Entity programStep, Entity programRoot) {
-        Entity nextStep=null;
-        // we've just executed programStep, now what?
-        if(!programStep.getChildren().isEmpty()) {
-            // go to first child
-            nextStep = programStep.getChildren().get(0);
-        }
-        if(nextStep==null) {
-            // no children, go to next sibling
-            nextStep = programStep.getNextSibling();
-        }
-        if (nextStep != null) {
-            pushStack(robot,program,nextStep);
-            return nextStep;
-        }
-
-        // no next sibling, pop the stack
-        while(true) {
-            popStack(program,programStep);
-            Entity parent = programStep.getParent();
-
-            if( parent==null ) return null;
-            if( parent == programRoot ) return null;
-
-            // go to parent's next sibling
-            nextStep = parent.getNextSibling();
-            if (nextStep != null) {
-                return nextStep;
-            }
+    private long getSceneVersion() {
+        return sceneVersion+Entity.getComponentChanges();
+    }
 
-            // parent has no next sibling, keep poppin'
-            programStep = parent;
+    /**
+     * @return the compiled program, compiled again if the program or the scene has changed, or null if there is no
+     * program.
+     */
+    CompiledProgram getCompiledProgram(ProgramComponent program) {
+        CompiledProgram code = program.getCompiledProgram();
+        String rootID = program.programEntity.get();
+        long version = getSceneVersion();
+        if(code!=null && code.getRoot().getUniqueID().equals(rootID) && code.isValidFor(code.getRoot(),version)) {
+            return code;
         }
-    }
 
-    private void pushStack(RobotComponent robot, ProgramComponent program, Entity programStep) {
-        ProgramStepComponent step = programStep.getComponent(ProgramStepComponent.class);
-        if(step!=null) program.pushStack(step);
+        Entity programRoot = entityManager.findEntityByUniqueID(rootID);
+        if(programRoot==null) {
+            program.setCompiledProgram(null);
+            return null;
+        }
+        long start = System.nanoTime();
+        code = new CompiledProgram(programRoot,version);
+        logger.debug("Compiled {} steps in {}ms.",code.size(),(System.nanoTime()-start)/1e6);
+        program.setCompiledProgram(code);
+        program.setProgramCounter(-1);
+        return code;
     }
 
-    private void popStack(ProgramComponent program, Entity programStep) {
-        ProgramStepComponent step = programStep.getComponent(ProgramStepComponent.class);
-        if(step!=null) program.popStack();
+    /**
+     * @return the index of the current step.  If the step was changed from outside it is looked up again.
+     */
+    private int getProgramCounter(ProgramComponent program,CompiledProgram code) {
+        int pc = program.getProgramCounter();
+        String stepID = program.stepEntity.get();
+        if(pc>=0 && pc<code.size() && code.get(pc).uniqueID.equals(stepID)) return pc;
+
+        pc = code.indexOf(stepID);
+        if(pc<0) {
+            // no step, assume program start.
+            pc = 0;
+            program.stepEntity.set(code.get(pc).uniqueID);
+        }
+        program.setProgramCounter(pc);
+        return pc;
     }
 
     /**
-     * Execute the current step in the program.
+     * Execute one instruction of the program.
      * @param robot the robot to move.
      * @param program the program that owns the step.
-     * @param programStep the step to execute.
+     * @param instruction the step to execute.
      * @param dt the time step in seconds.
+     * @param waitForPlans true to wait for a move that is still being planned.
      * @return true if the step is finished.
      */
-    private boolean executeStep(RobotComponent robot, ProgramComponent program, Entity programStep, double dt) {
-        ProgramStepComponent step = programStep.getComponent(ProgramStepComponent.class);
-        Object stackTop = program.peekStack();
-
-        if(stackTop instanceof ProgramEventComponent) {
-            ProgramEventComponent event = (ProgramEventComponent) stackTop;
-            return executeEvent(robot, program, event, programStep, dt);
-        }
-        if(stackTop instanceof ProgramPathComponent) {
-            ProgramPathComponent path = (ProgramPathComponent) stackTop;
-            return executePath(robot, program, path, programStep, dt);
-        }
-        // TODO handle unrecognized component type.
-        return true;
+    private boolean executeInstruction(RobotComponent robot, ProgramComponent program, CompiledProgram.Instruction instruction, double dt, boolean waitForPlans) {
+        return switch (instruction.type) {
+            case CompiledProgram.EVENT -> executeEvent(robot, program, (ProgramEventComponent)instruction.step, instruction.entity, dt);
+            case CompiledProgram.PATH -> executePath(robot, program, (ProgramPathComponent)instruction.step, instruction.pose, dt, waitForPlans);
+            case CompiledProgram.INTERLOCK -> executeInterlock(program, (ProgramInterlockComponent)instruction.step);
+            // no step, or a kind of step this system does not run.  nothing to do.
+            case CompiledProgram.NOOP -> true;
+            default -> throw new IllegalStateException("unknown instruction type "+instruction.type);
+        };
     }
 
     private boolean executeEvent(RobotComponent robot, ProgramComponent program, ProgramEventComponent event, Entity programStep, double dt) {
@@ -220,32 +387,139 @@ public class ProgramExecutorSystem  implements EntitySystem {
         return true;
     }
 
+    /**
+     * Acquire or release a shared lock.  Acquire does not finish until the lock is free.
+     * @return true if the step is finished.
+     */
+    private boolean executeInterlock(ProgramComponent program, ProgramInterlockComponent interlock) {
+        String name = interlock.lockName.get();
+        if(interlock.action.get() == ProgramInterlockComponent.RELEASE) {
+            interlocks.release(name,program);
+            return true;
+        }
+        boolean acquired = interlocks.tryAcquire(name,program,interlock.capacity.get());
+        program.setWaiting(!acquired);
+        return acquired;
+    }
+
     /**
      * A {@link ProgramPathComponent} is made of a series of {@link PoseComponent}s.
+     * The first time a step runs the move is planned.  Rapid moves are synchronized joint space moves.  Linear moves
+     * travel in a straight line, no faster than the robot's desired linear velocity and no faster than the joints
+     * allow.  A move around obstacles is planned on another thread and the step holds until the plan arrives.  Each
+     * update advances the move by dt.
      * @param robot the robot to move.
      * @param program the program that owns the path.
      * @param path the path to move.
+     * @param pathPose the pose of the path.
      * @param dt the time step in seconds.
+     * @param waitForPlans true to wait for a move that is still being planned.
      * @return true if the path is finished.
      */
-    private boolean executePath(RobotComponent robot, ProgramComponent program, ProgramPathComponent path, Entity programStep, double dt) {
-        PoseComponent pathPose = programStep.getComponent(PoseComponent.class);
-
+    private boolean executePath(RobotComponent robot, ProgramComponent program, ProgramPathComponent path, PoseComponent pathPose, double dt, boolean waitForPlans) {
         Matrix4d robotPose = robot.getEntity().getComponent(PoseComponent.class).getWorld();
         robotPose.invert();
         Matrix4d pathPoseWorld = pathPose.getWorld();
         Matrix4d adj = new Matrix4d();
-        adj.mul(pathPoseWorld,robotPose);
+        adj.mul(robotPose,pathPoseWorld);
+
+        Object motion = program.getStepMotion();
+        if(motion==null) {
+            motion = planPath(robot,path,adj);
+            if(motion==null) {
+                // nothing to plan with, assume instant finish
+                robot.set(Robot.END_EFFECTOR_TARGET, adj);
+                return true;
+            }
+            program.setStepMotion(motion);
+        }
+        if(motion instanceof PendingPlan) {
+            PendingPlan pending = (PendingPlan)motion;
+            if(!waitForPlans && !pending.result.isDone()) return false;
+            motion = pending.get();
+            program.setStepMotion(motion);
+        }
 
-        if (path.moveType.get() == ProgramPathComponent.MOVE_LINEAR) {
-            // linear
-            robot.set(Robot.END_EFFECTOR_TARGET, adj);
+        program.addStepTime(dt);
+        double t = program.getStepTime();
+        double duration;
+        if(motion instanceof JointTrajectory) {
+            JointTrajectory jointTrajectory = (JointTrajectory)motion;
+            duration = jointTrajectory.getDuration();
+            double [] joints = new double[robot.getNumBones()];
+            jointTrajectory.getJointValues(Math.min(t,duration),joints);
+            robot.setAllJointValues(joints);
+            // keep the target with the end effector so the arm system does not pull it somewhere else.
+            robot.set(Robot.END_EFFECTOR_TARGET, robot.get(Robot.END_EFFECTOR));
+        } else if(motion instanceof JointPathTrajectory) {
+            JointPathTrajectory jointPath = (JointPathTrajectory)motion;
+            duration = jointPath.getDuration();
+            double [] joints = new double[robot.getNumBones()];
+            jointPath.getJointValues(Math.min(t,duration),joints);
+            robot.setAllJointValues(joints);
+            robot.set(Robot.END_EFFECTOR_TARGET, robot.get(Robot.END_EFFECTOR));
         } else {
-            // rapid
-            robot.set(Robot.END_EFFECTOR_TARGET, adj);
+            CartesianTrajectory cartesianTrajectory = (CartesianTrajectory)motion;
+            duration = cartesianTrajectory.getDuration();
+            Matrix4d m = new Matrix4d();
+            cartesianTrajectory.getPose(Math.min(t,duration),m);
+            robot.set(Robot.END_EFFECTOR_TARGET, m);
         }
 
-        // assume instant finish
+        if(t<duration) return false;
+        program.clearStepMotion();
         return true;
     }
+
+    /**
+     * Plan the move to a target pose.
+     * @param robot the robot to move.
+     * @param path the path settings.
+     * @param target the target pose relative to the robot base.
+     * @return a {@link JointTrajectory}, {@link JointPathTrajectory}, {@link CartesianTrajectory} or a plan that is
+     * not ready yet, or null if the robot has no joints.
+     */
+    private Object planPath(RobotComponent robot, ProgramPathComponent path, Matrix4d target) {
+        if(robot.getNumBones()==0) return null;
+
+        KinematicChain chain = new KinematicChain(robot);
+        double [] start = robot.getAllJointValues();
+        double [] end = start.clone();
+        double [] targetArray = new double[KinematicChain.MATRIX_SIZE];
+        KinematicChain.toArray(target,targetArray,0);
+        if(!chain.solveInverseKinematics(end,targetArray,false,IK_ITERATIONS,IK_TOLERANCE)) {
+            logger.warn("{} cannot reach target exactly, moving as close as possible.",robot.getEntity().getName());
+        }
+        JointTrajectory jointTrajectory = new JointTrajectory(chain,start,end);
+
+        if (path.moveType.get() == ProgramPathComponent.MOVE_LINEAR) {
+            return new CartesianTrajectory(
+                    (Matrix4d)robot.get(Robot.END_EFFECTOR),
+                    target,
+                    robot.desiredLinearVelocity.get(),
+                    robot.desiredLinearAcceleration.get(),
+                    0,
+                    jointTrajectory.getDuration());
+        }
+        if(!path.avoidCollisions.get()) return jointTrajectory;
+        return planAroundObstacles(robot,start,end,jointTrajectory);
+    }
+
+    /**
+     * If the straight joint space move hits something, ask {@link RRTConnectPlanner} for a way around.  The scene is
+     * read here.  The collision check and the search run on another thread.
+     * @return a plan that is not ready yet.
+     */
+    private Object planAroundObstacles(RobotComponent robot, double [] start, double [] end, JointTrajectory direct) {
+        ArmCollisionModel model = ArmCollisionModel.fromRobot(robot);
+        model.addSceneObstacles(entityManager,robot);
+        Future<PlanResult> result = planners.submit(()->{
+            if(!model.isMotionInCollision(start,end,PLANNER_RESOLUTION)) return null;
+            RRTConnectPlanner planner = new RRTConnectPlanner(model);
+            planner.setTimeBudgetMs(PLANNER_BUDGET_MS);
+            planner.setResolution(PLANNER_RESOLUTION);
+            return planner.plan(start,end);
+        });
+        return new PendingPlan(result,model,direct,robot.getEntity().getName());
+    }
 }
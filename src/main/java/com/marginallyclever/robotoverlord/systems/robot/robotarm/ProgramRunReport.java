@@ -0,0 +1,172 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What happened when {@link ProgramRunner} ran a program: how long each step took, how far each joint travelled and
+ * how fast each joint moved, and the total cycle time.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ProgramRunReport {
+    /**
+     * The totals for one step of the program.
+     */
+    public static class StepReport {
+        public final int instruction;
+        public final String name;
+        private double duration;
+        private final double[] jointTravel;
+        private final double[] peakJointVelocity;
+
+        StepReport(int instruction, String name, int joints) {
+            this.instruction = instruction;
+            this.name = name;
+            jointTravel = new double[joints];
+            peakJointVelocity = new double[joints];
+        }
+
+        /**
+         * @return the time spent in this step, in seconds.
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the distance each joint moved in this step, in degrees.
+         */
+        public double[] getJointTravel() {
+            return jointTravel.clone();
+        }
+
+        /**
+         * @return the fastest each joint moved in this step, in degrees per second.
+         */
+        public double[] getPeakJointVelocity() {
+            return peakJointVelocity.clone();
+        }
+    }
+
+    private final String programName;
+    private final int joints;
+    private final double timeStep;
+    private final List<StepReport> steps = new ArrayList<>();
+    private final Map<Integer, StepReport> stepsByInstruction = new HashMap<>();
+    private double cycleTime;
+    private int ticks;
+    private boolean completed;
+    private long wallNanos;
+
+    ProgramRunReport(String programName, int joints, double timeStep) {
+        this.programName = programName;
+        this.joints = joints;
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Add one tick of a step.
+     * @param before the joint values at the start of the tick.
+     * @param after the joint values at the end of the tick.
+     */
+    void addTick(int instruction, String name, double dt, double[] before, double[] after) {
+        StepReport step = stepsByInstruction.get(instruction);
+        if (step == null) {
+            step = new StepReport(instruction, name, joints);
+            stepsByInstruction.put(instruction, step);
+            steps.add(step);
+        }
+        step.duration += dt;
+        for (int j = 0; j < joints; ++j) {
+            double d = Math.abs(after[j] - before[j]);
+            step.jointTravel[j] += d;
+            if (dt > 0) step.peakJointVelocity[j] = Math.max(step.peakJointVelocity[j], d / dt);
+        }
+        ticks++;
+    }
+
+    void finish(boolean completed, double cycleTime, long wallNanos) {
+        this.completed = completed;
+        this.cycleTime = cycleTime;
+        this.wallNanos = wallNanos;
+    }
+
+    public String getProgramName() {
+        return programName;
+    }
+
+    /**
+     * @return the steps in the order they first ran.
+     */
+    public List<StepReport> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @return the time from the start to the end of the program, in seconds.  If the program did not finish, the
+     * time until the run stopped.
+     */
+    public double getCycleTime() {
+        return cycleTime;
+    }
+
+    /**
+     * @return false if the run stopped at the time limit before the end of the program.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @return the real time the run took, in seconds.
+     */
+    public double getWallTime() {
+        return wallNanos * 1e-9;
+    }
+
+    /**
+     * @return the peak velocity of each joint over the whole program, in degrees per second.
+     */
+    public double[] getPeakJointVelocity() {
+        double[] peak = new double[joints];
+        for (StepReport step : steps) {
+            for (int j = 0; j < joints; ++j) peak[j] = Math.max(peak[j], step.peakJointVelocity[j]);
+        }
+        return peak;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: cycle time %.3fs%s, %d ticks of %.4fs in %.3fs real time.%n",
+                programName, cycleTime, completed ? "" : " (did not finish)", ticks, timeStep, getWallTime()));
+        for (StepReport step : steps) {
+            sb.append(String.format("  %-24s %8.3fs  travel %s  peak %s%n",
+                    step.name, step.duration, format(step.jointTravel), format(step.peakJointVelocity)));
+        }
+        sb.append(String.format("  peak joint velocity %s%n", format(getPeakJointVelocity())));
+        return sb.toString();
+    }
+
+    private static String format(double[] list) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < list.length; ++i) {
+            if (i > 0) sb.append(", ");
+            sb.append(String.format("%.1f", list[i]));
+        }
+        return sb.append("]").toString();
+    }
+}
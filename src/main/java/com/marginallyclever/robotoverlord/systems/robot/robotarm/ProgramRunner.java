@@ -0,0 +1,216 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.Project;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Matrix4d;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * <p>Runs a {@link ProgramComponent} from start to end without the animation loop.  Every tick is the same
+ * {@link #setTimeStep(double)} so the same program always gives the same result.  The run can be as fast as
+ * possible or slowed to a multiple of real time with {@link #setTimeScale(double)}.</p>
+ * <p>Each tick runs the {@link ProgramExecutorSystem} and then the {@link RobotArmSystem}, the same order as
+ * {@link com.marginallyclever.robotoverlord.systems.SystemManager}, so linear moves follow the end effector target
+ * as they would on screen.  Only the robot of the program is moved.  The program is never marked as running, so the
+ * animation loop leaves it alone while a run is in progress.  The result is a {@link ProgramRunReport}.</p>
+ * <p>Use {@link #main(String[])} to run every program in a project from the command line.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ProgramRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ProgramRunner.class);
+    public static final double DEFAULT_TIME_STEP = 0.01;
+    public static final double DEFAULT_TIME_LIMIT = 3600;
+
+    private final ProgramExecutorSystem executor;
+    private final RobotArmSystem armSystem;
+    private double timeStep = DEFAULT_TIME_STEP;
+    private double timeScale = 0;
+    private double timeLimit = DEFAULT_TIME_LIMIT;
+
+    public ProgramRunner(EntityManager entityManager) {
+        this(entityManager, new ProgramExecutorSystem(entityManager));
+    }
+
+    /**
+     * @param executor an executor already watching the entityManager, so it can be shared with the scene.
+     */
+    public ProgramRunner(EntityManager entityManager, ProgramExecutorSystem executor) {
+        this.executor = executor;
+        this.armSystem = new RobotArmSystem(entityManager);
+    }
+
+    /**
+     * @param dt the simulated time of each tick, in seconds.
+     */
+    public void setTimeStep(double dt) {
+        if (dt <= 0) throw new IllegalArgumentException("time step must be greater than zero.");
+        timeStep = dt;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @param scale simulated seconds per real second.  0 runs as fast as possible.
+     */
+    public void setTimeScale(double scale) {
+        timeScale = Math.max(0, scale);
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * @param seconds the most simulated time a run may take before it gives up.
+     */
+    public void setTimeLimit(double seconds) {
+        timeLimit = seconds;
+    }
+
+    public double getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Run a program once from the start.  The program is left stopped at its start.
+     * @param program the program to run.  It must be next to a {@link RobotComponent}.
+     * @return what happened.
+     * @throws IllegalArgumentException if the program has no robot.
+     */
+    public ProgramRunReport run(ProgramComponent program) {
+        RobotComponent robot = program.getEntity().getComponent(RobotComponent.class);
+        if (robot == null) throw new IllegalArgumentException("program has no robot.");
+
+        int mode = program.mode.get();
+        program.reset();
+        program.mode.set(ProgramComponent.RUN_TO_END);
+
+        int joints = robot.getNumBones();
+        ProgramRunReport report = new ProgramRunReport(program.getEntity().getName(), joints, timeStep);
+        CompiledProgram code = executor.getCompiledProgram(program);
+        if (code == null || code.size() == 0) {
+            // nothing to run.
+            report.finish(code != null, 0, 0);
+            program.reset();
+            program.mode.set(mode);
+            return report;
+        }
+        int maxTicks = (int) Math.min(Integer.MAX_VALUE, Math.ceil(timeLimit / timeStep));
+
+        long start = System.nanoTime();
+        boolean finished = false;
+        double simTime = 0;
+        try {
+            for (int tick = 0; tick < maxTicks && !finished; ++tick) {
+                int pc = executor.getCurrentInstruction(program);
+                double[] before = robot.getAllJointValues();
+                finished = executor.step(program, timeStep);
+                armSystem.update(robot, timeStep);
+                double[] after = robot.getAllJointValues();
+                simTime += timeStep;
+                if (pc >= 0) {
+                    code = executor.getCompiledProgram(program);
+                    if (code == null) break;
+                    report.addTick(pc, code.get(pc).entity.getName(), timeStep, before, after);
+                }
+                if (timeScale > 0) waitForRealTime(start, simTime);
+            }
+        } finally {
+            double cycleTime = finished ? program.cycleTime.get() : program.getRunTime();
+            report.finish(finished, cycleTime, System.nanoTime() - start);
+            executor.getInterlocks().releaseAll(program);
+            program.reset();
+            program.mode.set(mode);
+        }
+        if (!finished) logger.warn("{} did not finish in {}s.", report.getProgramName(), timeLimit);
+        return report;
+    }
+
+    private void waitForRealTime(long start, double simTime) {
+        long due = start + (long) (simTime / timeScale * 1e9);
+        long wait = due - System.nanoTime();
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run every program in the scene once.  The robots are put back where they were after each run.
+     * @return one report for each program.
+     */
+    public List<ProgramRunReport> runAll(EntityManager entityManager) {
+        List<ProgramRunReport> reports = new ArrayList<>();
+        for (ProgramComponent program : findPrograms(entityManager)) {
+            if (program.getEntity().getComponent(RobotComponent.class) == null) continue;
+            reports.add(runAndRestore(program));
+        }
+        return reports;
+    }
+
+    /**
+     * Run a program once and put the robot back where it started, so a run from the editor does not move the scene.
+     */
+    public ProgramRunReport runAndRestore(ProgramComponent program) {
+        RobotComponent robot = program.getEntity().getComponent(RobotComponent.class);
+        if (robot == null) throw new IllegalArgumentException("program has no robot.");
+        double[] joints = robot.getAllJointValues();
+        Matrix4d target = (Matrix4d) robot.get(Robot.END_EFFECTOR_TARGET);
+        try {
+            return run(program);
+        } finally {
+            robot.setAllJointValues(joints);
+            if (target != null) robot.set(Robot.END_EFFECTOR_TARGET, target);
+        }
+    }
+
+    static List<ProgramComponent> findPrograms(EntityManager entityManager) {
+        List<ProgramComponent> found = new ArrayList<>();
+        List<Entity> list = new LinkedList<>(entityManager.getEntities());
+        while (!list.isEmpty()) {
+            Entity e = list.remove(0);
+            list.addAll(e.getChildren());
+            ProgramComponent program = e.getComponent(ProgramComponent.class);
+            if (program != null) found.add(program);
+        }
+        return found;
+    }
+
+    /**
+     * Run every program in a project and print the reports.
+     * @param args the project file, then optionally the time step in seconds and the time scale.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("usage: ProgramRunner project.ro [timeStep] [timeScale]");
+            return;
+        }
+        Project project = new Project();
+        project.load(new File(args[0]));
+        ProgramRunner runner = new ProgramRunner(project.getEntityManager());
+        if (args.length > 1) runner.setTimeStep(Double.parseDouble(args[1]));
+        if (args.length > 2) runner.setTimeScale(Double.parseDouble(args[2]));
+
+        List<ProgramRunReport> reports = runner.runAll(project.getEntityManager());
+        if (reports.isEmpty()) System.out.println("No programs found.");
+        for (ProgramRunReport report : reports) {
+            System.out.print(report);
+        }
+    }
+}
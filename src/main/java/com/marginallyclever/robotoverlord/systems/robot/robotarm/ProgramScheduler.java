@@ -0,0 +1,180 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Runs every program in a cell once, all against the same simulated clock.  Each tick every unfinished program
+ * runs one step of {@link ProgramExecutorSystem} in scene order, then {@link RobotArmSystem} moves the arms that
+ * have a program.  Robots without one are left alone, and the programs are never marked as running, so the animation
+ * loop does not step them while a run is in progress.
+ * Programs share one {@link Interlocks} so a {@link ProgramInterlockComponent} in one program can hold up another.</p>
+ * <p>The run ends when every program has ended, when every unfinished program is waiting on an interlock
+ * (deadlock), or at the time limit.  The result is a {@link ScheduleReport}.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ProgramScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ProgramScheduler.class);
+
+    private final EntityManager entityManager;
+    private final ProgramExecutorSystem executor;
+    private final RobotArmSystem armSystem;
+    private double timeStep = ProgramRunner.DEFAULT_TIME_STEP;
+    private double timeLimit = ProgramRunner.DEFAULT_TIME_LIMIT;
+
+    public ProgramScheduler(EntityManager entityManager) {
+        this(entityManager, new ProgramExecutorSystem(entityManager));
+    }
+
+    /**
+     * @param executor an executor already watching the entityManager, so it can be shared with the scene.
+     */
+    public ProgramScheduler(EntityManager entityManager, ProgramExecutorSystem executor) {
+        this.entityManager = entityManager;
+        this.executor = executor;
+        this.armSystem = new RobotArmSystem(entityManager);
+    }
+
+    /**
+     * @param dt the simulated time of each tick, in seconds.
+     */
+    public void setTimeStep(double dt) {
+        if (dt <= 0) throw new IllegalArgumentException("time step must be greater than zero.");
+        timeStep = dt;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @param seconds the most simulated time a run may take before it gives up.
+     */
+    public void setTimeLimit(double seconds) {
+        timeLimit = seconds;
+    }
+
+    public double getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Run every program in the scene that is next to a robot.
+     */
+    public ScheduleReport run() {
+        return run(findPrograms());
+    }
+
+    /**
+     * Run some programs together from their start.  The programs are left stopped at their start.
+     * @param programs the programs to run.  Each must be next to a {@link RobotComponent}.
+     * @return what happened.
+     */
+    public ScheduleReport run(List<ProgramComponent> programs) {
+        int count = programs.size();
+        ScheduleReport report = new ScheduleReport();
+        ScheduleReport.RobotTimes[] times = new ScheduleReport.RobotTimes[count];
+        int[] modes = new int[count];
+        boolean[] done = new boolean[count];
+        for (int i = 0; i < count; ++i) {
+            ProgramComponent program = programs.get(i);
+            if (program.getEntity().getComponent(RobotComponent.class) == null) {
+                throw new IllegalArgumentException(program.getEntity().getName() + " has no robot.");
+            }
+            times[i] = report.addRobot(program.getEntity().getName());
+            modes[i] = program.mode.get();
+            executor.getInterlocks().releaseAll(program);
+            program.reset();
+            program.mode.set(ProgramComponent.RUN_TO_END);
+        }
+
+        int maxTicks = (int) Math.min(Integer.MAX_VALUE, Math.ceil(timeLimit / timeStep));
+        double clock = 0;
+        int remaining = count;
+        boolean deadlocked = false;
+        try {
+            for (int tick = 0; tick < maxTicks && remaining > 0; ++tick) {
+                boolean allWaiting = true;
+                for (int i = 0; i < count; ++i) {
+                    if (done[i]) continue;
+                    ProgramComponent program = programs.get(i);
+                    boolean finished = executor.step(program, timeStep);
+                    if (program.isWaiting()) {
+                        report.addWaiting(times[i], timeStep);
+                    } else {
+                        report.addBusy(times[i], timeStep);
+                        allWaiting = false;
+                    }
+                    if (finished || executor.getCompiledProgram(program) == null) {
+                        done[i] = true;
+                        remaining--;
+                        report.setFinished(times[i], clock + timeStep);
+                        List<String> held = executor.getInterlocks().releaseAll(program);
+                        if (!held.isEmpty()) logger.warn("{} ended holding {}.", times[i].name, held);
+                    }
+                }
+                for (ProgramComponent program : programs) {
+                    armSystem.update(program.getEntity().getComponent(RobotComponent.class), timeStep);
+                }
+                clock += timeStep;
+                if (allWaiting && remaining > 0) {
+                    deadlocked = true;
+                    logger.warn("Deadlock at {}s: every unfinished program is waiting for an interlock.", clock);
+                    break;
+                }
+            }
+        } finally {
+            report.finish(clock, remaining == 0, deadlocked);
+            for (int i = 0; i < count; ++i) {
+                ProgramComponent program = programs.get(i);
+                executor.getInterlocks().releaseAll(program);
+                program.reset();
+                program.mode.set(modes[i]);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Run every program in the scene and put the robots back where they started, so a run from the editor does not
+     * move the scene.
+     */
+    public ScheduleReport runAndRestore() {
+        List<ProgramComponent> programs = findPrograms();
+        List<double[]> joints = new ArrayList<>();
+        List<Matrix4d> targets = new ArrayList<>();
+        for (ProgramComponent program : programs) {
+            RobotComponent robot = program.getEntity().getComponent(RobotComponent.class);
+            joints.add(robot.getAllJointValues());
+            targets.add((Matrix4d) robot.get(Robot.END_EFFECTOR_TARGET));
+        }
+        try {
+            return run(programs);
+        } finally {
+            for (int i = 0; i < programs.size(); ++i) {
+                RobotComponent robot = programs.get(i).getEntity().getComponent(RobotComponent.class);
+                robot.setAllJointValues(joints.get(i));
+                if (targets.get(i) != null) robot.set(Robot.END_EFFECTOR_TARGET, targets.get(i));
+            }
+        }
+    }
+
+    private List<ProgramComponent> findPrograms() {
+        List<ProgramComponent> found = new ArrayList<>();
+        for (ProgramComponent program : ProgramRunner.findPrograms(entityManager)) {
+            if (program.getEntity().getComponent(RobotComponent.class) != null) found.add(program);
+        }
+        return found;
+    }
+}
@@ -5,13 +5,20 @@ import com.marginallyclever.robotoverlord.components.*;
 import com.marginallyclever.robotoverlord.components.motors.ServoComponent;
 import com.marginallyclever.robotoverlord.entity.Entity;
 import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.entity.EntityManagerEvent;
 import com.marginallyclever.robotoverlord.parameters.swing.ViewElementButton;
 import com.marginallyclever.robotoverlord.parameters.swing.ComponentSwingViewFactory;
 import com.marginallyclever.robotoverlord.robots.Robot;
 import com.marginallyclever.robotoverlord.swing.translator.Translator;
+import com.marginallyclever.robotoverlord.systems.render.gcodepath.GCodePath;
 import com.marginallyclever.robotoverlord.systems.EntitySystem;
 import com.marginallyclever.robotoverlord.systems.EntitySystemUtils;
 import com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.ControlArmPanel;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.ArmCollisionModel;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.ArmCollisionMonitor;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.planner.PlanResult;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.planner.RRTConnectPlanner;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory.PathTimeParameterization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +28,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * A system to manage robot arms.
@@ -30,11 +38,18 @@ import java.util.Map;
  */
 public class RobotArmSystem implements EntitySystem {
     private static final Logger logger = LoggerFactory.getLogger(RobotArmSystem.class);
+    public static final String REACHABILITY_NAME = "Reachability";
     private final EntityManager entityManager;
     private final Map<RobotComponent,JDialog> armPanels = new HashMap<>();
+    private final Map<RobotComponent,ArmCollisionMonitor> collisionMonitors = new WeakHashMap<>();
 
     public RobotArmSystem(EntityManager entityManager) {
         this.entityManager = entityManager;
+        // obstacles are only searched for again when the scene changes.
+        entityManager.addListener((e)->{
+            if(e.type==EntityManagerEvent.ENTITY_RENAMED) return;
+            for(ArmCollisionMonitor monitor : collisionMonitors.values()) monitor.invalidateObstacles();
+        });
     }
 
     @Override
@@ -42,6 +57,45 @@ public class RobotArmSystem implements EntitySystem {
         if( component instanceof RobotComponent ) decorateRobot(view,(RobotComponent)component);
         if( component instanceof DHComponent ) decorateDH(view,(DHComponent)component);
         if( component instanceof RobotArmComponent ) decorateRobotArm(view,(RobotArmComponent)component);
+        if( component instanceof ReachabilityMapComponent ) decorateReachabilityMap(view,(ReachabilityMapComponent)component);
+    }
+
+    private void decorateReachabilityMap(ComponentSwingViewFactory view, ReachabilityMapComponent reach) {
+        view.add(reach.samples);
+        view.add(reach.voxelSize);
+        view.add(reach.voxels).setReadOnly(true);
+
+        ViewElementButton bBuild = view.addButton("Build");
+        bBuild.addActionEventListener((evt)-> buildReachabilityMap(reach));
+    }
+
+    /**
+     * Find or create the {@link ReachabilityMapComponent} for a robot and build the map.
+     * @param robot the robot to map
+     */
+    private void showReachabilityMap(RobotComponent robot) {
+        ReachabilityMapComponent reach = robot.getEntity().findFirstComponentRecursive(ReachabilityMapComponent.class);
+        if(reach==null) {
+            Entity child = new Entity(REACHABILITY_NAME);
+            entityManager.addEntityToParent(child,robot.getEntity());
+            reach = new ReachabilityMapComponent();
+            child.addComponent(reach);
+        }
+        buildReachabilityMap(reach);
+    }
+
+    /**
+     * Building the map can take a few seconds, so do it off the UI thread.
+     * @param reach the component to fill
+     */
+    private void buildReachabilityMap(ReachabilityMapComponent reach) {
+        new Thread(()->{
+            try {
+                reach.build();
+            } catch(Exception e) {
+                logger.warn("Failed to build reachability map", e);
+            }
+        },"ReachabilityMap").start();
     }
 
     private void decorateDH(ComponentSwingViewFactory view, DHComponent dh) {
@@ -53,10 +107,15 @@ public class RobotArmSystem implements EntitySystem {
         view.add(dh.jointMax).setReadOnly(true);
         view.add(dh.jointMin).setReadOnly(true);
         view.add(dh.jointHome).setReadOnly(true);
+        view.add(dh.maxVelocity);
+        view.add(dh.maxAcceleration);
+        view.add(dh.maxJerk);
     }
 
     private void decorateRobot(ComponentSwingViewFactory view, RobotComponent robot) {
         view.add(robot.desiredLinearVelocity);
+        view.add(robot.desiredLinearAcceleration);
+        view.add(robot.stopOnCollision);
         view.add(robot.gcodePath);
 
         ViewElementButton bMake = view.addButton("Edit Arm");
@@ -67,6 +126,93 @@ public class RobotArmSystem implements EntitySystem {
 
         ViewElementButton bHome = view.addButton("Go home");
         bHome.addActionEventListener((evt)-> robot.goHome());
+
+        ViewElementButton bReach = view.addButton("Reachability map");
+        bReach.addActionEventListener((evt)-> showReachabilityMap(robot));
+
+        ViewElementButton bTime = view.addButton("Estimate path time");
+        bTime.addActionEventListener((evt)-> estimatePathTime(bTime,robot));
+
+        ViewElementButton bPlan = view.addButton("Plan path to target");
+        bPlan.addActionEventListener((evt)-> planPathToTarget(bPlan,robot));
+    }
+
+    /**
+     * Look for a collision free joint space path from the current pose to the end effector target.  Report the
+     * planning time and the number of nodes expanded.
+     * @param parent the component that requested the plan
+     * @param robot the robot to plan for
+     */
+    private void planPathToTarget(JComponent parent,RobotComponent robot) {
+        if(robot.getNumBones()==0) return;
+
+        KinematicChain chain = new KinematicChain(robot);
+        double [] start = robot.getAllJointValues();
+        double [] goal = start.clone();
+        double [] target = new double[KinematicChain.MATRIX_SIZE];
+        KinematicChain.toArray((Matrix4d)robot.get(Robot.END_EFFECTOR_TARGET),target,0);
+        String message;
+        if(!chain.solveInverseKinematics(goal,target,false,200,1e-3)) {
+            message = "The target is out of reach.";
+        } else {
+            ArmCollisionModel model = ArmCollisionModel.fromRobot(robot);
+            int obstacles = model.addSceneObstacles(entityManager,robot);
+            PlanResult result = new RRTConnectPlanner(model).plan(start,goal);
+            message = result+" around "+obstacles+" obstacles.";
+        }
+        logger.info(message);
+        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(parent),message,"Plan path to target",JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Find the time optimal way for the robot to follow its {@link GCodePathComponent} within the feed rates, the
+     * linear limits of the robot and the limits of every joint.  Report the cycle time.  The work happens away from
+     * the Event Dispatch Thread and the report is shown when it is done.
+     * @param button the button that requested the estimate.  It is disabled until the estimate is ready.
+     * @param robot the robot that will follow the path
+     */
+    private void estimatePathTime(ViewElementButton button,RobotComponent robot) {
+        GCodePathComponent pathComponent = getGCodePath(robot);
+        if(pathComponent==null || pathComponent.getGCodePath()==null) {
+            logger.warn("Estimate path time: this robot has no path.");
+            return;
+        }
+
+        // path coordinates to robot base coordinates
+        Matrix4d pathToBase = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        pathToBase.invert();
+        pathToBase.mul(pathComponent.getEntity().getComponent(PoseComponent.class).getWorld());
+        final GCodePath path = pathComponent.getGCodePath();
+        final double velocity = robot.desiredLinearVelocity.get();
+        final double acceleration = robot.desiredLinearAcceleration.get();
+        final double [] joints = robot.getAllJointValues();
+        final KinematicChain chain = new KinematicChain(robot);
+
+        button.setReadOnly(true);
+        new SwingWorker<String,Void>() {
+            @Override
+            protected String doInBackground() {
+                PathTimeParameterization timing = PathTimeParameterization.fromGCodePath(path,0.1,velocity,acceleration);
+                int unreachable = timing.applyJointLimits(chain,joints,pathToBase);
+                timing.solve();
+
+                String message = String.format("Cycle time %.3fs over %.2fcm.",timing.getDuration(),timing.getLength());
+                if(unreachable>0) message += "  "+unreachable+" of "+timing.size()+" points are out of reach.";
+                return message;
+            }
+
+            @Override
+            protected void done() {
+                button.setReadOnly(false);
+                try {
+                    String message = get();
+                    logger.info(message);
+                    JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(button),message,"Estimate path time",JOptionPane.INFORMATION_MESSAGE);
+                } catch(Exception e) {
+                    logger.error("Estimate path time failed.",e);
+                }
+            }
+        }.execute();
     }
 
     private void decorateRobotArm(ComponentSwingViewFactory view, RobotArmComponent arm) {
@@ -172,6 +318,15 @@ public class RobotArmSystem implements EntitySystem {
         }
     }
 
+    /**
+     * Move one robot toward its end effector target and leave every other robot alone.
+     * @param robotComponent the robot to move.
+     * @param dt the time step in seconds.
+     */
+    public void update(RobotComponent robotComponent, double dt) {
+        updateRobotComponent(robotComponent, dt);
+    }
+
     private void updateRobotComponent(RobotComponent robotComponent, double dt) {
         Matrix4d startPose = (Matrix4d)robotComponent.get(Robot.END_EFFECTOR);
         Matrix4d targetPose = (Matrix4d)robotComponent.get(Robot.END_EFFECTOR_TARGET);
@@ -185,6 +340,10 @@ public class RobotArmSystem implements EntitySystem {
 
         // push the robot
         applyCartesianForceToEndEffector(robotComponent,cartesianVelocity);
+
+        if(robotComponent.stopOnCollision.get()) {
+            collisionMonitors.computeIfAbsent(robotComponent,ArmCollisionMonitor::new).update(entityManager,dt);
+        }
     }
 
     private double sumCartesianVelocityComponents(double [] cartesianVelocity) {
@@ -0,0 +1,152 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What happened when {@link ProgramScheduler} ran the programs of a cell together.  For each robot it gives the time
+ * spent moving or working, the time spent waiting for an interlock and the time spent idle after its program ended
+ * while the rest of the cell finished.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ScheduleReport {
+    /**
+     * The times of one robot, in seconds.
+     */
+    public static class RobotTimes {
+        public final String name;
+        private double busy;
+        private double waiting;
+        private double finishTime = -1;
+        private double makespan;
+
+        RobotTimes(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return time spent running steps other than waiting for an interlock.
+         */
+        public double getBusy() {
+            return busy;
+        }
+
+        /**
+         * @return time spent waiting for an interlock held by another program.
+         */
+        public double getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * @return time from the end of this program to the end of the last program.
+         */
+        public double getIdle() {
+            return isFinished() ? makespan - finishTime : 0;
+        }
+
+        /**
+         * @return the time this program ended, or -1 if it did not.
+         */
+        public double getFinishTime() {
+            return finishTime;
+        }
+
+        public boolean isFinished() {
+            return finishTime >= 0;
+        }
+
+        /**
+         * @return the part of the makespan spent busy, from 0 to 1.
+         */
+        public double getUtilization() {
+            return makespan > 0 ? busy / makespan : 0;
+        }
+    }
+
+    private final List<RobotTimes> robots = new ArrayList<>();
+    private double makespan;
+    private boolean completed;
+    private boolean deadlocked;
+
+    RobotTimes addRobot(String name) {
+        RobotTimes times = new RobotTimes(name);
+        robots.add(times);
+        return times;
+    }
+
+    void addBusy(RobotTimes times, double dt) {
+        times.busy += dt;
+    }
+
+    void addWaiting(RobotTimes times, double dt) {
+        times.waiting += dt;
+    }
+
+    void setFinished(RobotTimes times, double time) {
+        times.finishTime = time;
+    }
+
+    void finish(double makespan, boolean completed, boolean deadlocked) {
+        this.makespan = makespan;
+        this.completed = completed;
+        this.deadlocked = deadlocked;
+        for (RobotTimes times : robots) times.makespan = makespan;
+    }
+
+    public List<RobotTimes> getRobots() {
+        return Collections.unmodifiableList(robots);
+    }
+
+    /**
+     * @return the time from the start of the first program to the end of the last, in seconds.
+     */
+    public double getMakespan() {
+        return makespan;
+    }
+
+    /**
+     * @return true if every program ended.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return true if the run stopped because every unfinished program was waiting for another.
+     */
+    public boolean isDeadlocked() {
+        return deadlocked;
+    }
+
+    /**
+     * @return the robot with the most busy time.  It limits the throughput of the cell.  Null if there are no robots.
+     */
+    public RobotTimes getBottleneck() {
+        RobotTimes best = null;
+        for (RobotTimes times : robots) {
+            if (best == null || times.busy > best.busy) best = times;
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Makespan %.3fs%s.%n", makespan,
+                deadlocked ? " (deadlocked)" : completed ? "" : " (did not finish)"));
+        sb.append(String.format("  %-24s %9s %9s %9s %9s %6s%n", "robot", "busy", "waiting", "idle", "finish", "util"));
+        for (RobotTimes times : robots) {
+            sb.append(String.format("  %-24s %8.3fs %8.3fs %8.3fs %9s %5.1f%%%n",
+                    times.name, times.busy, times.waiting, times.getIdle(),
+                    times.isFinished() ? String.format("%.3fs", times.finishTime) : "-",
+                    times.getUtilization() * 100));
+        }
+        RobotTimes bottleneck = getBottleneck();
+        if (bottleneck != null) sb.append(String.format("  bottleneck: %s%n", bottleneck.name));
+        return sb.toString();
+    }
+}
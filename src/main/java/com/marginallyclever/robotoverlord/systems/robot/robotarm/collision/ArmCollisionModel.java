@@ -0,0 +1,415 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.components.shapes.Box;
+import com.marginallyclever.robotoverlord.components.shapes.Cylinder;
+import com.marginallyclever.robotoverlord.components.shapes.MeshFromFile;
+import com.marginallyclever.robotoverlord.components.shapes.Sphere;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import java.util.*;
+
+/**
+ * <p>Collision model of a robot arm and the things around it.  Link 0 is the base and link i+1 moves with bone i.
+ * Each link is one {@link Capsule} in the frame of its bone, fitted around the meshes of that link by
+ * {@link #fromRobot(RobotComponent)}.  Links with no mesh get a capsule from the origin of the previous bone to the
+ * origin of their own bone.  Obstacles are {@link OrientedBox}es in the frame of the robot base, kept in an
+ * {@link ObstacleBroadphase}.</p>
+ * <p>Links next to each other always touch, so they are never tested.  Pairs that touch at the home position or in
+ * every random sample are also skipped, the same way an allowed collision matrix works.  The base never moves, so it
+ * is never tested against obstacles.</p>
+ * <p>Tests are thread safe once obstacles have been added, as long as each thread uses its own {@link Workspace}.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ArmCollisionModel {
+    public static final double DEFAULT_RADIUS = 2.0;
+    private static final int SELF_COLLISION_SAMPLES = 1000;
+
+    private final KinematicChain chain;
+    private final int numLinks;
+    // one per link, in the frame of the link.
+    private final Capsule[] localLinks;
+    // true for each pair of links that must be tested, numLinks*numLinks.
+    private final boolean[] testPair;
+    private final ObstacleBroadphase obstacles = new ObstacleBroadphase();
+    // local bounds of each obstacle mesh, plus the vertex count when the bounds were measured.
+    private final Map<Mesh, double[]> meshBounds = new WeakHashMap<>();
+
+    /**
+     * Working storage for one thread.
+     */
+    public static class Workspace {
+        private final double[] poses;
+        private final double[] dh = new double[KinematicChain.MATRIX_SIZE];
+        private final double[] temp = new double[KinematicChain.MATRIX_SIZE];
+        private final double[] bounds = new double[6];
+        private final double[] q;
+        private final Capsule[] links;
+
+        private Workspace(int dof, int numLinks) {
+            poses = new double[(dof + 1) * KinematicChain.MATRIX_SIZE];
+            q = new double[dof];
+            links = new Capsule[numLinks];
+            for (int i = 0; i < numLinks; ++i) links[i] = new Capsule();
+        }
+    }
+
+    /**
+     * A model with no meshes.  Every link is a capsule from one bone origin to the next.
+     * @param chain the robot.
+     * @param radius the radius of every link, in cm.
+     */
+    public ArmCollisionModel(KinematicChain chain, double radius) {
+        this(chain, new Capsule[chain.getDOF() + 1], radius);
+    }
+
+    /**
+     * @param chain the robot.
+     * @param localLinks dof+1 capsules, each in the frame of its link.  Missing links may be null.
+     * @param radius the radius of any link that is missing.
+     */
+    public ArmCollisionModel(KinematicChain chain, Capsule[] localLinks, double radius) {
+        this.chain = chain;
+        numLinks = chain.getDOF() + 1;
+        if (localLinks.length != numLinks) throw new IllegalArgumentException("expected " + numLinks + " links.");
+        this.localLinks = new Capsule[numLinks];
+
+        double[] home = new double[chain.getDOF()];
+        for (int i = 0; i < home.length; ++i) home[i] = chain.getJointHome(i);
+        double[] poses = new double[(chain.getDOF() + 1) * KinematicChain.MATRIX_SIZE];
+        chain.getPoses(home, poses, null);
+        for (int i = 0; i < numLinks; ++i) {
+            this.localLinks[i] = localLinks[i] != null ? localLinks[i] : getBoneSegment(i, poses, radius);
+        }
+
+        testPair = new boolean[numLinks * numLinks];
+        buildSelfCollisionMatrix(home);
+    }
+
+    /**
+     * Build a model with a capsule fitted around the meshes of every link.
+     * @param robot the robot.  Must have found its bones.
+     * @return the model, with no obstacles.
+     */
+    public static ArmCollisionModel fromRobot(RobotComponent robot) {
+        KinematicChain chain = new KinematicChain(robot);
+        Capsule[] links = new Capsule[chain.getDOF() + 1];
+        links[0] = fitLink(robot.getEntity());
+        for (int i = 0; i < chain.getDOF(); ++i) {
+            links[i + 1] = fitLink(robot.getBone(i).getEntity());
+        }
+        return new ArmCollisionModel(chain, links, DEFAULT_RADIUS);
+    }
+
+    /**
+     * Fit a capsule around every solid shape that moves with a link, in the frame of the link.
+     * @return the capsule, or null if the link has no meshes.
+     */
+    private static Capsule fitLink(Entity link) {
+        Matrix4d worldToLink = getWorld(link);
+        worldToLink.invert();
+
+        List<Mesh> meshes = new ArrayList<>();
+        List<Matrix4d> transforms = new ArrayList<>();
+        int count = 0;
+        List<Entity> list = new LinkedList<>();
+        list.add(link);
+        while (!list.isEmpty()) {
+            Entity e = list.remove(0);
+            // the next bone and everything after it belong to another link.
+            if (e != link && e.getComponent(DHComponent.class) != null) continue;
+            list.addAll(e.getChildren());
+
+            ShapeComponent shape = e.getComponent(ShapeComponent.class);
+            if (!isSolid(shape)) continue;
+            Mesh mesh = shape.getModel();
+            if (mesh == null || mesh.getNumVertices() == 0) continue;
+            Matrix4d m = new Matrix4d();
+            m.mul(worldToLink, getWorld(e));
+            meshes.add(mesh);
+            transforms.add(m);
+            count += mesh.vertexArray.size() / 3;
+        }
+        if (count == 0) return null;
+
+        double[] points = new double[count * 3];
+        Point3d p = new Point3d();
+        int j = 0;
+        for (int k = 0; k < meshes.size(); ++k) {
+            List<Float> vertexes = meshes.get(k).vertexArray;
+            Matrix4d m = transforms.get(k);
+            for (int i = 0; i + 2 < vertexes.size(); i += 3) {
+                p.set(vertexes.get(i), vertexes.get(i + 1), vertexes.get(i + 2));
+                m.transform(p);
+                points[j++] = p.x;
+                points[j++] = p.y;
+                points[j++] = p.z;
+            }
+        }
+        return Capsule.fit(points, count);
+    }
+
+    private static Matrix4d getWorld(Entity entity) {
+        PoseComponent pose = entity.getComponent(PoseComponent.class);
+        if (pose != null) return pose.getWorld();
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        return m;
+    }
+
+    /**
+     * The capsule from the origin of the previous bone to the origin of this bone, in the frame of this bone.
+     * The base is a ball at the origin.
+     */
+    private Capsule getBoneSegment(int link, double[] poses, double radius) {
+        if (link == 0) return new Capsule(0, 0, 0, 0, 0, 0, radius);
+        int o = (link - 1) * KinematicChain.MATRIX_SIZE;
+        double px = 0, py = 0, pz = 0;
+        if (link > 1) {
+            int p = o - KinematicChain.MATRIX_SIZE;
+            px = poses[p + 3];
+            py = poses[p + 7];
+            pz = poses[p + 11];
+        }
+        // previous origin relative to this bone = transpose(R) * (p - t)
+        double dx = px - poses[o + 3], dy = py - poses[o + 7], dz = pz - poses[o + 11];
+        return new Capsule(
+                poses[o] * dx + poses[o + 4] * dy + poses[o + 8] * dz,
+                poses[o + 1] * dx + poses[o + 5] * dy + poses[o + 9] * dz,
+                poses[o + 2] * dx + poses[o + 6] * dy + poses[o + 10] * dz,
+                0, 0, 0, radius);
+    }
+
+    /**
+     * Skip pairs that are adjacent, touch at home, or touch in every random sample.
+     */
+    private void buildSelfCollisionMatrix(double[] home) {
+        Workspace ws = createWorkspace();
+        int[] hits = new int[numLinks * numLinks];
+        updateLinks(home, ws);
+        Capsule[] links = ws.links;
+        for (int i = 0; i < numLinks; ++i) {
+            for (int j = i + 2; j < numLinks; ++j) {
+                if (!links[i].intersects(links[j])) testPair[i * numLinks + j] = true;
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(0);
+        double[] q = new double[chain.getDOF()];
+        for (int s = 0; s < SELF_COLLISION_SAMPLES; ++s) {
+            for (int i = 0; i < q.length; ++i) {
+                double min = chain.getJointMin(i);
+                double max = chain.getJointMax(i);
+                q[i] = max > min ? random.nextDouble(min, max) : min;
+            }
+            updateLinks(q, ws);
+            for (int i = 0; i < numLinks; ++i) {
+                for (int j = i + 2; j < numLinks; ++j) {
+                    if (links[i].intersects(links[j])) hits[i * numLinks + j]++;
+                }
+            }
+        }
+
+        for (int i = 0; i < numLinks; ++i) {
+            for (int j = i + 2; j < numLinks; ++j) {
+                boolean test = testPair[i * numLinks + j] && hits[i * numLinks + j] < SELF_COLLISION_SAMPLES;
+                testPair[i * numLinks + j] = test;
+                testPair[j * numLinks + i] = test;
+            }
+        }
+    }
+
+    public KinematicChain getChain() {
+        return chain;
+    }
+
+    public int getNumLinks() {
+        return numLinks;
+    }
+
+    /**
+     * @param index the link
+     * @return the capsule of one link in the frame of that link.  Do not modify.
+     */
+    public Capsule getLocalLink(int index) {
+        return localLinks[index];
+    }
+
+    /**
+     * @return true if the two links are tested against each other.
+     */
+    public boolean isPairTested(int a, int b) {
+        return testPair[a * numLinks + b];
+    }
+
+    public Workspace createWorkspace() {
+        return new Workspace(chain.getDOF(), numLinks);
+    }
+
+    /**
+     * Add an obstacle.  Anything that touches the base, like the table under the robot, is only tested against the
+     * links after the first bone.
+     * @param box the obstacle in the frame of the robot base.
+     */
+    public void addObstacle(OrientedBox box) {
+        obstacles.add(box, localLinks[0].intersects(box) ? 2 : 1);
+    }
+
+    public void clearObstacles() {
+        obstacles.clear();
+    }
+
+    public List<OrientedBox> getObstacles() {
+        return obstacles.getBoxes();
+    }
+
+    /**
+     * Add every solid shape in the scene that is not part of the robot as an obstacle.
+     * @param entityManager the scene.
+     * @param robot the robot.  Must be in the scene.
+     * @return the number of obstacles added.
+     */
+    public int addSceneObstacles(EntityManager entityManager, RobotComponent robot) {
+        Matrix4d worldToBase = getWorld(robot.getEntity());
+        worldToBase.invert();
+
+        int count = 0;
+        List<Entity> list = new LinkedList<>(entityManager.getEntities());
+        while (!list.isEmpty()) {
+            Entity e = list.remove(0);
+            if (e == robot.getEntity()) continue;  // skip the robot and everything attached to it.
+            list.addAll(e.getChildren());
+
+            ShapeComponent shape = e.getComponent(ShapeComponent.class);
+            if (!isSolid(shape)) continue;
+            Mesh mesh = shape.getModel();
+            if (mesh == null || mesh.getNumVertices() == 0) continue;
+            PoseComponent pose = e.getComponent(PoseComponent.class);
+            if (pose == null) continue;
+
+            double[] b = getMeshBounds(mesh);
+            Matrix4d m = new Matrix4d();
+            m.mul(worldToBase, pose.getWorld());
+            double[] m16 = new double[KinematicChain.MATRIX_SIZE];
+            KinematicChain.toArray(m, m16, 0);
+            OrientedBox box = new OrientedBox();
+            box.set(b[0], b[1], b[2], b[3], b[4], b[5], m16, 0);
+            addObstacle(box);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Measuring a big mesh is slow, so remember the answer until the mesh changes.
+     */
+    double[] getMeshBounds(Mesh mesh) {
+        List<Float> vertexes = mesh.vertexArray;
+        synchronized (meshBounds) {
+            double[] b = meshBounds.get(mesh);
+            if (b != null && b[6] == vertexes.size()) return b;
+            b = new double[]{Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE, vertexes.size()};
+            for (int i = 0; i + 2 < vertexes.size(); i += 3) {
+                for (int k = 0; k < 3; ++k) {
+                    double v = vertexes.get(i + k);
+                    b[k] = Math.min(b[k], v);
+                    b[3 + k] = Math.max(b[3 + k], v);
+                }
+            }
+            meshBounds.put(mesh, b);
+            return b;
+        }
+    }
+
+    static boolean isSolid(ShapeComponent shape) {
+        return shape instanceof Box
+                || shape instanceof Sphere
+                || shape instanceof Cylinder
+                || shape instanceof MeshFromFile;
+    }
+
+    /**
+     * @param joints the joint values.
+     * @return one capsule per link, relative to the robot base.  The first link is the base.
+     */
+    public Capsule[] getLinks(double[] joints) {
+        Workspace ws = createWorkspace();
+        updateLinks(joints, ws);
+        return ws.links;
+    }
+
+    private void updateLinks(double[] joints, Workspace ws) {
+        chain.getPoses(joints, ws.poses, null, ws.dh, ws.temp);
+        ws.links[0].set(localLinks[0]);
+        for (int i = 1; i < numLinks; ++i) {
+            ws.links[i].setTransformed(localLinks[i], ws.poses, (i - 1) * KinematicChain.MATRIX_SIZE);
+        }
+    }
+
+    /**
+     * @param joints the joint values.
+     * @return true if the arm touches itself or any obstacle.
+     */
+    public boolean isInCollision(double[] joints) {
+        return isInCollision(joints, createWorkspace());
+    }
+
+    /**
+     * Allocation free version of {@link #isInCollision(double[])}.
+     * @param joints the joint values.
+     * @param ws working storage from {@link #createWorkspace()}.
+     * @return true if the arm touches itself or any obstacle.
+     */
+    public boolean isInCollision(double[] joints, Workspace ws) {
+        updateLinks(joints, ws);
+        Capsule[] links = ws.links;
+        for (int i = 0; i < numLinks; ++i) {
+            for (int j = i + 2; j < numLinks; ++j) {
+                if (testPair[i * numLinks + j] && links[i].intersects(links[j])) return true;
+            }
+        }
+        if (obstacles.size() == 0) return false;
+        for (int i = 1; i < numLinks; ++i) {
+            if (obstacles.intersects(links[i], i, ws.bounds)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Test the straight line between two joint configurations.
+     * @param from the start.
+     * @param to the end.
+     * @param resolution the largest step any joint may take between tests, in degrees or cm.
+     * @return true if any step along the way is in collision.
+     */
+    public boolean isMotionInCollision(double[] from, double[] to, double resolution) {
+        return isMotionInCollision(from, to, resolution, createWorkspace());
+    }
+
+    /**
+     * Allocation free version of {@link #isMotionInCollision(double[], double[], double)}.
+     */
+    public boolean isMotionInCollision(double[] from, double[] to, double resolution, Workspace ws) {
+        double largest = 0;
+        for (int i = 0; i < from.length; ++i) largest = Math.max(largest, Math.abs(to[i] - from[i]));
+        int steps = Math.max(1, (int) Math.ceil(largest / resolution));
+        double[] q = ws.q;
+        for (int s = 1; s <= steps; ++s) {
+            double f = (double) s / steps;
+            for (int i = 0; i < q.length; ++i) q[i] = from[i] + (to[i] - from[i]) * f;
+            if (isInCollision(q, ws)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * <p>Watches one robot arm every tick.  If the arm has moved into itself or into an obstacle since the last tick, it
+ * is put back where it was and the end effector target is moved to the end effector so the arm stops pushing.</p>
+ * <p>The {@link ArmCollisionModel} is rebuilt when the bones or link meshes change.  That is checked about once a
+ * second, because fitting the link capsules walks every vertex.  Obstacles are kept by {@link SceneObstacles}, which
+ * searches the scene only when it changes and sets again only the boxes that moved.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ArmCollisionMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(ArmCollisionMonitor.class);
+    /**
+     * The time one check is expected to take, in nanoseconds.
+     */
+    public static final long BUDGET_NS = 1000000;
+    private static final double REBUILD_INTERVAL = 1.0;
+
+    private final RobotComponent robot;
+    private final SceneObstacles obstacles;
+    private ArmCollisionModel model;
+    private ArmCollisionModel.Workspace workspace;
+    private long signature;
+    private double sinceRebuild;
+    private double[] safeJoints;
+    private boolean colliding;
+    private boolean overBudget;
+    private long lastCheckNanos;
+
+    public ArmCollisionMonitor(RobotComponent robot) {
+        this.robot = robot;
+        obstacles = new SceneObstacles(robot);
+    }
+
+    /**
+     * Check the robot and undo the last move if it caused a collision.
+     * @param entityManager the scene.
+     * @param dt the time step in seconds.
+     * @return true if the last move was undone.
+     */
+    public boolean update(EntityManager entityManager, double dt) {
+        if (robot.getNumBones() == 0) return false;
+
+        sinceRebuild += dt;
+        if (model == null || sinceRebuild >= REBUILD_INTERVAL) {
+            sinceRebuild = 0;
+            // a mesh may have loaded or changed without the scene saying so.
+            obstacles.invalidate();
+            long s = getSignature();
+            if (model == null || s != signature) {
+                signature = s;
+                model = ArmCollisionModel.fromRobot(robot);
+                workspace = model.createWorkspace();
+                safeJoints = null;
+            }
+        }
+
+        long start = System.nanoTime();
+        obstacles.update(entityManager, model);
+        double[] joints = robot.getAllJointValues();
+        boolean hit = model.isInCollision(joints, workspace);
+        lastCheckNanos = System.nanoTime() - start;
+        if (lastCheckNanos > BUDGET_NS && !overBudget) {
+            overBudget = true;
+            logger.debug("{} collision check took {}us.", robot.getEntity().getName(), lastCheckNanos / 1000);
+        }
+
+        if (!hit) {
+            colliding = false;
+            safeJoints = joints;
+            return false;
+        }
+        if (!colliding) {
+            colliding = true;
+            logger.warn("{} stopped to avoid a collision.", robot.getEntity().getName());
+        }
+        // an arm that starts in collision may move freely until it is clear.
+        if (safeJoints == null) return false;
+        robot.setAllJointValues(safeJoints);
+        robot.set(Robot.END_EFFECTOR_TARGET, robot.get(Robot.END_EFFECTOR));
+        return true;
+    }
+
+    /**
+     * @return true if the last check found a collision.
+     */
+    public boolean isColliding() {
+        return colliding;
+    }
+
+    /**
+     * @return how long the last check took, in nanoseconds.
+     */
+    public long getLastCheckNanos() {
+        return lastCheckNanos;
+    }
+
+    public ArmCollisionModel getModel() {
+        return model;
+    }
+
+    /**
+     * Search the scene for obstacles again on the next check.  Use when entities are added or removed.
+     */
+    public void invalidateObstacles() {
+        obstacles.invalidate();
+    }
+
+    /**
+     * @return a number that changes when the bones or the meshes of the robot change.
+     */
+    private long getSignature() {
+        long s = new KinematicChain(robot).getHash();
+        List<Entity> list = new LinkedList<>();
+        list.add(robot.getEntity());
+        while (!list.isEmpty()) {
+            Entity e = list.remove(0);
+            list.addAll(e.getChildren());
+            ShapeComponent shape = e.getComponent(ShapeComponent.class);
+            if (shape == null) continue;
+            Mesh mesh = shape.getModel();
+            s = s * 31 + (mesh == null ? 0 : mesh.getNumVertices());
+        }
+        return s;
+    }
+}
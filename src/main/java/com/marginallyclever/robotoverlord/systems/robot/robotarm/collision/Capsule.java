@@ -0,0 +1,241 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+/**
+ * A line segment with a radius.  Cheap to test against other capsules and boxes, and a good fit for the links of
+ * most robot arms.  Coordinates are stored as plain doubles so tests do not allocate.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class Capsule {
+    public double ax, ay, az;
+    public double bx, by, bz;
+    public double radius;
+
+    public Capsule() {}
+
+    public Capsule(double ax, double ay, double az, double bx, double by, double bz, double radius) {
+        set(ax, ay, az, bx, by, bz, radius);
+    }
+
+    public void set(double ax, double ay, double az, double bx, double by, double bz, double radius) {
+        this.ax = ax;
+        this.ay = ay;
+        this.az = az;
+        this.bx = bx;
+        this.by = by;
+        this.bz = bz;
+        this.radius = radius;
+    }
+
+    public void set(Capsule other) {
+        set(other.ax, other.ay, other.az, other.bx, other.by, other.bz, other.radius);
+    }
+
+    /**
+     * Set this capsule to another capsule moved by a transform.
+     * @param local the capsule to transform.
+     * @param m 16 doubles, row major.
+     * @param offset where the matrix starts in m.
+     */
+    public void setTransformed(Capsule local, double[] m, int offset) {
+        double x = local.ax, y = local.ay, z = local.az;
+        ax = m[offset    ] * x + m[offset + 1] * y + m[offset +  2] * z + m[offset +  3];
+        ay = m[offset + 4] * x + m[offset + 5] * y + m[offset +  6] * z + m[offset +  7];
+        az = m[offset + 8] * x + m[offset + 9] * y + m[offset + 10] * z + m[offset + 11];
+        x = local.bx;
+        y = local.by;
+        z = local.bz;
+        bx = m[offset    ] * x + m[offset + 1] * y + m[offset +  2] * z + m[offset +  3];
+        by = m[offset + 4] * x + m[offset + 5] * y + m[offset +  6] * z + m[offset +  7];
+        bz = m[offset + 8] * x + m[offset + 9] * y + m[offset + 10] * z + m[offset + 11];
+        radius = local.radius;
+    }
+
+    /**
+     * @param other the other capsule.
+     * @return the distance between the surfaces of the two capsules.  Negative when they overlap.
+     */
+    public double distance(Capsule other) {
+        return Math.sqrt(segmentSegmentDistanceSquared(
+                ax, ay, az, bx, by, bz,
+                other.ax, other.ay, other.az, other.bx, other.by, other.bz)) - radius - other.radius;
+    }
+
+    public boolean intersects(Capsule other) {
+        double r = radius + other.radius;
+        return segmentSegmentDistanceSquared(
+                ax, ay, az, bx, by, bz,
+                other.ax, other.ay, other.az, other.bx, other.by, other.bz) < r * r;
+    }
+
+    /**
+     * @param box the box.
+     * @return the distance between the surface of this capsule and the box.  Negative when they overlap.
+     */
+    public double distance(OrientedBox box) {
+        return box.segmentDistance(ax, ay, az, bx, by, bz) - radius;
+    }
+
+    public boolean intersects(OrientedBox box) {
+        return distance(box) < 0;
+    }
+
+    /**
+     * @param bounds 6 doubles.  Will be filled with the world aligned bounds of this capsule: min x,y,z then max x,y,z.
+     */
+    public void getBounds(double[] bounds) {
+        bounds[0] = Math.min(ax, bx) - radius;
+        bounds[1] = Math.min(ay, by) - radius;
+        bounds[2] = Math.min(az, bz) - radius;
+        bounds[3] = Math.max(ax, bx) + radius;
+        bounds[4] = Math.max(ay, by) + radius;
+        bounds[5] = Math.max(az, bz) + radius;
+    }
+
+    /**
+     * Fit a capsule around a cloud of points.  The axis is the principal axis of the points.  The radius is the
+     * furthest any point is from that axis, and the ends are pulled in as far as they can go while every point stays
+     * inside.
+     * @param points x,y,z for each point.
+     * @param count the number of points.
+     * @return the capsule, or null if there are no points.
+     */
+    public static Capsule fit(double[] points, int count) {
+        if (count == 0) return null;
+
+        double mx = 0, my = 0, mz = 0;
+        for (int i = 0; i < count; ++i) {
+            mx += points[i * 3];
+            my += points[i * 3 + 1];
+            mz += points[i * 3 + 2];
+        }
+        mx /= count;
+        my /= count;
+        mz /= count;
+
+        double xx = 0, xy = 0, xz = 0, yy = 0, yz = 0, zz = 0;
+        for (int i = 0; i < count; ++i) {
+            double x = points[i * 3] - mx;
+            double y = points[i * 3 + 1] - my;
+            double z = points[i * 3 + 2] - mz;
+            xx += x * x;
+            xy += x * y;
+            xz += x * z;
+            yy += y * y;
+            yz += y * z;
+            zz += z * z;
+        }
+
+        // power iteration for the largest eigenvector of the covariance.  Start on the widest axis.
+        double ux = 0, uy = 0, uz = 0;
+        if (xx >= yy && xx >= zz) ux = 1;
+        else if (yy >= zz) uy = 1;
+        else uz = 1;
+        for (int k = 0; k < 32; ++k) {
+            double nx = xx * ux + xy * uy + xz * uz;
+            double ny = xy * ux + yy * uy + yz * uz;
+            double nz = xz * ux + yz * uy + zz * uz;
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (len < 1e-12) break;
+            ux = nx / len;
+            uy = ny / len;
+            uz = nz / len;
+        }
+
+        double radius2 = 0;
+        for (int i = 0; i < count; ++i) {
+            double x = points[i * 3] - mx;
+            double y = points[i * 3 + 1] - my;
+            double z = points[i * 3 + 2] - mz;
+            double t = x * ux + y * uy + z * uz;
+            radius2 = Math.max(radius2, x * x + y * y + z * z - t * t);
+        }
+
+        // every point must be inside the sphere at one end or the other, or between them.
+        double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+        for (int i = 0; i < count; ++i) {
+            double x = points[i * 3] - mx;
+            double y = points[i * 3 + 1] - my;
+            double z = points[i * 3 + 2] - mz;
+            double t = x * ux + y * uy + z * uz;
+            double cap = Math.sqrt(Math.max(0, radius2 - (x * x + y * y + z * z - t * t)));
+            lo = Math.min(lo, t + cap);
+            hi = Math.max(hi, t - cap);
+        }
+        double radius = Math.sqrt(radius2);
+        if (lo > hi) {
+            // short and wide.  One sphere is enough, find the radius that holds everything.
+            double t = (lo + hi) * 0.5;
+            radius2 = 0;
+            for (int i = 0; i < count; ++i) {
+                double x = points[i * 3] - mx - ux * t;
+                double y = points[i * 3 + 1] - my - uy * t;
+                double z = points[i * 3 + 2] - mz - uz * t;
+                radius2 = Math.max(radius2, x * x + y * y + z * z);
+            }
+            radius = Math.sqrt(radius2);
+            lo = hi = t;
+        }
+        return new Capsule(
+                mx + ux * lo, my + uy * lo, mz + uz * lo,
+                mx + ux * hi, my + uy * hi, mz + uz * hi,
+                radius);
+    }
+
+    /**
+     * The squared distance between the closest points of two line segments p0-p1 and q0-q1.
+     * See Ericson, Real-Time Collision Detection, 5.1.9.
+     */
+    static double segmentSegmentDistanceSquared(
+            double p0x, double p0y, double p0z, double p1x, double p1y, double p1z,
+            double q0x, double q0y, double q0z, double q1x, double q1y, double q1z) {
+        double d1x = p1x - p0x, d1y = p1y - p0y, d1z = p1z - p0z;
+        double d2x = q1x - q0x, d2y = q1y - q0y, d2z = q1z - q0z;
+        double rx = p0x - q0x, ry = p0y - q0y, rz = p0z - q0z;
+        double a = d1x * d1x + d1y * d1y + d1z * d1z;
+        double e = d2x * d2x + d2y * d2y + d2z * d2z;
+        double f = d2x * rx + d2y * ry + d2z * rz;
+        double s, t;
+        final double EPSILON = 1e-12;
+
+        if (a <= EPSILON && e <= EPSILON) {
+            s = t = 0;
+        } else if (a <= EPSILON) {
+            s = 0;
+            t = clamp01(f / e);
+        } else {
+            double c = d1x * rx + d1y * ry + d1z * rz;
+            if (e <= EPSILON) {
+                t = 0;
+                s = clamp01(-c / a);
+            } else {
+                double b = d1x * d2x + d1y * d2y + d1z * d2z;
+                double denominator = a * e - b * b;
+                s = denominator != 0 ? clamp01((b * f - c * e) / denominator) : 0;
+                t = (b * s + f) / e;
+                if (t < 0) {
+                    t = 0;
+                    s = clamp01(-c / a);
+                } else if (t > 1) {
+                    t = 1;
+                    s = clamp01((b - c) / a);
+                }
+            }
+        }
+
+        double dx = (p0x + d1x * s) - (q0x + d2x * t);
+        double dy = (p0y + d1y * s) - (q0y + d2y * t);
+        double dz = (p0z + d1z * s) - (q0z + d2z * t);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double clamp01(double v) {
+        return v < 0 ? 0 : (v > 1 ? 1 : v);
+    }
+
+    @Override
+    public String toString() {
+        return "Capsule{" + ax + "," + ay + "," + az + " -> " + bx + "," + by + "," + bz + " r=" + radius + "}";
+    }
+}
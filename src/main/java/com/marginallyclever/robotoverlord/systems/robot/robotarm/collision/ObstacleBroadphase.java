@@ -0,0 +1,84 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Sort and sweep broadphase for the obstacles around an arm.  Each {@link OrientedBox} is kept with its world
+ * aligned bounds, sorted by the lowest x.  A query walks the list until the boxes start past the far side of the
+ * query bounds, so only boxes that might touch are given to the exact test.</p>
+ * <p>Each box also remembers the first link that may touch it.  The thing a robot stands on touches the base, and
+ * that is not a collision.</p>
+ * <p>Reads are thread safe as long as nothing is added at the same time.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ObstacleBroadphase {
+    private final List<OrientedBox> boxes = new ArrayList<>();
+    // 6 per box: min x,y,z then max x,y,z.  Same order as boxes.
+    private double[] bounds = new double[6 * 16];
+    private int[] firstLink = new int[16];
+    private final double[] scratch = new double[6];
+
+    public int size() {
+        return boxes.size();
+    }
+
+    public OrientedBox get(int index) {
+        return boxes.get(index);
+    }
+
+    public List<OrientedBox> getBoxes() {
+        return boxes;
+    }
+
+    public void clear() {
+        boxes.clear();
+    }
+
+    /**
+     * @param box the obstacle.  Must not move after it is added.
+     * @param firstLink links before this one are never tested against the box.
+     */
+    public void add(OrientedBox box, int firstLink) {
+        int n = boxes.size();
+        if (n == this.firstLink.length) {
+            this.firstLink = Arrays.copyOf(this.firstLink, n * 2);
+            bounds = Arrays.copyOf(bounds, n * 2 * 6);
+        }
+        double[] b = scratch;
+        box.getBounds(b);
+
+        // insertion sort on min x
+        int i = n;
+        while (i > 0 && bounds[(i - 1) * 6] > b[0]) --i;
+        System.arraycopy(bounds, i * 6, bounds, (i + 1) * 6, (n - i) * 6);
+        System.arraycopy(this.firstLink, i, this.firstLink, i + 1, n - i);
+        System.arraycopy(b, 0, bounds, i * 6, 6);
+        this.firstLink[i] = firstLink;
+        boxes.add(i, box);
+    }
+
+    /**
+     * @param capsule the link.
+     * @param link the index of the link.
+     * @param capsuleBounds 6 doubles of scratch space.
+     * @return true if the capsule touches any box that this link may touch.
+     */
+    public boolean intersects(Capsule capsule, int link, double[] capsuleBounds) {
+        capsule.getBounds(capsuleBounds);
+        int n = boxes.size();
+        for (int i = 0; i < n; ++i) {
+            int o = i * 6;
+            if (bounds[o] > capsuleBounds[3]) break;  // every box from here on starts further along x.
+            if (link < firstLink[i]) continue;
+            if (bounds[o + 3] < capsuleBounds[0]
+                    || bounds[o + 1] > capsuleBounds[4] || bounds[o + 4] < capsuleBounds[1]
+                    || bounds[o + 2] > capsuleBounds[5] || bounds[o + 5] < capsuleBounds[2]) continue;
+            if (capsule.intersects(boxes.get(i))) return true;
+        }
+        return false;
+    }
+}
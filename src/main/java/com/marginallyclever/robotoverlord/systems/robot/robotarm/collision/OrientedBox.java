@@ -0,0 +1,177 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+
+/**
+ * A box that can be rotated.  Stored as a center, three unit axes and the half size along each axis.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class OrientedBox {
+    public double cx, cy, cz;
+    // unit axes, one per row.
+    public final double[] axes = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+    public double hx, hy, hz;
+
+    public OrientedBox() {}
+
+    /**
+     * Make a box from bounds in some local frame and the transform of that frame.
+     * @param min the lower corner in local space.
+     * @param max the upper corner in local space.
+     * @param pose local to world.  May contain scale.
+     */
+    public OrientedBox(Point3d min, Point3d max, Matrix4d pose) {
+        double[] m = new double[16];
+        for (int row = 0; row < 4; ++row) {
+            for (int col = 0; col < 4; ++col) {
+                m[row * 4 + col] = pose.getElement(row, col);
+            }
+        }
+        set(min.x, min.y, min.z, max.x, max.y, max.z, m, 0);
+    }
+
+    /**
+     * Set this box from bounds in some local frame and the transform of that frame.
+     * @param m 16 doubles, row major, local to world.  May contain scale.
+     * @param offset where the matrix starts in m.
+     */
+    public void set(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] m, int offset) {
+        double lx = (minX + maxX) * 0.5;
+        double ly = (minY + maxY) * 0.5;
+        double lz = (minZ + maxZ) * 0.5;
+        cx = m[offset    ] * lx + m[offset + 1] * ly + m[offset +  2] * lz + m[offset +  3];
+        cy = m[offset + 4] * lx + m[offset + 5] * ly + m[offset +  6] * lz + m[offset +  7];
+        cz = m[offset + 8] * lx + m[offset + 9] * ly + m[offset + 10] * lz + m[offset + 11];
+
+        hx = (maxX - minX) * 0.5;
+        hy = (maxY - minY) * 0.5;
+        hz = (maxZ - minZ) * 0.5;
+        for (int i = 0; i < 3; ++i) {
+            // column i of the matrix is local axis i in world space.
+            double x = m[offset + i];
+            double y = m[offset + 4 + i];
+            double z = m[offset + 8 + i];
+            double len = Math.sqrt(x * x + y * y + z * z);
+            if (len > 0) {
+                axes[i * 3    ] = x / len;
+                axes[i * 3 + 1] = y / len;
+                axes[i * 3 + 2] = z / len;
+            }
+            if (i == 0) hx *= len;
+            else if (i == 1) hy *= len;
+            else hz *= len;
+        }
+    }
+
+    /**
+     * @param x the point
+     * @param y the point
+     * @param z the point
+     * @return the distance from the point to the box.  Zero when the point is inside.
+     */
+    public double pointDistance(double x, double y, double z) {
+        double dx = x - cx, dy = y - cy, dz = z - cz;
+        double u = dx * axes[0] + dy * axes[1] + dz * axes[2];
+        double v = dx * axes[3] + dy * axes[4] + dz * axes[5];
+        double w = dx * axes[6] + dy * axes[7] + dz * axes[8];
+        return Math.sqrt(localDistanceSquared(u, v, w));
+    }
+
+    private double localDistanceSquared(double u, double v, double w) {
+        double eu = Math.max(0, Math.abs(u) - hx);
+        double ev = Math.max(0, Math.abs(v) - hy);
+        double ew = Math.max(0, Math.abs(w) - hz);
+        return eu * eu + ev * ev + ew * ew;
+    }
+
+    /**
+     * @return the distance from the segment p0-p1 to the box.  Zero when the segment touches or enters the box.
+     */
+    public double segmentDistance(double p0x, double p0y, double p0z, double p1x, double p1y, double p1z) {
+        // move the segment into the frame of the box.
+        double dx = p0x - cx, dy = p0y - cy, dz = p0z - cz;
+        double u0 = dx * axes[0] + dy * axes[1] + dz * axes[2];
+        double v0 = dx * axes[3] + dy * axes[4] + dz * axes[5];
+        double w0 = dx * axes[6] + dy * axes[7] + dz * axes[8];
+        dx = p1x - cx;
+        dy = p1y - cy;
+        dz = p1z - cz;
+        double u1 = dx * axes[0] + dy * axes[1] + dz * axes[2];
+        double v1 = dx * axes[3] + dy * axes[4] + dz * axes[5];
+        double w1 = dx * axes[6] + dy * axes[7] + dz * axes[8];
+
+        if (segmentEntersBox(u0, v0, w0, u1 - u0, v1 - v0, w1 - w0)) return 0;
+
+        // the distance from a point on the segment to a convex box is convex in t, so a golden section search
+        // finds the closest point.
+        final double GOLDEN = 0.6180339887498949;
+        double lo = 0, hi = 1;
+        double t1 = hi - GOLDEN * (hi - lo);
+        double t2 = lo + GOLDEN * (hi - lo);
+        double f1 = localDistanceSquared(u0 + (u1 - u0) * t1, v0 + (v1 - v0) * t1, w0 + (w1 - w0) * t1);
+        double f2 = localDistanceSquared(u0 + (u1 - u0) * t2, v0 + (v1 - v0) * t2, w0 + (w1 - w0) * t2);
+        for (int i = 0; i < 40; ++i) {
+            if (f1 < f2) {
+                hi = t2;
+                t2 = t1;
+                f2 = f1;
+                t1 = hi - GOLDEN * (hi - lo);
+                f1 = localDistanceSquared(u0 + (u1 - u0) * t1, v0 + (v1 - v0) * t1, w0 + (w1 - w0) * t1);
+            } else {
+                lo = t1;
+                t1 = t2;
+                f1 = f2;
+                t2 = lo + GOLDEN * (hi - lo);
+                f2 = localDistanceSquared(u0 + (u1 - u0) * t2, v0 + (v1 - v0) * t2, w0 + (w1 - w0) * t2);
+            }
+        }
+        double best = Math.min(Math.min(f1, f2), Math.min(
+                localDistanceSquared(u0, v0, w0),
+                localDistanceSquared(u1, v1, w1)));
+        return Math.sqrt(best);
+    }
+
+    /**
+     * Slab test in the frame of the box.
+     */
+    private boolean segmentEntersBox(double u, double v, double w, double du, double dv, double dw) {
+        double tMin = 0, tMax = 1;
+        if (Math.abs(du) < 1e-12) {
+            if (Math.abs(u) > hx) return false;
+        } else {
+            double t1 = (-hx - u) / du, t2 = (hx - u) / du;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Math.abs(dv) < 1e-12) {
+            if (Math.abs(v) > hy) return false;
+        } else {
+            double t1 = (-hy - v) / dv, t2 = (hy - v) / dv;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Math.abs(dw) < 1e-12) {
+            if (Math.abs(w) > hz) return false;
+        } else {
+            double t1 = (-hz - w) / dw, t2 = (hz - w) / dw;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax;
+    }
+
+    /**
+     * @param bounds 6 doubles.  Will be filled with the world aligned bounds of this box: min x,y,z then max x,y,z.
+     */
+    public void getBounds(double[] bounds) {
+        for (int i = 0; i < 3; ++i) {
+            double extent = Math.abs(axes[i]) * hx + Math.abs(axes[3 + i]) * hy + Math.abs(axes[6 + i]) * hz;
+            double center = i == 0 ? cx : i == 1 ? cy : cz;
+            bounds[i] = center - extent;
+            bounds[3 + i] = center + extent;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.ShapeComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The obstacles around one robot, kept from tick to tick.  The scene is searched for solid shapes only the first
+ * time and after {@link #invalidate()}, which the owner calls when entities are added or removed.  Every tick after that the world pose of each
+ * obstacle and of the robot base is compared with the last one, and only the boxes that moved are set again.  When
+ * nothing moved the {@link ArmCollisionModel} is left alone.</p>
+ * <p>Boxes, matrices and scratch arrays are made once and reused, so a tick in which nothing moves allocates
+ * nothing.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class SceneObstacles {
+    private final RobotComponent robot;
+    private ArmCollisionModel model;
+    private volatile boolean dirty = true;
+
+    // one of each per obstacle, in the same order.
+    private final List<PoseComponent> poses = new ArrayList<>();
+    private final List<double[]> bounds = new ArrayList<>();
+    private final List<OrientedBox> boxes = new ArrayList<>();
+    private final List<Matrix4d> lastWorld = new ArrayList<>();
+    private int count;
+
+    private final Matrix4d lastBaseWorld = new Matrix4d();
+    private final Matrix4d worldToBase = new Matrix4d();
+    private final Matrix4d world = new Matrix4d();
+    private final Matrix4d obstacleToBase = new Matrix4d();
+    private final double[] m16 = new double[KinematicChain.MATRIX_SIZE];
+
+    public SceneObstacles(RobotComponent robot) {
+        this.robot = robot;
+    }
+
+    /**
+     * Search the scene again on the next update.  Use when entities are added or removed, or a mesh may have
+     * changed.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Bring the obstacles of the model up to date with the scene.
+     * @param entityManager the scene.
+     * @param model the collision model of the robot.  A different model than last time gets every obstacle.
+     * @return true if the obstacles of the model changed.
+     */
+    public boolean update(EntityManager entityManager, ArmCollisionModel model) {
+        boolean all = model != this.model;
+        if (dirty) {
+            dirty = false;
+            collect(entityManager, model);
+            all = true;
+        }
+
+        PoseComponent basePose = robot.getEntity().getComponent(PoseComponent.class);
+        if (basePose != null) basePose.getWorld(world);
+        else world.setIdentity();
+        if (all || !world.equals(lastBaseWorld)) {
+            lastBaseWorld.set(world);
+            worldToBase.invert(world);
+            all = true;
+        }
+
+        boolean changed = all;
+        for (int i = 0; i < count; ++i) {
+            poses.get(i).getWorld(world);
+            Matrix4d last = lastWorld.get(i);
+            if (!all && world.equals(last)) continue;
+            last.set(world);
+            obstacleToBase.mul(worldToBase, world);
+            KinematicChain.toArray(obstacleToBase, m16, 0);
+            double[] b = bounds.get(i);
+            boxes.get(i).set(b[0], b[1], b[2], b[3], b[4], b[5], m16, 0);
+            changed = true;
+        }
+
+        if (changed) {
+            // the broadphase sorts by position, so moved boxes are added again.
+            model.clearObstacles();
+            for (int i = 0; i < count; ++i) model.addObstacle(boxes.get(i));
+        }
+        this.model = model;
+        return changed;
+    }
+
+    /**
+     * Find every solid shape in the scene that is not part of the robot.  Boxes and matrices from the last search
+     * are reused.
+     */
+    private void collect(EntityManager entityManager, ArmCollisionModel model) {
+        count = 0;
+        for (Entity e : entityManager.getEntities()) collect(e, model);
+        // let go of shapes that are gone.
+        for (int i = count; i < poses.size(); ++i) poses.set(i, null);
+    }
+
+    private void collect(Entity e, ArmCollisionModel model) {
+        if (e == robot.getEntity()) return;  // skip the robot and everything attached to it.
+        for (Entity child : e.getChildren()) collect(child, model);
+
+        ShapeComponent shape = e.getComponent(ShapeComponent.class);
+        if (!ArmCollisionModel.isSolid(shape)) return;
+        Mesh mesh = shape.getModel();
+        if (mesh == null || mesh.getNumVertices() == 0) return;
+        PoseComponent pose = e.getComponent(PoseComponent.class);
+        if (pose == null) return;
+
+        if (count == boxes.size()) {
+            poses.add(pose);
+            bounds.add(model.getMeshBounds(mesh));
+            boxes.add(new OrientedBox());
+            lastWorld.add(new Matrix4d());
+        } else {
+            poses.set(count, pose);
+            bounds.set(count, model.getMeshBounds(mesh));
+        }
+        count++;
+    }
+
+    /**
+     * @return the number of obstacles found in the last search.
+     */
+    public int size() {
+        return count;
+    }
+}
@@ -75,6 +75,7 @@ public class ControlArmPanel extends JPanel {
 		String selection = (String) presentationChoices.getSelectedItem();
 		assert selection != null;
 		presentationLayer = PresentationFactory.createPresentation(selection,myRobot);
+		presentationLayer.setJointStateListener(jointHistory.getJointStateBuffer());
 		presentationLayer.addListener((e)-> {
 			if (presentationLayer.isIdleCommand(e)) {
 				// logger.debug("PlotterControls heard idle");
@@ -1,5 +1,6 @@
 package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.jointhistorypanel;
 
+import com.marginallyclever.communications.jointstate.JointStateBuffer;
 import com.marginallyclever.convenience.swing.graph.MultiLineGraph;
 import com.marginallyclever.convenience.swing.graph.GraphLine;
 import com.marginallyclever.convenience.swing.graph.GraphModel;
@@ -10,15 +11,31 @@ import javax.swing.*;
 import javax.swing.border.BevelBorder;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Displays a history of joint positions in a graph.
+ * Displays a history of joint positions in a graph.  Joint states streamed by the controller in binary mode are
+ * gathered in a {@link JointStateBuffer} and added {@value #DRAIN_INTERVAL}ms at a time, at most one point per joint
+ * every {@value #MIN_POINT_INTERVAL}s.
  * @author Dan Royer
  * @since 2.10.0
  */
 public class JointHistoryPanel extends JPanel {
+    // how often streamed joint states are added to the graph, in ms.
+    private static final int DRAIN_INTERVAL = 50;
+    // streamed joint states closer together than this, in seconds, are not drawn.
+    private static final double MIN_POINT_INTERVAL = 0.01;
+
     private final MultiLineGraph graph = new MultiLineGraph();
     private double timeSpan = 60;
+    private final JointStateBuffer jointStates = new JointStateBuffer(4096);
+    private final List<GraphLine> lines = new ArrayList<>();
+    private final List<double[]> limits = new ArrayList<>();
+    private final Timer drainTimer = new Timer(DRAIN_INTERVAL,(e)->drainJointStates());
+    // controller clock + offset = wall clock, in seconds.  NaN until the first streamed state.
+    private double clockOffset = Double.NaN;
+    private double lastPointTime = Double.NEGATIVE_INFINITY;
 
     public JointHistoryPanel(RobotComponent robot) {
         super(new BorderLayout());
@@ -26,6 +43,30 @@ public class JointHistoryPanel extends JPanel {
         JPanel scaleButtons = createScaleButtons();
         this.add(scaleButtons,BorderLayout.NORTH);
         this.add(graphPanel,BorderLayout.CENTER);
+        drainTimer.start();
+    }
+
+    /**
+     * @return where to send joint states streamed by the controller.
+     */
+    public JointStateBuffer getJointStateBuffer() {
+        return jointStates;
+    }
+
+    private void drainJointStates() {
+        int n = jointStates.drain((time,position,count)->{
+            if(Double.isNaN(clockOffset)) clockOffset = System.currentTimeMillis()*0.001 - time;
+            if(time-lastPointTime<MIN_POINT_INTERVAL) return;
+            lastPointTime = time;
+            double t = time+clockOffset;
+            for(int i=0;i<Math.min(count,lines.size());++i) {
+                double [] range = limits.get(i);
+                lines.get(i).addPoint(t,(position[i]-range[0])/(range[1]-range[0]));
+            }
+        });
+        if(n==0) return;
+        updateRange();
+        graph.repaint();
     }
 
     private JPanel createScaleButtons() {
@@ -59,6 +100,8 @@ public class JointHistoryPanel extends JPanel {
             DHComponent bone = robot.getBone(i);
             GraphLine line = new GraphLine();
             graphModel.addLine(bone.getEntity().getName(),line);
+            lines.add(line);
+            limits.add(new double[]{bone.getJointMin(),bone.getJointMax()});
             int finalI = i;
             bone.theta.addPropertyChangeListener(evt -> {
                 double t = System.currentTimeMillis()*0.001;
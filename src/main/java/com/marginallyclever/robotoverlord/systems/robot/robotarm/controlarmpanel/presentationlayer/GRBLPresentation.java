@@ -2,9 +2,11 @@ package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpane
 
 import com.marginallyclever.communications.application.ChooseConnectionPanel;
 import com.marginallyclever.communications.application.TextInterfaceToSessionLayer;
+import com.marginallyclever.communications.jointstate.JointStateDecoder;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
 import com.marginallyclever.communications.session.SessionLayerListener;
+import com.marginallyclever.communications.session.SessionMetrics;
 import com.marginallyclever.convenience.helpers.StringHelper;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
@@ -17,11 +19,13 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
- * {@link GRBLPresentation} is a {@link PresentationLayer} for <a href="https://github.com/gnea/grbl">GRBL</a> firmware.
+ * <p>{@link GRBLPresentation} is a {@link PresentationLayer} for <a href="https://github.com/gnea/grbl">GRBL</a> firmware.</p>
+ * <p>Lines are streamed by a {@link GRBLStreamer} with character counting.  While lines are in flight a status report
+ * is requested every {@value #STATUS_INTERVAL}ms so the streamer can see how full the buffers are.</p>
+ * <p>Replies are read on a background thread.  Only changes to the arm and notices to listeners go to the Event
+ * Dispatch Thread.</p>
  *
  * @author Dan Royer
  * @since 2.5.0
@@ -29,38 +33,40 @@ import java.util.List;
 public class GRBLPresentation implements PresentationLayer {
     private static final Logger logger = LoggerFactory.getLogger(GRBLPresentation.class);
 
-    // number of commands we'll hold on to in case there's a resend.
-    private static final int HISTORY_BUFFER_LIMIT = 250;
-    // can buffer this many commands from serial, before processing.
-    private static final int MARLIN_SEND_LIMIT = 20;
     // If nothing is heard for this many ms then send a ping to check if the connection is still live. 
     private static final int TIMEOUT_DELAY = 2000;
-    // says this when a resend is needed, followed by the last well-received line number.
+    // while streaming, ask for a status report this often, in ms.  The Bf: field tells how full the buffers are.
+    private static final int STATUS_INTERVAL = 200;
+    // says this when a line could not be run, followed by the error code.
     private static final String STR_ERROR = "error:";
-    // sends this event when the robot is ready to receive more.
-    private static final String STR_OK = "ok";
     // sends this as an ActionEvent to let listeners know it can handle more input.
     private static final String IDLE = "idle";
 
     private final JPanel panel = new JPanel(new BorderLayout());
     private final Robot myArm;
     private final TextInterfaceToSessionLayer chatInterface = new TextInterfaceToSessionLayer();
-    private final List<NumberedCommand> myHistory = new ArrayList<>();
+    private final GRBLStreamer streamer = new GRBLStreamer(new GRBLStreamer.Link() {
+        @Override
+        public void sendLine(String line) {
+            chatInterface.sendCommand(line);
+            SessionMetrics metrics = chatInterface.getSessionMetrics();
+            if(metrics!=null) metrics.commandSent();
+        }
+
+        @Override
+        public void sendRealtime(char command) {
+            chatInterface.sendRealtime(command);
+        }
+    });
 
     private final JButton bESTOP = new JButton("EMERGENCY STOP");
     private final JButton bGetAngles = new JButton("M114");
     private final JButton bSetHome = new JButton("Set Home");
     private final JButton bGoHome = new JButton("Go Home");
 
-    // the next line number I should send.  Marlin may say "please resend previous line x", which would change this.
-    private int lineNumberToSend;
-    // the last line number added to the queue.
-    private int lineNumberAdded;
-    // don't send more than this many at a time without acknowledgement.
-    private int busyCount=MARLIN_SEND_LIMIT;
-
     private final Timer timeoutChecker = new Timer(10000,(e)->onTimeoutCheck());
-    private long lastReceivedTime;
+    private final Timer statusPoll = new Timer(STATUS_INTERVAL,(e)->onStatusPoll());
+    private volatile long lastReceivedTime;
 
     public GRBLPresentation(Robot arm) {
         super();
@@ -99,11 +105,10 @@ public class GRBLPresentation implements PresentationLayer {
     private void onConnect() {
         logger.info("connected.");
         setupListener();
-        lineNumberToSend=1;
-        lineNumberAdded=0;
-        myHistory.clear();
+        streamer.clear();
         updateButtonAccess();
         timeoutChecker.start();
+        statusPoll.start();
 
         // you are at the position I say you are at.
         new java.util.Timer().schedule(new java.util.TimerTask() {
@@ -119,32 +124,55 @@ public class GRBLPresentation implements PresentationLayer {
     private void onClose() {
         logger.info("disconnected.");
         timeoutChecker.stop();
+        statusPoll.stop();
     }
 
     private void onTimeoutCheck() {
         if(System.currentTimeMillis()-lastReceivedTime>TIMEOUT_DELAY) {
-            chatInterface.sendCommand("M400");
+            // a status request is answered without touching the RX buffer, so it does not upset the count.
+            streamer.queue("?");
         }
     }
 
+    private void onStatusPoll() {
+        if(!streamer.isIdle()) streamer.queue("?");
+    }
+
     private void setupListener() {
-        chatInterface.addNetworkSessionListener(this::onDataReceived);
+        chatInterface.addBackgroundNetworkSessionListener(this::onDataReceived);
     }
 
+    // on a background thread, so a busy controller does not wait for the UI.
     private void onDataReceived(SessionLayerEvent evt) {
         if(evt.flag == SessionLayerEvent.DATA_AVAILABLE) {
             lastReceivedTime = System.currentTimeMillis();
             String message = ((String)evt.data).trim();
-            if (message.startsWith("<") && message.contains("WPos")) {
-                onHearStatus(message);
-            } else if(message.startsWith(STR_OK)) {
-                onHearOK();
-            } else if(message.contains(STR_ERROR)) {
-                onHearError(message);
+            if(message.contains(STR_ERROR)) onHearError(message);
+            if(!streamer.onReceive(message)) return;
+            onStreamerChanged(message);
+            if(message.startsWith("<")) {
+                SwingUtilities.invokeLater(()->onHearStatus(message));
+            } else if(streamer.isIdle()) {
+                SwingUtilities.invokeLater(this::fireIdleNotice);
             }
         }
     }
 
+    /**
+     * Tell the session metrics what the streamer knows: round trips, errors, and how full the RX buffer is.
+     * @param message the line the streamer just used, or null if nothing was heard.
+     */
+    private void onStreamerChanged(String message) {
+        SessionMetrics metrics = chatInterface.getSessionMetrics();
+        if(metrics==null) return;
+        if(message!=null) {
+            if(message.startsWith(STR_ERROR)) metrics.addError();
+            if(message.startsWith("ok") || message.startsWith(STR_ERROR)) metrics.commandAcknowledged();
+        }
+        metrics.setOccupancy(streamer.getBytesInFlight(),streamer.getRxBufferSize());
+        metrics.setBlocked(streamer.isBlocked());
+    }
+
     /**
      * Parse and deal with GRBL error codes.
      * @param message the message to parse
@@ -174,75 +202,27 @@ public class GRBLPresentation implements PresentationLayer {
         }
     }
 
-    private void onHearOK() {
-        SwingUtilities.invokeLater(() -> {
-            busyCount++;
-            sendQueuedCommand();
-            clearOldHistory();
-            if(lineNumberToSend>=lineNumberAdded) {
-                fireIdleNotice();
-            }
-        });
-    }
-
     private void fireIdleNotice() {
         notifyListeners(new ActionEvent(this,ActionEvent.ACTION_PERFORMED, GRBLPresentation.IDLE));
     }
 
-    private void clearOldHistory() {
-        while(myHistory.size()>0 && myHistory.get(0).lineNumber<lineNumberAdded-HISTORY_BUFFER_LIMIT) {
-            myHistory.remove(0);
-        }
-    }
-
+    /**
+     * Queue a line.  {@link GRBLStreamer} sends it as soon as it fits in the RX buffer of GRBL.
+     * @param str the line to send.
+     */
     public void queueAndSendCommand(String str) {
         if(!chatInterface.getIsConnected()) return;
         if(str.trim().length()==0) return;
-
-        lineNumberAdded++;
-        // Line number and checksum would go here, but as far as I know GRBL does not support it.
-        myHistory.add(new NumberedCommand(lineNumberAdded,str));
-
-        if(busyCount>0) sendQueuedCommand();
-    }
-
-    private void sendQueuedCommand() {
-        clearOldHistory();
-
-        if(myHistory.size()==0) return;
-
-        int smallest = Integer.MAX_VALUE;
-        for( NumberedCommand mc : myHistory ) {
-            if(smallest > mc.lineNumber) smallest = mc.lineNumber;
-            if(mc.lineNumber == lineNumberToSend) {
-                busyCount--;
-                lineNumberToSend++;
-                //logger.info("sending '"+mc.command+"'.");
-                chatInterface.sendCommand(mc.command);
-                return;
-            }
-        }
-
-        if(smallest>lineNumberToSend) {
-            // history no longer contains the line?!
-            logger.info("did not find "+lineNumberToSend);
-            for( NumberedCommand mc : myHistory ) {
-                logger.info("..."+mc.lineNumber+": "+mc.command);
-            }
-        }
+        streamer.queue(str);
+        onStreamerChanged(null);
     }
 
-    private String generateChecksum(String line) {
-        byte checksum = 0;
-
-        int i=line.length();
-        while(i>0) checksum ^= (byte)line.charAt(--i);
-
-        return "*" + Integer.toString(checksum);
+    public boolean getIsBusy() {
+        return streamer.isBlocked();
     }
 
-    public boolean getIsBusy() {
-        return busyCount<=0;
+    public GRBLStreamer getStreamer() {
+        return streamer;
     }
 
     /**
@@ -258,12 +238,15 @@ public class GRBLPresentation implements PresentationLayer {
       * @param message the message to parse.
      */
     private void onHearStatus(String message) {
+        int start = message.indexOf("WPos:");
+        if(start<0) return;
         try {
-            message = message.substring(0, message.indexOf("WPos:"));
-            String[] majorParts = message.split("|");
-            String[] minorParts = majorParts[0].split(",");
+            start += "WPos:".length();
+            int end = start;
+            while(end<message.length() && message.charAt(end)!='|' && message.charAt(end)!='>') end++;
+            String[] minorParts = message.substring(start,end).split(",");
 
-            int count = (int)myArm.get(Robot.NUM_JOINTS);
+            int count = Math.min((int)myArm.get(Robot.NUM_JOINTS),minorParts.length);
             for (int i = 0; i < count; ++i) {
                 myArm.set(Robot.ACTIVE_JOINT,i);
                 double v = Double.parseDouble(minorParts[i]);
@@ -308,10 +291,16 @@ public class GRBLPresentation implements PresentationLayer {
         return bar;
     }
 
+    /**
+     * Feed hold, then soft reset.  GRBL empties its buffers on reset, so the streamer forgets what was in flight.
+     */
     private void sendESTOP() {
-        chatInterface.sendCommand("M112");
-        chatInterface.sendCommand("M112");
-        chatInterface.sendCommand("M112");
+        streamer.queue("!");
+        streamer.queue(String.valueOf((char)0x18));
+        streamer.clear();
+        SessionMetrics metrics = chatInterface.getSessionMetrics();
+        if(metrics!=null) metrics.clearSent();
+        onStreamerChanged(null);
     }
 
     private void sendGetPosition() {
@@ -357,6 +346,11 @@ public class GRBLPresentation implements PresentationLayer {
         chatInterface.setNetworkSession(session);
     }
 
+    @Override
+    public void setJointStateListener(JointStateDecoder.Listener listener) {
+        chatInterface.setJointStateListener(listener);
+    }
+
     public void closeConnection() {
         this.chatInterface.closeConnection();
     }
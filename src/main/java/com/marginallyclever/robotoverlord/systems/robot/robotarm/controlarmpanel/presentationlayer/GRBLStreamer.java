@@ -0,0 +1,273 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>Streams G-code to <a href="https://github.com/gnea/grbl/wiki/Grbl-v1.1-Interface#streaming-protocol-character-counting-recommended-with-reservation">GRBL</a>
+ * with the character counting protocol.  GRBL answers every line with ok or error once the line has left its serial
+ * RX buffer.  The streamer remembers the size of each line still in flight and sends more whenever the next line
+ * fits in the rest of the buffer, so the buffer stays full and the planner never runs dry between
+ * acknowledgements.</p>
+ * <p>Send-response mode (one line in flight) is kept for controllers that do not like a full buffer.</p>
+ * <p>Status reports (<code>&lt;Run|...|Bf:15,128|...&gt;</code>) are used to learn the real RX buffer size of the
+ * controller, which is larger than 128 on some boards, and to count the reports where the planner was empty while
+ * lines were still waiting to be sent.</p>
+ * <p>Real-time commands such as <code>?</code> skip the buffer, are not answered with ok and are never counted.</p>
+ * <p>Safe to use from more than one thread: replies may arrive on a background thread while lines are queued from
+ * the UI.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GRBLStreamer {
+    private static final Logger logger = LoggerFactory.getLogger(GRBLStreamer.class);
+    // the serial RX buffer of GRBL on an Arduino UNO.
+    public static final int DEFAULT_RX_BUFFER_SIZE = 128;
+    private static final String STR_OK = "ok";
+    private static final String STR_ERROR = "error:";
+    private static final String STR_BUFFER = "Bf:";
+
+    /**
+     * Where the streamer writes.
+     */
+    public interface Link {
+        /**
+         * Send one line.  The link adds the newline.
+         */
+        void sendLine(String line);
+
+        /**
+         * Send one real-time command byte, with no newline.
+         */
+        void sendRealtime(char command);
+    }
+
+    private final Link link;
+    private final Deque<String> pending = new ArrayDeque<>();
+    // the size in bytes of each line sent and not yet acknowledged, oldest first.
+    private int[] inFlight = new int[64];
+    private int inFlightHead, inFlightCount, inFlightBytes;
+    private int rxBufferSize;
+    private boolean characterCounting = true;
+
+    // most recent status report.  -1 until the first report.
+    private int plannerBlocksFree = -1;
+    private int rxBytesFree = -1;
+    // the largest number of free planner blocks seen, which is the size of the planner.
+    private int plannerSize = -1;
+
+    private long linesSent, linesAcknowledged, errors, starvedReports;
+
+    public GRBLStreamer(Link link) {
+        this(link, DEFAULT_RX_BUFFER_SIZE);
+    }
+
+    public GRBLStreamer(Link link, int rxBufferSize) {
+        this.link = link;
+        this.rxBufferSize = rxBufferSize;
+    }
+
+    /**
+     * @param characterCounting true to fill the RX buffer, false to wait for each ok before the next line.
+     */
+    public synchronized void setCharacterCounting(boolean characterCounting) {
+        this.characterCounting = characterCounting;
+        pump();
+    }
+
+    public synchronized boolean getCharacterCounting() {
+        return characterCounting;
+    }
+
+    /**
+     * Add a line to the end of the queue and send as much of the queue as fits.  Real-time commands are sent at once.
+     * @param line the line to send, with or without a newline.
+     */
+    public synchronized void queue(String line) {
+        line = line.strip();
+        if (line.length() == 1 && isRealtime(line.charAt(0))) {
+            link.sendRealtime(line.charAt(0));
+            return;
+        }
+        if (line.isEmpty()) return;
+        pending.add(line);
+        pump();
+    }
+
+    /**
+     * @return true if GRBL acts on this byte as soon as it arrives instead of putting it in the RX buffer.
+     */
+    public static boolean isRealtime(char c) {
+        return c == '?' || c == '!' || c == '~' || c == 0x18 || c >= 0x80;
+    }
+
+    /**
+     * Send queued lines while the next line fits in the RX buffer.
+     */
+    private void pump() {
+        while (!pending.isEmpty()) {
+            String line = pending.peek();
+            int size = line.length() + 1;
+            if (characterCounting) {
+                // a line longer than the whole buffer can only go when the buffer is empty.
+                if (inFlightCount > 0 && inFlightBytes + size > rxBufferSize) break;
+            } else if (inFlightCount > 0) {
+                break;
+            }
+            pending.remove();
+            pushInFlight(size);
+            linesSent++;
+            link.sendLine(line);
+        }
+    }
+
+    private void pushInFlight(int size) {
+        if (inFlightCount == inFlight.length) {
+            int[] bigger = new int[inFlight.length * 2];
+            for (int i = 0; i < inFlightCount; ++i) bigger[i] = inFlight[(inFlightHead + i) % inFlight.length];
+            inFlight = bigger;
+            inFlightHead = 0;
+        }
+        inFlight[(inFlightHead + inFlightCount) % inFlight.length] = size;
+        inFlightCount++;
+        inFlightBytes += size;
+    }
+
+    private void acknowledge() {
+        if (inFlightCount == 0) {
+            logger.debug("ok with nothing in flight.");
+            return;
+        }
+        inFlightBytes -= inFlight[inFlightHead];
+        inFlightHead = (inFlightHead + 1) % inFlight.length;
+        inFlightCount--;
+        linesAcknowledged++;
+        pump();
+    }
+
+    /**
+     * Read one line from GRBL.
+     * @param message the line received.
+     * @return true if the streamer used the message.
+     */
+    public synchronized boolean onReceive(String message) {
+        message = message.strip();
+        if (message.startsWith(STR_OK)) {
+            acknowledge();
+            return true;
+        }
+        if (message.startsWith(STR_ERROR)) {
+            // the line left the buffer, same as ok.
+            errors++;
+            acknowledge();
+            return true;
+        }
+        if (message.startsWith("<")) {
+            onStatus(message);
+            return true;
+        }
+        return false;
+    }
+
+    private void onStatus(String message) {
+        int i = message.indexOf(STR_BUFFER);
+        if (i < 0) return;
+        int start = i + STR_BUFFER.length();
+        int end = start;
+        while (end < message.length() && message.charAt(end) != '|' && message.charAt(end) != '>') end++;
+        String[] parts = message.substring(start, end).split(",");
+        if (parts.length < 2) return;
+        try {
+            plannerBlocksFree = Integer.parseInt(parts[0].trim());
+            rxBytesFree = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException e) {
+            logger.warn("could not parse {}", message);
+            return;
+        }
+        plannerSize = Math.max(plannerSize, plannerBlocksFree);
+        if (inFlightCount == 0 && rxBytesFree > 0 && rxBytesFree != rxBufferSize) {
+            // nothing of ours is in the buffer, so all of it is free.
+            logger.info("GRBL RX buffer is {} bytes.", rxBytesFree);
+            rxBufferSize = rxBytesFree;
+            pump();
+        }
+        if (plannerBlocksFree == plannerSize && !pending.isEmpty()) starvedReports++;
+    }
+
+    /**
+     * Forget everything in flight and everything queued.  Use after a reset of the controller.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        inFlightHead = 0;
+        inFlightCount = 0;
+        inFlightBytes = 0;
+    }
+
+    /**
+     * @return true if every queued line has been sent and acknowledged.
+     */
+    public synchronized boolean isIdle() {
+        return pending.isEmpty() && inFlightCount == 0;
+    }
+
+    /**
+     * @return true if the next queued line has to wait for an acknowledgement.
+     */
+    public synchronized boolean isBlocked() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getLinesInFlight() {
+        return inFlightCount;
+    }
+
+    public synchronized int getBytesInFlight() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getRxBufferSize() {
+        return rxBufferSize;
+    }
+
+    /**
+     * @return the free planner blocks in the last status report, or -1 if there was no report.
+     */
+    public synchronized int getPlannerBlocksFree() {
+        return plannerBlocksFree;
+    }
+
+    /**
+     * @return the free RX bytes in the last status report, or -1 if there was no report.
+     */
+    public synchronized int getRxBytesFree() {
+        return rxBytesFree;
+    }
+
+    public synchronized long getLinesSent() {
+        return linesSent;
+    }
+
+    public synchronized long getLinesAcknowledged() {
+        return linesAcknowledged;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of status reports where the planner was empty and lines were waiting to be sent.
+     */
+    public synchronized long getStarvedReports() {
+        return starvedReports;
+    }
+}
@@ -2,9 +2,11 @@ package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpane
 
 import com.marginallyclever.communications.application.ChooseConnectionPanel;
 import com.marginallyclever.communications.application.TextInterfaceToSessionLayer;
+import com.marginallyclever.communications.jointstate.JointStateDecoder;
 import com.marginallyclever.communications.session.SessionLayer;
 import com.marginallyclever.communications.session.SessionLayerEvent;
 import com.marginallyclever.communications.session.SessionLayerListener;
+import com.marginallyclever.communications.session.SessionMetrics;
 import com.marginallyclever.convenience.helpers.StringHelper;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
@@ -18,12 +20,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.io.Serial;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * {@link GRBLPresentation} is a {@link PresentationLayer} for
  * <a href="https://github.com/MarlinFirmware/Marlin">Marlin</a> firmware.
+ * Lines are numbered, checksummed and resent on request by a {@link MarlinStreamer}.
+ * Replies are read on a background thread.  Only changes to the arm and notices to listeners go to the Event
+ * Dispatch Thread.
  *
  * @author Dan Royer
  * @since 2.5.0
@@ -33,38 +36,33 @@ public class MarlinPresentation implements PresentationLayer {
 
 	@Serial
 	private static final long serialVersionUID = -6388563393882327725L;
-	// number of commands we'll hold on to in case there's a resend.
-	private static final int HISTORY_BUFFER_LIMIT = 250;
-	// Marlin can buffer this many commands from serial, before processing.
-	private static final int MARLIN_SEND_LIMIT = 20;
 	// If nothing is heard for this many ms then send a ping to check if the connection is still live. 
 	private static final int TIMEOUT_DELAY = 2000;
 	// Marlin says this when a resend is needed, followed by the last well-received line number.
 	private static final String STR_RESEND = "Resend: ";
 	// Marlin sends this event when the robot is ready to receive more.
 	private static final String STR_OK = "ok";
+	// Marlin starts a line with this when something went wrong, such as a bad checksum.
+	private static final String STR_ERROR = "Error";
 	// sends this as an ActionEvent to let listeners know it can handle more input.
 	private static final String IDLE = "idle";
 
 	private final JPanel panel = new JPanel(new BorderLayout());
 	private final Robot myArm;
 	private final TextInterfaceToSessionLayer chatInterface = new TextInterfaceToSessionLayer();
-	private final List<NumberedCommand> myHistory = new ArrayList<>();
+	private final MarlinStreamer streamer = new MarlinStreamer((line)->{
+		chatInterface.sendCommand(line);
+		SessionMetrics metrics = chatInterface.getSessionMetrics();
+		if(metrics!=null) metrics.commandSent();
+	});
 
 	private final JButton bESTOP = new JButton("EMERGENCY STOP");
 	private final JButton bGetAngles = new JButton("M114");
 	private final JButton bSetHome = new JButton("Set Home");
 	private final JButton bGoHome = new JButton("Go Home");
 
-	// the next line number I should send.  Marlin may say "please resend previous line x", which would change this.
-	private int lineNumberToSend;
-	// the last line number added to the queue.
-	private int lineNumberAdded;
-	// don't send more than this many at a time without acknowledgement.
-	private int busyCount=MARLIN_SEND_LIMIT;
-	
 	private final Timer timeoutChecker = new Timer(10000,(e)->onTimeoutCheck());
-	private long lastReceivedTime;
+	private volatile long lastReceivedTime;
 
 	public MarlinPresentation(Robot arm) {
 		super();
@@ -103,9 +101,7 @@ public class MarlinPresentation implements PresentationLayer {
 	private void onConnect() {
 		logger.info("connected.");
 		setupListener();
-		lineNumberToSend=1;
-		lineNumberAdded=0;
-		myHistory.clear();
+		streamer.clear();
 		updateButtonAccess();
 		timeoutChecker.start();
 		
@@ -132,108 +128,78 @@ public class MarlinPresentation implements PresentationLayer {
 	}
 
 	private void setupListener() {
-		chatInterface.addNetworkSessionListener(this::onDataReceived);
+		chatInterface.addBackgroundNetworkSessionListener(this::onDataReceived);
 	}
 	
+	// on a background thread, so a busy controller does not wait for the UI.
 	private void onDataReceived(SessionLayerEvent evt) {
 		if(evt.flag == SessionLayerEvent.DATA_AVAILABLE) {
 			lastReceivedTime = System.currentTimeMillis();
 			String message = ((String)evt.data).trim();
 			if (message.startsWith("X:") && message.contains("Count")) {
 				//logger.info("FOUND " + message);
-				onHearM114(message);
+				SwingUtilities.invokeLater(()->onHearM114(message));
 			} else if(message.startsWith(STR_OK)) {
 				onHearOK();
 			} else if(message.contains(STR_RESEND)) {
 				onHearResend(message);
+			} else if(message.startsWith(STR_ERROR)) {
+				SessionMetrics metrics = chatInterface.getSessionMetrics();
+				if(metrics!=null) metrics.addError();
 			}
 		}
 	}
 
 	private void onHearResend(String message) {
-		String numberPart = message.substring(message.indexOf(STR_RESEND) + STR_RESEND.length());
+		SessionMetrics metrics = chatInterface.getSessionMetrics();
+		if(metrics!=null) metrics.addResend();
+		String numberPart = message.substring(message.indexOf(STR_RESEND) + STR_RESEND.length()).trim();
 		try {
-			int lineNumber = Integer.parseInt(numberPart);
-			if(lineNumber>lineNumberAdded- MarlinPresentation.HISTORY_BUFFER_LIMIT) {
-				// no problem.
-				lineNumberToSend=lineNumber;
-			}
-			// else line is no longer in the buffer.  should not be possible!
+			streamer.onResend(Integer.parseInt(numberPart));
 		} catch(NumberFormatException e) {
 			logger.info("Resend request for '"+message+"' failed: "+e.getMessage());
 		}
 	}
 
 	private void onHearOK() {
-		SwingUtilities.invokeLater(() -> {
-			busyCount++;
-			sendQueuedCommand();
-			clearOldHistory();
-			if(lineNumberToSend>=lineNumberAdded) {
-				fireIdleNotice();
-			}
-		});
+		SessionMetrics metrics = chatInterface.getSessionMetrics();
+		if(metrics!=null) metrics.commandAcknowledged();
+		streamer.onOk();
+		updateFlowMetrics();
+		if(streamer.getWaitingCount()==0) SwingUtilities.invokeLater(this::fireIdleNotice);
 	}
 
 	private void fireIdleNotice() {
 		notifyListeners(new ActionEvent(this,ActionEvent.ACTION_PERFORMED, MarlinPresentation.IDLE));
 	}
 
-	private void clearOldHistory() {
-		while(myHistory.size()>0 && myHistory.get(0).lineNumber<lineNumberAdded-HISTORY_BUFFER_LIMIT) {
-			myHistory.remove(0);
-		}
-	}
-
+	/**
+	 * Queue a line.  {@link MarlinStreamer} numbers it and sends it as soon as Marlin has room.
+	 * @param str the line to send.
+	 */
 	public void queueAndSendCommand(String str) {
 		if(!chatInterface.getIsConnected()) return;
 		if(str.trim().length()==0) return;
-		
-		lineNumberAdded++;
-		String withLineNumber = "N"+lineNumberAdded+" "+str;
-		String assembled = withLineNumber + generateChecksum(withLineNumber);
-		myHistory.add(new NumberedCommand(lineNumberAdded,assembled));
-		//logger.info("queued '"+assembled+"'.  busyCount="+busyCount);
-		if(busyCount>0) sendQueuedCommand();
+		streamer.queue(str);
+		updateFlowMetrics();
 	}
 
-	private void sendQueuedCommand() {
-		clearOldHistory();
-		
-		if(myHistory.size()==0) return;
-		
-		int smallest = Integer.MAX_VALUE;
-		for( NumberedCommand mc : myHistory ) {
-			if(smallest > mc.lineNumber) smallest = mc.lineNumber;
-			if(mc.lineNumber == lineNumberToSend) {
-				busyCount--;
-				lineNumberToSend++;
-				//logger.info("sending '"+mc.command+"'.");
-				chatInterface.sendCommand(mc.command);
-				return;
-			}
-		}
-		
-		if(smallest>lineNumberToSend) {
-			// history no longer contains the line?!
-			logger.info("did not find "+lineNumberToSend);
-			for( NumberedCommand mc : myHistory ) {
-				logger.info("..."+mc.lineNumber+": "+mc.command);
-			}
-		}
+	/**
+	 * Tell the session metrics how many commands Marlin is holding and if more are waiting for room.
+	 */
+	private void updateFlowMetrics() {
+		SessionMetrics metrics = chatInterface.getSessionMetrics();
+		if(metrics==null) return;
+		metrics.setOccupancy(streamer.getLinesInFlight(),streamer.getSendLimit());
+		metrics.setBlocked(streamer.isBlocked());
 	}
 
-	private String generateChecksum(String line) {
-		byte checksum = 0;
-
-		int i=line.length();
-		while(i>0) checksum ^= (byte)line.charAt(--i);
-
-		return "*" + Integer.toString(checksum);
+	public boolean getIsBusy() {
+		return streamer.isBlocked();
 	}
 
-	public boolean getIsBusy() {
-		return busyCount<=0;
+	public MarlinStreamer getStreamer() {
+		return streamer;
 	}
 	
 	// format is normally X:0.00 Y:270.00 Z:0.00 U:270.00 V:180.00 W:0.00 Count X:0 Y:0 Z:0 U:0 V:0 W:0
@@ -344,6 +310,11 @@ public class MarlinPresentation implements PresentationLayer {
 		chatInterface.setNetworkSession(session);
 	}
 
+	@Override
+	public void setJointStateListener(JointStateDecoder.Listener listener) {
+		chatInterface.setJointStateListener(listener);
+	}
+
 	public void closeConnection() {
 		this.chatInterface.closeConnection();
 	}
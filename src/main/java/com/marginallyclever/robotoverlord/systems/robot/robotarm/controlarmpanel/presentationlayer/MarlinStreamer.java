@@ -0,0 +1,287 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>Streams G-code to <a href="https://github.com/MarlinFirmware/Marlin">Marlin</a> with line numbers and
+ * checksums.  Up to a send limit of lines may be waiting for their ok.  When Marlin reads a damaged line it asks for
+ * it again with <code>Resend: N</code>, and the streamer goes back and sends from line N again.</p>
+ * <p>Lines are numbered and given their checksum once, when they are first sent, and the finished line is kept in a
+ * ring of fixed size at slot N modulo the size.  A resend finds its line with one array lookup, and nothing is moved
+ * or searched while the link is struggling.  The ring only holds lines already sent, so lines waiting to go are never
+ * pushed out by a long queue.</p>
+ * <p>Every line after the damaged one that was already on its way is also refused by Marlin, with a resend request
+ * for the same line.  Those repeats are counted and ignored, so one damaged line costs one rewind instead of one per
+ * line in flight.</p>
+ * <p>Safe to use from more than one thread: replies may arrive on a background thread while lines are queued from
+ * the UI.  Lines are chosen under the lock and handed to the {@link Link} after it is released, one thread at a time
+ * and in order, so a slow link never holds up the handling of <code>ok</code> and <code>Resend</code>.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class MarlinStreamer {
+	private static final Logger logger = LoggerFactory.getLogger(MarlinStreamer.class);
+	// Marlin can buffer this many commands from serial, before processing.
+	public static final int DEFAULT_SEND_LIMIT = 20;
+	// number of lines kept in case there is a resend.  a power of two.
+	public static final int DEFAULT_HISTORY_SIZE = 256;
+
+	/**
+	 * Where the streamer writes.
+	 */
+	public interface Link {
+		/**
+		 * Send one line.  The link adds the newline.
+		 */
+		void sendLine(String line);
+	}
+
+	private final Link link;
+	private final int sendLimit;
+	private final Deque<String> pending = new ArrayDeque<>();
+	// lines chosen to send and not yet handed to the link.
+	private final Deque<String> outbox = new ArrayDeque<>();
+	// true while a thread is handing the outbox to the link.
+	private boolean sending;
+	// line N, with number and checksum, is at N & mask.
+	private final String [] history;
+	private final int mask;
+	// the last line number given out.  Lines up to this are in the history.
+	private int newest;
+	// the next line number to send.  At most newest+1; less after a resend.
+	private int nextToSend = 1;
+	// lines sent and not yet answered with ok.
+	private int inFlight;
+	// repeats of the last resend request still expected from lines that were on their way.
+	private int repeatsToIgnore;
+	private int lastResend = -1;
+
+	private long linesSent, resends, ignoredResends, lostResends;
+
+	public MarlinStreamer(Link link) {
+		this(link,DEFAULT_SEND_LIMIT,DEFAULT_HISTORY_SIZE);
+	}
+
+	/**
+	 * @param sendLimit the most lines waiting for an ok.
+	 * @param historySize the number of lines kept for resends, rounded up to a power of two.  At least twice the
+	 *                    send limit.
+	 */
+	public MarlinStreamer(Link link,int sendLimit,int historySize) {
+		this.link = link;
+		this.sendLimit = Math.max(1,sendLimit);
+		int size = Integer.highestOneBit(Math.max(historySize,this.sendLimit*2)-1)<<1;
+		history = new String[size];
+		mask = size-1;
+	}
+
+	/**
+	 * Add a command to the end of the queue and send as much of the queue as the send limit allows.
+	 * @param command without line number, checksum or newline.
+	 */
+	public void queue(String command) {
+		command = command.strip();
+		if(command.isEmpty()) return;
+		synchronized(this) {
+			pending.add(command);
+			pump();
+		}
+		flush();
+	}
+
+	/**
+	 * Move lines to the outbox while the send limit allows.  Call with the lock held.
+	 */
+	private void pump() {
+		while(inFlight<sendLimit) {
+			String line;
+			if(nextToSend<=newest) {
+				line = history[nextToSend & mask];
+			} else {
+				String command = pending.poll();
+				if(command==null) return;
+				newest++;
+				line = encode(newest,command);
+				history[newest & mask] = line;
+			}
+			nextToSend++;
+			inFlight++;
+			linesSent++;
+			outbox.add(line);
+		}
+	}
+
+	/**
+	 * Hand the outbox to the link without the lock.  If another thread is already sending it sends these too, so
+	 * lines always leave in order.
+	 */
+	private void flush() {
+		synchronized(this) {
+			if(sending) return;
+			sending = true;
+		}
+		try {
+			while(true) {
+				String line;
+				synchronized(this) {
+					line = outbox.poll();
+					if(line==null) {
+						sending = false;
+						return;
+					}
+				}
+				link.sendLine(line);
+			}
+		} catch(RuntimeException e) {
+			synchronized(this) {
+				sending = false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return <code>N{lineNumber} {command}*{checksum}</code>.  The checksum is the XOR of every byte before the
+	 * <code>*</code>.
+	 */
+	public static String encode(int lineNumber,String command) {
+		StringBuilder sb = new StringBuilder(command.length()+16);
+		sb.append('N').append(lineNumber).append(' ').append(command);
+		int checksum = 0;
+		for(int i=0;i<sb.length();++i) checksum ^= (byte)sb.charAt(i);
+		return sb.append('*').append((byte)checksum).toString();
+	}
+
+	/**
+	 * Marlin has finished reading a line, good or bad.
+	 */
+	public void onOk() {
+		synchronized(this) {
+			if(inFlight>0) inFlight--;
+			pump();
+		}
+		flush();
+	}
+
+	/**
+	 * Marlin wants everything again from a line on.  An ok follows.
+	 * @param lineNumber the first line to send again.
+	 */
+	public synchronized void onResend(int lineNumber) {
+		if(lineNumber==lastResend && repeatsToIgnore>0) {
+			repeatsToIgnore--;
+			ignoredResends++;
+			return;
+		}
+		resends++;
+		if(lineNumber>newest+1 || lineNumber<=newest-history.length || lineNumber<1) {
+			// not in the history.  should not be possible!
+			lostResends++;
+			logger.error("cannot resend line "+lineNumber+", history has "+Math.max(1,newest-history.length+1)+" to "+newest);
+			return;
+		}
+		// lines still in the outbox have not gone.  they will be chosen again from the history.
+		inFlight -= outbox.size();
+		linesSent -= outbox.size();
+		nextToSend -= outbox.size();
+		outbox.clear();
+		// every line after the damaged one that is already on its way will be refused the same way.
+		repeatsToIgnore = Math.max(0,nextToSend-1-lineNumber);
+		lastResend = lineNumber;
+		nextToSend = lineNumber;
+	}
+
+	/**
+	 * Forget everything queued and sent, and start again at line 1.  Use when a connection opens.
+	 */
+	public synchronized void clear() {
+		pending.clear();
+		outbox.clear();
+		newest = 0;
+		nextToSend = 1;
+		inFlight = 0;
+		repeatsToIgnore = 0;
+		lastResend = -1;
+	}
+
+	/**
+	 * @return the line with its number and checksum, as sent, or null if it is not in the history.
+	 */
+	public synchronized String getLine(int lineNumber) {
+		if(lineNumber<1 || lineNumber>newest || lineNumber<=newest-history.length) return null;
+		return history[lineNumber & mask];
+	}
+
+	/**
+	 * @return true if every queued line has been sent and answered.
+	 */
+	public synchronized boolean isIdle() {
+		return getWaitingCount()==0 && inFlight==0;
+	}
+
+	/**
+	 * @return true if lines are waiting and the send limit has been reached.
+	 */
+	public synchronized boolean isBlocked() {
+		return inFlight>=sendLimit && getWaitingCount()>0;
+	}
+
+	/**
+	 * @return the number of lines not sent yet, including lines to send again.
+	 */
+	public synchronized int getWaitingCount() {
+		return pending.size()+Math.max(0,newest-nextToSend+1);
+	}
+
+	public synchronized int getLinesInFlight() {
+		return inFlight;
+	}
+
+	public int getSendLimit() {
+		return sendLimit;
+	}
+
+	public int getHistorySize() {
+		return history.length;
+	}
+
+	/**
+	 * @return the last line number given out.
+	 */
+	public synchronized int getNewestLineNumber() {
+		return newest;
+	}
+
+	/**
+	 * @return the number of lines sent, counting each resend.
+	 */
+	public synchronized long getLinesSent() {
+		return linesSent;
+	}
+
+	/**
+	 * @return the number of resend requests acted on.
+	 */
+	public synchronized long getResends() {
+		return resends;
+	}
+
+	/**
+	 * @return the number of resend requests ignored because they repeated one already acted on.
+	 */
+	public synchronized long getIgnoredResends() {
+		return ignoredResends;
+	}
+
+	/**
+	 * @return the number of resend requests for lines no longer in the history.
+	 */
+	public synchronized long getLostResends() {
+		return lostResends;
+	}
+}
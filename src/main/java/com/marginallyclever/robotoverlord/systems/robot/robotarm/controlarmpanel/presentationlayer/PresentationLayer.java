@@ -1,5 +1,7 @@
 package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer;
 
+import com.marginallyclever.communications.jointstate.JointStateDecoder;
+
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -30,4 +32,9 @@ public interface PresentationLayer {
     void sendGoHome();
 
     void closeConnection();
+
+    /**
+     * @param listener hears binary joint state frames from the controller, if it sends any.
+     */
+    default void setJointStateListener(JointStateDecoder.Listener listener) {}
 }
@@ -0,0 +1,70 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.planner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a call to {@link RRTConnectPlanner#plan(double[], double[])}.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class PlanResult {
+    private final List<double[]> path;
+    private final long nodesExpanded;
+    private final double planningTimeMs;
+    private final int rawWaypoints;
+
+    PlanResult(List<double[]> path, long nodesExpanded, double planningTimeMs, int rawWaypoints) {
+        this.path = path == null ? null : Collections.unmodifiableList(new ArrayList<>(path));
+        this.nodesExpanded = nodesExpanded;
+        this.planningTimeMs = planningTimeMs;
+        this.rawWaypoints = rawWaypoints;
+    }
+
+    /**
+     * @return true if a collision free path was found.
+     */
+    public boolean isSuccess() {
+        return path != null;
+    }
+
+    /**
+     * @return the joint values of every waypoint from start to goal, after smoothing.  null if no path was found.
+     */
+    public List<double[]> getPath() {
+        return path;
+    }
+
+    /**
+     * @return the number of tree nodes added by all threads.
+     */
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * @return the wall clock time spent planning and smoothing, in milliseconds.
+     */
+    public double getPlanningTimeMs() {
+        return planningTimeMs;
+    }
+
+    /**
+     * @return the number of waypoints before smoothing.
+     */
+    public int getRawWaypoints() {
+        return rawWaypoints;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s in %.1fms, %d nodes expanded, %d waypoints (%d before smoothing)",
+                isSuccess() ? "Found path" : "No path",
+                planningTimeMs,
+                nodesExpanded,
+                isSuccess() ? path.size() : 0,
+                rawWaypoints);
+    }
+}
@@ -0,0 +1,295 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.planner;
+
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.ArmCollisionModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>RRT-Connect (Kuffner and LaValle, 2000) in joint space.  Two trees grow toward each other, one from the start
+ * and one from the goal, until they meet.  Every edge is checked against an {@link ArmCollisionModel}.</p>
+ * <p>Several independent searches run at once, one per thread, each with its own random seed.  The first to find
+ * a path wins and the others stop.  Every search also stops when the time budget runs out.  The winning path is
+ * then shortened by shortcut smoothing: pick two waypoints at random and, if the straight line between them is
+ * clear, drop everything in between.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class RRTConnectPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(RRTConnectPlanner.class);
+
+    private final ArmCollisionModel model;
+    private final KinematicChain chain;
+    private double stepSize = 10;
+    private double resolution = 2;
+    private long timeBudgetMs = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int smoothingIterations = 200;
+    private long seed = 0;
+
+    public RRTConnectPlanner(ArmCollisionModel model) {
+        this.model = model;
+        this.chain = model.getChain();
+    }
+
+    /**
+     * @param stepSize the longest edge in the trees, in degrees or cm.
+     */
+    public void setStepSize(double stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * @param resolution the largest step any joint may take between collision tests, in degrees or cm.
+     */
+    public void setResolution(double resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * @param ms give up after this many milliseconds.
+     */
+    public void setTimeBudgetMs(long ms) {
+        this.timeBudgetMs = ms;
+    }
+
+    /**
+     * @param threads the number of searches to run at once.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setSmoothingIterations(int smoothingIterations) {
+        this.smoothingIterations = smoothingIterations;
+    }
+
+    /**
+     * @param seed random seed.  Thread i uses seed+i.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Find a collision free path.
+     * @param start the joint values at the start.
+     * @param goal the joint values at the goal.
+     * @return the result.  Check {@link PlanResult#isSuccess()}.
+     */
+    public PlanResult plan(double[] start, double[] goal) {
+        long startTime = System.nanoTime();
+        if (model.isInCollision(start) || model.isInCollision(goal)) {
+            logger.warn("Start or goal is in collision.");
+            return new PlanResult(null, 0, elapsedMs(startTime), 0);
+        }
+        if (!model.isMotionInCollision(start, goal, resolution)) {
+            return new PlanResult(List.of(start.clone(), goal.clone()), 0, elapsedMs(startTime), 2);
+        }
+
+        long deadline = startTime + timeBudgetMs * 1000000L;
+        AtomicReference<List<double[]>> found = new AtomicReference<>();
+        AtomicLong nodes = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                long workerSeed = seed + i;
+                tasks.add(() -> {
+                    new Search(start, goal, workerSeed, deadline, found, nodes).run();
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<double[]> raw = found.get();
+        if (raw == null) {
+            return new PlanResult(null, nodes.get(), elapsedMs(startTime), 0);
+        }
+        List<double[]> smooth = shortcut(raw, new SplittableRandom(seed));
+        PlanResult result = new PlanResult(smooth, nodes.get(), elapsedMs(startTime), raw.size());
+        logger.debug("{}", result);
+        return result;
+    }
+
+    private static double elapsedMs(long startTime) {
+        return (System.nanoTime() - startTime) / 1e6;
+    }
+
+    private List<double[]> shortcut(List<double[]> path, SplittableRandom random) {
+        ArmCollisionModel.Workspace workspace = model.createWorkspace();
+        List<double[]> result = new ArrayList<>(path);
+        for (int k = 0; k < smoothingIterations && result.size() > 2; ++k) {
+            int i = random.nextInt(result.size() - 2);
+            int j = random.nextInt(i + 2, result.size());
+            if (!model.isMotionInCollision(result.get(i), result.get(j), resolution, workspace)) {
+                result.subList(i + 1, j).clear();
+            }
+        }
+        return result;
+    }
+
+    private static double distanceSquared(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; ++i) {
+            double d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * One tree rooted at the start or the goal.
+     */
+    private static class Tree {
+        final List<double[]> nodes = new ArrayList<>();
+        int[] parents = new int[256];
+
+        Tree(double[] root) {
+            add(root, -1);
+        }
+
+        int add(double[] q, int parent) {
+            int index = nodes.size();
+            if (index == parents.length) parents = Arrays.copyOf(parents, index * 2);
+            nodes.add(q);
+            parents[index] = parent;
+            return index;
+        }
+
+        int nearest(double[] q) {
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+            for (int i = 0; i < nodes.size(); ++i) {
+                double d = distanceSquared(nodes.get(i), q);
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return the nodes from index back to the root.
+         */
+        List<double[]> pathToRoot(int index) {
+            List<double[]> result = new ArrayList<>();
+            while (index >= 0) {
+                result.add(nodes.get(index));
+                index = parents[index];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * One single threaded RRT-Connect search.
+     */
+    private class Search {
+        private static final int TRAPPED = -1;
+        private final double[] start, goal;
+        private final SplittableRandom random;
+        private final long deadline;
+        private final AtomicReference<List<double[]>> found;
+        private final AtomicLong nodes;
+        private final ArmCollisionModel.Workspace workspace = model.createWorkspace();
+
+        Search(double[] start, double[] goal, long seed, long deadline, AtomicReference<List<double[]>> found, AtomicLong nodes) {
+            this.start = start;
+            this.goal = goal;
+            this.random = new SplittableRandom(seed);
+            this.deadline = deadline;
+            this.found = found;
+            this.nodes = nodes;
+        }
+
+        void run() {
+            Tree a = new Tree(start.clone());
+            Tree b = new Tree(goal.clone());
+            boolean aIsStart = true;
+
+            while (found.get() == null && System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                double[] q = sample();
+                int ia = extend(a, q);
+                if (ia != TRAPPED) {
+                    int ib = connect(b, a.nodes.get(ia));
+                    if (ib != TRAPPED) {
+                        List<double[]> path = join(aIsStart ? a : b, aIsStart ? ia : ib, aIsStart ? b : a, aIsStart ? ib : ia);
+                        found.compareAndSet(null, path);
+                        return;
+                    }
+                }
+                Tree t = a;
+                a = b;
+                b = t;
+                aIsStart = !aIsStart;
+            }
+        }
+
+        private double[] sample() {
+            double[] q = new double[chain.getDOF()];
+            for (int i = 0; i < q.length; ++i) {
+                double min = chain.getJointMin(i);
+                double max = chain.getJointMax(i);
+                q[i] = max > min ? random.nextDouble(min, max) : min;
+            }
+            return q;
+        }
+
+        /**
+         * Grow the tree one step toward q.
+         * @return the index of the new node, or TRAPPED.
+         */
+        private int extend(Tree tree, double[] q) {
+            int near = tree.nearest(q);
+            double[] from = tree.nodes.get(near);
+            double d = Math.sqrt(distanceSquared(from, q));
+            double[] to;
+            if (d <= stepSize) {
+                to = q.clone();
+            } else {
+                to = new double[q.length];
+                double f = stepSize / d;
+                for (int i = 0; i < q.length; ++i) to[i] = from[i] + (q[i] - from[i]) * f;
+            }
+            if (model.isMotionInCollision(from, to, resolution, workspace)) return TRAPPED;
+            nodes.incrementAndGet();
+            return tree.add(to, near);
+        }
+
+        /**
+         * Grow the tree toward q until it gets there or hits something.
+         * @return the index of the node at q, or TRAPPED.
+         */
+        private int connect(Tree tree, double[] q) {
+            while (true) {
+                int index = extend(tree, q);
+                if (index == TRAPPED) return TRAPPED;
+                if (distanceSquared(tree.nodes.get(index), q) < 1e-12) return index;
+                if (found.get() != null || System.nanoTime() >= deadline) return TRAPPED;
+            }
+        }
+
+        private List<double[]> join(Tree startTree, int startIndex, Tree goalTree, int goalIndex) {
+            List<double[]> path = startTree.pathToRoot(startIndex);
+            Collections.reverse(path);
+            List<double[]> second = goalTree.pathToRoot(goalIndex);
+            // both trees end at the same configuration, do not repeat it.
+            path.addAll(second.subList(1, second.size()));
+            return path;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability;
+
+import com.jogamp.opengl.GL3;
+import com.marginallyclever.robotoverlord.systems.render.mesh.Mesh;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>A sparse voxel grid of the places the end effector of a robot can reach, relative to the base of the robot.
+ * Each occupied voxel remembers how many samples landed in it and the best manipulability seen there.</p>
+ * <p>Voxels are stored in an open-addressing hash table keyed on the packed voxel coordinates, so lookups are O(1)
+ * and do not allocate.  This makes the map cheap enough for planners to use when pruning candidate poses.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ReachabilityMap {
+    private static final int FILE_VERSION = 1;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int BITS = 21;
+    private static final int OFFSET = 1 << (BITS - 1);
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final double voxelSize;
+    private long[] keys;
+    private int[] counts;
+    private float[] manipulability;
+    private int size;
+    private float maxManipulability;
+
+    /**
+     * @param voxelSize the length of one side of a voxel, in cm.
+     */
+    public ReachabilityMap(double voxelSize) {
+        this(voxelSize, 1024);
+    }
+
+    private ReachabilityMap(double voxelSize, int capacity) {
+        if (voxelSize <= 0) throw new IllegalArgumentException("voxelSize must be greater than zero.");
+        this.voxelSize = voxelSize;
+        allocate(Integer.highestOneBit(Math.max(16, capacity - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        manipulability = new float[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public double getVoxelSize() {
+        return voxelSize;
+    }
+
+    /**
+     * @return the number of occupied voxels.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the largest manipulability of any voxel.
+     */
+    public double getMaxManipulability() {
+        return maxManipulability;
+    }
+
+    /**
+     * Record one sample.
+     * @param x position relative to the robot base, in cm.
+     * @param y position relative to the robot base, in cm.
+     * @param z position relative to the robot base, in cm.
+     * @param m the manipulability of the robot at this sample.
+     */
+    public void add(double x, double y, double z, double m) {
+        add(getKey(x, y, z), 1, (float) m);
+    }
+
+    private void add(long key, int count, float m) {
+        int i = findSlot(key);
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            size++;
+            counts[i] = count;
+            manipulability[i] = m;
+            if (size * 2 > keys.length) grow();
+        } else {
+            counts[i] += count;
+            if (manipulability[i] < m) manipulability[i] = m;
+        }
+        if (maxManipulability < m) maxManipulability = m;
+    }
+
+    /**
+     * Add all the samples in another map to this map.  Both maps must have the same voxel size.
+     * @param other the map to merge into this map.
+     */
+    public void merge(ReachabilityMap other) {
+        if (other.voxelSize != voxelSize) throw new IllegalArgumentException("voxel sizes do not match.");
+        for (int i = 0; i < other.keys.length; ++i) {
+            if (other.keys[i] != EMPTY) add(other.keys[i], other.counts[i], other.manipulability[i]);
+        }
+    }
+
+    /**
+     * @param x position relative to the robot base, in cm.
+     * @param y position relative to the robot base, in cm.
+     * @param z position relative to the robot base, in cm.
+     * @return true if any sample reached the voxel containing this point.
+     */
+    public boolean isReachable(double x, double y, double z) {
+        return keys[findSlot(getKey(x, y, z))] != EMPTY;
+    }
+
+    /**
+     * @param x position relative to the robot base, in cm.
+     * @param y position relative to the robot base, in cm.
+     * @param z position relative to the robot base, in cm.
+     * @return the best manipulability in the voxel containing this point, or 0 if it cannot be reached.
+     */
+    public double getManipulability(double x, double y, double z) {
+        int i = findSlot(getKey(x, y, z));
+        return keys[i] == EMPTY ? 0 : manipulability[i];
+    }
+
+    /**
+     * @param x position relative to the robot base, in cm.
+     * @param y position relative to the robot base, in cm.
+     * @param z position relative to the robot base, in cm.
+     * @return the number of samples in the voxel containing this point.
+     */
+    public int getCount(double x, double y, double z) {
+        int i = findSlot(getKey(x, y, z));
+        return keys[i] == EMPTY ? 0 : counts[i];
+    }
+
+    private long getKey(double x, double y, double z) {
+        long ix = (long) Math.floor(x / voxelSize) + OFFSET;
+        long iy = (long) Math.floor(y / voxelSize) + OFFSET;
+        long iz = (long) Math.floor(z / voxelSize) + OFFSET;
+        return ((ix & MASK) << (BITS * 2)) | ((iy & MASK) << BITS) | (iz & MASK);
+    }
+
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        // mix the bits so neighbouring voxels do not cluster.
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        float[] oldManipulability = manipulability;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] == EMPTY) continue;
+            int j = findSlot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            counts[j] = oldCounts[i];
+            manipulability[j] = oldManipulability[i];
+            size++;
+        }
+    }
+
+    /**
+     * Build a point cloud with one point at the center of each voxel, colored from red (poor manipulability) to
+     * green (good manipulability).
+     * @return the new mesh.
+     */
+    public Mesh createMesh() {
+        Mesh mesh = new Mesh();
+        mesh.setRenderStyle(GL3.GL_POINTS);
+        float scale = maxManipulability > 0 ? 1.0f / maxManipulability : 0;
+        for (int i = 0; i < keys.length; ++i) {
+            long key = keys[i];
+            if (key == EMPTY) continue;
+            float x = (float) ((((key >>> (BITS * 2)) & MASK) - OFFSET + 0.5) * voxelSize);
+            float y = (float) ((((key >>> BITS) & MASK) - OFFSET + 0.5) * voxelSize);
+            float z = (float) (((key & MASK) - OFFSET + 0.5) * voxelSize);
+            float m = manipulability[i] * scale;
+            mesh.addColor(1 - m, m, 0, 1);
+            mesh.addVertex(x, y, z);
+        }
+        return mesh;
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(FILE_VERSION);
+        out.writeDouble(voxelSize);
+        out.writeInt(size);
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == EMPTY) continue;
+            out.writeLong(keys[i]);
+            out.writeInt(counts[i]);
+            out.writeFloat(manipulability[i]);
+        }
+    }
+
+    public static ReachabilityMap load(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FILE_VERSION) throw new IOException("Unsupported reachability map version " + version);
+        double voxelSize = in.readDouble();
+        int count = in.readInt();
+        ReachabilityMap map = new ReachabilityMap(voxelSize, count * 2);
+        for (int i = 0; i < count; ++i) {
+            long key = in.readLong();
+            int samples = in.readInt();
+            float m = in.readFloat();
+            map.add(key, samples, m);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,154 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability;
+
+import com.marginallyclever.convenience.helpers.PathHelper;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link ReachabilityMapFactory} builds a {@link ReachabilityMap} for a robot by sampling joint space, or fetches a
+ * map built earlier from memory or from the disk cache.  Maps are keyed on {@link KinematicChain#getHash()} so any
+ * change to the DH parameters or joint limits makes a new map.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ReachabilityMapFactory {
+    private static final Logger logger = LoggerFactory.getLogger(ReachabilityMapFactory.class);
+    private static final String CACHE_PREFIX = "reachability-";
+    private static final String CACHE_EXTENSION = ".bin.gz";
+
+    // the pool of all maps built or loaded this session
+    private static final Map<String, ReachabilityMap> mapPool = new HashMap<>();
+
+    /**
+     * Get the map for a robot.  Looks in memory, then in the disk cache, then builds a new map and caches it.
+     * @param robot the robot to map.
+     * @param samples the number of random joint configurations to test.
+     * @param voxelSize the length of one side of a voxel, in cm.
+     * @return the map.
+     */
+    public static ReachabilityMap get(RobotComponent robot, int samples, double voxelSize) {
+        KinematicChain chain = new KinematicChain(robot);
+        String key = getCacheKey(chain, samples, voxelSize);
+
+        synchronized (mapPool) {
+            ReachabilityMap map = mapPool.get(key);
+            if (map != null) return map;
+        }
+
+        ReachabilityMap map = loadFromCache(key);
+        if (map == null) {
+            map = build(chain, samples, voxelSize, 0);
+            saveToCache(key, map);
+        }
+
+        synchronized (mapPool) {
+            mapPool.put(key, map);
+        }
+        return map;
+    }
+
+    private static String getCacheKey(KinematicChain chain, int samples, double voxelSize) {
+        return Long.toHexString(chain.getHash()) + "-" + samples + "-" + voxelSize;
+    }
+
+    /**
+     * Sample joint space uniformly within the joint limits, run forward kinematics and bin the end effector
+     * positions.  The work is split into chunks which run in parallel on the common fork-join pool.  Each chunk fills
+     * its own map and the maps are merged at the end, so no locking is needed while sampling.
+     * @param chain the compiled robot.
+     * @param samples the number of random joint configurations to test.
+     * @param voxelSize the length of one side of a voxel, in cm.
+     * @param seed random seed.  The same seed always makes the same map.
+     * @return the new map.
+     */
+    public static ReachabilityMap build(KinematicChain chain, int samples, double voxelSize, long seed) {
+        long start = System.nanoTime();
+
+        int chunks = Math.max(1, Math.min(samples, Runtime.getRuntime().availableProcessors() * 4));
+        int perChunk = (samples + chunks - 1) / chunks;
+
+        ReachabilityMap result = IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(c -> buildChunk(chain, Math.min(perChunk, samples - c * perChunk), voxelSize, seed + c))
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(() -> new ReachabilityMap(voxelSize));
+
+        logger.info("Reachability map: {} samples, {} voxels in {}ms.",
+                samples, result.size(), (System.nanoTime() - start) / 1000000);
+        return result;
+    }
+
+    private static ReachabilityMap buildChunk(KinematicChain chain, int samples, double voxelSize, long seed) {
+        ReachabilityMap map = new ReachabilityMap(voxelSize);
+        if (samples <= 0) return map;
+
+        int dof = chain.getDOF();
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] joints = new double[dof];
+        double[] poses = new double[(dof + 1) * KinematicChain.MATRIX_SIZE];
+        double[] axes = new double[dof * KinematicChain.MATRIX_SIZE];
+        double[] jacobian = new double[6 * dof];
+        double[] dh = new double[KinematicChain.MATRIX_SIZE];
+        double[] temp = new double[KinematicChain.MATRIX_SIZE];
+        int ee = dof * KinematicChain.MATRIX_SIZE;
+
+        for (int s = 0; s < samples; ++s) {
+            for (int i = 0; i < dof; ++i) {
+                double min = chain.getJointMin(i);
+                double max = chain.getJointMax(i);
+                joints[i] = max > min ? random.nextDouble(min, max) : min;
+            }
+            chain.getPoses(joints, poses, axes, dh, temp);
+            chain.getJacobian(poses, axes, jacobian);
+            map.add(poses[ee + 3], poses[ee + 7], poses[ee + 11], chain.getManipulability(jacobian));
+        }
+        return map;
+    }
+
+    private static File getCacheFile(String key) {
+        return new File(PathHelper.APP_CACHE, CACHE_PREFIX + key + CACHE_EXTENSION);
+    }
+
+    private static ReachabilityMap loadFromCache(String key) {
+        File file = getCacheFile(key);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            ReachabilityMap map = ReachabilityMap.load(in);
+            logger.info("Loaded reachability map from {}", file.getAbsolutePath());
+            return map;
+        } catch (IOException e) {
+            logger.warn("Failed to load reachability map {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static void saveToCache(String key, ReachabilityMap map) {
+        File file = getCacheFile(key);
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            logger.warn("Unable to create cache directory {}", parent.getAbsolutePath());
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            map.save(out);
+        } catch (IOException e) {
+            logger.warn("Failed to save reachability map {}", file.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+import com.marginallyclever.convenience.helpers.MatrixHelper;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * A straight line move of the end effector.  The position moves along the line with a {@link MotionProfile} and
+ * the orientation is interpolated (slerp) at the same rate, so both arrive together.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class CartesianTrajectory {
+    private final Matrix4d start = new Matrix4d();
+    private final Matrix4d end = new Matrix4d();
+    private final MotionProfile profile;
+    private final double timeScale;
+    private final double duration;
+
+    /**
+     * @param start the starting pose.
+     * @param end the final pose.
+     * @param maxVelocity the linear velocity limit, in cm/s.  Zero or less for no linear limit.
+     * @param maxAcceleration the linear acceleration limit, in cm/s^2.  Zero or less for no linear limit.
+     * @param maxJerk the linear jerk limit, in cm/s^3.  Zero or less for a trapezoidal profile.
+     * @param minimumDuration the move will take at least this long, in seconds.  Use this to slow the move down when
+     *                        the joints cannot keep up, for example with {@link JointTrajectory#getDuration()}.
+     */
+    public CartesianTrajectory(Matrix4d start, Matrix4d end, double maxVelocity, double maxAcceleration, double maxJerk, double minimumDuration) {
+        this.start.set(start);
+        this.end.set(end);
+
+        double dx = end.m03 - start.m03;
+        double dy = end.m13 - start.m13;
+        double dz = end.m23 - start.m23;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        // a pure rotation has no length, and a move with no linear limit has no pace of its own.  use a unit move and
+        // let minimumDuration set the pace.
+        boolean limited = length > 0 && maxVelocity > 0 && maxAcceleration > 0;
+        profile = limited
+                ? new MotionProfile(length, maxVelocity, maxAcceleration, maxJerk)
+                : new MotionProfile(1, 1, 1, 0);
+        double natural = limited ? profile.getDuration() : 0;
+        duration = Math.max(natural, minimumDuration);
+        timeScale = duration > 0 ? profile.getDuration() / duration : 1;
+    }
+
+    /**
+     * @return the time to complete the move, in seconds.
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @param result will be filled with the pose at time t.
+     */
+    public void getPose(double t, Matrix4d result) {
+        double fraction = duration <= 0 ? 1 : profile.getPosition(t * timeScale) / profile.getDistance();
+        fraction = Math.max(0, Math.min(1, fraction));
+        MatrixHelper.interpolate(start, end, fraction, result);
+    }
+}
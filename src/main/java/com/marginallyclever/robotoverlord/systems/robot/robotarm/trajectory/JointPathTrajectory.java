@@ -0,0 +1,58 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A joint space move through a list of waypoints, for example from a motion planner.  Each leg is a
+ * {@link JointTrajectory} that stops at the next waypoint, so the arm never cuts a corner into an obstacle.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointPathTrajectory {
+    private final List<JointTrajectory> legs = new ArrayList<>();
+    private final double[] startTimes;
+    private final double duration;
+
+    /**
+     * @param chain the robot.
+     * @param waypoints at least one set of joint values.  The first is the start of the move.
+     */
+    public JointPathTrajectory(KinematicChain chain, List<double[]> waypoints) {
+        if (waypoints.isEmpty()) throw new IllegalArgumentException("waypoints must not be empty.");
+        if (waypoints.size() == 1) {
+            legs.add(new JointTrajectory(chain, waypoints.get(0), waypoints.get(0)));
+        }
+        for (int i = 1; i < waypoints.size(); ++i) {
+            legs.add(new JointTrajectory(chain, waypoints.get(i - 1), waypoints.get(i)));
+        }
+
+        startTimes = new double[legs.size()];
+        double t = 0;
+        for (int i = 0; i < legs.size(); ++i) {
+            startTimes[i] = t;
+            t += legs.get(i).getDuration();
+        }
+        duration = t;
+    }
+
+    /**
+     * @return the time to complete the move, in seconds.
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @param joints will be filled with the joint values at time t.
+     */
+    public void getJointValues(double t, double[] joints) {
+        int i = legs.size() - 1;
+        while (i > 0 && t < startTimes[i]) --i;
+        legs.get(i).getJointValues(t - startTimes[i], joints);
+    }
+}
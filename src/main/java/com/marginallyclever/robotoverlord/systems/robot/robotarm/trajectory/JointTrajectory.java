@@ -0,0 +1,112 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+
+/**
+ * <p>A synchronized move in joint space.  Every joint follows the same {@link MotionProfile} from 0 to 1, scaled by
+ * how far that joint has to go, so all joints start and stop together and the arm moves in a straight line through
+ * joint space.</p>
+ * <p>The shared profile uses the tightest limit of any joint once each limit is divided by the distance that joint
+ * has to travel.  That makes the move as fast as possible without any joint breaking its own limits.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class JointTrajectory {
+    private final double[] start;
+    private final double[] delta;
+    private final MotionProfile profile;
+
+    /**
+     * Build a move using the joint limits stored in the chain.
+     * @param chain the robot.
+     * @param start the starting joint values.
+     * @param end the final joint values.
+     */
+    public JointTrajectory(KinematicChain chain, double[] start, double[] end) {
+        this(start, end, getLimits(chain, 0), getLimits(chain, 1), getLimits(chain, 2));
+    }
+
+    /**
+     * @param start the starting joint values.
+     * @param end the final joint values.
+     * @param maxVelocity the velocity limit of each joint.  A joint with a limit of zero or less uses
+     *                    {@link DHComponent#DEFAULT_MAX_VELOCITY}.
+     * @param maxAcceleration the acceleration limit of each joint.  A joint with a limit of zero or less uses
+     *                        {@link DHComponent#DEFAULT_MAX_ACCELERATION}.
+     * @param maxJerk the jerk limit of each joint.  Zero or less for no jerk limit.
+     */
+    public JointTrajectory(double[] start, double[] end, double[] maxVelocity, double[] maxAcceleration, double[] maxJerk) {
+        int dof = start.length;
+        if (end.length != dof) throw new IllegalArgumentException("start and end must be the same length.");
+
+        this.start = start.clone();
+        delta = new double[dof];
+
+        double v = Double.POSITIVE_INFINITY;
+        double a = Double.POSITIVE_INFINITY;
+        double j = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < dof; ++i) {
+            delta[i] = end[i] - start[i];
+            double d = Math.abs(delta[i]);
+            if (d == 0) continue;
+            v = Math.min(v, positiveOr(maxVelocity[i], DHComponent.DEFAULT_MAX_VELOCITY) / d);
+            a = Math.min(a, positiveOr(maxAcceleration[i], DHComponent.DEFAULT_MAX_ACCELERATION) / d);
+            if (maxJerk[i] > 0) j = Math.min(j, maxJerk[i] / d);
+        }
+
+        if (Double.isInfinite(v)) {
+            // nothing moves.
+            profile = new MotionProfile(0, 1, 1, 0);
+        } else {
+            profile = new MotionProfile(1, v, a, Double.isInfinite(j) ? 0 : j);
+        }
+    }
+
+    // a bad limit from an old or hand edited scene must not stop the program every frame.
+    private static double positiveOr(double limit, double fallback) {
+        return limit > 0 ? limit : fallback;
+    }
+
+    private static double[] getLimits(KinematicChain chain, int type) {
+        double[] result = new double[chain.getDOF()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = switch (type) {
+                case 0 -> chain.getMaxVelocity(i);
+                case 1 -> chain.getMaxAcceleration(i);
+                default -> chain.getMaxJerk(i);
+            };
+        }
+        return result;
+    }
+
+    /**
+     * @return the time to complete the move, in seconds.
+     */
+    public double getDuration() {
+        return profile.getDuration();
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @param joints will be filled with the joint values at time t.
+     */
+    public void getJointValues(double t, double[] joints) {
+        double u = profile.getPosition(t);
+        for (int i = 0; i < start.length; ++i) {
+            joints[i] = start[i] + delta[i] * u;
+        }
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @param velocities will be filled with the joint velocities at time t.
+     */
+    public void getJointVelocities(double t, double[] velocities) {
+        double du = profile.getVelocity(t);
+        for (int i = 0; i < start.length; ++i) {
+            velocities[i] = delta[i] * du;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+/**
+ * <p>A rest-to-rest move along one axis that respects a velocity, acceleration and jerk limit.  With a jerk limit
+ * the profile is the classic seven segment S-curve.  With no jerk limit (jerk &lt;= 0) it is a trapezoid.  If the move
+ * is too short to reach full speed the cruise phase is dropped and the peak velocity is lowered until the profile
+ * fits.</p>
+ * <p>The profile is time optimal for the given limits.  Use {@link #getPosition(double)} to sample it.</p>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class MotionProfile {
+    private static final int SEGMENTS = 7;
+
+    private final double distance;
+    private final double sign;
+    // the time at the start of each segment, plus the end time.
+    private final double[] times = new double[SEGMENTS + 1];
+    // the jerk in each segment.
+    private final double[] jerks = new double[SEGMENTS];
+    // the position, velocity and acceleration at the start of each segment.
+    private final double[] p0 = new double[SEGMENTS];
+    private final double[] v0 = new double[SEGMENTS];
+    private final double[] a0 = new double[SEGMENTS];
+    private double peakVelocity;
+
+    /**
+     * @param distance the length of the move.  May be negative.
+     * @param maxVelocity the velocity limit.  Must be greater than zero.
+     * @param maxAcceleration the acceleration limit.  Must be greater than zero.
+     * @param maxJerk the jerk limit.  Zero or less for a trapezoidal profile.
+     */
+    public MotionProfile(double distance, double maxVelocity, double maxAcceleration, double maxJerk) {
+        if (maxVelocity <= 0) throw new IllegalArgumentException("maxVelocity must be greater than zero.");
+        if (maxAcceleration <= 0) throw new IllegalArgumentException("maxAcceleration must be greater than zero.");
+
+        this.distance = distance;
+        this.sign = distance < 0 ? -1 : 1;
+        double d = Math.abs(distance);
+        if (d == 0) return;
+
+        double v = maxVelocity;
+        if (getAccelerationDistance(v, maxAcceleration, maxJerk) * 2 > d) {
+            // cannot reach full speed.  search for the peak velocity that covers exactly d.
+            double low = 0, high = v;
+            for (int i = 0; i < 64; ++i) {
+                double mid = (low + high) * 0.5;
+                if (getAccelerationDistance(mid, maxAcceleration, maxJerk) * 2 > d) high = mid;
+                else low = mid;
+            }
+            v = low;
+        }
+        peakVelocity = v;
+
+        double tj, ta, a;
+        if (maxJerk <= 0) {
+            tj = 0;
+            a = maxAcceleration;
+            ta = v / a;
+        } else if (v * maxJerk >= maxAcceleration * maxAcceleration) {
+            tj = maxAcceleration / maxJerk;
+            a = maxAcceleration;
+            ta = v / a + tj;
+        } else {
+            tj = Math.sqrt(v / maxJerk);
+            a = maxJerk * tj;
+            ta = 2 * tj;
+        }
+        double cruise = v > 0 ? Math.max(0, (d - v * ta) / v) : 0;
+        double j = maxJerk <= 0 ? 0 : maxJerk;
+
+        double[] durations = { tj, ta - 2 * tj, tj, cruise, tj, ta - 2 * tj, tj };
+        double[] segmentJerks = { j, 0, -j, 0, -j, 0, j };
+        // a trapezoid has no jerk segments, so the acceleration steps at the start of segments 1 and 5.
+        double[] stepAcceleration = { 0, a, 0, 0, 0, -a, 0 };
+
+        double t = 0, p = 0, vel = 0, acc = 0;
+        for (int i = 0; i < SEGMENTS; ++i) {
+            if (j == 0) {
+                if (i == 1 || i == 5) acc = stepAcceleration[i];
+                else acc = 0;
+            }
+            times[i] = t;
+            jerks[i] = segmentJerks[i];
+            p0[i] = p;
+            v0[i] = vel;
+            a0[i] = acc;
+
+            double dt = durations[i];
+            p += vel * dt + acc * dt * dt / 2 + jerks[i] * dt * dt * dt / 6;
+            vel += acc * dt + jerks[i] * dt * dt / 2;
+            acc += jerks[i] * dt;
+            t += dt;
+        }
+        times[SEGMENTS] = t;
+    }
+
+    /**
+     * @return the distance covered while accelerating from rest to v.
+     */
+    private static double getAccelerationDistance(double v, double a, double j) {
+        if (j <= 0) return v * v / (2 * a);
+        if (v * j >= a * a) {
+            // reaches full acceleration
+            double ta = v / a + a / j;
+            return v * ta / 2;
+        }
+        return v * Math.sqrt(v / j);
+    }
+
+    /**
+     * @return the time to complete the move, in seconds.
+     */
+    public double getDuration() {
+        return times[SEGMENTS];
+    }
+
+    /**
+     * @return the length of the move.  May be negative.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the highest speed reached during the move.  Always positive.
+     */
+    public double getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    private int getSegment(double t) {
+        for (int i = SEGMENTS - 1; i > 0; --i) {
+            if (t >= times[i]) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @return the distance travelled at time t.
+     */
+    public double getPosition(double t) {
+        if (t <= 0) return 0;
+        if (t >= getDuration()) return distance;
+        int i = getSegment(t);
+        double dt = t - times[i];
+        return sign * (p0[i] + v0[i] * dt + a0[i] * dt * dt / 2 + jerks[i] * dt * dt * dt / 6);
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @return the velocity at time t.
+     */
+    public double getVelocity(double t) {
+        if (t <= 0 || t >= getDuration()) return 0;
+        int i = getSegment(t);
+        double dt = t - times[i];
+        return sign * (v0[i] + a0[i] * dt + jerks[i] * dt * dt / 2);
+    }
+
+    /**
+     * @param t time since the start of the move, in seconds.
+     * @return the acceleration at time t.
+     */
+    public double getAcceleration(double t) {
+        if (t <= 0 || t >= getDuration()) return 0;
+        int i = getSegment(t);
+        double dt = t - times[i];
+        return sign * (a0[i] + jerks[i] * dt);
+    }
+}
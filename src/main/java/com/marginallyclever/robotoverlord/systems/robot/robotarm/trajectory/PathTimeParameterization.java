@@ -0,0 +1,348 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+import com.marginallyclever.robotoverlord.systems.render.gcodepath.GCodePath;
+import com.marginallyclever.robotoverlord.systems.render.gcodepath.PathWalker;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Time optimal parameterization of a path made of straight segments.  Every sample along the path has a speed
+ * limit (from the feed rate, from the curvature of the path and from the joint velocity limits of a robot) and an
+ * acceleration limit.  {@link #solve()} finds the fastest speed at every sample that respects all the limits, starts
+ * and ends at rest, and never needs more acceleration than allowed to get from one sample to the next.</p>
+ * <p>This is the usual forward/backward pass: the forward pass limits how fast the tool can speed up, the backward
+ * pass limits how late it can start slowing down.  Between samples the acceleration is constant.</p>
+ * <p>Typical use:</p>
+ * <pre>{@code
+ * PathTimeParameterization p = PathTimeParameterization.fromGCodePath(path, 0.1, 20, 100);
+ * p.applyJointLimits(chain, robot.getAllJointValues(), pathToBase);
+ * p.solve();
+ * double seconds = p.getDuration();
+ * }</pre>
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class PathTimeParameterization {
+    // the loader has already converted G-code feed rates to cm/min, same as the path.
+    private static final double FEEDRATE_TO_CM_PER_SECOND = 1.0 / 60.0;
+    private static final double MIN_SPEED = 1e-6;
+
+    private final int size;
+    private final double[] x, y, z;
+    private final double[] distance;
+    private final double[] maxSpeed;
+    private final double[] maxAcceleration;
+    private final double[] curvature;
+    private final double[] speed;
+    private final double[] time;
+    private boolean solved = false;
+
+    /**
+     * @param x the x coordinate of every sample.
+     * @param y the y coordinate of every sample.
+     * @param z the z coordinate of every sample.
+     * @param maxSpeed the default speed limit everywhere, in cm/s.
+     * @param maxAcceleration the default acceleration limit everywhere, in cm/s^2.
+     */
+    public PathTimeParameterization(double[] x, double[] y, double[] z, double maxSpeed, double maxAcceleration) {
+        if (maxSpeed <= 0) throw new IllegalArgumentException("maxSpeed must be greater than zero.");
+        if (maxAcceleration <= 0) throw new IllegalArgumentException("maxAcceleration must be greater than zero.");
+        size = x.length;
+        if (y.length != size || z.length != size) throw new IllegalArgumentException("x, y and z must be the same length.");
+
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        distance = new double[size];
+        this.maxSpeed = new double[size];
+        this.maxAcceleration = new double[size];
+        curvature = new double[size];
+        speed = new double[size];
+        time = new double[size];
+
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) distance[i] = distance[i - 1] + getSegmentLength(i);
+            this.maxSpeed[i] = maxSpeed;
+            this.maxAcceleration[i] = maxAcceleration;
+        }
+        measureCurvature();
+    }
+
+    /**
+     * Walk a {@link GCodePath} and build a parameterization that respects the feed rate of every element.  Rapid
+     * moves (G0) and elements with no feed rate use maxSpeed.
+     * @param path the path to walk.
+     * @param maxStepSize the maximum distance between samples on arcs.
+     * @param maxSpeed the speed limit of the machine, in cm/s.
+     * @param maxAcceleration the acceleration limit of the machine, in cm/s^2.
+     * @return the new parameterization.  Call {@link #solve()} before reading the timing.
+     */
+    public static PathTimeParameterization fromGCodePath(GCodePath path, double maxStepSize, double maxSpeed, double maxAcceleration) {
+        List<Point3d> points = new ArrayList<>();
+        List<Double> feeds = new ArrayList<>();
+        double feed = maxSpeed;
+        PathWalker walker = new PathWalker(null, path, maxStepSize);
+        while (walker.hasNext()) {
+            walker.next();
+            double f = path.getFeedrate(walker.getCurrentIndex());
+            if (f > 0) feed = f * FEEDRATE_TO_CM_PER_SECOND;
+
+            Point3d p = walker.getCurrentPosition();
+            if (!points.isEmpty() && points.get(points.size() - 1).distanceSquared(p) < 1e-18) continue;
+            points.add(p);
+            feeds.add(walker.getCurrentCommand().equalsIgnoreCase("G0") ? maxSpeed : Math.min(maxSpeed, feed));
+        }
+
+        int n = points.size();
+        double[] px = new double[n];
+        double[] py = new double[n];
+        double[] pz = new double[n];
+        for (int i = 0; i < n; ++i) {
+            Point3d p = points.get(i);
+            px[i] = p.x;
+            py[i] = p.y;
+            pz[i] = p.z;
+        }
+        PathTimeParameterization result = new PathTimeParameterization(px, py, pz, maxSpeed, maxAcceleration);
+        // the feed rate of an element applies to the move that ends at that element.
+        for (int i = 1; i < n; ++i) {
+            result.limitSegmentSpeed(i, feeds.get(i));
+        }
+        return result;
+    }
+
+    private double getSegmentLength(int i) {
+        double dx = x[i] - x[i - 1];
+        double dy = y[i] - y[i - 1];
+        double dz = z[i] - z[i - 1];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * The tool cannot go around a bend faster than v = sqrt(a / curvature).  Curvature at each sample is estimated
+     * from the circle through the sample and its two neighbours.
+     */
+    private void measureCurvature() {
+        for (int i = 1; i < size - 1; ++i) {
+            double ax = x[i] - x[i - 1], ay = y[i] - y[i - 1], az = z[i] - z[i - 1];
+            double bx = x[i + 1] - x[i], by = y[i + 1] - y[i], bz = z[i + 1] - z[i];
+            double cx = x[i + 1] - x[i - 1], cy = y[i + 1] - y[i - 1], cz = z[i + 1] - z[i - 1];
+            double crossX = ay * bz - az * by;
+            double crossY = az * bx - ax * bz;
+            double crossZ = ax * by - ay * bx;
+            double cross = Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+            double ab = (ax * ax + ay * ay + az * az) * (bx * bx + by * by + bz * bz);
+            double c = cx * cx + cy * cy + cz * cz;
+            if (ab == 0) curvature[i] = 0;  // repeated sample
+            else if (c == 0) curvature[i] = Double.POSITIVE_INFINITY;  // the path doubles back on itself
+            else curvature[i] = 2 * cross / Math.sqrt(ab * c);
+        }
+    }
+
+    /**
+     * Limit the speed of the segment that ends at sample i.
+     * @param i the sample at the end of the segment.
+     * @param limit the speed limit, in cm/s.
+     */
+    public void limitSegmentSpeed(int i, double limit) {
+        maxSpeed[i] = Math.min(maxSpeed[i], limit);
+        if (i > 0) maxSpeed[i - 1] = Math.min(maxSpeed[i - 1], limit);
+        solved = false;
+    }
+
+    /**
+     * Limit the acceleration of the segment that ends at sample i.
+     * @param i the sample at the end of the segment.
+     * @param limit the acceleration limit, in cm/s^2.
+     */
+    public void limitSegmentAcceleration(int i, double limit) {
+        maxAcceleration[i] = Math.min(maxAcceleration[i], limit);
+        if (i > 0) maxAcceleration[i - 1] = Math.min(maxAcceleration[i - 1], limit);
+        solved = false;
+    }
+
+    /**
+     * <p>Follow the path with a robot and lower the speed and acceleration limits wherever a joint would move faster
+     * than its own limits.  The joint values at each sample come from inverse kinematics, starting at the current
+     * pose of the robot, so dq/ds is known and the joint limits become path limits: |dq/ds| * v &lt;= joint
+     * velocity limit.</p>
+     * <p>The acceleration limit ignores the d^2q/ds^2 term, which is small when samples are close together.</p>
+     * @param chain the robot.
+     * @param startJoints the joint values of the robot at the start of the path.
+     * @param pathToBase transforms the path into the frame of the robot base.  null for identity.
+     * @return the number of samples the robot could not reach.
+     */
+    public int applyJointLimits(KinematicChain chain, double[] startJoints, Matrix4d pathToBase) {
+        int dof = chain.getDOF();
+        double[] joints = startJoints.clone();
+        double[] previous = new double[dof];
+        double[] target = new double[KinematicChain.MATRIX_SIZE];
+        target[0] = target[5] = target[10] = target[15] = 1;
+        Point3d p = new Point3d();
+        int unreachable = 0;
+
+        for (int i = 0; i < size; ++i) {
+            p.set(x[i], y[i], z[i]);
+            if (pathToBase != null) pathToBase.transform(p);
+            target[3] = p.x;
+            target[7] = p.y;
+            target[11] = p.z;
+            System.arraycopy(joints, 0, previous, 0, dof);
+            if (!chain.solveInverseKinematics(joints, target, true, 50, 1e-3)) unreachable++;
+            if (i == 0) continue;
+
+            double ds = distance[i] - distance[i - 1];
+            if (ds <= 0) continue;
+            for (int j = 0; j < dof; ++j) {
+                double dqds = Math.abs(joints[j] - previous[j]) / ds;
+                if (dqds < 1e-9) continue;
+                limitSegmentSpeed(i, chain.getMaxVelocity(j) / dqds);
+                limitSegmentAcceleration(i, chain.getMaxAcceleration(j) / dqds);
+            }
+        }
+        solved = false;
+        return unreachable;
+    }
+
+    /**
+     * Find the fastest speed at every sample.
+     */
+    public void solve() {
+        if (size == 0) {
+            solved = true;
+            return;
+        }
+        for (int i = 0; i < size; ++i) {
+            double v = maxSpeed[i];
+            if (curvature[i] > 0) v = Math.min(v, Math.sqrt(maxAcceleration[i] / curvature[i]));
+            speed[i] = Math.max(MIN_SPEED, v);
+        }
+        speed[0] = 0;
+        speed[size - 1] = 0;
+
+        // forward pass: v1^2 <= v0^2 + 2*a*ds
+        for (int i = 1; i < size; ++i) {
+            double ds = distance[i] - distance[i - 1];
+            double a = Math.min(maxAcceleration[i - 1], maxAcceleration[i]);
+            speed[i] = Math.min(speed[i], Math.sqrt(speed[i - 1] * speed[i - 1] + 2 * a * ds));
+        }
+        // backward pass
+        for (int i = size - 2; i >= 0; --i) {
+            double ds = distance[i + 1] - distance[i];
+            double a = Math.min(maxAcceleration[i], maxAcceleration[i + 1]);
+            speed[i] = Math.min(speed[i], Math.sqrt(speed[i + 1] * speed[i + 1] + 2 * a * ds));
+        }
+
+        time[0] = 0;
+        for (int i = 1; i < size; ++i) {
+            double ds = distance[i] - distance[i - 1];
+            double sum = speed[i - 1] + speed[i];
+            time[i] = time[i - 1] + (ds <= 0 ? 0 : 2 * ds / Math.max(sum, MIN_SPEED));
+        }
+        solved = true;
+    }
+
+    private void checkSolved() {
+        if (!solved) throw new IllegalStateException("call solve() first.");
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of the path, in cm.
+     */
+    public double getLength() {
+        return size == 0 ? 0 : distance[size - 1];
+    }
+
+    /**
+     * @return the time to travel the path, in seconds.
+     */
+    public double getDuration() {
+        checkSolved();
+        return size == 0 ? 0 : time[size - 1];
+    }
+
+    /**
+     * @param i the sample index.
+     * @return the time at which the tool reaches sample i, in seconds.
+     */
+    public double getTime(int i) {
+        checkSolved();
+        return time[i];
+    }
+
+    /**
+     * @param i the sample index.
+     * @return the speed of the tool at sample i, in cm/s.
+     */
+    public double getSpeed(int i) {
+        checkSolved();
+        return speed[i];
+    }
+
+    /**
+     * @param t time since the start of the path, in seconds.
+     * @return the distance travelled along the path at time t, in cm.
+     */
+    public double getDistance(double t) {
+        checkSolved();
+        if (size == 0 || t <= 0) return 0;
+        if (t >= time[size - 1]) return distance[size - 1];
+
+        // find the segment [i-1,i] that contains t
+        int low = 1, high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time[mid] < t) low = mid + 1;
+            else high = mid;
+        }
+        int i = low;
+        double dt = time[i] - time[i - 1];
+        double ds = distance[i] - distance[i - 1];
+        if (dt <= 0) return distance[i];
+        double tau = t - time[i - 1];
+        double v0 = speed[i - 1];
+        double a = (speed[i] - v0) / dt;
+        return distance[i - 1] + Math.min(ds, v0 * tau + 0.5 * a * tau * tau);
+    }
+
+    /**
+     * @param t time since the start of the path, in seconds.
+     * @param result will be filled with the position of the tool at time t.
+     */
+    public void getPosition(double t, Point3d result) {
+        double d = getDistance(t);
+        if (size == 0) {
+            result.set(0, 0, 0);
+            return;
+        }
+        int low = 0, high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (distance[mid] <= d) low = mid;
+            else high = mid - 1;
+        }
+        int i = low;
+        if (i == size - 1) {
+            result.set(x[i], y[i], z[i]);
+            return;
+        }
+        double ds = distance[i + 1] - distance[i];
+        double f = ds <= 0 ? 0 : (d - distance[i]) / ds;
+        result.set(
+                x[i] + (x[i + 1] - x[i]) * f,
+                y[i] + (y[i + 1] - y[i]) * f,
+                z[i] + (z[i + 1] - z[i]) * f);
+    }
+}
@@ -2,6 +2,7 @@ module com.marginallyclever.robotoverlord {
 	requires transitive java.desktop;
 	requires transitive java.prefs;
 	requires transitive java.logging;
+	requires java.management;
 	requires org.apache.commons.io;
 	requires com.fasterxml.jackson.core;
 	requires com.fasterxml.jackson.annotation;
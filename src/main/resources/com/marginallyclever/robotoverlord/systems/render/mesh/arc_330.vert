@@ -0,0 +1,20 @@
+// vertex shader
+// one vertex per arc.  the geometry shader turns it into a line strip.
+#version 330 core
+
+layout(location = 0) in vec3 aPosition;  // center x, center y, start z
+layout(location = 1) in vec3 aNormal;  // radius, start angle, sweep
+layout(location = 2) in vec4 aColor;
+layout(location = 3) in vec2 aTexture;  // change in z
+
+out vec3 arcCenter;
+out vec3 arcShape;
+out vec4 arcColor;
+out float arcDeltaZ;
+
+void main() {
+    arcCenter = aPosition;
+    arcShape = aNormal;
+    arcColor = aColor;
+    arcDeltaZ = aTexture.x;
+}
@@ -0,0 +1,103 @@
+package com.marginallyclever.communications.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConversationHistoryModelTest {
+	private static List<ConversationEvent> batch(int from,int count) {
+		List<ConversationEvent> list = new ArrayList<>();
+		for(int i=from;i<from+count;++i) list.add(new ConversationEvent("robot","N"+i+" G1 X"+i+".5 ok"));
+		return list;
+	}
+
+	@Test
+	public void testBatchFiresOneEvent() {
+		ConversationHistoryModel model = new ConversationHistoryModel(100,null);
+		List<ListDataEvent> events = new ArrayList<>();
+		model.addListDataListener(new ListDataListener() {
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				events.add(e);
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				events.add(e);
+			}
+
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				events.add(e);
+			}
+		});
+		model.addAll(batch(0,60));
+		Assertions.assertEquals(1,events.size());
+		Assertions.assertEquals(59,events.get(0).getIndex1());
+
+		// 60 more overflow by 20: one removal and one addition.
+		model.addAll(batch(60,60));
+		Assertions.assertEquals(3,events.size());
+		Assertions.assertEquals(ListDataEvent.INTERVAL_REMOVED,events.get(1).getType());
+		Assertions.assertEquals(19,events.get(1).getIndex1());
+		Assertions.assertEquals(100,model.getSize());
+		Assertions.assertEquals("N20 G1 X20.5 ok",model.getElementAt(0).whatWasSaid);
+		Assertions.assertEquals("N119 G1 X119.5 ok",model.getElementAt(99).whatWasSaid);
+	}
+
+	@Test
+	public void testSpillAndSave() throws Exception {
+		File file = File.createTempFile("ConversationHistoryModelTest",".log.gz");
+		try(ConversationSpillLog spill = new ConversationSpillLog(file)) {
+			ConversationHistoryModel model = new ConversationHistoryModel(1000,spill);
+			for(int i=0;i<50000;i+=500) model.addAll(batch(i,500));
+			// one huge batch is bigger than the ring.
+			model.addAll(batch(50000,2500));
+
+			Assertions.assertEquals(1000,model.getSize());
+			Assertions.assertEquals(51500,model.getEvicted());
+			Assertions.assertEquals(51500,spill.getLines());
+
+			StringWriter out = new StringWriter();
+			model.save(out);
+			String [] lines = out.toString().split("\n");
+			Assertions.assertEquals(52500,lines.length);
+			for(int i=0;i<lines.length;++i) Assertions.assertEquals("robot: N"+i+" G1 X"+i+".5 ok",lines[i]);
+			// the file is much smaller than the text.
+			Assertions.assertTrue(spill.getFileSize()*5<out.toString().length(),"spill "+spill.getFileSize());
+
+			model.clear();
+			Assertions.assertEquals(0,model.getSize());
+			StringWriter empty = new StringWriter();
+			model.save(empty);
+			Assertions.assertEquals("",empty.toString());
+		}
+		Assertions.assertFalse(file.exists());
+	}
+
+	@Test
+	public void testSearch() {
+		ConversationHistoryModel model = new ConversationHistoryModel(100,null);
+		model.addAll(batch(0,150));
+		model.addElement(new ConversationEvent("robot","error:2"));
+
+		// 0 to 50 are gone, 51 is at index 0.
+		Assertions.assertEquals(List.of(49),model.search("N100 "));
+		Assertions.assertEquals(List.of(49),model.search("x100.5"));
+		Assertions.assertEquals(10,model.search("X10").size());
+		Assertions.assertEquals(List.of(99),model.search("ERROR:"));
+		Assertions.assertEquals(List.of(99),model.search(":2"));
+		// evicted events are not in the index.
+		Assertions.assertEquals(List.of(),model.search("N49 "));
+		Assertions.assertEquals(49,model.findNext("X10",-1));
+		Assertions.assertEquals(51,model.findNext("X10",50));
+		Assertions.assertEquals(49,model.findNext("X10",99));
+		Assertions.assertEquals(-1,model.findNext("M114",0));
+	}
+}
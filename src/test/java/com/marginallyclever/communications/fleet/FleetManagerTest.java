@@ -0,0 +1,119 @@
+package com.marginallyclever.communications.fleet;
+
+import com.marginallyclever.communications.transport.sim.SimulatedSession;
+import com.marginallyclever.communications.transport.sim.SimulatedTransportLayer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class FleetManagerTest {
+	private static final int DEVICES = 20;
+
+	private static void waitFor(FleetManager fleet,FleetDevice.Health health,int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis()+5000;
+		while(fleet.getHealthCounts()[health.ordinal()]!=count && System.currentTimeMillis()<deadline) Thread.sleep(10);
+		Assertions.assertEquals(count,fleet.getHealthCounts()[health.ordinal()],health.name());
+	}
+
+	@Test
+	public void testBroadcastToManyDevices() throws Exception {
+		FleetManager fleet = new FleetManager(20);
+		SimulatedTransportLayer layer = new SimulatedTransportLayer();
+		int threadsBefore = Thread.activeCount();
+		for(int i=0;i<DEVICES;++i) {
+			SimulatedSession session = new SimulatedSession(layer);
+			session.openConnection("sim:marlin?axes=XYZ&latency=1");
+			fleet.add(session);
+		}
+		// sessions share threads.  no thread per device.
+		Assertions.assertTrue(Thread.activeCount()-threadsBefore<DEVICES/2,"threads "+(Thread.activeCount()-threadsBefore));
+		List<FleetDevice> devices = fleet.getDevices();
+		Assertions.assertEquals(DEVICES,devices.size());
+		waitFor(fleet,FleetDevice.Health.IDLE,DEVICES);
+
+		try {
+			for(int round=0;round<5;++round) {
+				FleetBroadcast b = fleet.broadcast("G0 X"+round);
+				Assertions.assertTrue(b.await(5000));
+				Assertions.assertEquals(DEVICES,b.getAnswered());
+				Assertions.assertTrue(b.getSendSkewMillis()>=0);
+				Assertions.assertTrue(b.getAckSkewMillis()>=0);
+				for(int i=0;i<DEVICES;++i) {
+					Assertions.assertNull(b.getFailure(i));
+					Assertions.assertTrue(b.getRoundTripMillis(i)>=0);
+				}
+			}
+			for(FleetDevice d : devices) {
+				Assertions.assertEquals(5,d.getAcks());
+				Assertions.assertEquals(5,d.getSession().getSessionMetrics().getLinesOut());
+				Assertions.assertEquals(5,d.getSession().getSessionMetrics().getLatency().getCount());
+			}
+
+			// one controller goes away.
+			devices.get(3).getSession().closeConnection();
+			waitFor(fleet,FleetDevice.Health.CLOSED,1);
+			FleetBroadcast b = fleet.broadcast("M400");
+			Assertions.assertTrue(b.await(5000));
+			Assertions.assertEquals(DEVICES-1,b.getDevices().size());
+
+			fleet.remove(devices.get(3));
+			Assertions.assertEquals(DEVICES-1,fleet.getDevices().size());
+		} finally {
+			fleet.closeAll();
+		}
+		Assertions.assertTrue(fleet.getDevices().isEmpty());
+		for(FleetDevice d : devices) Assertions.assertFalse(d.getSession().isOpen());
+	}
+
+	@Test
+	public void testSilentDevice() throws Exception {
+		FleetManager fleet = new FleetManager(20);
+		fleet.setSilentMillis(100);
+		// a manual clock never moves, so the controller never answers.
+		SimulatedSession session = new SimulatedSession(new SimulatedTransportLayer(),true);
+		session.openConnection("sim:grbl");
+		fleet.add(session);
+		try {
+			FleetBroadcast b = fleet.broadcast("G0 X1");
+			Assertions.assertFalse(b.await(200));
+			waitFor(fleet,FleetDevice.Health.SILENT,1);
+			session.advance(0.1);
+			Assertions.assertTrue(b.await(5000));
+			waitFor(fleet,FleetDevice.Health.IDLE,1);
+		} finally {
+			fleet.closeAll();
+		}
+	}
+
+	/**
+	 * An answer to a command the fleet did not send is not counted by the fleet.
+	 */
+	@Test
+	public void testOnlyCountFleetAnswers() throws Exception {
+		FleetManager fleet = new FleetManager(20);
+		SimulatedSession session = new SimulatedSession(new SimulatedTransportLayer(),true);
+		session.openConnection("sim:grbl");
+		FleetDevice device = fleet.add(session);
+		try {
+			Thread.sleep(100);
+			// someone else sends a command.
+			session.sendMessage("G0 X1\n");
+			session.advance(0.1);
+			long deadline = System.currentTimeMillis()+5000;
+			while(device.getSecondsSinceHeard()>0.05 && System.currentTimeMillis()<deadline) Thread.sleep(5);
+			Thread.sleep(20);
+			Assertions.assertEquals(0,device.getAcks());
+			Assertions.assertEquals(0,session.getSessionMetrics().getLatency().getCount());
+
+			FleetBroadcast b = fleet.broadcast("G0 X2");
+			Assertions.assertFalse(b.await(200));
+			session.advance(0.1);
+			Assertions.assertTrue(b.await(5000));
+			Assertions.assertEquals(1,device.getAcks());
+			Assertions.assertEquals(1,session.getSessionMetrics().getLatency().getCount());
+		} finally {
+			fleet.closeAll();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.marginallyclever.communications.jointstate;
+
+import com.marginallyclever.communications.session.SessionLayer;
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.TransportLayer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JointStateDecoderTest {
+	/**
+	 * A session that is fed by the test.
+	 */
+	private static class FedSession extends SessionLayer {
+		void feed(byte [] data,int offset,int length) {
+			receiveBytes(ByteBuffer.wrap(data,offset,length));
+		}
+
+		@Override public void closeConnection() {}
+		@Override public void openConnection(String connectionName) {}
+		@Override public void reconnect() {}
+		@Override public boolean isOpen() { return true; }
+		@Override public String getName() { return "fed"; }
+		@Override public void sendMessage(String msg) {}
+		@Override public TransportLayer getTransportLayer() { return null; }
+	}
+
+	private static JointStateFrame makeFrame(int device,int sequence,int joints) {
+		JointStateFrame frame = new JointStateFrame();
+		frame.deviceId = device;
+		frame.sequence = sequence & 0xFFFF;
+		frame.timestampMicros = sequence*1000L;
+		frame.jointCount = joints;
+		for(int j=0;j<joints;++j) {
+			frame.position[j] = sequence*0.1f+j;
+			frame.velocity[j] = -j;
+			// zeros in the message test the COBS.
+			frame.current[j] = 0;
+		}
+		return frame;
+	}
+
+	@Test
+	public void testCOBSRoundTrip() {
+		Random random = new Random(1);
+		for(int length : new int[]{0,1,253,254,255,508,600}) {
+			for(int zeros : new int[]{0,1,10}) {
+				byte [] src = new byte[length];
+				for(int i=0;i<length;++i) src[i] = (byte)(1+random.nextInt(255));
+				for(int i=0;i<zeros && length>0;++i) src[random.nextInt(length)] = 0;
+
+				byte [] encoded = new byte[COBS.maxEncodedLength(length)];
+				int n = COBS.encode(src,0,length,encoded,0);
+				for(int i=0;i<n;++i) Assertions.assertNotEquals(0,encoded[i]);
+
+				// in place.
+				int m = COBS.decode(encoded,0,n,encoded,0);
+				Assertions.assertEquals(length,m,"length "+length+" zeros "+zeros);
+				Assertions.assertArrayEquals(src,Arrays.copyOf(encoded,m));
+			}
+		}
+	}
+
+	@Test
+	public void testFramesRoundTripAndErrors() {
+		JointStateEncoder encoder = new JointStateEncoder();
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		byte [] buffer = new byte[JointStateEncoder.MAX_FRAME_SIZE];
+		for(int s=0;s<100;++s) {
+			// frame 50 is lost on the way.
+			if(s==50) continue;
+			int n = encoder.encode(makeFrame(3,s,6),buffer,0);
+			// frame 70 is damaged on the way.
+			if(s==70) buffer[n/2] ^= 0x10;
+			wire.write(buffer,0,n);
+		}
+		byte [] data = wire.toByteArray();
+
+		JointStateDecoder decoder = new JointStateDecoder();
+		List<Integer> heard = new ArrayList<>();
+		float [] last = new float[6];
+		JointStateDecoder.Listener listener = (frame)->{
+			heard.add(frame.sequence);
+			Assertions.assertEquals(3,frame.deviceId);
+			Assertions.assertEquals(6,frame.jointCount);
+			Assertions.assertEquals(frame.sequence*1000L,frame.timestampMicros);
+			System.arraycopy(frame.position,0,last,0,6);
+		};
+		// feed a few bytes at a time, the way a serial port would.
+		int i=0;
+		while(i<data.length) {
+			if(!decoder.isInFrame()) {
+				Assertions.assertEquals(0,data[i++]);
+				decoder.startFrame();
+				continue;
+			}
+			i += decoder.accept(data,i,Math.min(7,data.length-i),listener);
+		}
+		Assertions.assertEquals(98,heard.size());
+		Assertions.assertFalse(heard.contains(50));
+		Assertions.assertFalse(heard.contains(70));
+		Assertions.assertEquals(1,decoder.getCrcErrors()+decoder.getBadFrames());
+		Assertions.assertEquals(2,decoder.getLostFrames());
+		Assertions.assertEquals(99*0.1f+5,last[5],1e-4);
+	}
+
+	@Test
+	public void testTextAndFramesShareASession() throws Exception {
+		JointStateEncoder encoder = new JointStateEncoder();
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		byte [] buffer = new byte[JointStateEncoder.MAX_FRAME_SIZE];
+		int frames = 6*1000;
+		int lines = 0;
+		for(int s=0;s<frames;++s) {
+			// six arms at 1kHz for one second, with text in between.
+			int n = encoder.encode(makeFrame(s%6,s/6,6),buffer,0);
+			wire.write(buffer,0,n);
+			if(s%100==0) {
+				wire.write(("ok "+lines+++"\n").getBytes(StandardCharsets.ISO_8859_1));
+			}
+		}
+		// a stray zero followed by text is given back as text once the frame is too long.
+		wire.write(0);
+		byte [] junk = new byte[JointStateEncoder.MAX_FRAME_SIZE];
+		Arrays.fill(junk,(byte)'-');
+		wire.write(junk);
+		wire.write(("\nok "+lines+++"\n").getBytes(StandardCharsets.ISO_8859_1));
+		byte [] data = wire.toByteArray();
+
+		FedSession session = new FedSession();
+		JointStateBuffer states = new JointStateBuffer(frames);
+		session.setJointStateListener(states);
+		List<String> heard = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(lines);
+		session.addBackgroundListener((evt)->{
+			if(evt.flag!=SessionLayerEvent.DATA_AVAILABLE) return;
+			String str = (String)evt.data;
+			if(str.startsWith("ok")) {
+				heard.add(str);
+				done.countDown();
+			}
+		});
+		Random random = new Random(2);
+		for(int i=0;i<data.length;) {
+			int n = Math.min(data.length-i,1+random.nextInt(300));
+			session.feed(data,i,n);
+			i+=n;
+		}
+		Assertions.assertTrue(done.await(5,TimeUnit.SECONDS));
+		for(int i=0;i<lines;++i) Assertions.assertEquals("ok "+i,heard.get(i));
+
+		JointStateDecoder decoder = session.getJointStateDecoder();
+		Assertions.assertEquals(frames,decoder.getFrames());
+		Assertions.assertEquals(0,decoder.getLostFrames());
+		Assertions.assertEquals(0,decoder.getCrcErrors());
+		Assertions.assertEquals(1,decoder.getBadFrames());
+		int [] count = {0};
+		Assertions.assertEquals(frames,states.drain((time,position,n)->count[0]++));
+		Assertions.assertEquals(frames,count[0]);
+	}
+}
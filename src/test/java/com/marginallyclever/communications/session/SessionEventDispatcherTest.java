@@ -0,0 +1,124 @@
+package com.marginallyclever.communications.session;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SessionEventDispatcherTest {
+	private static final int LINES = 10000;
+
+	private static SessionLayerEvent line(int i) {
+		return new SessionLayerEvent("test",SessionLayerEvent.DATA_AVAILABLE,"ok "+i);
+	}
+
+	/**
+	 * Wait until the Event Dispatch Thread has run everything queued so far, including a pending batch.
+	 */
+	private static void waitForUI(SessionEventDispatcher dispatcher) throws Exception {
+		Thread.sleep(dispatcher.getBatchMillis()*3L+20);
+		SwingUtilities.invokeAndWait(()->{});
+	}
+
+	/**
+	 * Keep the Event Dispatch Thread busy until the latch is released, like a UI that has fallen behind.
+	 */
+	private static CountDownLatch holdUI() {
+		CountDownLatch release = new CountDownLatch(1);
+		SwingUtilities.invokeLater(()->{
+			try {
+				release.await();
+			} catch (InterruptedException ignored) {}
+		});
+		return release;
+	}
+
+	@Test
+	public void testLinesAreBatched() throws Exception {
+		SessionEventDispatcher dispatcher = new SessionEventDispatcher();
+		List<Object> heard = Collections.synchronizedList(new ArrayList<>());
+		dispatcher.addUIListener((evt)->{
+			Assertions.assertTrue(SwingUtilities.isEventDispatchThread());
+			heard.add(evt.data);
+		});
+		for(int i=0;i<LINES/10;++i) dispatcher.dispatch(line(i));
+		waitForUI(dispatcher);
+
+		Assertions.assertEquals(LINES/10,heard.size());
+		for(int i=0;i<heard.size();++i) Assertions.assertEquals("ok "+i,heard.get(i));
+		Assertions.assertTrue(dispatcher.getBatches()<LINES/10,"batches: "+dispatcher.getBatches());
+		Assertions.assertEquals(0,dispatcher.getDroppedLines());
+	}
+
+	/**
+	 * A UI listener that throws does not stop the batch or the listeners after it.
+	 */
+	@Test
+	public void testUIListenerThrows() throws Exception {
+		SessionEventDispatcher dispatcher = new SessionEventDispatcher();
+		dispatcher.addUIListener((evt)->{
+			throw new IllegalStateException("bad listener");
+		});
+		List<Object> heard = Collections.synchronizedList(new ArrayList<>());
+		dispatcher.addUIListener((evt)->heard.add(evt.data));
+		for(int i=0;i<100;++i) dispatcher.dispatch(line(i));
+		waitForUI(dispatcher);
+
+		Assertions.assertEquals(100,heard.size());
+		Assertions.assertEquals("ok 99",heard.get(99));
+	}
+
+	@Test
+	public void testSlowUIDropsAndSummarizes() throws Exception {
+		SessionEventDispatcher dispatcher = new SessionEventDispatcher();
+		dispatcher.setUICapacity(100);
+		List<SessionLayerEvent> heard = Collections.synchronizedList(new ArrayList<>());
+		dispatcher.addUIListener(heard::add);
+
+		CountDownLatch release = holdUI();
+		for(int i=0;i<LINES;++i) dispatcher.dispatch(line(i));
+		dispatcher.dispatch(new SessionLayerEvent("test",SessionLayerEvent.CONNECTION_CLOSED,null));
+		release.countDown();
+		waitForUI(dispatcher);
+
+		Assertions.assertEquals(102,heard.size());
+		Assertions.assertEquals("ok 99",heard.get(99).data);
+		Assertions.assertEquals(SessionLayerEvent.DATA_DROPPED,heard.get(100).flag);
+		Assertions.assertEquals(LINES-100,heard.get(100).data);
+		Assertions.assertEquals(SessionLayerEvent.CONNECTION_CLOSED,heard.get(101).flag);
+		Assertions.assertEquals(LINES-100,dispatcher.getDroppedLines());
+	}
+
+	@Test
+	public void testBackgroundListenerHearsEverything() throws Exception {
+		SessionEventDispatcher dispatcher = new SessionEventDispatcher();
+		dispatcher.setUICapacity(10);
+		List<Object> heard = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(LINES);
+		dispatcher.addBackgroundListener((evt)->{
+			if(!SwingUtilities.isEventDispatchThread()) heard.add(evt.data);
+			done.countDown();
+		});
+		dispatcher.addUIListener((evt)->{});
+
+		// the background listener keeps up even while the UI is stuck.
+		CountDownLatch release = holdUI();
+		Thread producer = new Thread(()->{
+			for(int i=0;i<LINES;++i) dispatcher.dispatch(line(i));
+		});
+		producer.start();
+		boolean finished = done.await(10,TimeUnit.SECONDS);
+		release.countDown();
+		producer.join();
+
+		Assertions.assertTrue(finished);
+		Assertions.assertEquals(LINES,heard.size());
+		for(int i=0;i<LINES;++i) Assertions.assertEquals("ok "+i,heard.get(i));
+		Assertions.assertEquals(LINES-10,dispatcher.getDroppedLines());
+	}
+}
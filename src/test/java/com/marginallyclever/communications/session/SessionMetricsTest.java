@@ -0,0 +1,119 @@
+package com.marginallyclever.communications.session;
+
+import com.marginallyclever.communications.transport.TransportLayer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class SessionMetricsTest {
+	private static class FedSession extends SessionLayer {
+		void feed(String text) {
+			receiveBytes(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+		}
+
+		@Override public void closeConnection() {}
+		@Override public void openConnection(String connectionName) {}
+		@Override public void reconnect() {}
+		@Override public boolean isOpen() { return true; }
+		@Override public String getName() { return "fed, \"quoted\""; }
+		@Override public void sendMessage(String msg) {}
+		@Override public TransportLayer getTransportLayer() { return null; }
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		Assertions.assertEquals(0,h.getPercentileMillis(0.5));
+		// 1..1000 ms, evenly.
+		for(int i=1;i<=1000;++i) h.record(i*1_000_000L);
+		Assertions.assertEquals(1000,h.getCount());
+		Assertions.assertEquals(500.5,h.getMeanMillis(),1e-9);
+		Assertions.assertEquals(1000,h.getMaxMillis(),1e-9);
+		// buckets double in width, so a percentile is good to within a factor of two.
+		double p50 = h.getPercentileMillis(0.5);
+		Assertions.assertTrue(p50>=250 && p50<=1000,"p50 "+p50);
+		double p99 = h.getPercentileMillis(0.99);
+		Assertions.assertTrue(p99>=p50 && p99<=1000,"p99 "+p99);
+		Assertions.assertTrue(h.getPercentileMillis(0.01)<=20);
+		h.clear();
+		Assertions.assertEquals(0,h.getCount());
+	}
+
+	@Test
+	public void testRoundTripsAreMatchedOldestFirst() throws Exception {
+		SessionMetrics m = new SessionMetrics();
+		m.commandAcknowledged();
+		Assertions.assertEquals(0,m.getLatency().getCount());
+
+		m.commandSent();
+		Thread.sleep(20);
+		m.commandSent();
+		Assertions.assertEquals(2,m.getCommandsWaiting());
+		m.commandAcknowledged();
+		m.commandAcknowledged();
+		Assertions.assertEquals(0,m.getCommandsWaiting());
+		Assertions.assertEquals(2,m.getLatency().getCount());
+		Assertions.assertTrue(m.getLatency().getMaxMillis()>=20);
+
+		// more than can be timed are sent.  the extra ones are not timed, and nothing breaks.
+		for(int i=0;i<1000;++i) m.commandSent();
+		for(int i=0;i<1000;++i) m.commandAcknowledged();
+		Assertions.assertEquals(0,m.getCommandsWaiting());
+	}
+
+	@Test
+	public void testBlockedAndOccupancy() throws Exception {
+		SessionMetrics m = new SessionMetrics();
+		m.setBlocked(true);
+		Thread.sleep(30);
+		m.setBlocked(false);
+		double blocked = m.getBlockedSeconds();
+		Assertions.assertTrue(blocked>=0.03,"blocked "+blocked);
+		Thread.sleep(10);
+		Assertions.assertEquals(blocked,m.getBlockedSeconds());
+
+		m.setOccupancy(5,20);
+		m.setOccupancy(15,20);
+		m.setOccupancy(10,20);
+		Assertions.assertEquals(10,m.getOccupancy());
+		Assertions.assertEquals(20,m.getCapacity());
+		Assertions.assertEquals(15,m.getPeakOccupancy());
+		Assertions.assertEquals(50,m.getMeanOccupancyPercent(),1e-9);
+
+		m.addResend();
+		m.addError();
+		Assertions.assertEquals(1,m.getResends());
+		Assertions.assertEquals(1,m.getErrors());
+	}
+
+	@Test
+	public void testSessionCountsLinesAndShowsThemOverJMX() throws Exception {
+		FedSession session = new FedSession();
+		session.feed("ok\n\nok\r\necho:busy\n");
+		Assertions.assertEquals(3,session.getSessionMetrics().getLinesIn());
+		session.getSessionMetrics().addLineOut();
+
+		ObjectName name = SessionMetricsJMX.register(session);
+		Assertions.assertNotNull(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			Assertions.assertEquals(3L,server.getAttribute(name,"LinesIn"));
+			Assertions.assertEquals(1L,server.getAttribute(name,"LinesOut"));
+			Assertions.assertEquals(0L,server.getAttribute(name,"Resends"));
+			session.getSessionMetrics().addResend();
+			Assertions.assertEquals(1L,server.getAttribute(name,"Resends"));
+
+			// a new connection starts new metrics, and the bean follows.
+			session.resetTransport();
+			Assertions.assertEquals(0L,server.getAttribute(name,"LinesIn"));
+		} finally {
+			SessionMetricsJMX.unregister(name);
+		}
+		Assertions.assertFalse(server.isRegistered(name));
+	}
+}
@@ -0,0 +1,84 @@
+package com.marginallyclever.communications.transport;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LineFramerTest {
+	private final List<String> lines = new ArrayList<>();
+	private final LineFramer.LineListener listener = (line,length)->lines.add(LineFramer.toString(line,length));
+
+	private static ByteBuffer heap(String s) {
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static ByteBuffer direct(String s) {
+		byte [] b = s.getBytes(StandardCharsets.ISO_8859_1);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(b.length);
+		buffer.put(b).flip();
+		return buffer;
+	}
+
+	@Test
+	public void testSplitAcrossReads() {
+		for(boolean useDirect : new boolean[]{false,true}) {
+			lines.clear();
+			LineFramer framer = new LineFramer(64);
+			String [] parts = {"o","k\nX:1 Y","","2\r","\nok\n\nerror:3\n","echo"};
+			for(String p : parts) framer.accept(useDirect ? direct(p) : heap(p),listener);
+			Assertions.assertEquals(List.of("ok","X:1 Y2","ok","","error:3"),lines);
+			Assertions.assertEquals(4,framer.getPending());
+			Assertions.assertEquals(5,framer.getLines());
+		}
+	}
+
+	@Test
+	public void testRingWrapsAround() {
+		for(boolean useDirect : new boolean[]{false,true}) {
+			lines.clear();
+			LineFramer framer = new LineFramer(16);
+			List<String> expected = new ArrayList<>();
+			StringBuilder sb = new StringBuilder();
+			for(int i=0;i<100;++i) {
+				String line = "ok "+i;
+				expected.add(line);
+				sb.append(line).append('\n');
+			}
+			// feed in odd sized pieces so lines start all over the ring.
+			String all = sb.toString();
+			for(int i=0;i<all.length();i+=7) {
+				String p = all.substring(i,Math.min(all.length(),i+7));
+				framer.accept(useDirect ? direct(p) : heap(p),listener);
+			}
+			Assertions.assertEquals(expected,lines);
+			Assertions.assertEquals(0,framer.getPending());
+		}
+	}
+
+	@Test
+	public void testOversizedLineIsCut() {
+		for(boolean useDirect : new boolean[]{false,true}) {
+			lines.clear();
+			LineFramer framer = new LineFramer(8);
+			Assertions.assertEquals(8,framer.getCapacity());
+			String [] parts = {"0123456","789ABCDEF","GHIJ\nok\n"};
+			for(String p : parts) framer.accept(useDirect ? direct(p) : heap(p),listener);
+			Assertions.assertEquals(List.of("01234567","ok"),lines);
+			Assertions.assertEquals(1,framer.getOversizedLines());
+			Assertions.assertEquals(12,framer.getBytesDiscarded());
+		}
+	}
+
+	@Test
+	public void testClear() {
+		LineFramer framer = new LineFramer();
+		framer.accept(heap("partial"),listener);
+		framer.clear();
+		framer.accept(heap("ok\n"),listener);
+		Assertions.assertEquals(List.of("ok"),lines);
+	}
+}
@@ -0,0 +1,78 @@
+package com.marginallyclever.communications.transport;
+
+import com.marginallyclever.communications.transport.tcp.LoopbackServer;
+import com.marginallyclever.communications.transport.tcp.RawTCPSession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SessionEventLoopTest {
+	private static SocketChannel connect(LoopbackServer server) throws IOException {
+		String address = server.getAddress().substring(RawTCPSession.PREFIX.length());
+		int colon = address.lastIndexOf(':');
+		return SocketChannel.open(new InetSocketAddress(address.substring(0,colon),Integer.parseInt(address.substring(colon+1))));
+	}
+
+	private static ByteBuffer line(String text) {
+		return ByteBuffer.wrap((text+"\n").getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * One handler throws.  Its connection is closed with the error and the other connection on the same loop keeps
+	 * receiving.
+	 */
+	@Test
+	public void testHandlerThrows() throws Exception {
+		try(LoopbackServer server = new LoopbackServer()) {
+			SessionEventLoop loop = new SessionEventLoop();
+
+			AtomicReference<IOException> badCause = new AtomicReference<>();
+			CountDownLatch badClosed = new CountDownLatch(1);
+			SessionEventLoop.Connection bad = loop.register(connect(server),new SessionEventLoop.Handler() {
+				@Override
+				public void onBytes(ByteBuffer data) {
+					throw new IllegalStateException("bad handler");
+				}
+
+				@Override
+				public void onClosed(IOException cause) {
+					badCause.set(cause);
+					badClosed.countDown();
+				}
+			},new TransportMetrics());
+
+			Semaphore goodBytes = new Semaphore(0);
+			SessionEventLoop.Connection good = loop.register(connect(server),new SessionEventLoop.Handler() {
+				@Override
+				public void onBytes(ByteBuffer data) {
+					goodBytes.release(data.remaining());
+				}
+
+				@Override
+				public void onClosed(IOException cause) {}
+			},new TransportMetrics());
+
+			bad.write(line("G0 X1"));
+			Assertions.assertTrue(badClosed.await(5,TimeUnit.SECONDS));
+			Assertions.assertNotNull(badCause.get());
+			Assertions.assertFalse(bad.isOpen());
+
+			// "ok\n" for each line.
+			for(int i=0;i<3;++i) {
+				good.write(line("G0 X"+i));
+				Assertions.assertTrue(goodBytes.tryAcquire(3,5,TimeUnit.SECONDS),"line "+i);
+			}
+			Assertions.assertTrue(good.isOpen());
+			good.close();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.marginallyclever.communications.transport.replay;
+
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.sim.SimulatedSession;
+import com.marginallyclever.communications.transport.sim.SimulatedTransportLayer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReplaySessionTest {
+	@Test
+	public void testRecordingRoundTrip() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		SessionRecorder recorder = new SessionRecorder(file,"COM3");
+		recorder.sent("G0 X1\n".getBytes(StandardCharsets.ISO_8859_1),0,6);
+		Thread.sleep(2);
+		recorder.received(ByteBuffer.wrap("xxok\n".getBytes(StandardCharsets.ISO_8859_1),2,3));
+		// a direct buffer, and a record bigger than the reader starts with.
+		ByteBuffer direct = ByteBuffer.allocateDirect(10000);
+		for(int i=0;i<10000;++i) direct.put((byte)i);
+		direct.flip();
+		recorder.received(direct);
+		Assertions.assertEquals(0,direct.position());
+		recorder.close();
+		recorder.sent(new byte[1],0,1);
+		Assertions.assertEquals(3,recorder.getRecords());
+		Assertions.assertEquals(10009,recorder.getBytes());
+
+		SessionRecordingReader reader = new SessionRecordingReader(new ByteArrayInputStream(file.toByteArray()));
+		Assertions.assertEquals("COM3",reader.getConnectionName());
+		Assertions.assertTrue(reader.next());
+		Assertions.assertEquals(SessionRecorder.SENT,reader.getType());
+		Assertions.assertEquals("G0 X1\n",new String(reader.getData(),0,reader.getLength(),StandardCharsets.ISO_8859_1));
+		long t0 = reader.getTimeNanos();
+		Assertions.assertTrue(reader.next());
+		Assertions.assertEquals(SessionRecorder.RECEIVED,reader.getType());
+		Assertions.assertEquals("ok\n",new String(reader.getData(),0,reader.getLength(),StandardCharsets.ISO_8859_1));
+		Assertions.assertTrue(reader.getTimeNanos()-t0>=2_000_000);
+		Assertions.assertTrue(reader.next());
+		Assertions.assertEquals(10000,reader.getLength());
+		for(int i=0;i<10000;++i) Assertions.assertEquals((byte)i,reader.getData()[i]);
+		Assertions.assertFalse(reader.next());
+		reader.close();
+
+		// a recording cut short ends at the last whole record.
+		byte [] whole = file.toByteArray();
+		byte [] cut = new byte[whole.length-100];
+		System.arraycopy(whole,0,cut,0,cut.length);
+		reader = new SessionRecordingReader(new ByteArrayInputStream(cut));
+		Assertions.assertTrue(reader.next());
+		Assertions.assertTrue(reader.next());
+		Assertions.assertFalse(reader.next());
+	}
+
+	private static List<String> collectLines(ReplaySession session,CountDownLatch closed) {
+		List<String> heard = Collections.synchronizedList(new ArrayList<>());
+		session.addBackgroundListener((evt)->{
+			if(evt.flag==SessionLayerEvent.DATA_AVAILABLE) heard.add((String)evt.data);
+			if(evt.flag==SessionLayerEvent.CONNECTION_CLOSED) closed.countDown();
+		});
+		return heard;
+	}
+
+	@Test
+	public void testReplayMatchesTheRecordedSession(@TempDir File dir) throws Exception {
+		// record a simulated controller.
+		File file = new File(dir,"marlin.rosr");
+		SimulatedSession sim = new SimulatedSession(new SimulatedTransportLayer(),true);
+		sim.openConnection("sim:marlin?axes=XYZ&latency=1");
+		List<String> original = Collections.synchronizedList(new ArrayList<>());
+		sim.addBackgroundListener((evt)->{
+			if(evt.flag==SessionLayerEvent.DATA_AVAILABLE) original.add((String)evt.data);
+		});
+		sim.setRecorder(new SessionRecorder(file,sim.getName()));
+		long started = System.nanoTime();
+		for(int i=0;i<20;++i) {
+			sim.sendMessage("G0 X"+i+"\n");
+			sim.sendMessage("M114\n");
+			sim.advance(0.01);
+			Thread.sleep(2);
+		}
+		sim.setRecorder(null);
+		double recorded = (System.nanoTime()-started)*1e-9;
+		sim.closeConnection();
+		long deadline = System.currentTimeMillis()+5000;
+		while(original.size()<60 && System.currentTimeMillis()<deadline) Thread.sleep(5);
+		Assertions.assertEquals(60,original.size());
+
+		// as fast as possible.
+		ReplaySession fast = new ReplaySession(new ReplayTransportLayer());
+		CountDownLatch fastClosed = new CountDownLatch(1);
+		List<String> fastLines = collectLines(fast,fastClosed);
+		fast.openConnection(ReplaySession.PREFIX+file.getPath()+"?speed=max");
+		Assertions.assertTrue(fast.awaitEnd(5000));
+		Assertions.assertTrue(fastClosed.await(5,TimeUnit.SECONDS));
+		Assertions.assertEquals(original,fastLines);
+		Assertions.assertFalse(fast.isOpen());
+		Assertions.assertEquals(fast.getTransportMetrics().getBytesIn(),
+				original.stream().mapToInt((s)->s.length()+1).sum());
+		Assertions.assertTrue(fast.getRecordedBytesSent()>0);
+
+		// in real time, which takes about as long as recording did.
+		ReplaySession real = new ReplaySession(new ReplayTransportLayer());
+		CountDownLatch realClosed = new CountDownLatch(1);
+		List<String> realLines = collectLines(real,realClosed);
+		long t = System.nanoTime();
+		real.openConnection(ReplaySession.PREFIX+file.getPath());
+		Assertions.assertTrue(real.awaitEnd(10000));
+		double played = (System.nanoTime()-t)*1e-9;
+		Assertions.assertTrue(realClosed.await(5,TimeUnit.SECONDS));
+		Assertions.assertEquals(original,realLines);
+		Assertions.assertTrue(played>=recorded*0.5,"played "+played+" recorded "+recorded);
+	}
+
+	@Test
+	public void testCloseStopsPlaying(@TempDir File dir) throws Exception {
+		File file = new File(dir,"slow.rosr");
+		SessionRecorder recorder = new SessionRecorder(file,"slow");
+		recorder.received(ByteBuffer.wrap("ok\n".getBytes(StandardCharsets.ISO_8859_1)));
+		Thread.sleep(300);
+		recorder.received(ByteBuffer.wrap("ok\n".getBytes(StandardCharsets.ISO_8859_1)));
+		recorder.close();
+
+		ReplaySession session = new ReplaySession(new ReplayTransportLayer());
+		session.openConnection(ReplaySession.PREFIX+file.getPath()+"?speed=0.1");
+		Assertions.assertTrue(session.isOpen());
+		session.closeConnection();
+		Assertions.assertTrue(session.awaitEnd(1000));
+		Assertions.assertTrue(session.getRecordsPlayed()<=1);
+	}
+}
@@ -0,0 +1,134 @@
+package com.marginallyclever.communications.transport.sim;
+
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer.GRBLStreamer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class FirmwareSimulatorTest {
+	private static final int LINES = 500;
+
+	private static List<String> path() {
+		List<String> lines = new ArrayList<>();
+		lines.add("G1 F6000");
+		for(int i=1;i<=LINES;++i) {
+			lines.add(String.format(Locale.ROOT,"G1 X%.3f Y%.3f",10*Math.cos(i*0.01),10*Math.sin(i*0.01)));
+		}
+		return lines;
+	}
+
+	private static String withChecksum(long n,String command) {
+		String line = "N"+n+" "+command;
+		byte checksum = 0;
+		for(int i=0;i<line.length();++i) checksum ^= (byte)line.charAt(i);
+		return line+"*"+checksum;
+	}
+
+	/**
+	 * A minimal Marlin sender: a few lines in flight, every line kept until it is acknowledged, resend on request.
+	 * @return the simulated time to finish.
+	 */
+	private static double streamToMarlin(FirmwareSimulator marlin,List<String> commands) {
+		Map<Long,String> history = new HashMap<>();
+		long [] next = {1};
+		int [] credit = {4};
+		marlin.setListener((line)->{
+			if(line.startsWith("ok")) credit[0]++;
+			else if(line.startsWith("Resend: ")) next[0] = Long.parseLong(line.substring(8).trim());
+		});
+		marlin.write(withChecksum(0,"M110")+"\n");
+		credit[0]--;
+		for(int i=0;i<commands.size();++i) history.put(i+1L,withChecksum(i+1,commands.get(i)));
+
+		while(next[0]<=commands.size() || !marlin.isIdle()) {
+			while(credit[0]>0 && next[0]<=commands.size()) {
+				marlin.write(history.get(next[0]++)+"\n");
+				credit[0]--;
+			}
+			marlin.advance(1e-4);
+			Assertions.assertTrue(marlin.getTime()<60,"stuck: "+marlin);
+		}
+		return marlin.getTime();
+	}
+
+	@Test
+	public void testMarlinResendsDamagedLines() {
+		FirmwareSimulator clean = new FirmwareSimulator(FirmwareSimulator.Dialect.MARLIN);
+		clean.setAxes("XY");
+		double cleanTime = streamToMarlin(clean,path());
+		Assertions.assertEquals(LINES+2,clean.getLinesProcessed());
+		Assertions.assertEquals(0,clean.getResendsRequested());
+
+		FirmwareSimulator noisy = new FirmwareSimulator(FirmwareSimulator.Dialect.MARLIN);
+		noisy.setAxes("XY");
+		noisy.setLineErrorRate(0.05,1);
+		double noisyTime = streamToMarlin(noisy,path());
+		// every line was run once, in order, so the arm ends in the same place.
+		Assertions.assertEquals(LINES+2,noisy.getLinesProcessed());
+		Assertions.assertTrue(noisy.getLinesDamaged()>0);
+		Assertions.assertTrue(noisy.getResendsRequested()>=noisy.getLinesDamaged());
+		Assertions.assertArrayEquals(clean.getPosition(),noisy.getPosition(),1e-9);
+		Assertions.assertTrue(noisyTime>=cleanTime);
+
+		// the same seed gives the same run.
+		FirmwareSimulator again = new FirmwareSimulator(FirmwareSimulator.Dialect.MARLIN);
+		again.setAxes("XY");
+		again.setLineErrorRate(0.05,1);
+		Assertions.assertEquals(noisyTime,streamToMarlin(again,path()));
+		Assertions.assertEquals(noisy.getResendsRequested(),again.getResendsRequested());
+	}
+
+	@Test
+	public void testGRBLCharacterCounting() {
+		FirmwareSimulator grbl = new FirmwareSimulator(FirmwareSimulator.Dialect.GRBL);
+		grbl.setAxes("XYZ");
+		GRBLStreamer streamer = new GRBLStreamer(new GRBLStreamer.Link() {
+			@Override
+			public void sendLine(String line) {
+				grbl.write(line+"\n");
+			}
+
+			@Override
+			public void sendRealtime(char command) {
+				grbl.write(String.valueOf(command));
+			}
+		});
+		grbl.setListener(streamer::onReceive);
+		for(String line : path()) streamer.queue(line);
+		streamer.queue("?");
+		while(!streamer.isIdle() || !grbl.isIdle()) {
+			grbl.advance(1e-4);
+			Assertions.assertTrue(grbl.getTime()<60,"stuck: "+grbl);
+		}
+		Assertions.assertEquals(LINES+1,grbl.getLinesProcessed());
+		Assertions.assertEquals(0,grbl.getOverflows());
+		Assertions.assertEquals(10*Math.cos(LINES*0.01),grbl.getPosition()[0],1e-3);
+	}
+
+	@Test
+	public void testSessionMovesVirtualArm() throws Exception {
+		SimulatedSession session = new SimulatedSession(new SimulatedTransportLayer(),true);
+		session.openConnection("sim:marlin?axes=XYZ&latency=1&planner=4");
+		Assertions.assertEquals(4,session.getFirmware().getPlannerDepth());
+		List<String> heard = Collections.synchronizedList(new ArrayList<>());
+		session.addBackgroundListener((evt)->{
+			if(evt.flag==SessionLayerEvent.DATA_AVAILABLE) heard.add((String)evt.data);
+		});
+
+		session.sendMessage("G1 X10 Y-5 F6000\nM400\nM114\n");
+		for(int i=0;i<200 && heard.size()<4;++i) {
+			session.advance(0.01);
+			Thread.sleep(1);
+		}
+		Assertions.assertEquals(List.of("ok","ok","X:10.00 Y:-5.00 Z:0.00 Count X:0 Y:0 Z:0","ok"),heard);
+		Assertions.assertArrayEquals(new double[]{10,-5,0},session.getFirmware().getPosition(),1e-9);
+		session.closeConnection();
+	}
+}
@@ -0,0 +1,67 @@
+package com.marginallyclever.communications.transport.tcp;
+
+import com.marginallyclever.communications.session.SessionLayerEvent;
+import com.marginallyclever.communications.transport.SessionEventLoop;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RawTCPSessionTest {
+    /**
+     * A dozen sessions on one event loop each send many lines and hear an ok for every one.
+     */
+    @Test
+    public void testManySessionsOneLoop() throws Exception {
+        final int sessions = 12;
+        final int lines = 1000;
+        try(LoopbackServer server = new LoopbackServer()) {
+            SessionEventLoop loop = new SessionEventLoop();
+            CountDownLatch oks = new CountDownLatch(sessions*lines);
+            List<RawTCPSession> list = new ArrayList<>();
+            for(int i=0;i<sessions;++i) {
+                RawTCPSession session = new RawTCPSession(new TCPTransportLayer(),loop);
+                session.addListener((evt)->{
+                    if(evt.flag==SessionLayerEvent.DATA_AVAILABLE && evt.data.equals("ok")) oks.countDown();
+                });
+                session.openConnection(server.getAddress());
+                list.add(session);
+            }
+            for(int j=0;j<lines;++j) {
+                for(RawTCPSession session : list) session.sendMessage("G1 X"+j+"\n");
+            }
+            Assertions.assertTrue(oks.await(20,TimeUnit.SECONDS),"missing "+oks.getCount());
+
+            for(RawTCPSession session : list) {
+                Assertions.assertEquals(lines*3,session.getTransportMetrics().getBytesIn());
+                Assertions.assertTrue(session.getTransportMetrics().getBytesOut()>lines*5);
+                // bulk reads: many lines per read.
+                Assertions.assertTrue(session.getTransportMetrics().getReads()<lines);
+                session.closeConnection();
+                Assertions.assertFalse(session.isOpen());
+            }
+        }
+    }
+
+    /**
+     * When the other end closes the session says so.
+     */
+    @Test
+    public void testServerCloses() throws Exception {
+        LoopbackServer server = new LoopbackServer();
+        RawTCPSession session = new RawTCPSession(new TCPTransportLayer(),new SessionEventLoop());
+        CountDownLatch closed = new CountDownLatch(1);
+        session.addListener((evt)->{
+            if(evt.flag==SessionLayerEvent.CONNECTION_CLOSED) closed.countDown();
+        });
+        session.openConnection(server.getAddress());
+        long start = System.currentTimeMillis();
+        while(server.getClientCount()==0 && System.currentTimeMillis()-start<5000) Thread.sleep(10);
+        server.close();
+        Assertions.assertTrue(closed.await(5,TimeUnit.SECONDS));
+        Assertions.assertFalse(session.isOpen());
+    }
+}
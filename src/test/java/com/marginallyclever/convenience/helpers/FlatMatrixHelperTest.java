@@ -0,0 +1,180 @@
+package com.marginallyclever.convenience.helpers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+import java.util.Random;
+
+/**
+ * Check {@link FlatMatrixHelper} against {@link MatrixHelper} and vecmath, and compare their speed.
+ */
+public class FlatMatrixHelperTest {
+    private static final Logger logger = LoggerFactory.getLogger(FlatMatrixHelperTest.class);
+    private static final double EPSILON = 1e-9;
+    private final Random random = new Random(1234);
+
+    private double[][] randomMatrix(int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < cols; ++j) m[i][j] = random.nextDouble() * 2 - 1;
+        }
+        return m;
+    }
+
+    private static double[] flatten(double[][] m) {
+        int cols = m[0].length;
+        double[] flat = new double[m.length * cols];
+        for (int i = 0; i < m.length; ++i) System.arraycopy(m[i], 0, flat, i * cols, cols);
+        return flat;
+    }
+
+    private static void assertSame(double[][] expected, double[] actual) {
+        Assertions.assertArrayEquals(flatten(expected), actual, EPSILON);
+    }
+
+    private Matrix4d randomPose() {
+        Matrix4d m = new Matrix4d();
+        m.set(MatrixHelper.eulerToMatrix(new Vector3d(
+                random.nextDouble() * 6, random.nextDouble() * 6, random.nextDouble() * 6)));
+        m.setTranslation(new Vector3d(random.nextDouble() * 10, random.nextDouble() * 10, random.nextDouble() * 10));
+        return m;
+    }
+
+    @Test
+    public void matrix4MatchesVecmath() {
+        double[] a = new double[16], b = new double[16], c = new double[16], d = new double[16];
+        for (int i = 0; i < 100; ++i) {
+            Matrix4d ma = randomPose();
+            Matrix4d mb = randomPose();
+            FlatMatrixHelper.fromMatrix4d(ma, a, 0);
+            FlatMatrixHelper.fromMatrix4d(mb, b, 0);
+
+            Matrix4d expected = new Matrix4d();
+            expected.mul(ma, mb);
+            FlatMatrixHelper.multiply4(a, 0, b, 0, c, 0);
+            FlatMatrixHelper.fromMatrix4d(expected, d, 0);
+            Assertions.assertArrayEquals(d, c, EPSILON);
+
+            expected.invert(ma);
+            FlatMatrixHelper.fromMatrix4d(expected, d, 0);
+            Assertions.assertTrue(FlatMatrixHelper.invert4(a, 0, c, 0));
+            Assertions.assertArrayEquals(d, c, EPSILON);
+            FlatMatrixHelper.invertRigid4(a, 0, c, 0);
+            Assertions.assertArrayEquals(d, c, EPSILON);
+
+            Matrix4d back = new Matrix4d();
+            FlatMatrixHelper.toMatrix4d(a, 0, back);
+            Assertions.assertTrue(back.epsilonEquals(ma, EPSILON));
+        }
+        Assertions.assertFalse(FlatMatrixHelper.invert4(new double[16], 0, c, 0));
+    }
+
+    @Test
+    public void generalMatchesMatrixHelper() {
+        for (int n = 1; n <= 8; ++n) {
+            double[][] x = randomMatrix(6, n);
+            double[][] y = randomMatrix(n, 6);
+            double[] out = new double[36];
+
+            FlatMatrixHelper.multiply(flatten(x), flatten(y), out, 6, n, 6);
+            assertSame(MatrixHelper.multiplyMatrices(x, y), out);
+
+            double[] t = new double[6 * n];
+            FlatMatrixHelper.transpose(flatten(x), 6, n, t);
+            assertSame(MatrixHelper.transpose(x), t);
+
+            double[][] xt = MatrixHelper.transpose(x);
+            double[] square = new double[36];
+            FlatMatrixHelper.multiplyABt(flatten(x), flatten(x), square, 6, n, 6);
+            assertSame(MatrixHelper.multiplyMatrices(x, xt), square);
+            double[] small = new double[n * n];
+            FlatMatrixHelper.multiplyAtB(flatten(x), flatten(x), small, n, 6, n);
+            assertSame(MatrixHelper.multiplyMatrices(xt, x), small);
+
+            double[] v = new double[n];
+            for (int i = 0; i < n; ++i) v[i] = random.nextDouble();
+            double[] r = new double[6];
+            FlatMatrixHelper.multiplyVector(flatten(x), 6, n, v, r);
+            Assertions.assertArrayEquals(MatrixHelper.multiply(x, v), r, EPSILON);
+            double[] w = new double[6];
+            for (int i = 0; i < 6; ++i) w[i] = random.nextDouble();
+            FlatMatrixHelper.multiplyTransposeVector(flatten(x), 6, n, w, v);
+            Assertions.assertArrayEquals(MatrixHelper.multiply(xt, w), v, EPSILON);
+        }
+    }
+
+    @Test
+    public void inverseMatchesMatrixHelper() {
+        // MatrixHelper.invert cannot do 2x2.
+        for (int n = 3; n <= 6; ++n) {
+            double[][] a = randomMatrix(n, n);
+            double[] out = new double[n * n];
+            double[] scratch = new double[n * n];
+            Assertions.assertTrue(FlatMatrixHelper.invert(flatten(a), n, out, scratch));
+            assertSame(MatrixHelper.invert(a), out);
+
+            double[] b = new double[n];
+            for (int i = 0; i < n; ++i) b[i] = random.nextDouble();
+            double[] x = b.clone();
+            Assertions.assertTrue(FlatMatrixHelper.solve(flatten(a), x, n));
+            Assertions.assertArrayEquals(MatrixHelper.multiply(MatrixHelper.invert(a), b), x, EPSILON);
+        }
+        Assertions.assertFalse(FlatMatrixHelper.invert(new double[9], 3, new double[9], new double[9]));
+    }
+
+    @Test
+    public void pseudoInverseMatchesMatrixHelper() {
+        for (int cols = 3; cols <= 8; ++cols) {
+            double[][] j = randomMatrix(6, cols);
+            double[][] jt = MatrixHelper.transpose(j);
+            double[][] expected;
+            if (cols > 6) {
+                expected = MatrixHelper.multiplyMatrices(jt, MatrixHelper.invert(MatrixHelper.multiplyMatrices(j, jt)));
+            } else {
+                expected = MatrixHelper.multiplyMatrices(MatrixHelper.invert(MatrixHelper.multiplyMatrices(jt, j)), jt);
+            }
+            int n = Math.min(6, cols);
+            double[] out = new double[cols * 6];
+            Assertions.assertTrue(FlatMatrixHelper.pseudoInverse(flatten(j), 6, cols, 0, out, new double[3 * n * n]));
+            Assertions.assertArrayEquals(flatten(expected), out, 1e-6);
+        }
+    }
+
+    /**
+     * Not a real benchmark, but enough to see the difference.  Results are logged, not asserted.
+     */
+    @Test
+    public void compareSpeed() {
+        double[][] j = randomMatrix(6, 6);
+        double[] flat = flatten(j);
+        double[] out = new double[36];
+        double[] scratch = new double[108];
+        int loops = 2000;
+        double sink = 0;
+
+        for (int warm = 0; warm < 2; ++warm) {
+            long start = System.nanoTime();
+            for (int i = 0; i < loops; ++i) {
+                double[][] jt = MatrixHelper.transpose(j);
+                double[][] jjt = MatrixHelper.multiplyMatrices(j, jt);
+                sink += MatrixHelper.multiplyMatrices(jt, MatrixHelper.invert(jjt))[0][0];
+            }
+            long old = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < loops; ++i) {
+                FlatMatrixHelper.pseudoInverse(flat, 6, 6, 0, out, scratch);
+                sink += out[0];
+            }
+            long now = System.nanoTime() - start;
+            if (warm == 1) {
+                logger.info("6x6 pseudo-inverse: MatrixHelper {}ns, FlatMatrixHelper {}ns", old / loops, now / loops);
+            }
+        }
+        Assertions.assertFalse(Double.isNaN(sink));
+    }
+}
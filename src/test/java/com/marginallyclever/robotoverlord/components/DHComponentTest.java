@@ -1,5 +1,8 @@
 package com.marginallyclever.robotoverlord.components;
 
+import com.marginallyclever.robotoverlord.SerializationContext;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class DHComponentTest {
@@ -20,4 +23,27 @@ public class DHComponentTest {
 
         ComponentTest.saveAndLoad(a,b);
     }
+
+    @Test
+    public void motionLimitsStayPositive() throws Exception {
+        DHComponent a = new DHComponent();
+        a.setMaxVelocity(0);
+        a.setMaxAcceleration(-5);
+        a.setMaxJerk(-1);
+        Assertions.assertEquals(DHComponent.MIN_LIMIT, a.getMaxVelocity());
+        Assertions.assertEquals(DHComponent.MIN_LIMIT, a.getMaxAcceleration());
+        Assertions.assertEquals(0, a.getMaxJerk());
+
+        // the same from the inspector, which sets the parameter directly.
+        a.maxVelocity.set(Double.NaN);
+        Assertions.assertEquals(DHComponent.MIN_LIMIT, a.getMaxVelocity());
+
+        // and from an old or hand edited file.
+        SerializationContext context = new SerializationContext("");
+        JSONObject jo = new DHComponent().toJSON(context);
+        jo.getJSONObject("MaxAcceleration").put("value",0.0);
+        DHComponent b = new DHComponent();
+        b.parseJSON(jo,context);
+        Assertions.assertEquals(DHComponent.MIN_LIMIT, b.getMaxAcceleration());
+    }
 }
@@ -52,6 +52,25 @@ public class PoseComponentTest {
         Assertions.assertEquals(new Vector3d(3, 0, 0), sumPosition);
     }
 
+    @Test
+    public void testNestedWorldWithoutAllocation() {
+        Entity root = new Entity();
+        Entity e0 = new Entity();
+        Entity e1 = new Entity();
+        EntityManager entityManager = new EntityManager();
+        entityManager.addEntityToParent(e0,root);
+        entityManager.addEntityToParent(e1,e0);
+
+        root.getComponent(PoseComponent.class).setPosition(new Vector3d(1, 0, 0));
+        e0.getComponent(PoseComponent.class).setRotation(new Vector3d(0, 0, 90));
+        PoseComponent p2 = e1.getComponent(PoseComponent.class);
+        p2.setPosition(new Vector3d(2, 0, 0));
+
+        Matrix4d world = new Matrix4d();
+        p2.getWorld(world);
+        Assertions.assertTrue(world.epsilonEquals(p2.getWorld(),1e-9));
+    }
+
     @Test
     public void testNestedPoseRotation() {
         EntityManager entityManager = new EntityManager();
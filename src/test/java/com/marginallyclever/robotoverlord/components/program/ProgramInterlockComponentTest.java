@@ -0,0 +1,18 @@
+package com.marginallyclever.robotoverlord.components.program;
+
+import com.marginallyclever.robotoverlord.components.ComponentTest;
+import org.junit.jupiter.api.Test;
+
+public class ProgramInterlockComponentTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        ProgramInterlockComponent a = new ProgramInterlockComponent();
+        ProgramInterlockComponent b = new ProgramInterlockComponent();
+        ComponentTest.saveAndLoad(a,b);
+
+        a.lockName.set("conveyor");
+        a.action.set(ProgramInterlockComponent.RELEASE);
+        a.capacity.set(3);
+        ComponentTest.saveAndLoad(a,b);
+    }
+}
@@ -0,0 +1,58 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Point3d;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GCodeArcTest {
+    @Test
+    public void quarterCircles() {
+        GCodeArc arc = new GCodeArc();
+        // from (10,0) to (0,10) around the origin.
+        arc.set(false, new Point3d(10, 0, 0), 0, 10, 0, -10, 0);
+        Assertions.assertEquals(Math.PI / 2, arc.getSweep(), 1e-9);
+        Assertions.assertEquals(10 * Math.PI / 2, arc.getLength(), 1e-9);
+        // the same move clockwise is the long way around.
+        arc.set(true, new Point3d(10, 0, 0), 0, 10, 0, -10, 0);
+        Assertions.assertEquals(-3 * Math.PI / 2, arc.getSweep(), 1e-9);
+
+        Point3d p = new Point3d();
+        arc.getPoint(1, p);
+        Assertions.assertEquals(0, p.x, 1e-9);
+        Assertions.assertEquals(10, p.y, 1e-9);
+    }
+
+    @Test
+    public void fullCircleHelix() {
+        GCodeArc arc = new GCodeArc();
+        arc.set(true, new Point3d(5, 0, 0), 5, 0, 2, -5, 0);
+        Assertions.assertEquals(-2 * Math.PI, arc.getSweep(), 1e-9);
+        double flat = 2 * Math.PI * 5;
+        Assertions.assertEquals(Math.sqrt(flat * flat + 4), arc.getLength(), 1e-9);
+    }
+
+    @Test
+    public void segmentsFollowChordError() {
+        GCodeArc small = new GCodeArc();
+        small.set(false, new Point3d(0.1, 0, 0), -0.1, 0, 0, -0.1, 0);
+        GCodeArc big = new GCodeArc();
+        big.set(false, new Point3d(100, 0, 0), -100, 0, 0, -100, 0);
+        double tolerance = 0.001;
+        int a = small.getSegments(tolerance, 0);
+        int b = big.getSegments(tolerance, 0);
+        Assertions.assertTrue(a < b, a + " vs " + b);
+        // the middle of every segment is within the tolerance.
+        for (GCodeArc arc : new GCodeArc[]{small, big}) {
+            int n = arc.getSegments(tolerance, 0);
+            double half = Math.abs(arc.getSweep()) / n / 2;
+            Assertions.assertTrue(arc.getRadius() * (1 - Math.cos(half)) <= tolerance + 1e-12);
+        }
+        // a step limit can only add segments.
+        Assertions.assertTrue(big.getSegments(tolerance, 0.1) >= b);
+    }
+}
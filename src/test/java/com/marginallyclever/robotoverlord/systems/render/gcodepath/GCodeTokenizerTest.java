@@ -0,0 +1,134 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class GCodeTokenizerTest {
+    private static final Logger logger = LoggerFactory.getLogger(GCodeTokenizerTest.class);
+
+    private GCodePath tokenize(String text, double scale) throws IOException {
+        GCodePath path = new GCodePath();
+        new GCodeTokenizer(scale).tokenize(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), path);
+        return path;
+    }
+
+    @Test
+    public void readWords() throws IOException {
+        GCodePath path = tokenize(String.join("\n",
+                "; generated by test",
+                "G28 ; home",
+                "G01 X10.5 Y-2 F1200",
+                "g1 x.25 e0.5",
+                "N10 G1 Z3*92",
+                "M117 X marks the spot",
+                "X7",
+                "(all done)",
+                "G21 G90 G0 X1"), 0.1);
+
+        Assertions.assertEquals(9, path.size());
+        Assertions.assertEquals("G28", path.getCommand(0));
+        Assertions.assertEquals("home", path.getComment(0));
+
+        Assertions.assertEquals("G1", path.getCommand(1));
+        Assertions.assertEquals(1.05, path.getX(1), 1e-12);
+        Assertions.assertEquals(-0.2, path.getY(1), 1e-12);
+        Assertions.assertEquals(120, path.getFeedrate(1), 1e-12);
+        Assertions.assertFalse(path.hasExtrusion(1));
+
+        // lower case, modal Y and F, extrusion only on this line.
+        Assertions.assertEquals("G1", path.getCommand(2));
+        Assertions.assertEquals(0.025, path.getX(2), 1e-12);
+        Assertions.assertEquals(-0.2, path.getY(2), 1e-12);
+        Assertions.assertEquals(120, path.getFeedrate(2), 1e-12);
+        Assertions.assertEquals(0.05, path.getExtrusion(2), 1e-12);
+
+        // line numbers and checksums are ignored.
+        Assertions.assertEquals(0.3, path.getZ(3), 1e-12);
+        Assertions.assertFalse(path.hasExtrusion(3));
+
+        // the message is not read as words.
+        Assertions.assertEquals("M117", path.getCommand(4));
+        Assertions.assertEquals(0.025, path.getX(4), 1e-12);
+
+        // axis without a command repeats the last move.
+        Assertions.assertEquals("G1", path.getCommand(5));
+        Assertions.assertEquals(0.7, path.getX(5), 1e-12);
+        Assertions.assertEquals(0.3, path.getZ(5), 1e-12);
+
+        // a comment on its own line goes to the next element.
+        Assertions.assertEquals("G21", path.getCommand(6));
+        Assertions.assertEquals("all done", path.getComment(6));
+        Assertions.assertEquals("G90", path.getCommand(7));
+        Assertions.assertEquals("G0", path.getCommand(8));
+        Assertions.assertEquals(0.1, path.getX(8), 1e-12);
+    }
+
+    @Test
+    public void elementsShareTables() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("G1 X").append(i).append(" E1 ;WIDTH:0.45\n");
+            sb.append("G0 X").append(i).append(" Y1\n");
+        }
+        GCodePath path = tokenize(sb.toString(), 1);
+        Assertions.assertEquals(2000, path.size());
+        Assertions.assertEquals(1, path.getNumCommentsInTable());
+        Assertions.assertEquals(path.getOpcode(0), path.getOpcode(1998));
+        Assertions.assertNotEquals(path.getOpcode(0), path.getOpcode(1));
+
+        GCodePathElement element = path.getElements().get(1998);
+        Assertions.assertEquals("G1", element.getCommand());
+        Assertions.assertEquals(999, element.getX());
+        Assertions.assertEquals(1.0, element.getExtrusion());
+    }
+
+    @Test
+    public void addElementRoundTrip() {
+        GCodePath path = new GCodePath();
+        GCodePathElement a = new GCodePathElement("G2");
+        a.setX(1);
+        a.setI(2);
+        a.setJ(-3);
+        a.setFeedrate(50.0);
+        a.setU(4);
+        path.addElement(a);
+        GCodePathElement b = path.getElement(0);
+        Assertions.assertEquals(a.toString(), b.toString());
+        Assertions.assertEquals(2, b.getI());
+        Assertions.assertEquals(-3, b.getJ());
+        Assertions.assertEquals(2, path.getI(0));
+    }
+
+    /**
+     * Not a real benchmark.  Results are logged, not asserted.
+     */
+    @Test
+    public void throughput() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; ++i) {
+            sb.append("G1 X").append(i % 200).append(".123 Y").append(i % 97).append(".5 E0.0321 F1800\n");
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        GCodePath path = new GCodePath();
+        GCodeTokenizer tokenizer = new GCodeTokenizer(0.1);
+        for (int warm = 0; warm < 3; ++warm) {
+            path.clear();
+            long start = System.nanoTime();
+            long lines = tokenizer.tokenize(new ByteArrayInputStream(bytes), path);
+            long ns = System.nanoTime() - start;
+            if (warm == 2) logger.info("{} lines/s", lines * 1000000000L / Math.max(1, ns));
+        }
+        Assertions.assertEquals(200000, path.size());
+        Assertions.assertEquals(19.9123, path.getX(199999), 1e-12);
+    }
+}
@@ -0,0 +1,87 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Point3d;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class LookAheadPlannerTest {
+    private static final double ACCELERATION = 100;
+
+    private void move(GCodePath path, double x, double y, double feed) {
+        path.add(path.getOpcode("G1"), x, y, 0, Double.NaN, feed, 0, 0, GCodePath.NO_COMMENT);
+    }
+
+    @Test
+    public void trapezoid() {
+        GCodePath path = new GCodePath();
+        // 10 units/s.  0.1s to speed up over 0.5, 9.9s to cruise over 99, 0.1s to slow down.
+        move(path, 100, 0, 600);
+        LookAheadPlanner planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        Assertions.assertEquals(1, planner.getNumBlocks());
+        Assertions.assertEquals(10.1, planner.getDuration(), 1e-9);
+        Assertions.assertEquals(10, planner.getPeakSpeed(0), 1e-9);
+        Assertions.assertEquals(0.5, planner.getDistanceAt(0.1), 1e-9);
+        Assertions.assertEquals(50, planner.getDistanceAt(5.05), 1e-9);
+        Assertions.assertEquals(100, planner.getDistanceAt(20), 1e-9);
+
+        // too short to reach the feed rate.
+        path.clear();
+        move(path, 1, 0, 600);
+        planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        Assertions.assertEquals(Math.sqrt(ACCELERATION), planner.getPeakSpeed(0), 1e-9);
+        Assertions.assertEquals(0.2, planner.getDuration(), 1e-9);
+    }
+
+    @Test
+    public void junctions() {
+        GCodePath path = new GCodePath();
+        // straight on: no need to slow down, same time as one move.
+        move(path, 50, 0, 600);
+        move(path, 100, 0, 600);
+        LookAheadPlanner planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        Assertions.assertEquals(10.1, planner.getDuration(), 1e-9);
+        Assertions.assertEquals(10, planner.getEntrySpeed(1), 1e-9);
+
+        // a right angle slows down to the junction speed.
+        move(path, 100, 100, 600);
+        planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        double corner = LookAheadPlanner.getJunctionSpeed(0, ACCELERATION, 0.01);
+        Assertions.assertTrue(corner > 0 && corner < 10);
+        Assertions.assertEquals(corner, planner.getEntrySpeed(2), 1e-9);
+
+        // turning back stops.
+        move(path, 100, 0, 600);
+        planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        Assertions.assertEquals(0, planner.getEntrySpeed(3), 1e-9);
+        Assertions.assertEquals(3, planner.getElementAt(planner.getDuration() - 0.01));
+
+        Point3d p = new Point3d();
+        planner.getPositionAt(planner.getStartTime(2), p);
+        Assertions.assertTrue(p.epsilonEquals(new Point3d(100, 0, 0), 1e-9), p.toString());
+        planner.getPositionAt(planner.getDuration(), p);
+        Assertions.assertTrue(p.epsilonEquals(new Point3d(100, 0, 0), 1e-9), p.toString());
+    }
+
+    @Test
+    public void manyBlocks() {
+        GCodePath path = new GCodePath();
+        int n = 1_000_000;
+        for (int i = 0; i < n; ++i) {
+            move(path, (i % 100) * 0.1, (i / 100) * 0.1, 3000);
+        }
+        LookAheadPlanner planner = new LookAheadPlanner(path, 1000, ACCELERATION, 0.01, 0.001);
+        // the first element is at the origin and does not move.
+        Assertions.assertEquals(n - 1, planner.getNumBlocks());
+        double last = 0;
+        for (int i = 1; i <= planner.getNumBlocks(); i += 997) {
+            Assertions.assertTrue(planner.getStartTime(i) > last);
+            last = planner.getStartTime(i);
+        }
+        Assertions.assertTrue(planner.getDuration() * 50 > planner.getLength());
+    }
+}
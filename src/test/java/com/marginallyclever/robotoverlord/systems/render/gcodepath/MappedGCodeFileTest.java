@@ -0,0 +1,86 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.vecmath.Point3d;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class MappedGCodeFileTest {
+    @TempDir
+    Path folder;
+
+    private Path writeProgram(int lines) throws IOException {
+        Random random = new Random(3);
+        StringBuilder sb = new StringBuilder("; test program\nG90\n");
+        for (int i = 2; i < lines; ++i) {
+            switch (i % 7) {
+                case 0 -> sb.append("G91\n");
+                case 1 -> sb.append("G1 X1 Y-0.5\n");
+                case 2 -> sb.append("G90\n");
+                case 3 -> sb.append(";TYPE:Perimeter\n");
+                case 4 -> sb.append("X").append(random.nextInt(100)).append(" F1200\n");
+                default -> sb.append("G1 X").append(random.nextInt(100)).append(" Y").append(random.nextInt(100))
+                        .append(" Z").append(i / 1000).append(" E0.2\n");
+            }
+        }
+        Path file = folder.resolve("test.gcode");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    @Test
+    public void windowsMatchWholeFile() throws Exception {
+        int lines = 20000;
+        Path file = writeProgram(lines);
+        GCodePath whole = new GCodePath();
+        try (FileInputStream in = new FileInputStream(file.toFile())) {
+            new GCodeTokenizer(0.1).tokenize(in, whole);
+        }
+        PathLengthIndex wholeIndex = new PathLengthIndex(whole, 0.1);
+
+        try (MappedGCodeFile mapped = new MappedGCodeFile(file.toString(), 0.1, 0.1)) {
+            // the first window does not wait for the index.
+            GCodeWindow first = mapped.decodeAtLine(0);
+            Assertions.assertNotNull(first);
+            Assertions.assertEquals(0, first.getFirstLine());
+            Assertions.assertNull(mapped.decodeAtLine(lines - 1));
+
+            mapped.startIndexing();
+            long timeout = System.currentTimeMillis() + 10000;
+            while (!mapped.isIndexComplete() && System.currentTimeMillis() < timeout) Thread.sleep(10);
+            Assertions.assertTrue(mapped.isIndexComplete());
+            Assertions.assertEquals(lines, mapped.getLinesIndexed());
+            Assertions.assertEquals(wholeIndex.getLength(), mapped.getDistanceIndexed(), 1e-6);
+
+            Random random = new Random(4);
+            Point3d expected = new Point3d();
+            Point3d actual = new Point3d();
+            for (int i = 0; i < 50; ++i) {
+                double d = random.nextDouble() * wholeIndex.getLength();
+                GCodeWindow window = mapped.decodeAtDistance(d);
+                Assertions.assertNotNull(window);
+                Assertions.assertTrue(window.getLineCount()
+                        <= MappedGCodeFile.LINES_PER_BLOCK * MappedGCodeFile.BLOCKS_PER_WINDOW);
+                Assertions.assertTrue(wholeIndex.get(d, expected));
+                Assertions.assertTrue(window.getIndex().get(d, actual));
+                Assertions.assertTrue(expected.epsilonEquals(actual, 1e-6), d + ": " + expected + " vs " + actual);
+            }
+
+            GCodeWindow last = mapped.decodeAtLine(lines - 1);
+            Assertions.assertNotNull(last);
+            Assertions.assertTrue(last.containsLine(lines - 1));
+            Assertions.assertNull(mapped.decodeAtDistance(wholeIndex.getLength() + 1));
+        }
+    }
+}
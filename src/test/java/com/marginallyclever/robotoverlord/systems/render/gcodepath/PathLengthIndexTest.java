@@ -0,0 +1,78 @@
+package com.marginallyclever.robotoverlord.systems.render.gcodepath;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Point3d;
+import java.util.Random;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class PathLengthIndexTest {
+    private GCodePath randomPath(int count) {
+        Random random = new Random(1);
+        GCodePath path = new GCodePath();
+        for (int i = 0; i < count; ++i) {
+            path.add(path.getOpcode("G1"), random.nextDouble() * 10, random.nextDouble() * 10, random.nextDouble(),
+                    Double.NaN, Double.NaN, 0, 0, GCodePath.NO_COMMENT);
+        }
+        return path;
+    }
+
+    /**
+     * The old way: walk from the start every time.
+     */
+    private Point3d walk(GCodePath path, double d) {
+        PathWalker walker = new PathWalker(null, path, 0.1);
+        Point3d now = new Point3d();
+        double sum = 0;
+        while (walker.hasNext()) {
+            walker.next();
+            Point3d next = walker.getCurrentPosition();
+            double step = now.distance(next);
+            if (d >= sum && d < sum + step) {
+                Point3d result = new Point3d();
+                result.interpolate(now, next, (d - sum) / step);
+                return result;
+            }
+            sum += step;
+            now = next;
+        }
+        return null;
+    }
+
+    @Test
+    public void matchesWalk() {
+        GCodePath path = randomPath(200);
+        PathLengthIndex index = new PathLengthIndex(path, 0.1);
+        Assertions.assertEquals(201, index.getNumPoints());
+        Random random = new Random(2);
+        Point3d result = new Point3d();
+        // random queries and small steps forward, which use the cursor.
+        for (int i = 0; i < 500; ++i) {
+            double d = (i % 2 == 0) ? random.nextDouble() * index.getLength() : i * index.getLength() / 500;
+            Assertions.assertTrue(index.get(d, result));
+            Point3d expected = walk(path, d);
+            Assertions.assertNotNull(expected);
+            Assertions.assertTrue(expected.epsilonEquals(result, 1e-9), d + ": " + expected + " vs " + result);
+        }
+        Assertions.assertFalse(index.get(-1, result));
+        Assertions.assertFalse(index.get(index.getLength(), result));
+    }
+
+    @Test
+    public void invalidatedByChange() {
+        GCodePath path = randomPath(10);
+        PathLengthIndex index = new PathLengthIndex(path, 0.1);
+        Assertions.assertTrue(index.isValidFor(path));
+        Assertions.assertFalse(index.isValidFor(randomPath(10)));
+        path.add(path.getOpcode("G1"), 0, 0, 0, Double.NaN, Double.NaN, 0, 0, GCodePath.NO_COMMENT);
+        Assertions.assertFalse(index.isValidFor(path));
+        index = new PathLengthIndex(path, 0.1);
+        path.clear();
+        Assertions.assertFalse(index.isValidFor(path));
+        Assertions.assertEquals(0, new PathLengthIndex(path, 0.1).getLength());
+    }
+}
@@ -51,4 +51,29 @@ public class PathWalkerTest {
         Assertions.assertEquals(25, a.y, 1e-6);
         Assertions.assertEquals(0, a.z, 1e-6);
     }
+
+    @Test
+    public void testArcIsMeasuredExactly() {
+        GCodePath path = new GCodePath();
+        path.add(path.getOpcode("G0"), 10, 0, 0, Double.NaN, Double.NaN, 0, 0, GCodePath.NO_COMMENT);
+        path.add(path.getOpcode("G3"), 0, 10, 0, Double.NaN, Double.NaN, -10, 0, GCodePath.NO_COMMENT);
+
+        PathWalker walker = new PathWalker(null, path, 0);
+        walker.setChordTolerance(0.01);
+        walker.next();
+        Assertions.assertEquals(10, walker.getDistance(), 1e-9);
+        int points = 0;
+        while (walker.hasNext()) {
+            walker.next();
+            Point3d p = walker.getCurrentPosition();
+            Assertions.assertEquals(10, Math.sqrt(p.x * p.x + p.y * p.y), 1e-9);
+            Assertions.assertNotNull(walker.getCurrentArc());
+            points++;
+        }
+        Point3d end = walker.getCurrentPosition();
+        Assertions.assertEquals(0, end.x, 1e-9);
+        Assertions.assertEquals(10, end.y, 1e-9);
+        Assertions.assertEquals(10 + 5 * Math.PI, walker.getDistance(), 1e-9);
+        Assertions.assertTrue(points > 1 && points < 20, "points " + points);
+    }
 }
@@ -0,0 +1,36 @@
+package com.marginallyclever.robotoverlord.systems.render.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ArcMeshTest {
+    @Test
+    public void longArcsAreSplit() {
+        ArcMesh mesh = new ArcMesh();
+        mesh.setChordTolerance(0.0001);
+        mesh.addArc(0, 0, 0, 10, 0, Math.PI * 2, 0, 1, 1, 1, 1);
+        int expected = (int) Math.ceil(ArcMesh.getSegments(10, Math.PI * 2, 0.0001) / (double) ArcMesh.MAX_SEGMENTS);
+        Assertions.assertEquals(expected, mesh.getNumArcs());
+        Assertions.assertTrue(mesh.getNumArcs() > 1);
+    }
+
+    @Test
+    public void onlyFinerTolerancesNeedRebuild() {
+        ArcMesh mesh = new ArcMesh();
+        mesh.setChordTolerance(0.01);
+        Assertions.assertFalse(mesh.needsRebuild(0.0001));
+
+        mesh.addArc(0, 0, 0, 10, 0, Math.PI, 0, 1, 1, 1, 1);
+        Assertions.assertFalse(mesh.needsRebuild(0.01));
+        Assertions.assertFalse(mesh.needsRebuild(0.1));
+        Assertions.assertFalse(mesh.needsRebuild(0));
+        Assertions.assertTrue(mesh.needsRebuild(0.001));
+
+        mesh.clear();
+        Assertions.assertFalse(mesh.needsRebuild(0.001));
+    }
+}
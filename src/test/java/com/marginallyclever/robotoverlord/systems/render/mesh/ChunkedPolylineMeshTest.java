@@ -0,0 +1,95 @@
+package com.marginallyclever.robotoverlord.systems.render.mesh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Vector3d;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ChunkedPolylineMeshTest {
+    /**
+     * A spiral that changes color every 1000 points.
+     */
+    private ChunkedPolylineMesh buildSpiral(int count) {
+        ChunkedPolylineMesh mesh = new ChunkedPolylineMesh();
+        for (int i = 0; i < count; ++i) {
+            double a = i * 0.01;
+            float red = (i / 1000) % 2;
+            mesh.addPoint((float) (Math.cos(a) * 10), (float) (Math.sin(a) * 10), i * 0.0001f, red, 0, 1 - red, 1);
+        }
+        mesh.end();
+        return mesh;
+    }
+
+    @Test
+    public void chunksShareOnePoint() {
+        int count = ChunkedPolylineMesh.CHUNK_SIZE * 2 + 100;
+        ChunkedPolylineMesh mesh = buildSpiral(count);
+        Assertions.assertEquals(count, mesh.getNumVertices());
+        // two full chunks, and the third starts with a copy of the last point of the second.
+        Assertions.assertEquals(3, mesh.getNumChunks());
+        Assertions.assertEquals(102, mesh.getChunkSizes(2)[0]);
+        for (int i = 0; i < count; i += 997) {
+            double a = i * 0.01;
+            Vector3d v = mesh.getVertex(i);
+            Assertions.assertEquals(Math.cos(a) * 10, v.x, 1e-4);
+            Assertions.assertEquals(Math.sin(a) * 10, v.y, 1e-4);
+        }
+        Assertions.assertEquals(-10, mesh.getCuboid().getBoundsBottom().x, 1e-3);
+
+        mesh.clear();
+        Assertions.assertEquals(0, mesh.getNumVertices());
+        Assertions.assertEquals(0, mesh.getNumChunks());
+    }
+
+    @Test
+    public void simplifiedCopyIsCloseAndKeepsColors() {
+        ChunkedPolylineMesh.Chunk c = new ChunkedPolylineMesh.Chunk();
+        int n = 20000;
+        for (int i = 0; i < n; ++i) {
+            float red = (i / 1000) % 2;
+            // a straight line with a wiggle far smaller than the tolerance.
+            c.add(i * 0.01f, (float) Math.sin(i) * 1e-4f, 0, red, 0, 1 - red, 1);
+        }
+        ChunkedPolylineMesh.simplify(c);
+        Assertions.assertTrue(c.lodCount < n / 100, "kept " + c.lodCount);
+        Assertions.assertEquals(0, c.lodSource[0]);
+        Assertions.assertEquals(n - 1, c.lodSource[c.lodCount - 1]);
+        // both sides of every color change are kept.
+        for (int i = 1000; i < n; i += 1000) {
+            Assertions.assertTrue(java.util.Arrays.binarySearch(c.lodSource, 0, c.lodCount, i) >= 0);
+            Assertions.assertTrue(java.util.Arrays.binarySearch(c.lodSource, 0, c.lodCount, i - 1) >= 0);
+        }
+    }
+
+    @Test
+    public void cullAgainstView() {
+        // an orthographic view of the cube [-1,1], column major.
+        float[] clip = new float[16];
+        clip[0] = clip[5] = clip[10] = clip[15] = 1;
+        Assertions.assertTrue(ChunkedPolylineMesh.isVisible(clip, new float[]{-0.5f, -0.5f, -0.5f}, new float[]{0.5f, 0.5f, 0.5f}));
+        Assertions.assertTrue(ChunkedPolylineMesh.isVisible(clip, new float[]{0.5f, 0.5f, 0.5f}, new float[]{3, 3, 3}));
+        Assertions.assertFalse(ChunkedPolylineMesh.isVisible(clip, new float[]{2, -0.5f, -0.5f}, new float[]{3, 0.5f, 0.5f}));
+        // outside different planes, but the box crosses the view.
+        Assertions.assertTrue(ChunkedPolylineMesh.isVisible(clip, new float[]{-3, -3, 0}, new float[]{3, 3, 0}));
+
+        // a small box far from the camera is small on screen.
+        float[] projection = new float[16];
+        projection[0] = projection[5] = 1;
+        projection[11] = -1;
+        float[] view = new float[16];
+        view[0] = view[5] = view[10] = view[15] = 1;
+        view[14] = -100;
+        float[] perspective = new float[16];
+        ChunkedPolylineMesh.multiply(projection, view, perspective);
+        double far = ChunkedPolylineMesh.getScreenSize(perspective, projection, new float[]{-1, -1, -1}, new float[]{1, 1, 1});
+        Assertions.assertEquals(Math.sqrt(3) / 100, far, 1e-6);
+        view[14] = -1;
+        ChunkedPolylineMesh.multiply(projection, view, perspective);
+        double near = ChunkedPolylineMesh.getScreenSize(perspective, projection, new float[]{-1, -1, -1}, new float[]{1, 1, 1});
+        Assertions.assertTrue(near > ChunkedPolylineMesh.LOD_SCREEN_SIZE);
+    }
+}
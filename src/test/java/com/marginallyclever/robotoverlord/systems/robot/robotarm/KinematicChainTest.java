@@ -0,0 +1,171 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.ArmEndEffectorComponent;
+import com.marginallyclever.robotoverlord.components.DHComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability.ReachabilityMap;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.reachability.ReachabilityMapFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare {@link KinematicChain} against the scene graph.
+ *
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class KinematicChainTest {
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void setup() {
+        entityManager = new EntityManager();
+    }
+
+    @AfterEach
+    public void teardown() {
+        entityManager.clear();
+        entityManager = null;
+    }
+
+    /**
+     * Build a Sixi3 style arm.  Shared with other tests in this package.
+     * @param entityManager the scene that will hold the arm.
+     * @return the robot.
+     */
+    public static RobotComponent build6AxisArm(EntityManager entityManager) {
+        Entity base = new Entity("Sixi3-6");
+        entityManager.addEntityToParent(base, entityManager.getRoot());
+        RobotComponent robot = new RobotComponent();
+        base.addComponent(robot);
+
+        Entity target = new Entity(RobotComponent.TARGET_NAME);
+        entityManager.addEntityToParent(target, base);
+
+        List<Entity> joints = new ArrayList<>();
+        List<DHComponent> dh = new ArrayList<>();
+        Entity prev = base;
+        int numJoints=6;
+        for(int i=0;i<numJoints;++i) {
+            Entity e = new Entity("J"+i);
+            joints.add(e);
+            entityManager.addEntityToParent(e,prev);
+            prev = e;
+            DHComponent dhc = new DHComponent();
+            dh.add(dhc);
+            e.addComponent(dhc);
+        }
+
+        dh.get(0).set( 8.020,     0,270,   0,170,-170,true);  dh.get(0).setJointHome(  0);
+        dh.get(1).set( 9.131,17.889,  0, 270,370, 170,true);  dh.get(1).setJointHome(270);
+        dh.get(2).set(     0,12.435,  0,   0,150,-150,true);  dh.get(2).setJointHome(  0);
+        dh.get(3).set(     0,     0,270, 270,440, 100,true);  dh.get(3).setJointHome(270);
+        dh.get(4).set(15.616,     0, 90,  90,270, -90,true);  dh.get(4).setJointHome( 90);
+        dh.get(5).set( 5.150,     0,  0, 180,360,   0,true);  dh.get(5).setJointHome(180);
+
+        joints.get(5).addComponent(new ArmEndEffectorComponent());
+        robot.findBones();
+        robot.set(Robot.END_EFFECTOR_TARGET,robot.get(Robot.END_EFFECTOR));
+
+        return robot;
+    }
+
+    private void assertMatrixEquals(Matrix4d expected, Matrix4d actual) {
+        for(int i=0;i<4;++i) {
+            for(int j=0;j<4;++j) {
+                Assertions.assertEquals(expected.getElement(i,j),actual.getElement(i,j),1e-6,"["+i+","+j+"]");
+            }
+        }
+    }
+
+    @Test
+    public void matchesSceneGraph() {
+        RobotComponent robot = build6AxisArm(entityManager);
+        KinematicChain chain = new KinematicChain(robot);
+        Assertions.assertEquals(6,chain.getDOF());
+
+        double[] result = new double[KinematicChain.MATRIX_SIZE];
+        double[][] tests = {
+                robot.getAllJointValues(),
+                {10,200,-20,300,120,90},
+                {-90,300,45,150,-45,270},
+        };
+        for(double[] joints : tests) {
+            robot.setAllJointValues(joints);
+            chain.getEndEffector(robot.getAllJointValues(),result);
+            assertMatrixEquals((Matrix4d)robot.get(Robot.END_EFFECTOR),KinematicChain.toMatrix4d(result,0));
+        }
+    }
+
+    @Test
+    public void inverseKinematics() {
+        RobotComponent robot = build6AxisArm(entityManager);
+        KinematicChain chain = new KinematicChain(robot);
+        double[] goal = {10,280,-20,300,120,170};
+        double[] target = new double[KinematicChain.MATRIX_SIZE];
+        chain.getEndEffector(goal,target);
+
+        // start a little way away and find the way back.
+        double[] joints = robot.getAllJointValues();
+        Assertions.assertTrue(chain.solveInverseKinematics(joints,target,false,200,1e-6));
+        double[] result = new double[KinematicChain.MATRIX_SIZE];
+        chain.getEndEffector(joints,result);
+        Assertions.assertArrayEquals(target,result,1e-4);
+    }
+
+    @Test
+    public void hashFollowsParameters() {
+        RobotComponent robot = build6AxisArm(entityManager);
+        long a = new KinematicChain(robot).getHash();
+        // moving a joint must not change the hash
+        robot.setAllJointValues(new double[]{10,200,-20,300,120,90});
+        Assertions.assertEquals(a,new KinematicChain(robot).getHash());
+        // changing the shape of the arm must change the hash
+        robot.getBone(2).setR(13);
+        Assertions.assertNotEquals(a,new KinematicChain(robot).getHash());
+    }
+
+    @Test
+    public void reachabilityMap() throws IOException {
+        RobotComponent robot = build6AxisArm(entityManager);
+        KinematicChain chain = new KinematicChain(robot);
+        ReachabilityMap map = ReachabilityMapFactory.build(chain,20000,2.0,1);
+        Assertions.assertTrue(map.size()>0);
+
+        // same seed, same map
+        Assertions.assertEquals(map.size(),ReachabilityMapFactory.build(chain,20000,2.0,1).size());
+
+        // a point far outside the arm is not reachable.
+        Assertions.assertFalse(map.isReachable(1000,1000,1000));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.save(new DataOutputStream(bytes));
+        ReachabilityMap copy = ReachabilityMap.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(map.size(),copy.size());
+        Assertions.assertEquals(map.getVoxelSize(),copy.getVoxelSize());
+        Assertions.assertEquals(map.getMaxManipulability(),copy.getMaxManipulability(),1e-6);
+    }
+
+    @Test
+    public void jacobianSolveIntoCallerStorage() throws Exception {
+        RobotComponent robot = build6AxisArm(entityManager);
+        robot.setAllJointValues(new double[]{10, 20, 30, 40, 50, 60});
+        ApproximateJacobian aj = new ApproximateJacobianFiniteDifferences(robot);
+        double[] v = {1, 2, 3, 4, 5, 6};
+        double[] expected = aj.getJointForceFromCartesianForce(v);
+        double[] out = new double[expected.length];
+        // twice, so the second solve reuses the scratch space of the first.
+        Assertions.assertSame(out, aj.getJointForceFromCartesianForce(v, out));
+        Assertions.assertArrayEquals(expected, aj.getJointForceFromCartesianForce(v, out), 1e-12);
+    }
+}
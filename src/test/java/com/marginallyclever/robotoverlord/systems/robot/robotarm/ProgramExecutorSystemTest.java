@@ -1,12 +1,20 @@
 package com.marginallyclever.robotoverlord.systems.robot.robotarm;
 
+import com.marginallyclever.robotoverlord.components.PoseComponent;
 import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramEventComponent;
 import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
 import com.marginallyclever.robotoverlord.entity.Entity;
 import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.vecmath.Matrix4d;
+import java.util.ArrayList;
+import java.util.List;
+
 public class ProgramExecutorSystemTest {
     @Test
     public void testWalkATree() {
@@ -30,23 +38,30 @@ public class ProgramExecutorSystemTest {
         // assign program to robot
         program.programEntity.set(programRoot.getUniqueID());
 
-        // run the program
+        // compile the program
         ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
-        Entity programStep = programRoot.getChildren().get(0);
-        int i;
-        for(i=0;i<100;++i) {
-            System.out.print("Step "+i);
-            if(programStep!=null) {
-                System.out.println(" "+programStep.getName());
-            } else {
-                System.out.println(" null");
-            }
-            Entity nextStep = executor.getNextStep(robot,program,programStep,programRoot);
-            if(nextStep==null) break;
-            programStep = nextStep;
-        }
-        Assertions.assertEquals(42,i);
-        Assertions.assertEquals(0,program.getStackDepth());
+        CompiledProgram code = executor.getCompiledProgram(program);
+        Assertions.assertEquals(43,code.size());
+        // depth first: the first child, its first child, and the three children of that.
+        Entity first = programRoot.getChildren().get(0);
+        Assertions.assertSame(first,code.get(0).entity);
+        Assertions.assertSame(first.getChildren().get(0),code.get(1).entity);
+        Assertions.assertSame(first.getChildren().get(0).getChildren().get(2),code.get(4).entity);
+        Assertions.assertSame(first.getChildren().get(1),code.get(5).entity);
+        Assertions.assertSame(programRoot.getChildren().get(1),code.get(7).entity);
+        Assertions.assertSame(programRoot.getChildren().get(9).getChildren().get(2),code.get(42).entity);
+    }
+
+    /**
+     * @return every entity below the root, an entity before its children and the children in order.
+     */
+    private List<Entity> depthFirst(Entity root) {
+        List<Entity> list = new ArrayList<>();
+        for(Entity child : root.getChildren()) {
+            list.add(child);
+            list.addAll(depthFirst(child));
+        }
+        return list;
     }
 
     private void addChildrenToNode(EntityManager manager,Entity node,int count) {
@@ -54,4 +69,300 @@ public class ProgramExecutorSystemTest {
             manager.addEntityToParent(new Entity(node.getName()+"-" + i), node);
         }
     }
+
+    /**
+     * A rapid move should take as long as the joint limits say, not one frame.
+     */
+    @Test
+    public void testMoveTakesTime() {
+        EntityManager entityManager = new EntityManager();
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        // find a target the robot can reach
+        double [] home = robot.getAllJointValues();
+        robot.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d target = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        target.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        robot.setAllJointValues(home);
+
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        Entity step = new Entity("Step");
+        entityManager.addEntityToParent(step,programRoot);
+        ProgramPathComponent path = new ProgramPathComponent();
+        path.moveType.set(ProgramPathComponent.MOVE_RAPID);
+        step.addComponent(path);
+        step.getComponent(PoseComponent.class).setWorld(target);
+
+        program.programEntity.set(programRoot.getUniqueID());
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        program.setRunning(true);
+
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+        double dt = 0.01;
+        int ticks = 0;
+        while(program.getRunning() && ticks<10000) {
+            executor.update(dt);
+            ticks++;
+        }
+        Assertions.assertFalse(program.getRunning());
+        Assertions.assertTrue(ticks>10,"ticks="+ticks);
+        Assertions.assertEquals(ticks*dt,program.cycleTime.get(),1e-6);
+
+        Matrix4d ee = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        ee.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        Assertions.assertEquals(target.m03,ee.m03,1e-2);
+        Assertions.assertEquals(target.m13,ee.m13,1e-2);
+        Assertions.assertEquals(target.m23,ee.m23,1e-2);
+    }
+
+    /**
+     * A move that avoids collisions is planned on another thread.  The animation loop keeps ticking while the step
+     * holds, then the robot moves to the target.  {@link ProgramExecutorSystem#step(ProgramComponent, double)} waits
+     * for the plan instead, so it takes the same ticks as a move that needs no plan.
+     */
+    @Test
+    public void testPlanDoesNotBlockUpdate() throws InterruptedException {
+        EntityManager entityManager = new EntityManager();
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        double [] home = robot.getAllJointValues();
+        robot.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d target = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        target.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        robot.setAllJointValues(home);
+
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        Entity step = new Entity("Step");
+        entityManager.addEntityToParent(step,programRoot);
+        ProgramPathComponent path = new ProgramPathComponent();
+        path.moveType.set(ProgramPathComponent.MOVE_RAPID);
+        path.avoidCollisions.set(true);
+        step.addComponent(path);
+        step.getComponent(PoseComponent.class).setWorld(target);
+        program.programEntity.set(programRoot.getUniqueID());
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+
+        // headless: every tick moves.
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        int planned = 0;
+        while(!executor.step(program,0.01) && planned<10000) planned++;
+        path.avoidCollisions.set(false);
+        program.reset();
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        robot.setAllJointValues(home);
+        int direct = 0;
+        while(!executor.step(program,0.01) && direct<10000) direct++;
+        Assertions.assertEquals(direct,planned);
+
+        // animation loop: never waits, finishes once the plan arrives.
+        path.avoidCollisions.set(true);
+        program.reset();
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        robot.setAllJointValues(home);
+        program.setRunning(true);
+        long deadline = System.currentTimeMillis()+10000;
+        while(program.getRunning() && System.currentTimeMillis()<deadline) {
+            executor.update(0.01);
+            Thread.sleep(1);
+        }
+        Assertions.assertFalse(program.getRunning());
+
+        Matrix4d ee = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        ee.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        Assertions.assertEquals(target.m03,ee.m03,1e-2);
+        Assertions.assertEquals(target.m13,ee.m13,1e-2);
+        Assertions.assertEquals(target.m23,ee.m23,1e-2);
+    }
+
+    /**
+     * Adding or removing a step component on an entity already in the program compiles the program again.
+     */
+    @Test
+    public void testComponentChangeRecompiles() {
+        EntityManager entityManager = new EntityManager();
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        Entity parent = new Entity("Parent");
+        entityManager.addEntityToParent(parent,programRoot);
+        Entity child = new Entity("Child");
+        entityManager.addEntityToParent(child,parent);
+
+        Entity myRobot = new Entity("My Robot");
+        entityManager.addEntityToParent(myRobot,entityManager.getRoot());
+        myRobot.addComponent(new RobotComponent());
+        ProgramComponent program = new ProgramComponent();
+        myRobot.addComponent(program);
+        program.programEntity.set(programRoot.getUniqueID());
+
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+        CompiledProgram first = executor.getCompiledProgram(program);
+        Assertions.assertEquals(CompiledProgram.NOOP,first.get(0).type);
+        Assertions.assertEquals(CompiledProgram.NOOP,first.get(1).type);
+        Assertions.assertSame(first,executor.getCompiledProgram(program));
+
+        // the child inherits the step of its parent.
+        ProgramEventComponent event = new ProgramEventComponent();
+        parent.addComponent(event);
+        CompiledProgram second = executor.getCompiledProgram(program);
+        Assertions.assertNotSame(first,second);
+        Assertions.assertEquals(CompiledProgram.EVENT,second.get(0).type);
+        Assertions.assertEquals(CompiledProgram.EVENT,second.get(1).type);
+        Assertions.assertSame(event,second.get(1).step);
+
+        child.addComponent(new ProgramPathComponent());
+        CompiledProgram third = executor.getCompiledProgram(program);
+        Assertions.assertEquals(CompiledProgram.EVENT,third.get(0).type);
+        Assertions.assertEquals(CompiledProgram.PATH,third.get(1).type);
+
+        parent.removeComponent(event);
+        CompiledProgram fourth = executor.getCompiledProgram(program);
+        Assertions.assertEquals(CompiledProgram.NOOP,fourth.get(0).type);
+        Assertions.assertEquals(CompiledProgram.PATH,fourth.get(1).type);
+        Assertions.assertSame(fourth,executor.getCompiledProgram(program));
+    }
+
+    /**
+     * The compiled program visits the steps depth first, finds each step by its ID, and is compiled again when the
+     * tree changes.
+     */
+    @Test
+    public void testCompileMatchesWalk() {
+        EntityManager entityManager = new EntityManager();
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        addChildrenToNode(entityManager,programRoot,10);
+        programRoot.getChildren().forEach((child)->addChildrenToNode(entityManager,child,3));
+        addChildrenToNode(entityManager,programRoot.getChildren().get(1).getChildren().get(2),3);
+
+        Entity myRobot = new Entity("My Robot");
+        entityManager.addEntityToParent(myRobot,entityManager.getRoot());
+        RobotComponent robot = new RobotComponent();
+        ProgramComponent program = new ProgramComponent();
+        myRobot.addComponent(robot);
+        myRobot.addComponent(program);
+        program.programEntity.set(programRoot.getUniqueID());
+
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+        List<Entity> walk = depthFirst(programRoot);
+
+        CompiledProgram code = executor.getCompiledProgram(program);
+        Assertions.assertEquals(walk.size(),code.size());
+        for(int i=0;i<walk.size();++i) {
+            Assertions.assertSame(walk.get(i),code.get(i).entity);
+            Assertions.assertEquals(i,code.indexOf(walk.get(i).getUniqueID()));
+        }
+        Assertions.assertSame(code,executor.getCompiledProgram(program));
+
+        entityManager.addEntityToParent(new Entity("late"),programRoot);
+        CompiledProgram again = executor.getCompiledProgram(program);
+        Assertions.assertNotSame(code,again);
+        Assertions.assertEquals(walk.size()+1,again.size());
+    }
+
+    /**
+     * Events finish at once, so every step takes one tick.  The time of each step is counted.
+     */
+    @Test
+    public void testRunCompiledProgram() {
+        EntityManager entityManager = new EntityManager();
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        for(int i=0;i<5;++i) {
+            Entity e = new Entity("Event "+i);
+            e.addComponent(new ProgramEventComponent());
+            entityManager.addEntityToParent(e,programRoot);
+        }
+        Entity myRobot = new Entity("My Robot");
+        entityManager.addEntityToParent(myRobot,entityManager.getRoot());
+        myRobot.addComponent(new RobotComponent());
+        ProgramComponent program = new ProgramComponent();
+        myRobot.addComponent(program);
+        program.programEntity.set(programRoot.getUniqueID());
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        program.setRunning(true);
+
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+        int ticks = 0;
+        while(program.getRunning() && ticks<100) {
+            executor.update(0.01);
+            ticks++;
+        }
+        Assertions.assertEquals(5,ticks);
+        Assertions.assertNull(program.stepEntity.get());
+        CompiledProgram code = program.getCompiledProgram();
+        Assertions.assertEquals(CompiledProgram.EVENT,code.get(0).type);
+        for(int i=0;i<code.size();++i) Assertions.assertEquals(1,code.getTicks(i));
+    }
+
+    /**
+     * The waypoints of a path inherit its step.  Each must still move the robot to its own pose, in order.
+     */
+    @Test
+    public void testPathWaypointsUseTheirOwnPose() {
+        EntityManager entityManager = new EntityManager();
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        // two targets the robot can reach.
+        double [] home = robot.getAllJointValues();
+        Matrix4d [] targets = new Matrix4d[2];
+        double [][] joints = {{10,280,-20,300,120,170},{-10,270,-10,290,110,160}};
+        for(int i=0;i<targets.length;++i) {
+            robot.setAllJointValues(joints[i]);
+            targets[i] = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+            targets[i].mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        }
+        robot.setAllJointValues(home);
+
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        Entity pathEntity = new Entity("Path");
+        entityManager.addEntityToParent(pathEntity,programRoot);
+        ProgramPathComponent path = new ProgramPathComponent();
+        path.moveType.set(ProgramPathComponent.MOVE_RAPID);
+        pathEntity.addComponent(path);
+        pathEntity.getComponent(PoseComponent.class).setWorld(targets[0]);
+        List<Entity> waypoints = new ArrayList<>();
+        for(int i=0;i<targets.length;++i) {
+            Entity waypoint = new Entity("Waypoint "+i);
+            entityManager.addEntityToParent(waypoint,pathEntity);
+            waypoint.getComponent(PoseComponent.class).setWorld(targets[i]);
+            waypoints.add(waypoint);
+        }
+
+        program.programEntity.set(programRoot.getUniqueID());
+        program.mode.set(ProgramComponent.RUN_TO_END);
+        program.setRunning(true);
+        ProgramExecutorSystem executor = new ProgramExecutorSystem(entityManager);
+
+        CompiledProgram code = executor.getCompiledProgram(program);
+        Assertions.assertEquals(3,code.size());
+        for(int i=0;i<waypoints.size();++i) {
+            CompiledProgram.Instruction instruction = code.get(i+1);
+            Assertions.assertEquals(CompiledProgram.PATH,instruction.type);
+            Assertions.assertSame(path,instruction.step);
+            Assertions.assertSame(waypoints.get(i).getComponent(PoseComponent.class),instruction.pose);
+        }
+
+        int ticks = 0;
+        while(program.getRunning() && ticks<10000) {
+            executor.update(0.01);
+            ticks++;
+        }
+        Assertions.assertFalse(program.getRunning());
+
+        // the robot ends at the last waypoint, not at the pose of the path.
+        Matrix4d ee = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        ee.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        Assertions.assertEquals(targets[1].m03,ee.m03,1e-2);
+        Assertions.assertEquals(targets[1].m13,ee.m13,1e-2);
+        Assertions.assertEquals(targets[1].m23,ee.m23,1e-2);
+    }
 }
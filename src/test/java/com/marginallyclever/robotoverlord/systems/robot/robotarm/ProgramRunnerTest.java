@@ -0,0 +1,133 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramEventComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+
+public class ProgramRunnerTest {
+    /**
+     * A rapid move followed by an event.  The same program run twice gives the same cycle time, the robot is put back
+     * and the move is the step where the joints travel.
+     */
+    @Test
+    public void testRunReport() {
+        EntityManager entityManager = new EntityManager();
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        double [] home = robot.getAllJointValues();
+        robot.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d target = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        target.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        robot.setAllJointValues(home);
+
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        Entity move = new Entity("Move");
+        entityManager.addEntityToParent(move,programRoot);
+        ProgramPathComponent path = new ProgramPathComponent();
+        path.moveType.set(ProgramPathComponent.MOVE_RAPID);
+        move.addComponent(path);
+        move.getComponent(PoseComponent.class).setWorld(target);
+        Entity grab = new Entity("Grab");
+        grab.addComponent(new ProgramEventComponent());
+        entityManager.addEntityToParent(grab,programRoot);
+        program.programEntity.set(programRoot.getUniqueID());
+
+        ProgramRunner runner = new ProgramRunner(entityManager);
+        runner.setTimeStep(0.01);
+        ProgramRunReport report = runner.runAndRestore(program);
+        Assertions.assertEquals(robot.getEntity().getName(),report.getProgramName());
+
+        Assertions.assertTrue(report.isCompleted());
+        Assertions.assertEquals(report.getTicks()*0.01,report.getCycleTime(),1e-6);
+        Assertions.assertEquals(2,report.getSteps().size());
+        ProgramRunReport.StepReport moveReport = report.getSteps().get(0);
+        Assertions.assertEquals("Move",moveReport.name);
+        Assertions.assertTrue(moveReport.getDuration()>0.1);
+        double travel = 0;
+        for(double d : moveReport.getJointTravel()) travel += d;
+        Assertions.assertTrue(travel>10,"travel="+travel);
+        Assertions.assertEquals(0.01,report.getSteps().get(1).getDuration(),1e-9);
+        Assertions.assertArrayEquals(home,robot.getAllJointValues(),1e-9);
+        Assertions.assertFalse(program.getRunning());
+
+        ProgramRunReport again = runner.runAndRestore(program);
+        Assertions.assertEquals(report.getCycleTime(),again.getCycleTime(),1e-9);
+    }
+
+    /**
+     * A run moves only the robot of the program.  Another robot with somewhere to go is left where it is.
+     */
+    @Test
+    public void testOtherRobotsStayPut() {
+        EntityManager entityManager = new EntityManager();
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        RobotComponent other = KinematicChainTest.build6AxisArm(entityManager);
+        double [] otherHome = other.getAllJointValues();
+        other.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d otherTarget = (Matrix4d)other.get(Robot.END_EFFECTOR);
+        other.setAllJointValues(otherHome);
+        other.set(Robot.END_EFFECTOR_TARGET,otherTarget);
+
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        for(int i=0;i<10;++i) {
+            Entity e = new Entity("Event "+i);
+            e.addComponent(new ProgramEventComponent());
+            entityManager.addEntityToParent(e,programRoot);
+        }
+        program.programEntity.set(programRoot.getUniqueID());
+
+        ProgramRunReport report = new ProgramRunner(entityManager).runAndRestore(program);
+        Assertions.assertTrue(report.isCompleted());
+        Assertions.assertArrayEquals(otherHome,other.getAllJointValues(),1e-9);
+    }
+
+    /**
+     * A program that cannot finish in the time limit says so.
+     */
+    @Test
+    public void testTimeLimit() {
+        EntityManager entityManager = new EntityManager();
+        Entity programRoot = new Entity("Program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        for(int i=0;i<10;++i) {
+            Entity e = new Entity("Event "+i);
+            e.addComponent(new ProgramEventComponent());
+            entityManager.addEntityToParent(e,programRoot);
+        }
+        Entity myRobot = new Entity("My Robot");
+        entityManager.addEntityToParent(myRobot,entityManager.getRoot());
+        myRobot.addComponent(new RobotComponent());
+        ProgramComponent program = new ProgramComponent();
+        myRobot.addComponent(program);
+        program.programEntity.set(programRoot.getUniqueID());
+
+        ProgramRunner runner = new ProgramRunner(entityManager);
+        runner.setTimeStep(0.1);
+        runner.setTimeLimit(0.5);
+        ProgramRunReport report = runner.run(program);
+        Assertions.assertFalse(report.isCompleted());
+        Assertions.assertEquals(5,report.getTicks());
+
+        runner.setTimeLimit(10);
+        report = runner.run(program);
+        Assertions.assertTrue(report.isCompleted());
+        Assertions.assertEquals(10,report.getSteps().size());
+        Assertions.assertEquals(1.0,report.getCycleTime(),1e-9);
+    }
+}
@@ -0,0 +1,154 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramInterlockComponent;
+import com.marginallyclever.robotoverlord.components.program.ProgramPathComponent;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.robots.Robot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+
+public class ProgramSchedulerTest {
+    /**
+     * Two arms each hold the fixture while they move.  The second waits for the first, then the first is idle while
+     * the second finishes.
+     */
+    @Test
+    public void testInterlockMakesOneWait() {
+        EntityManager entityManager = new EntityManager();
+        ProgramComponent a = addArmWithProgram(entityManager,"A");
+        ProgramComponent b = addArmWithProgram(entityManager,"B");
+
+        ProgramScheduler scheduler = new ProgramScheduler(entityManager);
+        scheduler.setTimeStep(0.01);
+        ScheduleReport report = scheduler.runAndRestore();
+
+        Assertions.assertTrue(report.isCompleted());
+        Assertions.assertFalse(report.isDeadlocked());
+        Assertions.assertEquals(2,report.getRobots().size());
+        ScheduleReport.RobotTimes timesA = report.getRobots().get(0);
+        ScheduleReport.RobotTimes timesB = report.getRobots().get(1);
+        Assertions.assertEquals("A",timesA.name);
+        Assertions.assertEquals("B",timesB.name);
+        Assertions.assertTrue(timesA.getBusy()>0.1);
+        Assertions.assertEquals(0,timesA.getWaiting(),1e-9);
+        // B waits for all of A's move.
+        Assertions.assertTrue(timesB.getWaiting()>=timesA.getBusy()-0.05,"waiting="+timesB.getWaiting());
+        Assertions.assertEquals(report.getMakespan(),timesB.getFinishTime(),1e-9);
+        Assertions.assertEquals(timesB.getWaiting(),timesA.getIdle(),0.05);
+        Assertions.assertEquals(report.getMakespan(),timesB.getBusy()+timesB.getWaiting(),1e-9);
+        Assertions.assertFalse(a.getRunning());
+        Assertions.assertFalse(b.getRunning());
+    }
+
+    /**
+     * A holds x and wants y while B holds y and wants x.
+     */
+    @Test
+    public void testDeadlock() {
+        EntityManager entityManager = new EntityManager();
+        addRobotWithLocks(entityManager,"A","x","y");
+        addRobotWithLocks(entityManager,"B","y","x");
+
+        ProgramScheduler scheduler = new ProgramScheduler(entityManager);
+        ScheduleReport report = scheduler.run();
+        Assertions.assertTrue(report.isDeadlocked());
+        Assertions.assertFalse(report.isCompleted());
+        Assertions.assertTrue(report.getMakespan()<1);
+    }
+
+    /**
+     * With a capacity of 2 neither program waits.
+     */
+    @Test
+    public void testSemaphore() {
+        EntityManager entityManager = new EntityManager();
+        ProgramComponent a = addRobotWithLocks(entityManager,"A","x","y");
+        ProgramComponent b = addRobotWithLocks(entityManager,"B","x","y");
+        for(ProgramComponent p : new ProgramComponent[]{a,b}) {
+            Entity root = entityManager.findEntityByUniqueID(p.programEntity.get());
+            for(Entity step : root.getChildren()) step.getComponent(ProgramInterlockComponent.class).capacity.set(2);
+        }
+        ScheduleReport report = new ProgramScheduler(entityManager).run();
+        Assertions.assertTrue(report.isCompleted());
+        for(ScheduleReport.RobotTimes times : report.getRobots()) Assertions.assertEquals(0,times.getWaiting(),1e-9);
+    }
+
+    /**
+     * A robot with no program is not part of the schedule, even if it has somewhere to go.
+     */
+    @Test
+    public void testRobotWithoutProgramStaysPut() {
+        EntityManager entityManager = new EntityManager();
+        addArmWithProgram(entityManager,"A");
+
+        RobotComponent other = KinematicChainTest.build6AxisArm(entityManager);
+        double [] home = other.getAllJointValues();
+        other.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d target = (Matrix4d)other.get(Robot.END_EFFECTOR);
+        other.setAllJointValues(home);
+        other.set(Robot.END_EFFECTOR_TARGET,target);
+
+        ScheduleReport report = new ProgramScheduler(entityManager).runAndRestore();
+        Assertions.assertTrue(report.isCompleted());
+        Assertions.assertEquals(1,report.getRobots().size());
+        Assertions.assertArrayEquals(home,other.getAllJointValues(),1e-9);
+    }
+
+    private ProgramComponent addArmWithProgram(EntityManager entityManager,String name) {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        robot.getEntity().setName(name);
+        ProgramComponent program = new ProgramComponent();
+        robot.getEntity().addComponent(program);
+
+        double [] home = robot.getAllJointValues();
+        robot.setAllJointValues(new double[]{10,280,-20,300,120,170});
+        Matrix4d target = robot.getEntity().getComponent(PoseComponent.class).getWorld();
+        target.mul((Matrix4d)robot.get(Robot.END_EFFECTOR));
+        robot.setAllJointValues(home);
+
+        Entity programRoot = new Entity(name+" program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        addInterlock(entityManager,programRoot,"fixture",ProgramInterlockComponent.ACQUIRE);
+        Entity move = new Entity("Move");
+        entityManager.addEntityToParent(move,programRoot);
+        ProgramPathComponent path = new ProgramPathComponent();
+        path.moveType.set(ProgramPathComponent.MOVE_RAPID);
+        path.avoidCollisions.set(false);
+        move.addComponent(path);
+        move.getComponent(PoseComponent.class).setWorld(target);
+        addInterlock(entityManager,programRoot,"fixture",ProgramInterlockComponent.RELEASE);
+        program.programEntity.set(programRoot.getUniqueID());
+        return program;
+    }
+
+    private ProgramComponent addRobotWithLocks(EntityManager entityManager,String name,String first,String second) {
+        Entity robot = new Entity(name);
+        entityManager.addEntityToParent(robot,entityManager.getRoot());
+        robot.addComponent(new RobotComponent());
+        ProgramComponent program = new ProgramComponent();
+        robot.addComponent(program);
+        Entity programRoot = new Entity(name+" program");
+        entityManager.addEntityToParent(programRoot,entityManager.getRoot());
+        addInterlock(entityManager,programRoot,first,ProgramInterlockComponent.ACQUIRE);
+        addInterlock(entityManager,programRoot,second,ProgramInterlockComponent.ACQUIRE);
+        addInterlock(entityManager,programRoot,second,ProgramInterlockComponent.RELEASE);
+        addInterlock(entityManager,programRoot,first,ProgramInterlockComponent.RELEASE);
+        program.programEntity.set(programRoot.getUniqueID());
+        return program;
+    }
+
+    private void addInterlock(EntityManager entityManager,Entity parent,String lock,int action) {
+        Entity e = new Entity((action==ProgramInterlockComponent.ACQUIRE ? "Acquire " : "Release ")+lock);
+        ProgramInterlockComponent interlock = new ProgramInterlockComponent();
+        interlock.lockName.set(lock);
+        interlock.action.set(action);
+        e.addComponent(interlock);
+        entityManager.addEntityToParent(e,parent);
+    }
+}
@@ -0,0 +1,167 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.collision;
+
+import com.marginallyclever.robotoverlord.components.PoseComponent;
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.components.shapes.Box;
+import com.marginallyclever.robotoverlord.entity.Entity;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChainTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+import java.util.SplittableRandom;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class ArmCollisionModelTest {
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void setup() {
+        entityManager = new EntityManager();
+    }
+
+    @AfterEach
+    public void teardown() {
+        entityManager.clear();
+        entityManager = null;
+    }
+
+    @Test
+    public void fitCapsuleAroundPoints() {
+        SplittableRandom random = new SplittableRandom(1);
+        int count = 500;
+        double[] points = new double[count * 3];
+        for (int i = 0; i < count; ++i) {
+            // a rod 20 long and about 3 wide, tilted.
+            double t = random.nextDouble(-10, 10);
+            double a = random.nextDouble(0, Math.PI * 2);
+            double r = random.nextDouble(0, 1.5);
+            points[i * 3] = t + 5;
+            points[i * 3 + 1] = t + r * Math.cos(a);
+            points[i * 3 + 2] = r * Math.sin(a) - 2;
+        }
+        Capsule c = Capsule.fit(points, count);
+        Assertions.assertNotNull(c);
+        Assertions.assertTrue(c.radius < 2, c.toString());
+        for (int i = 0; i < count; ++i) {
+            double d2 = Capsule.segmentSegmentDistanceSquared(
+                    c.ax, c.ay, c.az, c.bx, c.by, c.bz,
+                    points[i * 3], points[i * 3 + 1], points[i * 3 + 2],
+                    points[i * 3], points[i * 3 + 1], points[i * 3 + 2]);
+            Assertions.assertTrue(Math.sqrt(d2) <= c.radius + 1e-9);
+        }
+        Assertions.assertNull(Capsule.fit(points, 0));
+    }
+
+    @Test
+    public void selfCollisionMatrixSkipsAdjacentLinks() {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ArmCollisionModel model = ArmCollisionModel.fromRobot(robot);
+        Assertions.assertEquals(robot.getNumBones() + 1, model.getNumLinks());
+        for (int i = 0; i + 1 < model.getNumLinks(); ++i) {
+            Assertions.assertFalse(model.isPairTested(i, i + 1));
+        }
+        double[] home = robot.getAllJointValues();
+        Assertions.assertFalse(model.isInCollision(home));
+    }
+
+    @Test
+    public void checkIsWithinBudget() {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ArmCollisionModel model = ArmCollisionModel.fromRobot(robot);
+        KinematicChain chain = model.getChain();
+        SplittableRandom random = new SplittableRandom(2);
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        for (int i = 0; i < 20; ++i) {
+            m.setTranslation(new Vector3d(random.nextDouble(-50, 50), random.nextDouble(-50, 50), random.nextDouble(0, 50)));
+            model.addObstacle(new OrientedBox(new Point3d(-2, -2, -2), new Point3d(2, 2, 2), m));
+        }
+
+        ArmCollisionModel.Workspace ws = model.createWorkspace();
+        int samples = 2000;
+        double[][] q = new double[samples][chain.getDOF()];
+        for (double[] joints : q) {
+            for (int j = 0; j < joints.length; ++j) {
+                joints[j] = random.nextDouble(chain.getJointMin(j), chain.getJointMax(j));
+            }
+        }
+        // warm up
+        for (double[] joints : q) model.isInCollision(joints, ws);
+        long start = System.nanoTime();
+        for (double[] joints : q) model.isInCollision(joints, ws);
+        long average = (System.nanoTime() - start) / samples;
+        Assertions.assertTrue(average < ArmCollisionMonitor.BUDGET_NS, average + "ns");
+    }
+
+    @Test
+    public void monitorStopsArm() {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        double[] home = robot.getAllJointValues();
+        double[] middle = home.clone();
+        middle[0] += 60;
+
+        // a box where the wrist will be.
+        KinematicChain chain = new KinematicChain(robot);
+        double[] poses = new double[(chain.getDOF() + 1) * KinematicChain.MATRIX_SIZE];
+        chain.getPoses(middle, poses, null);
+        int o = 4 * KinematicChain.MATRIX_SIZE;
+        Entity obstacle = new Entity("obstacle");
+        entityManager.addEntityToParent(obstacle, entityManager.getRoot());
+        obstacle.addComponent(new Box(4, 4, 4));
+        obstacle.getComponent(PoseComponent.class).setPosition(new Vector3d(poses[o + 3], poses[o + 7], poses[o + 11]));
+
+        ArmCollisionMonitor monitor = new ArmCollisionMonitor(robot);
+        Assertions.assertFalse(monitor.update(entityManager, 0.01));
+        Assertions.assertEquals(1, monitor.getModel().getObstacles().size());
+
+        robot.setAllJointValues(middle);
+        Assertions.assertTrue(monitor.update(entityManager, 0.01));
+        Assertions.assertTrue(monitor.isColliding());
+        Assertions.assertArrayEquals(home, robot.getAllJointValues(), 1e-6);
+
+        Assertions.assertFalse(monitor.update(entityManager, 0.01));
+        Assertions.assertFalse(monitor.isColliding());
+    }
+
+    @Test
+    public void sceneObstaclesChangeOnlyWhenSomethingMoves() {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        ArmCollisionModel model = ArmCollisionModel.fromRobot(robot);
+        Entity obstacle = new Entity("obstacle");
+        entityManager.addEntityToParent(obstacle, entityManager.getRoot());
+        obstacle.addComponent(new Box(4, 4, 4));
+        obstacle.getComponent(PoseComponent.class).setPosition(new Vector3d(30, 0, 0));
+
+        SceneObstacles obstacles = new SceneObstacles(robot);
+        Assertions.assertTrue(obstacles.update(entityManager, model));
+        Assertions.assertEquals(1, model.getObstacles().size());
+        OrientedBox box = model.getObstacles().get(0);
+        Assertions.assertFalse(obstacles.update(entityManager, model));
+
+        // the same box is moved, not replaced.
+        obstacle.getComponent(PoseComponent.class).setPosition(new Vector3d(40, 0, 0));
+        Assertions.assertTrue(obstacles.update(entityManager, model));
+        Assertions.assertSame(box, model.getObstacles().get(0));
+        Assertions.assertEquals(40, box.cx, 1e-6);
+        Assertions.assertFalse(obstacles.update(entityManager, model));
+
+        // a new shape is not seen until the scene is searched again.
+        Entity second = new Entity("second");
+        entityManager.addEntityToParent(second, entityManager.getRoot());
+        second.addComponent(new Box(4, 4, 4));
+        Assertions.assertFalse(obstacles.update(entityManager, model));
+        obstacles.invalidate();
+        Assertions.assertTrue(obstacles.update(entityManager, model));
+        Assertions.assertEquals(2, model.getObstacles().size());
+    }
+}
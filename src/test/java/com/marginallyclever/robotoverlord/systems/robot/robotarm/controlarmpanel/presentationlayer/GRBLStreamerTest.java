@@ -0,0 +1,120 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer;
+
+import com.marginallyclever.communications.transport.sim.FirmwareSimulator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class GRBLStreamerTest {
+    private final List<String> sent = new ArrayList<>();
+    private final GRBLStreamer.Link link = new GRBLStreamer.Link() {
+        @Override
+        public void sendLine(String line) {
+            sent.add(line);
+        }
+
+        @Override
+        public void sendRealtime(char command) {
+            sent.add(String.valueOf(command));
+        }
+    };
+
+    /**
+     * Lines go while they fit in the buffer.  Each ok frees the oldest line.
+     */
+    @Test
+    public void testCharacterCounting() {
+        GRBLStreamer streamer = new GRBLStreamer(link,20);
+        for(int i=0;i<5;++i) streamer.queue("G1 X"+i);  // 6 bytes with the newline
+        Assertions.assertEquals(3,sent.size());
+        Assertions.assertEquals(18,streamer.getBytesInFlight());
+        Assertions.assertTrue(streamer.isBlocked());
+
+        streamer.queue("?");
+        Assertions.assertEquals("?",sent.get(3));
+        Assertions.assertEquals(18,streamer.getBytesInFlight());
+
+        streamer.onReceive("ok");
+        Assertions.assertEquals(5,sent.size());
+        Assertions.assertEquals("G1 X3",sent.get(4));
+        streamer.onReceive("error:20");
+        streamer.onReceive("ok");
+        streamer.onReceive("ok");
+        streamer.onReceive("ok");
+        Assertions.assertTrue(streamer.isIdle());
+        Assertions.assertEquals(1,streamer.getErrors());
+        Assertions.assertEquals(5,streamer.getLinesAcknowledged());
+    }
+
+    @Test
+    public void testSendResponse() {
+        GRBLStreamer streamer = new GRBLStreamer(link);
+        streamer.setCharacterCounting(false);
+        streamer.queue("G1 X1");
+        streamer.queue("G1 X2");
+        Assertions.assertEquals(1,sent.size());
+        streamer.onReceive("ok");
+        Assertions.assertEquals(2,sent.size());
+    }
+
+    /**
+     * A status report while nothing is in flight tells the real size of the RX buffer.
+     */
+    @Test
+    public void testLearnBufferSize() {
+        GRBLStreamer streamer = new GRBLStreamer(link);
+        streamer.onReceive("<Idle|WPos:0.000,0.000,0.000|Bf:35,1023|FS:0,0>");
+        Assertions.assertEquals(1023,streamer.getRxBufferSize());
+        Assertions.assertEquals(35,streamer.getPlannerBlocksFree());
+
+        // with lines in flight the free space is not the whole buffer.
+        streamer.queue("G1 X1");
+        streamer.onReceive("<Run|WPos:0.000,0.000,0.000|Bf:34,1017|FS:0,0>");
+        Assertions.assertEquals(1023,streamer.getRxBufferSize());
+    }
+
+    /**
+     * On short moves send-response starves the planner.  Character counting keeps it fed without overflowing the
+     * RX buffer.
+     */
+    @Test
+    public void testSimulatorThroughput() {
+        List<String> lines = new ArrayList<>();
+        lines.add("G1 F3000");
+        for(int i=1;i<=500;++i) {
+            double a = i*0.01;
+            lines.add(String.format(Locale.ROOT,"G1 X%.3f Y%.3f",10*Math.cos(a),10*Math.sin(a)));
+        }
+        double[] sendResponse = stream(lines,false);
+        double[] counting = stream(lines,true);
+        Assertions.assertEquals(0,sendResponse[2]);
+        Assertions.assertEquals(0,counting[2]);
+        Assertions.assertTrue(counting[0]<sendResponse[0]*0.8);
+        Assertions.assertTrue(counting[1]<sendResponse[1]);
+    }
+
+    private double[] stream(List<String> lines,boolean characterCounting) {
+        FirmwareSimulator grbl = new FirmwareSimulator(FirmwareSimulator.Dialect.GRBL);
+        grbl.setAxes("XYZ");
+        GRBLStreamer streamer = new GRBLStreamer(new GRBLStreamer.Link() {
+            @Override
+            public void sendLine(String line) {
+                grbl.write(line+"\n");
+            }
+
+            @Override
+            public void sendRealtime(char command) {
+                grbl.write(String.valueOf(command));
+            }
+        });
+        streamer.setCharacterCounting(characterCounting);
+        grbl.setListener(streamer::onReceive);
+        for(String line : lines) streamer.queue(line);
+        while((!streamer.isIdle() || !grbl.isIdle()) && grbl.getTime()<60) grbl.advance(1e-5);
+        Assertions.assertEquals(lines.size(),grbl.getLinesProcessed());
+        return new double[]{grbl.getTime(),grbl.getStarvedTime(),grbl.getOverflows()};
+    }
+}
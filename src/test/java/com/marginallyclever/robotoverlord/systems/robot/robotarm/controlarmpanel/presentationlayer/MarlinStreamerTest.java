@@ -0,0 +1,197 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.controlarmpanel.presentationlayer;
+
+import com.marginallyclever.communications.transport.sim.FirmwareSimulator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MarlinStreamerTest {
+	private static final int LINES = 400;
+
+	@Test
+	public void testEncode() {
+		String line = MarlinStreamer.encode(1,"G28");
+		Assertions.assertTrue(line.startsWith("N1 G28*"));
+		byte checksum = 0;
+		for(char c : "N1 G28".toCharArray()) checksum ^= (byte)c;
+		Assertions.assertEquals("N1 G28*"+checksum,line);
+	}
+
+	@Test
+	public void testSendLimit() {
+		List<String> sent = new ArrayList<>();
+		MarlinStreamer streamer = new MarlinStreamer(sent::add,4,16);
+		for(int i=0;i<10;++i) streamer.queue("G0 X"+i);
+		Assertions.assertEquals(4,sent.size());
+		Assertions.assertTrue(streamer.isBlocked());
+		Assertions.assertEquals(6,streamer.getWaitingCount());
+
+		streamer.onOk();
+		Assertions.assertEquals(5,sent.size());
+		Assertions.assertTrue(sent.get(4).startsWith("N5 G0 X4*"));
+
+		for(int i=0;i<9;++i) streamer.onOk();
+		Assertions.assertTrue(streamer.isIdle());
+		Assertions.assertFalse(streamer.isBlocked());
+		Assertions.assertEquals(10,sent.size());
+	}
+
+	/**
+	 * A link that blocks while sending does not hold up the replies.  The lines still leave in order.
+	 */
+	@Test
+	public void testSlowLinkDoesNotBlockReplies() throws Exception {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> sent = Collections.synchronizedList(new ArrayList<>());
+		MarlinStreamer streamer = new MarlinStreamer((line)->{
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ignored) {}
+			sent.add(line);
+		},1,16);
+
+		CompletableFuture<Void> sender = CompletableFuture.runAsync(()->streamer.queue("G0 X1"));
+		Assertions.assertTrue(entered.await(5,TimeUnit.SECONDS));
+		// the link is stuck on line 1.  the reply path must still get the lock.
+		CompletableFuture.runAsync(()->{
+			streamer.queue("G0 X2");
+			streamer.onOk();
+		}).get(5,TimeUnit.SECONDS);
+		Assertions.assertEquals(1,streamer.getLinesInFlight());
+
+		release.countDown();
+		sender.get(5,TimeUnit.SECONDS);
+		Assertions.assertEquals(2,sent.size());
+		Assertions.assertTrue(sent.get(0).startsWith("N1 G0 X1*"));
+		Assertions.assertTrue(sent.get(1).startsWith("N2 G0 X2*"));
+	}
+
+	@Test
+	public void testHistoryWrapsAround() {
+		MarlinStreamer streamer = new MarlinStreamer((line)->{},4,16);
+		Assertions.assertEquals(16,streamer.getHistorySize());
+		for(int i=1;i<=100;++i) {
+			streamer.queue("G0 X"+i);
+			streamer.onOk();
+		}
+		Assertions.assertEquals(100,streamer.getNewestLineNumber());
+		Assertions.assertEquals(MarlinStreamer.encode(100,"G0 X100"),streamer.getLine(100));
+		Assertions.assertEquals(MarlinStreamer.encode(85,"G0 X85"),streamer.getLine(85));
+		Assertions.assertNull(streamer.getLine(84));
+		Assertions.assertNull(streamer.getLine(101));
+	}
+
+	@Test
+	public void testResendRewindsOnce() {
+		List<String> sent = new ArrayList<>();
+		MarlinStreamer streamer = new MarlinStreamer(sent::add,4,16);
+		for(int i=1;i<=6;++i) streamer.queue("G0 X"+i);
+		// N1 to N4 are on their way.  N2 is damaged, so N2, N3 and N4 are each refused with "Resend: 2".
+		streamer.onOk();
+		Assertions.assertEquals(5,sent.size());
+		for(int i=0;i<4;++i) {
+			streamer.onResend(2);
+			streamer.onOk();
+		}
+		Assertions.assertEquals(1,streamer.getResends());
+		Assertions.assertEquals(3,streamer.getIgnoredResends());
+		Assertions.assertEquals(0,streamer.getLostResends());
+		// after N5 the streamer went back to N2, once.
+		Assertions.assertEquals(MarlinStreamer.encode(2,"G0 X2"),sent.get(5));
+		Assertions.assertEquals(MarlinStreamer.encode(3,"G0 X3"),sent.get(6));
+		Assertions.assertEquals(MarlinStreamer.encode(4,"G0 X4"),sent.get(7));
+		Assertions.assertEquals(MarlinStreamer.encode(5,"G0 X5"),sent.get(8));
+		Assertions.assertEquals(9,sent.size());
+	}
+
+	@Test
+	public void testResendOutsideHistoryIsCounted() {
+		MarlinStreamer streamer = new MarlinStreamer((line)->{},4,16);
+		streamer.queue("G28");
+		streamer.onResend(50);
+		Assertions.assertEquals(1,streamer.getLostResends());
+	}
+
+	private static List<String> path(int first) {
+		List<String> lines = new ArrayList<>();
+		for(int i=first;i<first+LINES;++i) {
+			lines.add(String.format(Locale.ROOT,"G1 X%.3f Y%.3f",10*Math.cos(i*0.01),10*Math.sin(i*0.01)));
+		}
+		return lines;
+	}
+
+	/**
+	 * Queue the commands and run the simulator until they are all done.
+	 * @return the simulated seconds it took.
+	 */
+	private static double run(FirmwareSimulator marlin,MarlinStreamer streamer,List<String> outbox,List<String> commands) {
+		double start = marlin.getTime();
+		for(String c : commands) streamer.queue(c);
+		while(!outbox.isEmpty() || !streamer.isIdle() || !marlin.isIdle()) {
+			// write outside the listener, as a session would.
+			for(String line : outbox) marlin.write(line+"\n");
+			outbox.clear();
+			marlin.advance(1e-4);
+			Assertions.assertTrue(marlin.getTime()-start<120,"stuck: "+marlin);
+		}
+		return marlin.getTime()-start;
+	}
+
+	private static MarlinStreamer connect(FirmwareSimulator marlin,List<String> outbox) {
+		// few enough lines in flight to fit the 128 byte serial buffer of the simulator.
+		MarlinStreamer streamer = new MarlinStreamer(outbox::add,4,MarlinStreamer.DEFAULT_HISTORY_SIZE);
+		marlin.setListener((line)->{
+			if(line.startsWith("ok")) streamer.onOk();
+			else if(line.startsWith("Resend: ")) streamer.onResend(Integer.parseInt(line.substring(8).trim()));
+		});
+		return streamer;
+	}
+
+	/**
+	 * A clean burst, then a storm of damaged lines, then clean again.  Every line must run once and in order, and the
+	 * last burst must go as fast as it does on a link that was never damaged: nothing left over from the storm slows
+	 * the stream down.
+	 */
+	@Test
+	public void testRecoversFromResendStorm() {
+		FirmwareSimulator reference = new FirmwareSimulator(FirmwareSimulator.Dialect.MARLIN);
+		reference.setAxes("XY");
+		List<String> referenceOut = new ArrayList<>();
+		MarlinStreamer referenceStreamer = connect(reference,referenceOut);
+		double [] cleanTimes = new double[3];
+		for(int i=0;i<3;++i) cleanTimes[i] = run(reference,referenceStreamer,referenceOut,path(i*LINES));
+
+		FirmwareSimulator marlin = new FirmwareSimulator(FirmwareSimulator.Dialect.MARLIN);
+		marlin.setAxes("XY");
+		List<String> outbox = new ArrayList<>();
+		MarlinStreamer streamer = connect(marlin,outbox);
+
+		run(marlin,streamer,outbox,path(0));
+		marlin.setLineErrorRate(0.2,7);
+		double storm = run(marlin,streamer,outbox,path(LINES));
+		marlin.setLineErrorRate(0,7);
+		double after = run(marlin,streamer,outbox,path(2*LINES));
+
+		Assertions.assertEquals(3*LINES,marlin.getLinesProcessed());
+		Assertions.assertArrayEquals(reference.getPosition(),marlin.getPosition(),1e-9);
+		Assertions.assertTrue(marlin.getLinesDamaged()>0);
+		Assertions.assertEquals(0,streamer.getLostResends());
+		// at most one rewind per damaged line, the rest were repeats.
+		Assertions.assertEquals(marlin.getResendsRequested(),streamer.getResends()+streamer.getIgnoredResends());
+		Assertions.assertTrue(streamer.getResends()<=marlin.getLinesDamaged());
+		Assertions.assertTrue(streamer.getIgnoredResends()>0);
+		Assertions.assertTrue(streamer.getLinesSent()>3*LINES);
+		Assertions.assertTrue(storm>=cleanTimes[1]);
+		// the same lines take the same time once the link is clean again.
+		Assertions.assertEquals(cleanTimes[2],after,cleanTimes[2]*0.05);
+	}
+}
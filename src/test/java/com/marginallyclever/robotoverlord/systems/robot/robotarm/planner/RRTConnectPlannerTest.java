@@ -0,0 +1,96 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.planner;
+
+import com.marginallyclever.robotoverlord.components.RobotComponent;
+import com.marginallyclever.robotoverlord.entity.EntityManager;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChain;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.KinematicChainTest;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.ArmCollisionModel;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.Capsule;
+import com.marginallyclever.robotoverlord.systems.robot.robotarm.collision.OrientedBox;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+import java.util.List;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class RRTConnectPlannerTest {
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void setup() {
+        entityManager = new EntityManager();
+    }
+
+    @AfterEach
+    public void teardown() {
+        entityManager.clear();
+        entityManager = null;
+    }
+
+    @Test
+    public void capsuleDistance() {
+        Capsule a = new Capsule(0,0,0, 10,0,0, 1);
+        Capsule b = new Capsule(5,3,0, 5,3,10, 1);
+        Assertions.assertEquals(1,a.distance(b),1e-9);
+        Assertions.assertFalse(a.intersects(b));
+        b.set(5,1.5,-5, 5,1.5,5, 1);
+        Assertions.assertTrue(a.intersects(b));
+
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        m.setTranslation(new Vector3d(20,0,0));
+        OrientedBox box = new OrientedBox(new Point3d(-2,-2,-2),new Point3d(2,2,2),m);
+        Assertions.assertEquals(7,a.distance(box),1e-6);
+        a.set(0,0,0, 19,0,0, 1);
+        Assertions.assertTrue(a.intersects(box));
+    }
+
+    @Test
+    public void planAroundBox() {
+        RobotComponent robot = KinematicChainTest.build6AxisArm(entityManager);
+        KinematicChain chain = new KinematicChain(robot);
+        ArmCollisionModel model = new ArmCollisionModel(chain,ArmCollisionModel.DEFAULT_RADIUS);
+
+        double [] start = new double[chain.getDOF()];
+        for(int i=0;i<start.length;++i) start[i] = chain.getJointHome(i);
+        double [] goal = start.clone();
+        goal[0] += 120;
+
+        // put a box where the wrist would be half way through the move.
+        double [] middle = start.clone();
+        middle[0] += 60;
+        double [] poses = new double[(chain.getDOF()+1)*KinematicChain.MATRIX_SIZE];
+        chain.getPoses(middle,poses,null);
+        int o = 4*KinematicChain.MATRIX_SIZE;
+        Matrix4d m = new Matrix4d();
+        m.setIdentity();
+        m.setTranslation(new Vector3d(poses[o+3],poses[o+7],poses[o+11]));
+        model.addObstacle(new OrientedBox(new Point3d(-2,-2,-2),new Point3d(2,2,2),m));
+
+        Assertions.assertFalse(model.isInCollision(start));
+        Assertions.assertFalse(model.isInCollision(goal));
+        Assertions.assertTrue(model.isMotionInCollision(start,goal,2));
+
+        RRTConnectPlanner planner = new RRTConnectPlanner(model);
+        planner.setTimeBudgetMs(5000);
+        planner.setThreads(2);
+        PlanResult result = planner.plan(start,goal);
+        Assertions.assertTrue(result.isSuccess(),result.toString());
+        Assertions.assertTrue(result.getNodesExpanded()>0);
+
+        List<double[]> path = result.getPath();
+        Assertions.assertArrayEquals(start,path.get(0),1e-9);
+        Assertions.assertArrayEquals(goal,path.get(path.size()-1),1e-9);
+        for(int i=1;i<path.size();++i) {
+            Assertions.assertFalse(model.isMotionInCollision(path.get(i-1),path.get(i),2));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.marginallyclever.robotoverlord.systems.robot.robotarm.trajectory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Dan Royer
+ * @since 2.11.0
+ */
+public class MotionProfileTest {
+    private static final double EPSILON = 1e-6;
+
+    /**
+     * Sample the profile and make sure it never breaks the limits, starts and ends at rest and ends at the right place.
+     */
+    private void checkLimits(MotionProfile profile, double v, double a, double j) {
+        double duration = profile.getDuration();
+        Assertions.assertEquals(0, profile.getPosition(0), EPSILON);
+        Assertions.assertEquals(profile.getDistance(), profile.getPosition(duration), EPSILON);
+        Assertions.assertEquals(0, profile.getVelocity(0), EPSILON);
+        Assertions.assertEquals(0, profile.getVelocity(duration), EPSILON);
+
+        int steps = 2000;
+        double dt = duration / steps;
+        double previous = 0;
+        for (int i = 1; i <= steps; ++i) {
+            double t = i * dt;
+            Assertions.assertTrue(Math.abs(profile.getVelocity(t)) <= v + EPSILON, "velocity at " + t);
+            Assertions.assertTrue(Math.abs(profile.getAcceleration(t)) <= a + EPSILON, "acceleration at " + t);
+            // position must never go backwards.
+            double p = profile.getPosition(t) * Math.signum(profile.getDistance());
+            Assertions.assertTrue(p >= previous - EPSILON, "position at " + t);
+            previous = p;
+        }
+    }
+
+    @Test
+    public void trapezoid() {
+        MotionProfile profile = new MotionProfile(100, 10, 5, 0);
+        checkLimits(profile, 10, 5, 0);
+        // 2s to accelerate, 2s to stop, 80 units at full speed.
+        Assertions.assertEquals(12, profile.getDuration(), EPSILON);
+        Assertions.assertEquals(10, profile.getPeakVelocity(), EPSILON);
+    }
+
+    @Test
+    public void triangle() {
+        // too short to reach full speed
+        MotionProfile profile = new MotionProfile(10, 100, 10, 0);
+        checkLimits(profile, 100, 10, 0);
+        Assertions.assertEquals(2, profile.getDuration(), 1e-4);
+        Assertions.assertEquals(10, profile.getPeakVelocity(), 1e-4);
+    }
+
+    @Test
+    public void sCurve() {
+        MotionProfile profile = new MotionProfile(-90, 90, 360, 3600);
+        checkLimits(profile, 90, 360, 3600);
+        Assertions.assertEquals(-90, profile.getPosition(profile.getDuration()), EPSILON);
+        // jerk limits make it slower than the trapezoid with the same velocity and acceleration.
+        Assertions.assertTrue(profile.getDuration() > new MotionProfile(-90, 90, 360, 0).getDuration());
+    }
+
+    @Test
+    public void shortSCurve() {
+        MotionProfile profile = new MotionProfile(0.01, 90, 360, 3600);
+        checkLimits(profile, 90, 360, 3600);
+    }
+
+    @Test
+    public void noMove() {
+        MotionProfile profile = new MotionProfile(0, 90, 360, 3600);
+        Assertions.assertEquals(0, profile.getDuration());
+        Assertions.assertEquals(0, profile.getPosition(1));
+    }
+
+    @Test
+    public void synchronizedJoints() {
+        double[] start = {0, 0, 0};
+        double[] end = {90, -10, 0};
+        double[] v = {90, 90, 90};
+        double[] a = {360, 360, 360};
+        double[] j = {3600, 3600, 3600};
+        JointTrajectory trajectory = new JointTrajectory(start, end, v, a, j);
+        Assertions.assertEquals(new MotionProfile(90, 90, 360, 3600).getDuration(), trajectory.getDuration(), EPSILON);
+
+        double[] joints = new double[3];
+        trajectory.getJointValues(trajectory.getDuration(), joints);
+        Assertions.assertArrayEquals(end, joints, EPSILON);
+
+        // every joint is the same fraction of the way at the same time.
+        trajectory.getJointValues(trajectory.getDuration() * 0.3, joints);
+        Assertions.assertEquals(joints[0] / 90, joints[1] / -10, 1e-3);
+    }
+
+    @Test
+    public void badJointLimitsFallBack() {
+        double[] start = {0, 0};
+        double[] end = {90, 10};
+        JointTrajectory trajectory = new JointTrajectory(start, end, new double[]{0, -1}, new double[]{Double.NaN, 0}, new double[]{0, 0});
+        Assertions.assertTrue(trajectory.getDuration() > 0);
+        Assertions.assertTrue(Double.isFinite(trajectory.getDuration()));
+
+        double[] joints = new double[2];
+        trajectory.getJointValues(trajectory.getDuration(), joints);
+        Assertions.assertArrayEquals(end, joints, EPSILON);
+    }
+
+    @Test
+    public void pathTiming() {
+        // a straight line 10cm long.
+        int n = 101;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        for (int i = 0; i < n; ++i) x[i] = i * 0.1;
+        PathTimeParameterization path = new PathTimeParameterization(x, y, z, 5, 5);
+        path.solve();
+        Assertions.assertEquals(10, path.getLength(), EPSILON);
+        // same as a trapezoid.
+        Assertions.assertEquals(new MotionProfile(10, 5, 5, 0).getDuration(), path.getDuration(), 1e-3);
+        Assertions.assertEquals(10, path.getDistance(path.getDuration()), EPSILON);
+
+        // a sharp corner in the middle slows the tool down.
+        for (int i = n / 2; i < n; ++i) {
+            y[i] = x[i] - x[n / 2];
+            x[i] = x[n / 2];
+        }
+        PathTimeParameterization corner = new PathTimeParameterization(x, y, z, 5, 5);
+        corner.solve();
+        Assertions.assertTrue(corner.getSpeed(n / 2) < 5);
+        Assertions.assertTrue(corner.getDuration() > path.getDuration());
+    }
+}